@@ -1,5 +1,7 @@
 package com.yang.ds.algorithm.consistenthash;
 
+import com.yang.ds.algorithm.hash.strategy.HashStrategy;
+
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -114,6 +116,17 @@ public class ConsistentHash {
     }
 
 
+    /**
+     * 用指定的hash算法计算hash环上的位置，和hash表共用同一套hash算法
+     * @param key key
+     * @param strategy hash算法
+     * @return 0~2^32-1
+     * */
+    public static long hashValue(String key, HashStrategy strategy) {
+        long hash = strategy.hash64(key);
+        return (hash ^ (hash >>> 32)) & 0xffffffffL;
+    }
+
     /**
      * 没有虚拟节点
      * */
@@ -121,8 +134,19 @@ public class ConsistentHash {
         // 保存hash 环上的节点，
         SortedMap<Long, String> sortedMap = new TreeMap<>();
 
+        // 为null的时候使用默认的hashValue
+        final HashStrategy strategy;
+
+        WithoutVirtualNode() {
+            this(null);
+        }
+
+        WithoutVirtualNode(HashStrategy strategy) {
+            this.strategy = strategy;
+        }
+
         public long hash(String key) {
-            return hashValue(key);
+            return strategy == null ? hashValue(key) : hashValue(key, strategy);
         }
 
 
@@ -147,8 +171,19 @@ public class ConsistentHash {
         // 保存hash 环上的节点,保存虚拟节点
         SortedMap<Long, Node> virtualMap = new TreeMap<>();
 
+        // 为null的时候使用默认的hashValue
+        final HashStrategy strategy;
+
+        WithVirtualNode() {
+            this(null);
+        }
+
+        WithVirtualNode(HashStrategy strategy) {
+            this.strategy = strategy;
+        }
+
         public long hash(String key) {
-            return hashValue(key);
+            return strategy == null ? hashValue(key) : hashValue(key, strategy);
         }
 
         public void addServer(String ip, int rps) {
@@ -1,8 +1,13 @@
 package com.yang.ds.algorithm.hash;
 
-import com.yang.ds.datastruct.hash.HashTable;
+import com.yang.ds.algorithm.hash.strategy.HashStrategy;
+import com.yang.ds.datastruct.hash.HashCursor;
+import com.yang.ds.datastruct.hash.IterableHashTable;
 
-import java.util.Objects;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
 
 /**
  * 实现hash表
@@ -35,7 +40,7 @@ import java.util.Objects;
  *
  *
  * */
-public abstract class AbstractHashTable<K, V> implements HashTable<K,V> {
+public abstract class AbstractHashTable<K, V> implements IterableHashTable<K, V> {
     /**装填因子*/
     public static final float DEFAULT_LOAD_FACTOR = 0.75f;
 
@@ -45,6 +50,9 @@ public abstract class AbstractHashTable<K, V> implements HashTable<K,V> {
     /**默认初始大小2^4*/
     public static final int DEFAULT_INITIAL_CAPACITY = 1 << 4;
 
+    /**渐进式rehash，每次遇到空桶最多连续跳过的个数是迁移桶数的倍数，防止一次操作扫描太多的空桶(参考redis dict)*/
+    private static final int EMPTY_VISITS_FACTOR = 10;
+
     /**hash表，装填因子，默认0.75,太小空间浪费多，太大，冲突太多*/
     protected float loadFactor = DEFAULT_LOAD_FACTOR;
 
@@ -60,6 +68,22 @@ public abstract class AbstractHashTable<K, V> implements HashTable<K,V> {
      * */
     protected int threshold;
 
+    /**
+     * 渐进式rehash每次操作迁移的桶的个数，0表示扩容的时候一次性迁移完成(默认)
+     * 渐进式rehash参考redis的dict，扩容的时候新老两个数组同时存在，新数据只写入新数组，每次put/get/remove顺便迁移
+     * rehashStep个桶，直到老数组迁移完成，把一次扩容的O(N)的停顿均摊到之后的N次操作上
+     * */
+    protected int rehashStep;
+
+    /**rehash期间的老数组，不在rehash的时候为null*/
+    protected Object[] oldTable;
+
+    /**老数组中下一个需要迁移的桶的索引*/
+    protected int rehashIdx = -1;
+
+    /**hash算法，默认JDK的hashCode*/
+    protected HashStrategy hashStrategy = HashStrategy.JDK;
+
     protected AbstractHashTable(int size, float loadFactor) {
         // 获取size的最小的2^n次方，这样为了之后用有效位与运算代替取模（原理就是利用进制的末尾的有效值，来代替余数,更高效的位运算）
         if (size <= 0)
@@ -112,16 +136,285 @@ public abstract class AbstractHashTable<K, V> implements HashTable<K,V> {
      * */
     abstract void resize();
 
+    /**
+     * 迁移老数组中一个桶中的所有数据到新数组
+     * @param idx 老数组中桶的索引
+     * */
+    abstract void moveBucket(int idx);
+
+    /**
+     * 设置渐进式rehash
+     * @param step 每次操作迁移的桶的个数,0表示关闭渐进式rehash,扩容时一次性迁移
+     * */
+    public void setRehashStep(int step) {
+        if (step < 0)
+            throw new IllegalArgumentException("Illegal rehash step: " + step);
+        this.rehashStep = step;
+        if (step == 0) {
+            rehashAll();
+        }
+    }
+
+    /**
+     * 是否正在进行渐进式rehash
+     * */
+    public boolean isRehashing() {
+        return oldTable != null;
+    }
+
+    /**
+     * 扩容到新的数组大小，如果上一次rehash还没有完成，先一次性完成
+     * 渐进式模式下只是创建新数组，迁移工作由之后的操作完成
+     * @param newCap 新数组大小
+     * */
+    protected void grow(int newCap) {
+        rehashAll();
+        oldTable = table;
+        table = new Object[newCap];
+        rehashIdx = 0;
+        threshold = newCap >= MAX_CAPACITY ? Integer.MAX_VALUE : (int) ((float) newCap * loadFactor);
+        if (rehashStep == 0) {
+            rehashAll();
+        }
+    }
+
+    /**
+     * 渐进式rehash的一步，迁移rehashStep个不为空的桶，最多跳过rehashStep*10个空桶
+     * 每次put/get/remove之前调用
+     * */
+    protected void rehashStep() {
+        if (oldTable == null) {
+            return;
+        }
+        int moved = 0;
+        int emptyVisits = rehashStep * EMPTY_VISITS_FACTOR;
+        while (moved < rehashStep && rehashIdx < oldTable.length) {
+            if (oldTable[rehashIdx] == null) {
+                rehashIdx++;
+                if (--emptyVisits == 0) {
+                    break;
+                }
+                continue;
+            }
+            moveBucket(rehashIdx++);
+            moved++;
+        }
+        if (rehashIdx >= oldTable.length) {
+            finishRehash();
+        }
+    }
+
+    /**
+     * 一次性迁移完老数组剩下的所有桶
+     * */
+    protected void rehashAll() {
+        if (oldTable == null) {
+            return;
+        }
+        while (rehashIdx < oldTable.length) {
+            if (oldTable[rehashIdx] != null) {
+                moveBucket(rehashIdx);
+            }
+            rehashIdx++;
+        }
+        finishRehash();
+    }
+
+    private void finishRehash() {
+        // 老数组gc掉
+        oldTable = null;
+        rehashIdx = -1;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 预先扩容，保证元素总数达到expected之前不需要再扩容，批量插入之前一次扩容到位
+     * @param expected 预期的元素总数
+     * */
+    public void ensureCapacity(int expected) {
+        int cap = capacityFor(expected);
+        if (cap > table.length) {
+            grow(cap);
+        }
+    }
+
+    /**
+     * 装入expected个元素不触发扩容需要的数组大小，默认2^n
+     * @param expected 元素个数
+     * */
+    protected int capacityFor(int expected) {
+        long need = (long) Math.ceil(expected / loadFactor) + 1;
+        return need >= MAX_CAPACITY ? MAX_CAPACITY : tableSizeFor((int) need);
+    }
+
+    /**
+     * 批量添加，先按照最多增加keys.length个元素一次扩容到位，并且完成rehash，之后的put都不会再扩容
+     * */
+    @Override
+    public void putAll(K[] keys, V[] values) {
+        if (keys.length != values.length)
+            throw new IllegalArgumentException("keys length " + keys.length + " != values length " + values.length);
+        ensureCapacity((int) Math.min(MAX_CAPACITY, (long) size + keys.length));
+        rehashAll();
+        for (int i = 0; i < keys.length; i++) {
+            put(keys[i], values[i]);
+        }
+    }
+
+    /**
+     * 批量获取，先完成rehash，之后每次查找只需要查新数组
+     * */
+    @Override
+    public void getAll(K[] keys, V[] out) {
+        rehashAll();
+        IterableHashTable.super.getAll(keys, out);
+    }
+
+    /**
+     * 遍历之前先完成rehash，只需要遍历新数组
+     * */
+    @Override
+    public HashCursor<K, V> cursor() {
+        rehashAll();
+        return cursor(0, table.length);
+    }
+
+    /**
+     * 按照桶的范围拆分，遍历之前先完成rehash
+     * */
+    @Override
+    public Spliterator<Map.Entry<K, V>> spliterator() {
+        rehashAll();
+        return new TableSpliterator(0, table.length, size, true);
+    }
+
+    /**
+     * 遍历数组[lo, hi)范围内的桶
+     * @param lo 开始的桶(包含)
+     * @param hi 结束的桶(不包含)
+     * */
+    abstract BucketCursor<K, V> cursor(int lo, int hi);
+
+    /**
+     * 桶范围的游标，额外可以返回当前元素的Entry，给Spliterator使用
+     * */
+    interface BucketCursor<K, V> extends HashCursor<K, V> {
+
+        Map.Entry<K, V> entry();
+    }
+
+    /**
+     * 按照桶的范围二分拆分的Spliterator，每一部分用一个桶范围的游标遍历，已经开始遍历的部分不再拆分
+     * 拆分之后每一部分的元素个数只是估计值
+     * */
+    final class TableSpliterator implements Spliterator<Map.Entry<K, V>> {
+
+        private int lo;
+
+        private final int hi;
+
+        private long est;
+
+        private boolean sized;
+
+        private BucketCursor<K, V> cursor;
+
+        TableSpliterator(int lo, int hi, long est, boolean sized) {
+            this.lo = lo;
+            this.hi = hi;
+            this.est = est;
+            this.sized = sized;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Map.Entry<K, V>> action) {
+            if (cursor == null) {
+                cursor = cursor(lo, hi);
+            }
+            if (cursor.next()) {
+                action.accept(cursor.entry());
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public Spliterator<Map.Entry<K, V>> trySplit() {
+            if (cursor != null || hi - lo < 2) {
+                return null;
+            }
+            int mid = (lo + hi) >>> 1;
+            sized = false;
+            est >>>= 1;
+            TableSpliterator prefix = new TableSpliterator(lo, mid, est, false);
+            lo = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return est;
+        }
+
+        @Override
+        public int characteristics() {
+            return DISTINCT | NONNULL | (sized ? SIZED : 0);
+        }
+    }
+
+    /**
+     * 当前数组长度
+     * */
+    public int capacity() {
+        return table.length;
+    }
+
     protected boolean isFull() {
         return table.length == size;
     }
 
 
     /**
-     * 获取hash值,hash算法采用jdk自己的hash算法
+     * 设置hash算法，只能在没有数据的时候设置，否则已有数据的位置都不对了
+     * 连续数字，ip这种低位变化小的key，2^n的数组直接用低位定位，JDK的hashCode会集中在少数几个桶里面，需要换成扰动过的hash算法
+     * @param hashStrategy hash算法
+     * */
+    public void setHashStrategy(HashStrategy hashStrategy) {
+        if (hashStrategy == null)
+            throw new IllegalArgumentException("hash strategy can not be null");
+        if (size > 0)
+            throw new IllegalStateException("hash strategy can only be set on an empty table");
+        this.hashStrategy = hashStrategy;
+    }
+
+    /**
+     * 获取hash值,默认采用jdk自己的hash算法
      *@param key 存储key值
      * */
     protected int hash(K key) {
-        return Objects.hashCode(key);
+        return hashStrategy.hash(key);
+    }
+
+    /**
+     * 连续put n个元素，统计单次put的最大耗时和99.9分位耗时，对比一次性rehash和渐进式rehash的尾延迟
+     * @param table 测试的hash表
+     * @param n 元素个数
+     * @return [最大耗时纳秒, 99.9分位耗时纳秒, 平均耗时纳秒]
+     * */
+    static long[] putLatency(AbstractHashTable<Integer, Integer> table, int n) {
+        long[] costs = new long[n];
+        long begin = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            long start = System.nanoTime();
+            table.put(i, i);
+            costs[i] = System.nanoTime() - start;
+        }
+        long avg = (System.nanoTime() - begin) / n;
+        Arrays.sort(costs);
+        return new long[]{costs[n - 1], costs[(int) (n * 0.999)], avg};
     }
-}
+}
\ No newline at end of file
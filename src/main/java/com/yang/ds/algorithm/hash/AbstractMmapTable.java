@@ -0,0 +1,472 @@
+package com.yang.ds.algorithm.hash;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * 内存映射文件(mmap)hash表的公共部分，数据全部在文件映射的内存里面，不在java堆上
+ *
+ * 1. 上亿个entry放在堆上，gc的时候要扫描所有的对象，停顿很长，放在映射文件里面gc完全看不到，内存由操作系统的page cache管理
+ *
+ * 2. 进程重启之后重新映射文件就可以直接使用，不需要重新插入一遍数据(热启动)
+ *
+ * 3. 文件布局: [文件头 HEADER_SIZE][分配区]，槽位数组和数据都从分配区分配，文件不够了就扩大文件再映射
+ * 分配的大小按级别向上取整(128字节以内每8字节一级，再往上每个(2^k, 2^(k+1)]分8级，最多浪费1/8)，
+ * 释放的块挂到这一级的空闲链表(slab)，链表头存在文件头里面，重新打开之后还能复用。
+ * 分配先找这一级的链表，没有就从更大的级别拿一块切开，剩下的部分按级别切开挂回链表，都没有才从分配区末尾顺序分配(bump分配)。
+ * 扩容的时候新的槽位数组分配好、元素搬过去之后，老的槽位数组就释放掉。空闲块不合并
+ *
+ * 4. 一个MappedByteBuffer最大2G，文件按1G分段映射，所有的int/long都按8字节对齐，不会跨段
+ *
+ * 5. 元素个数等信息每次修改都写到文件头，进程崩溃写入的数据还在page cache里面不会丢，机器掉电需要调用force刷盘
+ *
+ * 不是线程安全的
+ * */
+public abstract class AbstractMmapTable implements Closeable {
+
+    private static final int SEGMENT_SHIFT = 30;
+
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+    private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    /**文件头大小*/
+    protected static final int HEADER_SIZE = 4096;
+
+    /**文件扩大的最小步长*/
+    private static final long MIN_GROW = 1 << 20;
+
+    /**"YMMAPHT2"，空闲链表按级别分配之后的文件格式，老格式entry的大小没有按级别取整，不能打开*/
+    private static final long MAGIC = 0x594d4d4150485432L;
+
+    /*文件头各个字段的位置*/
+    private static final int MAGIC_OFFSET = 0;
+    private static final int TYPE_OFFSET = 8;
+    private static final int SLOT_SIZE_OFFSET = 12;
+    private static final int TOP_OFFSET = 16;
+    private static final int SIZE_OFFSET = 24;
+    private static final int TABLE_OFFSET = 32;
+    private static final int CAPACITY_OFFSET = 40;
+    private static final int TOMBSTONES_OFFSET = 48;
+    private static final int LOAD_FACTOR_OFFSET = 56;
+
+    /**子类自己的文件头字段从这个位置开始，到FREE_LIST_OFFSET结束*/
+    protected static final int EXT_HEADER_OFFSET = 64;
+
+    /**空闲链表头，每一级8字节*/
+    private static final int FREE_LIST_OFFSET = 1024;
+
+    /**128字节以内每8字节一级*/
+    private static final int SMALL_CLASSES = 16;
+
+    /**超过128字节，每个(2^k, 2^(k+1)]分成CLASS_STEPS级*/
+    private static final int CLASS_STEPS = 8;
+
+    private static final int STEP_SHIFT = 3;
+
+    /**最大的一级是2^40(文件最大1T)*/
+    private static final int SIZE_CLASSES = SMALL_CLASSES + (40 - 7) * CLASS_STEPS + 1;
+
+    private final RandomAccessFile file;
+
+    private final FileChannel channel;
+
+    private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    private long fileSize;
+
+    /**已经分配到的位置*/
+    private long top;
+
+    /**每个槽位的字节数*/
+    private final int slotSize;
+
+    /**哪些级别的空闲链表不为空，每一级一位，分配的时候不用逐个读文件头*/
+    private final long[] freeBits = new long[(SIZE_CLASSES + 63) >>> 6];
+
+    protected final float loadFactor;
+
+    /**元素个数*/
+    protected long size;
+
+    /**槽位数组在文件中的位置*/
+    protected long tableOffset;
+
+    /**槽位个数 2^n*/
+    protected long capacity;
+
+    protected long mask;
+
+    /**删除标记个数，删除标记也占用槽位，和元素个数一起计算是否需要扩容*/
+    protected long tombstones;
+
+    protected long threshold;
+
+    /**
+     * 文件存在就直接映射打开，不存在就创建
+     * @param path 文件
+     * @param type 表的类型，防止用错误的实现打开文件
+     * @param slotSize 每个槽位的字节数，8的倍数
+     * @param expected 预期元素个数，新建文件的时候使用
+     * @param loadFactor 装填因子，新建文件的时候使用，打开已有文件使用文件里面的值
+     * */
+    protected AbstractMmapTable(File path, int type, int slotSize, long expected, float loadFactor) {
+        if (expected < 0)
+            throw new IllegalArgumentException("Illegal initial capacity" + expected);
+        if (loadFactor <= 0 || loadFactor >= 1 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+        this.slotSize = slotSize;
+        boolean exists = path.exists() && path.length() > 0;
+        try {
+            file = new RandomAccessFile(path, "rw");
+            channel = file.getChannel();
+            if (exists) {
+                map(file.length());
+                if (getLong(MAGIC_OFFSET) != MAGIC || getInt(TYPE_OFFSET) != type || getInt(SLOT_SIZE_OFFSET) != slotSize) {
+                    close();
+                    throw new IllegalArgumentException("Not a " + getClass().getSimpleName() + " file: " + path);
+                }
+                this.loadFactor = Float.intBitsToFloat(getInt(LOAD_FACTOR_OFFSET));
+                top = getLong(TOP_OFFSET);
+                size = getLong(SIZE_OFFSET);
+                tombstones = getLong(TOMBSTONES_OFFSET);
+                initTable(getLong(TABLE_OFFSET), getLong(CAPACITY_OFFSET));
+                for (int c = 1; c < SIZE_CLASSES; c++) {
+                    if (getLong(freeHead(c)) != 0) {
+                        freeBits[c >>> 6] |= 1L << c;
+                    }
+                }
+            } else {
+                this.loadFactor = loadFactor;
+                long cap = tableSize(expected);
+                top = HEADER_SIZE;
+                ensureFile(HEADER_SIZE + cap * slotSize);
+                putLong(MAGIC_OFFSET, MAGIC);
+                putInt(TYPE_OFFSET, type);
+                putInt(SLOT_SIZE_OFFSET, slotSize);
+                putInt(LOAD_FACTOR_OFFSET, Float.floatToIntBits(loadFactor));
+                setTable(allocate(cap * slotSize), cap);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 预期元素个数对应的槽位个数 2^n
+     * */
+    private long tableSize(long expected) {
+        long need = (long) Math.ceil(Math.max(expected, 1) / loadFactor) + 1;
+        long cap = AbstractHashTable.DEFAULT_INITIAL_CAPACITY;
+        while (cap < need) {
+            cap <<= 1;
+        }
+        return cap;
+    }
+
+    private void initTable(long offset, long cap) {
+        tableOffset = offset;
+        capacity = cap;
+        mask = cap - 1;
+        threshold = Math.min(cap - 1, (long) (cap * loadFactor));
+    }
+
+    /**
+     * 切换到新的槽位数组，写到文件头
+     * */
+    private void setTable(long offset, long cap) {
+        initTable(offset, cap);
+        tombstones = 0;
+        putLong(TABLE_OFFSET, offset);
+        putLong(CAPACITY_OFFSET, cap);
+        putLong(TOMBSTONES_OFFSET, 0);
+    }
+
+    /**
+     * 分配一块空间，按大小分级向上取整，优先复用这一级空闲链表里面的块，复用的块里面是旧数据，从分配区末尾新分配的部分全是0
+     * @param bytes 字节数
+     * @return 分配的位置
+     * */
+    protected long allocate(long bytes) {
+        int c = sizeClass(bytes);
+        bytes = classSize(c);
+        long pos = getLong(freeHead(c));
+        if (pos != 0) {
+            setFreeHead(c, getLong(pos));
+            return pos;
+        }
+        int larger = nextFreeClass(c + 1);
+        if (larger >= 0) {
+            // 从更大的块切出来，剩下的部分按级别切开挂回链表
+            pos = getLong(freeHead(larger));
+            setFreeHead(larger, getLong(pos));
+            release(pos + bytes, classSize(larger) - bytes);
+            return pos;
+        }
+        pos = top;
+        ensureFile(pos + bytes);
+        top = pos + bytes;
+        putLong(TOP_OFFSET, top);
+        return pos;
+    }
+
+    /**
+     * 释放allocate分配的一块空间，挂到这一级空闲链表的头部，块的前8字节存下一个空闲块的位置
+     * 调用之前已经没有槽位指向这块空间了，进程在中间崩溃最多丢掉这块空间，不会破坏数据
+     * @param pos 位置
+     * @param bytes 分配时的字节数
+     * */
+    protected void free(long pos, long bytes) {
+        int c = sizeClass(bytes);
+        putLong(pos, getLong(freeHead(c)));
+        setFreeHead(c, pos);
+    }
+
+    /**
+     * 把不是按级别分配的一段空间切成若干块，每次切不超过剩余大小的最大一级，128字节以内每8字节都有一级，一定能切完
+     * */
+    private void release(long pos, long bytes) {
+        while (bytes > 0) {
+            int c = sizeClass(bytes);
+            if (classSize(c) > bytes) {
+                c--;
+            }
+            free(pos, classSize(c));
+            pos += classSize(c);
+            bytes -= classSize(c);
+        }
+    }
+
+    /**
+     * 字节数所在的级别，级别对应的大小大于等于字节数
+     * */
+    private static int sizeClass(long bytes) {
+        if (bytes <= SMALL_CLASSES << 3) {
+            return (int) Math.max(1, (bytes + 7) >>> 3);
+        }
+        int k = 63 - Long.numberOfLeadingZeros(bytes - 1);
+        int shift = k - STEP_SHIFT;
+        return SMALL_CLASSES + (k - 7) * CLASS_STEPS + (int) ((bytes - (1L << k) + (1L << shift) - 1) >>> shift);
+    }
+
+    /**
+     * 级别对应的块大小
+     * */
+    private static long classSize(int c) {
+        if (c <= SMALL_CLASSES) {
+            return (long) c << 3;
+        }
+        int k = 7 + (c - SMALL_CLASSES - 1) / CLASS_STEPS;
+        return (1L << k) + ((long) ((c - SMALL_CLASSES - 1) % CLASS_STEPS + 1) << (k - STEP_SHIFT));
+    }
+
+    /**
+     * 大于等于from的第一个不为空的级别，没有返回-1
+     * */
+    private int nextFreeClass(int from) {
+        int i = from >>> 6;
+        if (i >= freeBits.length) {
+            return -1;
+        }
+        long bits = freeBits[i] & (-1L << from);
+        while (bits == 0) {
+            if (++i == freeBits.length) {
+                return -1;
+            }
+            bits = freeBits[i];
+        }
+        return (i << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    private static long freeHead(int c) {
+        return FREE_LIST_OFFSET + ((long) c << 3);
+    }
+
+    private void setFreeHead(int c, long pos) {
+        putLong(freeHead(c), pos);
+        if (pos == 0) {
+            freeBits[c >>> 6] &= ~(1L << c);
+        } else {
+            freeBits[c >>> 6] |= 1L << c;
+        }
+    }
+
+    private void ensureFile(long required) {
+        if (required <= fileSize) {
+            return;
+        }
+        // 每次至少扩大一倍(最多1G)，减少重新映射的次数
+        long newSize = Math.max(required, fileSize + Math.max(MIN_GROW, Math.min(fileSize, SEGMENT_SIZE)));
+        try {
+            file.setLength(newSize);
+            map(newSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 按1G分段映射，原来最后一段没有映射满，需要重新映射
+     * */
+    private void map(long newSize) throws IOException {
+        int count = (int) ((newSize + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+        MappedByteBuffer[] newSegments = Arrays.copyOf(segments, count);
+        for (int i = Math.max(0, segments.length - 1); i < count; i++) {
+            long begin = (long) i << SEGMENT_SHIFT;
+            newSegments[i] = channel.map(FileChannel.MapMode.READ_WRITE, begin, Math.min(SEGMENT_SIZE, newSize - begin));
+        }
+        segments = newSegments;
+        fileSize = newSize;
+    }
+
+    protected final long getLong(long pos) {
+        return segments[(int) (pos >>> SEGMENT_SHIFT)].getLong((int) (pos & SEGMENT_MASK));
+    }
+
+    protected final void putLong(long pos, long value) {
+        segments[(int) (pos >>> SEGMENT_SHIFT)].putLong((int) (pos & SEGMENT_MASK), value);
+    }
+
+    protected final int getInt(long pos) {
+        return segments[(int) (pos >>> SEGMENT_SHIFT)].getInt((int) (pos & SEGMENT_MASK));
+    }
+
+    protected final void putInt(long pos, int value) {
+        segments[(int) (pos >>> SEGMENT_SHIFT)].putInt((int) (pos & SEGMENT_MASK), value);
+    }
+
+    protected final byte getByte(long pos) {
+        return segments[(int) (pos >>> SEGMENT_SHIFT)].get((int) (pos & SEGMENT_MASK));
+    }
+
+    protected final void putByte(long pos, byte value) {
+        segments[(int) (pos >>> SEGMENT_SHIFT)].put((int) (pos & SEGMENT_MASK), value);
+    }
+
+    /**
+     * 第idx个槽位在文件中的位置
+     * */
+    protected final long slot(long idx) {
+        return tableOffset + idx * slotSize;
+    }
+
+    /**
+     * 插入新元素之后调用，元素个数写到文件头，元素和删除标记超过阈值就重新分配槽位数组
+     * @param reuseTombstone 是否复用了删除标记的位置
+     * */
+    protected void afterInsert(boolean reuseTombstone) {
+        size++;
+        putLong(SIZE_OFFSET, size);
+        if (reuseTombstone) {
+            tombstones--;
+            putLong(TOMBSTONES_OFFSET, tombstones);
+        }
+        if (size + tombstones > threshold) {
+            // 删除标记占了一半以上就按原大小整理，否则扩容两倍
+            long newCap = size > threshold >> 1 ? capacity << 1 : capacity;
+            long oldTable = tableOffset, oldCap = capacity, oldTop = top;
+            long newTable = allocate(newCap * slotSize);
+            if (newTable < oldTop) {
+                // 复用的空闲块里面是旧数据，要先清0
+                for (long pos = newTable, end = newTable + newCap * slotSize; pos < end; pos += 8) {
+                    putLong(pos, 0);
+                }
+            }
+            transfer(newTable, newCap - 1);
+            setTable(newTable, newCap);
+            free(oldTable, oldCap * slotSize);
+        }
+    }
+
+    /**
+     * 删除元素之后调用
+     * @param tombstone 是否留下了删除标记
+     * */
+    protected void afterRemove(boolean tombstone) {
+        size--;
+        putLong(SIZE_OFFSET, size);
+        if (tombstone) {
+            tombstones++;
+            putLong(TOMBSTONES_OFFSET, tombstones);
+        }
+    }
+
+    /**
+     * 当前槽位数组中的元素放置到新的槽位数组，新的槽位数组全是0，不包含删除标记
+     * @param newTable 新槽位数组的位置
+     * @param newMask 新槽位个数 - 1
+     * */
+    protected abstract void transfer(long newTable, long newMask);
+
+    /**
+     * long扰动函数(murmur3 fmix64)，高位影响低位，槽位个数可能超过2^32，所以返回long
+     * */
+    protected static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * 元素个数，超过Integer.MAX_VALUE返回Integer.MAX_VALUE，准确的值用longSize
+     * */
+    public int size() {
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    public long longSize() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    public long tombstones() {
+        return tombstones;
+    }
+
+    /**
+     * 文件大小
+     * */
+    public long fileSize() {
+        return fileSize;
+    }
+
+    /**
+     * 把修改刷到磁盘
+     * */
+    public void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    /**
+     * 刷盘并关闭文件，映射的内存在MappedByteBuffer被gc之后释放
+     * */
+    @Override
+    public void close() {
+        try {
+            force();
+            segments = new MappedByteBuffer[0];
+            channel.close();
+            file.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.yang.ds.algorithm.hash;
+
+import com.yang.ds.algorithm.utils.YUtils;
+
+/**
+ * 基本类型(primitive)开放地址hash表的公共部分
+ *
+ * 1. 和YOpenAddrHashTable不同，key和value不再包装成Node对象放到Object[]中，而是直接放到并行的基本类型数组里面
+ * keys[i]和values[i]是一对，插入和查找没有对象分配，也没有装箱拆箱，一个int->int的entry只占8个字节(再除以装填因子)
+ *
+ * 2. 数组大小是2^n，用hash & mask代替取模运算，冲突采用线性探测，线性探测虽然存在聚集，但是探测的位置是连续的内存，
+ * 基本上在同一个cache line里面，配合一个好的位扰动函数(mix)，聚集的问题可以忽略
+ *
+ * 3. 数组中用key=0表示空位置，所以key为0的entry需要单独存储(hasFreeKey)
+ *
+ * 4. 删除不使用删除标记(墓碑)，而是把后面同一个探测链上的元素向前移动(backward shift),这样查找遇到空位置就可以直接返回
+ * */
+public abstract class AbstractPrimitiveHashTable {
+
+    /**空位置的key*/
+    protected static final int FREE_KEY = 0;
+
+    /**装填因子*/
+    protected final float loadFactor;
+
+    /**mask = 数组长度 - 1，代替取模*/
+    protected int mask;
+
+    /**元素个数(包含key为0的元素)*/
+    protected int size;
+
+    /**扩容阈值*/
+    protected int threshold;
+
+    /**是否存在key为0的元素*/
+    protected boolean hasFreeKey;
+
+    protected AbstractPrimitiveHashTable(int expected, float loadFactor) {
+        if (expected < 0)
+            throw new IllegalArgumentException("Illegal initial capacity" + expected);
+        if (loadFactor <= 0 || loadFactor >= 1 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+        this.loadFactor = loadFactor;
+    }
+
+    /**
+     * 根据预期的元素个数计算数组大小，保证装入expected个元素不需要扩容
+     * @param expected 预期元素个数
+     * */
+    protected int arraySize(int expected) {
+        long need = (long) Math.ceil(Math.max(expected, 1) / loadFactor);
+        if (need > AbstractHashTable.MAX_CAPACITY) {
+            return AbstractHashTable.MAX_CAPACITY;
+        }
+        return YUtils.sizeForBit32((int) need, AbstractHashTable.DEFAULT_INITIAL_CAPACITY, AbstractHashTable.MAX_CAPACITY);
+    }
+
+    /**
+     * 根据新的数组大小更新mask和阈值，阈值最多为cap-1，保证数组至少存在一个空位置，探测一定能结束
+     * @param cap 数组大小
+     * */
+    protected void initCapacity(int cap) {
+        mask = cap - 1;
+        threshold = Math.min(cap - 1, (int) (cap * loadFactor));
+    }
+
+    /**
+     * 插入新元素后判断是否需要扩容，扩容为两倍
+     * */
+    protected void afterInsert() {
+        if (++size > threshold) {
+            int cap = mask + 1;
+            if (cap >= AbstractHashTable.MAX_CAPACITY) {
+                throw new IllegalStateException("table is full, capacity " + cap);
+            }
+            rehash(cap << 1);
+        }
+    }
+
+    /**
+     * 扩容，按照新的数组大小重新放置所有元素
+     * @param newCap 新的数组大小(2^n)
+     * */
+    protected abstract void rehash(int newCap);
+
+    /**
+     * 判断pos位置的元素(理想位置是slot)能否移动到last空位置，
+     * 只有slot不在(last, pos]这个循环区间内，移动到last之后查找才能找到
+     * @param last 空出来的位置
+     * @param slot 元素的理想位置
+     * @param pos 元素的当前位置
+     * */
+    protected static boolean canShift(int last, int slot, int pos) {
+        return last <= pos ? (last >= slot || slot > pos) : (last >= slot && slot > pos);
+    }
+
+    /**
+     * int扰动函数，乘以黄金分割数，再把高位异或到低位，连续的key也能均匀的散开
+     * */
+    protected static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * long扰动函数
+     * */
+    protected static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        return (int) (h ^ (h >>> 16));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 当前数组长度
+     * */
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,428 @@
+package com.yang.ds.algorithm.hash;
+
+import com.yang.ds.algorithm.utils.YUtils;
+import com.yang.ds.datastruct.hash.HashTable;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 线程安全的链表法hash表，思路参考jdk8的ConcurrentHashMap
+ *
+ * 1. 读不加锁: 数组用AtomicReferenceArray保证可见性，node的value和next都是volatile，读线程直接遍历链表
+ *
+ * 2. 写按桶加锁: 桶为空的时候CAS放入第一个节点，桶不为空的时候锁住链表的头节点，只有同一个桶的写操作才会竞争，
+ * 相当于把YLinkedHashTable外面的一把全局锁拆成了table.length把锁
+ *
+ * 3. 渐进式扩容: 扩容的时候新建两倍大小的数组，然后按照桶为单位迁移，每个写线程每次只领取STRIDE个桶进行迁移，
+ * 迁移完的桶放入一个转发节点(ForwardingNode),读线程遇到转发节点就去新数组查找,
+ * 迁移的时候复制出新的链表节点，老的链表不做任何修改，所以迁移过程中读线程在老链表上读到的数据也是正确的，读线程永远不会等待扩容
+ *
+ * 4. 2^n的数组大小，hash值高位异或到低位，扩容时一个桶的链表只会拆分到新数组的i和i+n两个桶中
+ * */
+public class ConcurrentYLinkedHashTable<K, V> implements HashTable<K, V> {
+
+    /**每次领取迁移的桶的个数*/
+    private static final int STRIDE = 16;
+
+    /**当前使用的数组*/
+    private volatile AtomicReferenceArray<Node<K, V>> table;
+
+    /**正在进行的扩容，没有扩容的时候为null*/
+    private volatile Transfer<K, V> transfer;
+
+    /**元素个数，LongAdder分段计数，避免所有写线程竞争一个计数器*/
+    private final LongAdder count = new LongAdder();
+
+    private final float loadFactor;
+
+    public ConcurrentYLinkedHashTable() {
+        this(AbstractHashTable.DEFAULT_INITIAL_CAPACITY, AbstractHashTable.DEFAULT_LOAD_FACTOR);
+    }
+
+    public ConcurrentYLinkedHashTable(int size) {
+        this(size, AbstractHashTable.DEFAULT_LOAD_FACTOR);
+    }
+
+    public ConcurrentYLinkedHashTable(int size, float loadFactor) {
+        if (size <= 0)
+            throw new IllegalArgumentException("Illegal initial capacity" + size);
+        if (loadFactor <= 0 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+        this.loadFactor = loadFactor;
+        int cap = YUtils.sizeForBit32(size, AbstractHashTable.DEFAULT_INITIAL_CAPACITY,
+                AbstractHashTable.MAX_CAPACITY);
+        table = new AtomicReferenceArray<>(cap);
+    }
+
+    /**
+     * hash值的高16位异或到低16位，让高位也参与与运算
+     * */
+    static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    public V get(K key) {
+        notNull(key);
+        int hash = spread(key.hashCode());
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        for (; ; ) {
+            Node<K, V> node = tab.get(hash & (tab.length() - 1));
+            // 已经迁移到新数组，去新数组查找
+            if (node instanceof ForwardingNode) {
+                tab = ((ForwardingNode<K, V>) node).nextTable;
+                continue;
+            }
+            while (node != null) {
+                if (node.hash == hash && key.equals(node.key)) {
+                    return node.value;
+                }
+                node = node.next;
+            }
+            return null;
+        }
+    }
+
+    @Override
+    public void put(K key, V value) {
+        notNull(key);
+        notNull(value);
+        int hash = spread(key.hashCode());
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        for (; ; ) {
+            int idx = hash & (tab.length() - 1);
+            Node<K, V> head = tab.get(idx);
+            if (head == null) {
+                // 空桶不加锁，CAS放入，失败说明有别的线程放入了，重新来
+                if (tab.compareAndSet(idx, null, new Node<>(hash, key, value, null))) {
+                    break;
+                }
+                continue;
+            }
+            if (head instanceof ForwardingNode) {
+                // 帮忙迁移一部分，然后去新数组写入
+                Transfer<K, V> t = transfer;
+                if (t != null) {
+                    helpTransfer(t);
+                }
+                tab = ((ForwardingNode<K, V>) head).nextTable;
+                continue;
+            }
+            boolean added = false;
+            synchronized (head) {
+                // 加锁之后再次确认头节点没有变化(没有被删除或者迁移)
+                if (tab.get(idx) != head) {
+                    continue;
+                }
+                Node<K, V> node = head;
+                for (; ; ) {
+                    if (node.hash == hash && key.equals(node.key)) {
+                        node.value = value;
+                        break;
+                    }
+                    if (node.next == null) {
+                        node.next = new Node<>(hash, key, value, null);
+                        added = true;
+                        break;
+                    }
+                    node = node.next;
+                }
+            }
+            if (!added) {
+                // 覆盖，元素个数不变
+                afterWrite();
+                return;
+            }
+            break;
+        }
+        count.increment();
+        afterWrite();
+    }
+
+    @Override
+    public void remove(K key) {
+        notNull(key);
+        int hash = spread(key.hashCode());
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        for (; ; ) {
+            int idx = hash & (tab.length() - 1);
+            Node<K, V> head = tab.get(idx);
+            if (head == null) {
+                return;
+            }
+            if (head instanceof ForwardingNode) {
+                Transfer<K, V> t = transfer;
+                if (t != null) {
+                    helpTransfer(t);
+                }
+                tab = ((ForwardingNode<K, V>) head).nextTable;
+                continue;
+            }
+            boolean removed = false;
+            synchronized (head) {
+                if (tab.get(idx) != head) {
+                    continue;
+                }
+                Node<K, V> pre = null;
+                Node<K, V> node = head;
+                while (node != null) {
+                    if (node.hash == hash && key.equals(node.key)) {
+                        // 只修改前一个节点的next引用，正在遍历的读线程不受影响
+                        if (pre == null) {
+                            tab.set(idx, node.next);
+                        } else {
+                            pre.next = node.next;
+                        }
+                        removed = true;
+                        break;
+                    }
+                    pre = node;
+                    node = node.next;
+                }
+            }
+            if (removed) {
+                count.decrement();
+            }
+            return;
+        }
+    }
+
+    /**
+     * 元素个数，并发修改的时候是一个近似值
+     * */
+    @Override
+    public int size() {
+        long n = count.sum();
+        return n < 0 ? 0 : (n > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) n);
+    }
+
+    /**
+     * 写操作之后，如果正在扩容则帮忙迁移一批桶，否则判断是否需要开始扩容
+     * */
+    private void afterWrite() {
+        Transfer<K, V> t = transfer;
+        if (t != null) {
+            helpTransfer(t);
+            return;
+        }
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        int n = tab.length();
+        if (n < AbstractHashTable.MAX_CAPACITY && count.sum() > (long) (n * loadFactor)) {
+            startTransfer(tab);
+        }
+    }
+
+    /**
+     * 开始扩容，只负责创建新数组，迁移由之后的写操作分批完成
+     * @param tab 发起扩容时候的数组
+     * */
+    private void startTransfer(AtomicReferenceArray<Node<K, V>> tab) {
+        Transfer<K, V> t;
+        synchronized (this) {
+            if (transfer != null || table != tab) {
+                return;
+            }
+            t = new Transfer<>(tab, new AtomicReferenceArray<Node<K, V>>(tab.length() << 1));
+            transfer = t;
+        }
+        helpTransfer(t);
+    }
+
+    /**
+     * 领取STRIDE个桶进行迁移，最后一个完成迁移的线程切换数组
+     * @param t 扩容任务
+     * */
+    private void helpTransfer(Transfer<K, V> t) {
+        int bound, hi;
+        do {
+            hi = t.transferIndex.get();
+            if (hi <= 0) {
+                return;
+            }
+            bound = Math.max(0, hi - STRIDE);
+        } while (!t.transferIndex.compareAndSet(hi, bound));
+
+        for (int i = hi - 1; i >= bound; i--) {
+            moveBin(t, i);
+        }
+        if (t.movedBins.addAndGet(hi - bound) == t.oldTable.length()) {
+            // 所有桶迁移完成，先切换数组再清空扩容任务，保证写线程看到transfer为null的时候，table已经是新数组了
+            table = t.nextTable;
+            transfer = null;
+        }
+    }
+
+    /**
+     * 迁移一个桶，链表按照hash & n拆分成高低两个链表，复制节点，老链表保持不变
+     * */
+    private void moveBin(Transfer<K, V> t, int i) {
+        AtomicReferenceArray<Node<K, V>> tab = t.oldTable;
+        AtomicReferenceArray<Node<K, V>> nextTab = t.nextTable;
+        int n = tab.length();
+        for (; ; ) {
+            Node<K, V> head = tab.get(i);
+            if (head == null) {
+                if (tab.compareAndSet(i, null, t.forwarding)) {
+                    return;
+                }
+                continue;
+            }
+            synchronized (head) {
+                if (tab.get(i) != head) {
+                    continue;
+                }
+                Node<K, V> lo = null, hi = null;
+                for (Node<K, V> node = head; node != null; node = node.next) {
+                    if ((node.hash & n) == 0) {
+                        lo = new Node<>(node.hash, node.key, node.value, lo);
+                    } else {
+                        hi = new Node<>(node.hash, node.key, node.value, hi);
+                    }
+                }
+                nextTab.set(i, lo);
+                nextTab.set(i + n, hi);
+                tab.set(i, t.forwarding);
+                return;
+            }
+        }
+    }
+
+    private void notNull(Object o) {
+        if (o == null) {
+            throw new IllegalArgumentException("key or value not null");
+        }
+    }
+
+    static class Node<K, V> {
+        final int hash;
+        final K key;
+        volatile V value;
+        volatile Node<K, V> next;
+
+        Node(int hash, K key, V value, Node<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    /**
+     * 转发节点，放在已经迁移完成的桶上，指向新的数组
+     * */
+    static final class ForwardingNode<K, V> extends Node<K, V> {
+        final AtomicReferenceArray<Node<K, V>> nextTable;
+
+        ForwardingNode(AtomicReferenceArray<Node<K, V>> nextTable) {
+            super(0, null, null, null);
+            this.nextTable = nextTable;
+        }
+    }
+
+    /**
+     * 一次扩容任务，老数组、新数组、下一个待领取的桶的索引(从高向低领取)、已经迁移完成的桶的个数
+     * */
+    static final class Transfer<K, V> {
+        final AtomicReferenceArray<Node<K, V>> oldTable;
+        final AtomicReferenceArray<Node<K, V>> nextTable;
+        final ForwardingNode<K, V> forwarding;
+        final AtomicInteger transferIndex;
+        final AtomicInteger movedBins = new AtomicInteger();
+
+        Transfer(AtomicReferenceArray<Node<K, V>> oldTable, AtomicReferenceArray<Node<K, V>> nextTable) {
+            this.oldTable = oldTable;
+            this.nextTable = nextTable;
+            this.forwarding = new ForwardingNode<>(nextTable);
+            this.transferIndex = new AtomicInteger(oldTable.length());
+        }
+    }
+
+    /**
+     * 多线程读的扩展性对比: 全局锁的YLinkedHashTable vs ConcurrentYLinkedHashTable
+     * 运行参数: [元素个数] [每个线程get次数] [最大线程数]
+     * */
+    public static void main(String[] args) throws InterruptedException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int ops = args.length > 1 ? Integer.parseInt(args[1]) : 2000000;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        final YLinkedHashTable<Integer, Integer> locked = new YLinkedHashTable<>();
+        final ConcurrentYLinkedHashTable<Integer, Integer> concurrent = new ConcurrentYLinkedHashTable<>();
+        for (int i = 0; i < n; i++) {
+            locked.put(i, i);
+            concurrent.put(i, i);
+        }
+        final Object lock = new Object();
+        HashTable<Integer, Integer> globalLock = new HashTable<Integer, Integer>() {
+            @Override
+            public void put(Integer key, Integer value) {
+                synchronized (lock) {
+                    locked.put(key, value);
+                }
+            }
+
+            @Override
+            public void remove(Integer key) {
+                synchronized (lock) {
+                    locked.remove(key);
+                }
+            }
+
+            @Override
+            public Integer get(Integer key) {
+                synchronized (lock) {
+                    return locked.get(key);
+                }
+            }
+
+            @Override
+            public int size() {
+                synchronized (lock) {
+                    return locked.size();
+                }
+            }
+        };
+        for (int threads = 1; threads <= maxThreads; threads <<= 1) {
+            System.out.printf("threads=%-3d synchronized YLinkedHashTable=%.0f ops/s ConcurrentYLinkedHashTable=%.0f ops/s%n",
+                    threads, readThroughput(globalLock, threads, n, ops), readThroughput(concurrent, threads, n, ops));
+        }
+    }
+
+    private static double readThroughput(final HashTable<Integer, Integer> table, int threads, final int n, final int ops)
+            throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch end = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    long hit = 0;
+                    for (int i = 0; i < ops; i++) {
+                        if (table.get(random.nextInt(n)) != null) {
+                            hit++;
+                        }
+                    }
+                    if (hit < 0) {
+                        System.out.println(hit);
+                    }
+                    end.countDown();
+                }
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        end.await();
+        return (double) threads * ops * 1e9 / (System.nanoTime() - begin);
+    }
+}
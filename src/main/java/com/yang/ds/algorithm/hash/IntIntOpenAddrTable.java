@@ -0,0 +1,231 @@
+package com.yang.ds.algorithm.hash;
+
+import com.yang.ds.algorithm.utils.YUtils;
+import com.yang.ds.datastruct.hash.HashTable;
+
+/**
+ * int -> int 开放地址hash表
+ * keys和values是两个并行的int数组，put和get没有任何对象分配,也没有装箱
+ * 实现HashTable接口只是为了兼容，接口方法需要装箱，性能敏感的地方直接使用基本类型的方法
+ *
+ * 一个entry的内存 = 8字节 / 装填因子，YOpenAddrHashTable的一个entry = Node对象(24字节) + Integer key(16字节)
+ * + Integer value(16字节) + 数组引用(4字节)
+ * */
+public class IntIntOpenAddrTable extends AbstractPrimitiveHashTable implements HashTable<Integer, Integer> {
+
+    private int[] keys;
+
+    private int[] values;
+
+    /**key为0的元素的value*/
+    private int freeValue;
+
+    /**不存在key的时候get返回的值*/
+    private final int noEntryValue;
+
+    public IntIntOpenAddrTable() {
+        this(AbstractHashTable.DEFAULT_INITIAL_CAPACITY);
+    }
+
+    public IntIntOpenAddrTable(int expected) {
+        this(expected, AbstractHashTable.DEFAULT_LOAD_FACTOR, 0);
+    }
+
+    public IntIntOpenAddrTable(int expected, float loadFactor, int noEntryValue) {
+        super(expected, loadFactor);
+        this.noEntryValue = noEntryValue;
+        int cap = arraySize(expected);
+        keys = new int[cap];
+        values = new int[cap];
+        initCapacity(cap);
+    }
+
+    /**
+     * 添加覆盖
+     * @param key key
+     * @param value value
+     * */
+    public void put(int key, int value) {
+        if (key == FREE_KEY) {
+            freeValue = value;
+            if (!hasFreeKey) {
+                hasFreeKey = true;
+                size++;
+            }
+            return;
+        }
+        int pos = mix(key) & mask;
+        int k;
+        while ((k = keys[pos]) != FREE_KEY) {
+            if (k == key) {
+                values[pos] = value;
+                return;
+            }
+            pos = (pos + 1) & mask;
+        }
+        keys[pos] = key;
+        values[pos] = value;
+        afterInsert();
+    }
+
+    /**
+     * 根据key获取value，不存在返回noEntryValue
+     * @param key key
+     * */
+    public int get(int key) {
+        if (key == FREE_KEY) {
+            return hasFreeKey ? freeValue : noEntryValue;
+        }
+        int pos = indexOf(key);
+        return pos < 0 ? noEntryValue : values[pos];
+    }
+
+    public boolean containsKey(int key) {
+        return key == FREE_KEY ? hasFreeKey : indexOf(key) >= 0;
+    }
+
+    /**
+     * 删除，后面同一个探测链上的元素向前移动
+     * @param key key
+     * */
+    public void remove(int key) {
+        if (key == FREE_KEY) {
+            if (hasFreeKey) {
+                hasFreeKey = false;
+                size--;
+            }
+            return;
+        }
+        int pos = indexOf(key);
+        if (pos >= 0) {
+            shiftKeys(pos);
+            size--;
+        }
+    }
+
+    private int indexOf(int key) {
+        int pos = mix(key) & mask;
+        int k;
+        while ((k = keys[pos]) != FREE_KEY) {
+            if (k == key) {
+                return pos;
+            }
+            pos = (pos + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * 删除pos位置的元素，把后面探测链上能前移的元素依次填补到空位置上，直到遇到空位置
+     * @param pos 删除的位置
+     * */
+    private void shiftKeys(int pos) {
+        int last, k;
+        for (; ; ) {
+            last = pos;
+            pos = (pos + 1) & mask;
+            for (; ; ) {
+                if ((k = keys[pos]) == FREE_KEY) {
+                    keys[last] = FREE_KEY;
+                    return;
+                }
+                if (canShift(last, mix(k) & mask, pos)) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            keys[last] = k;
+            values[last] = values[pos];
+        }
+    }
+
+    @Override
+    protected void rehash(int newCap) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        int newMask = newCap - 1;
+        int[] newKeys = new int[newCap];
+        int[] newValues = new int[newCap];
+        for (int i = 0; i < oldKeys.length; i++) {
+            int k = oldKeys[i];
+            if (k == FREE_KEY) {
+                continue;
+            }
+            int pos = mix(k) & newMask;
+            while (newKeys[pos] != FREE_KEY) {
+                pos = (pos + 1) & newMask;
+            }
+            newKeys[pos] = k;
+            newValues[pos] = oldValues[i];
+        }
+        keys = newKeys;
+        values = newValues;
+        initCapacity(newCap);
+    }
+
+    @Override
+    public void put(Integer key, Integer value) {
+        put(key.intValue(), value.intValue());
+    }
+
+    @Override
+    public void remove(Integer key) {
+        remove(key.intValue());
+    }
+
+    @Override
+    public Integer get(Integer key) {
+        int k = key;
+        return containsKey(k) ? get(k) : null;
+    }
+
+    /**
+     * 对比YOpenAddrHashTable，每个entry的内存占用和put/get的吞吐
+     * 运行参数: [元素个数]，默认2000000，建议 -Xmx4g
+     * */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        // 第一轮作为预热，让JIT编译完成，以第二轮的结果为准
+        for (int round = 1; round <= 2; round++) {
+            System.out.println("round " + round);
+
+            long base = YUtils.usedMemory();
+            long begin = System.nanoTime();
+            IntIntOpenAddrTable primitive = new IntIntOpenAddrTable();
+            for (int i = 0; i < n; i++) {
+                primitive.put(i, i);
+            }
+            long putCost = System.nanoTime() - begin;
+            long mem = YUtils.usedMemory() - base;
+            begin = System.nanoTime();
+            long sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += primitive.get(i);
+            }
+            long getCost = System.nanoTime() - begin;
+            print("IntIntOpenAddrTable", n, mem, putCost, getCost, sum);
+            primitive = null;
+
+            base = YUtils.usedMemory();
+            begin = System.nanoTime();
+            YOpenAddrHashTable<Integer, Integer> generic = new YOpenAddrHashTable<>(16);
+            for (int i = 0; i < n; i++) {
+                generic.put(i, i);
+            }
+            putCost = System.nanoTime() - begin;
+            mem = YUtils.usedMemory() - base;
+            begin = System.nanoTime();
+            sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += generic.get(i);
+            }
+            getCost = System.nanoTime() - begin;
+            print("YOpenAddrHashTable", n, mem, putCost, getCost, sum);
+        }
+    }
+
+    static void print(String name, int n, long mem, long putCost, long getCost, long check) {
+        System.out.printf("%-22s entries=%d bytes/entry=%.1f put=%.0f ops/s get=%.0f ops/s (check %d)%n",
+                name, n, (double) mem / n, n * 1e9 / putCost, n * 1e9 / getCost, check);
+    }
+}
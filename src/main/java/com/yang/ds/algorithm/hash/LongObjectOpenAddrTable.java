@@ -0,0 +1,232 @@
+package com.yang.ds.algorithm.hash;
+
+import com.yang.ds.algorithm.utils.YUtils;
+import com.yang.ds.datastruct.hash.HashTable;
+
+/**
+ * long -> Object 开放地址hash表
+ * key存在long数组中，value存在Object数组中，key不需要装箱，也没有Node对象
+ * 不存在的key，get返回null
+ * */
+public class LongObjectOpenAddrTable<V> extends AbstractPrimitiveHashTable implements HashTable<Long, V> {
+
+    private long[] keys;
+
+    private Object[] values;
+
+    /**key为0的元素的value*/
+    private V freeValue;
+
+    public LongObjectOpenAddrTable() {
+        this(AbstractHashTable.DEFAULT_INITIAL_CAPACITY);
+    }
+
+    public LongObjectOpenAddrTable(int expected) {
+        this(expected, AbstractHashTable.DEFAULT_LOAD_FACTOR);
+    }
+
+    public LongObjectOpenAddrTable(int expected, float loadFactor) {
+        super(expected, loadFactor);
+        int cap = arraySize(expected);
+        keys = new long[cap];
+        values = new Object[cap];
+        initCapacity(cap);
+    }
+
+    /**
+     * 添加覆盖
+     * @param key key
+     * @param value value
+     * */
+    public void put(long key, V value) {
+        if (key == FREE_KEY) {
+            freeValue = value;
+            if (!hasFreeKey) {
+                hasFreeKey = true;
+                size++;
+            }
+            return;
+        }
+        int pos = mix(key) & mask;
+        long k;
+        while ((k = keys[pos]) != FREE_KEY) {
+            if (k == key) {
+                values[pos] = value;
+                return;
+            }
+            pos = (pos + 1) & mask;
+        }
+        keys[pos] = key;
+        values[pos] = value;
+        afterInsert();
+    }
+
+    /**
+     * 根据key获取value，不存在返回null
+     * @param key key
+     * */
+    public V get(long key) {
+        if (key == FREE_KEY) {
+            return hasFreeKey ? freeValue : null;
+        }
+        int pos = indexOf(key);
+        return pos < 0 ? null : valueAt(pos);
+    }
+
+    public boolean containsKey(long key) {
+        return key == FREE_KEY ? hasFreeKey : indexOf(key) >= 0;
+    }
+
+    /**
+     * 删除，后面同一个探测链上的元素向前移动
+     * @param key key
+     * */
+    public void remove(long key) {
+        if (key == FREE_KEY) {
+            if (hasFreeKey) {
+                hasFreeKey = false;
+                freeValue = null;
+                size--;
+            }
+            return;
+        }
+        int pos = indexOf(key);
+        if (pos >= 0) {
+            shiftKeys(pos);
+            size--;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int pos) {
+        return (V) values[pos];
+    }
+
+    private int indexOf(long key) {
+        int pos = mix(key) & mask;
+        long k;
+        while ((k = keys[pos]) != FREE_KEY) {
+            if (k == key) {
+                return pos;
+            }
+            pos = (pos + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * 删除pos位置的元素，把后面探测链上能前移的元素依次填补到空位置上，直到遇到空位置
+     * @param pos 删除的位置
+     * */
+    private void shiftKeys(int pos) {
+        int last;
+        long k;
+        for (; ; ) {
+            last = pos;
+            pos = (pos + 1) & mask;
+            for (; ; ) {
+                if ((k = keys[pos]) == FREE_KEY) {
+                    keys[last] = FREE_KEY;
+                    // value引用置空，方便gc
+                    values[last] = null;
+                    return;
+                }
+                if (canShift(last, mix(k) & mask, pos)) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            keys[last] = k;
+            values[last] = values[pos];
+        }
+    }
+
+    @Override
+    protected void rehash(int newCap) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        int newMask = newCap - 1;
+        long[] newKeys = new long[newCap];
+        Object[] newValues = new Object[newCap];
+        for (int i = 0; i < oldKeys.length; i++) {
+            long k = oldKeys[i];
+            if (k == FREE_KEY) {
+                continue;
+            }
+            int pos = mix(k) & newMask;
+            while (newKeys[pos] != FREE_KEY) {
+                pos = (pos + 1) & newMask;
+            }
+            newKeys[pos] = k;
+            newValues[pos] = oldValues[i];
+        }
+        keys = newKeys;
+        values = newValues;
+        initCapacity(newCap);
+    }
+
+    @Override
+    public void put(Long key, V value) {
+        put(key.longValue(), value);
+    }
+
+    @Override
+    public void remove(Long key) {
+        remove(key.longValue());
+    }
+
+    @Override
+    public V get(Long key) {
+        return get(key.longValue());
+    }
+
+    /**
+     * 对比YOpenAddrHashTable，每个entry的内存占用和put/get的吞吐(value共享同一个对象，只统计表自身的开销)
+     * 运行参数: [元素个数]，默认2000000，建议 -Xmx4g
+     * */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        String value = "v";
+        // 第一轮作为预热，让JIT编译完成，以第二轮的结果为准
+        for (int round = 1; round <= 2; round++) {
+            System.out.println("round " + round);
+
+            long base = YUtils.usedMemory();
+            long begin = System.nanoTime();
+            LongObjectOpenAddrTable<String> primitive = new LongObjectOpenAddrTable<>();
+            for (long i = 0; i < n; i++) {
+                primitive.put(i * 31, value);
+            }
+            long putCost = System.nanoTime() - begin;
+            long mem = YUtils.usedMemory() - base;
+            begin = System.nanoTime();
+            long hit = 0;
+            for (long i = 0; i < n; i++) {
+                if (primitive.get(i * 31) != null) {
+                    hit++;
+                }
+            }
+            long getCost = System.nanoTime() - begin;
+            IntIntOpenAddrTable.print("LongObjectOpenAddrTable", n, mem, putCost, getCost, hit);
+            primitive = null;
+
+            base = YUtils.usedMemory();
+            begin = System.nanoTime();
+            YOpenAddrHashTable<Long, String> generic = new YOpenAddrHashTable<>(16);
+            for (long i = 0; i < n; i++) {
+                generic.put(i * 31, value);
+            }
+            putCost = System.nanoTime() - begin;
+            mem = YUtils.usedMemory() - base;
+            begin = System.nanoTime();
+            hit = 0;
+            for (long i = 0; i < n; i++) {
+                if (generic.get(i * 31) != null) {
+                    hit++;
+                }
+            }
+            getCost = System.nanoTime() - begin;
+            IntIntOpenAddrTable.print("YOpenAddrHashTable", n, mem, putCost, getCost, hit);
+        }
+    }
+}
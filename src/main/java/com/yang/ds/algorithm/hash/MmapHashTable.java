@@ -0,0 +1,333 @@
+package com.yang.ds.algorithm.hash;
+
+import com.yang.ds.algorithm.utils.YUtils;
+import com.yang.ds.datastruct.hash.HashTable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * byte[] -> byte[] 内存映射文件hash表
+ *
+ * 1. 槽位数组: 每个槽位8字节 = hash高24位(tag) << 40 | entry在文件中的位置(40位，最大1T)，0表示空位置，-1表示删除标记
+ * 比较key之前先比较tag，不相等的key基本上不用去读entry
+ *
+ * 2. entry从分配区分配(slab，按大小分级复用释放的entry): [key长度 int][value长度 int][key][value]，8字节对齐
+ *
+ * 3. 线性探测，和YOpenAddrHashTable一样删除留下删除标记，探测跳过删除标记继续，插入复用遇到的第一个删除标记，
+ * 删除标记和元素一起超过阈值的时候重新分配槽位数组
+ *
+ * 4. 覆盖的时候value长度不变直接原地覆盖，否则重新分配entry，槽位指向新的entry之后释放老的entry，删除的entry也释放
+ * */
+public class MmapHashTable extends AbstractMmapTable implements HashTable<byte[], byte[]> {
+
+    private static final int TYPE = 1;
+
+    private static final long EMPTY = 0;
+
+    private static final long TOMBSTONE = -1L;
+
+    private static final int OFFSET_BITS = 40;
+
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+
+    /**entry头: key长度 + value长度*/
+    private static final int ENTRY_HEADER = 8;
+
+    public MmapHashTable(File file) {
+        this(file, AbstractHashTable.DEFAULT_INITIAL_CAPACITY);
+    }
+
+    public MmapHashTable(File file, long expected) {
+        this(file, expected, AbstractHashTable.DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * 文件存在直接打开，不存在按照预期元素个数创建
+     * @param file 文件
+     * @param expected 预期元素个数
+     * @param loadFactor 装填因子
+     * */
+    public MmapHashTable(File file, long expected, float loadFactor) {
+        super(file, TYPE, 8, expected, loadFactor);
+    }
+
+    /**
+     * FNV-1a 64位hash，再用fmix64扰动，必须是确定的，文件重新打开之后hash值要一样
+     * */
+    private static long hash(byte[] key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * 和hash(byte[])算法一样，直接读取文件中的key，扩容的时候不用拷贝key
+     * */
+    private long hash(long pos, int len) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < len; i++) {
+            h ^= getByte(pos + i) & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long tag(long h) {
+        return h >>> OFFSET_BITS;
+    }
+
+    /**
+     * 添加覆盖
+     * @param key key
+     * @param value value
+     * */
+    @Override
+    public void put(byte[] key, byte[] value) {
+        if (key == null || value == null)
+            throw new IllegalArgumentException("key and value can not be null");
+        long h = hash(key);
+        long tag = tag(h);
+        long idx = h & mask;
+        long tomb = -1;
+        long s;
+        while ((s = getLong(slot(idx))) != EMPTY) {
+            if (s == TOMBSTONE) {
+                if (tomb < 0) {
+                    tomb = idx;
+                }
+            } else if ((s >>> OFFSET_BITS) == tag && keyEquals(s & OFFSET_MASK, key)) {
+                long pos = s & OFFSET_MASK;
+                if (getInt(pos + 4) == value.length) {
+                    // value长度一样，原地覆盖
+                    write(pos + ENTRY_HEADER + key.length, value);
+                } else {
+                    putLong(slot(idx), tag << OFFSET_BITS | writeEntry(key, value));
+                    free(pos, entrySize(pos));
+                }
+                return;
+            }
+            idx = (idx + 1) & mask;
+        }
+        // 先写entry，再写槽位，进程在中间崩溃也不会出现槽位指向一半的数据
+        long pos = writeEntry(key, value);
+        putLong(slot(tomb >= 0 ? tomb : idx), tag << OFFSET_BITS | pos);
+        afterInsert(tomb >= 0);
+    }
+
+    /**
+     * 根据key获取value，不存在返回null
+     * @param key key
+     * */
+    @Override
+    public byte[] get(byte[] key) {
+        long idx = indexOf(key);
+        if (idx < 0) {
+            return null;
+        }
+        long pos = getLong(slot(idx)) & OFFSET_MASK;
+        byte[] value = new byte[getInt(pos + 4)];
+        read(pos + ENTRY_HEADER + getInt(pos), value);
+        return value;
+    }
+
+    public boolean containsKey(byte[] key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * 删除，槽位改成删除标记
+     * @param key key
+     * */
+    @Override
+    public void remove(byte[] key) {
+        long idx = indexOf(key);
+        if (idx >= 0) {
+            long pos = getLong(slot(idx)) & OFFSET_MASK;
+            putLong(slot(idx), TOMBSTONE);
+            afterRemove(true);
+            free(pos, entrySize(pos));
+        }
+    }
+
+    /**
+     * 查找key所在的槽位，不存在返回-1，遇到空位置结束，删除标记继续向后探测
+     * */
+    private long indexOf(byte[] key) {
+        if (key == null) {
+            return -1;
+        }
+        long h = hash(key);
+        long tag = tag(h);
+        long idx = h & mask;
+        long s;
+        while ((s = getLong(slot(idx))) != EMPTY) {
+            if (s != TOMBSTONE && (s >>> OFFSET_BITS) == tag && keyEquals(s & OFFSET_MASK, key)) {
+                return idx;
+            }
+            idx = (idx + 1) & mask;
+        }
+        return -1;
+    }
+
+    private boolean keyEquals(long pos, byte[] key) {
+        if (getInt(pos) != key.length) {
+            return false;
+        }
+        pos += ENTRY_HEADER;
+        for (int i = 0; i < key.length; i++) {
+            if (getByte(pos + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long writeEntry(byte[] key, byte[] value) {
+        long pos = allocate(ENTRY_HEADER + (long) key.length + value.length);
+        if (pos > OFFSET_MASK) {
+            throw new IllegalStateException("file is full, size " + pos);
+        }
+        putInt(pos, key.length);
+        putInt(pos + 4, value.length);
+        write(pos + ENTRY_HEADER, key);
+        write(pos + ENTRY_HEADER + key.length, value);
+        return pos;
+    }
+
+    private long entrySize(long pos) {
+        return ENTRY_HEADER + (long) getInt(pos) + getInt(pos + 4);
+    }
+
+    private void write(long pos, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            putByte(pos + i, bytes[i]);
+        }
+    }
+
+    private void read(long pos, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = getByte(pos + i);
+        }
+    }
+
+    /**
+     * 重新计算每个key的hash放到新的槽位数组，entry不用移动
+     * */
+    @Override
+    protected void transfer(long newTable, long newMask) {
+        for (long i = 0; i < capacity; i++) {
+            long s = getLong(slot(i));
+            if (s == EMPTY || s == TOMBSTONE) {
+                continue;
+            }
+            long pos = s & OFFSET_MASK;
+            long idx = hash(pos + ENTRY_HEADER, getInt(pos)) & newMask;
+            while (getLong(newTable + (idx << 3)) != EMPTY) {
+                idx = (idx + 1) & newMask;
+            }
+            putLong(newTable + (idx << 3), s);
+        }
+    }
+
+    /**
+     * 对比堆上的hash表，插入n个entry的gc次数/耗时和进程的RSS，以及关闭之后重新打开的耗时
+     * 运行参数: [元素个数] [文件]，默认50000000，建议 -Xmx16g，堆上的表和mmap表分两次运行(第三个参数 heap/mmap)对比RSS
+     * */
+    public static void main(String[] args) throws IOException {
+        long n = args.length > 0 ? Long.parseLong(args[0]) : 50000000;
+        File file = args.length > 1 ? new File(args[1]) : File.createTempFile("mmap-hash", ".db");
+        String mode = args.length > 2 ? args[2] : "both";
+        if (!"heap".equals(mode)) {
+            file.delete();
+            long gcCount = gcCount(), gcTime = gcTime();
+            long begin = System.nanoTime();
+            MmapHashTable table = new MmapHashTable(file, n);
+            MmapLongLongHashTable longTable = new MmapLongLongHashTable(new File(file.getPath() + ".long"), n);
+            for (long i = 0; i < n; i++) {
+                table.put(bytes("key-" + i), bytes("value-" + i));
+                longTable.put(i, i);
+            }
+            long putCost = System.nanoTime() - begin;
+            long heap = YUtils.usedMemory();
+            print("mmap", n, putCost, gcCount(), gcCount, gcTime(), gcTime, heap);
+            table.close();
+            longTable.close();
+            begin = System.nanoTime();
+            table = new MmapHashTable(file);
+            longTable = new MmapLongLongHashTable(new File(file.getPath() + ".long"));
+            long reopenCost = System.nanoTime() - begin;
+            boolean check = new String(table.get(bytes("key-" + (n - 1))), StandardCharsets.UTF_8).equals("value-" + (n - 1))
+                    && longTable.get(n - 1) == n - 1;
+            System.out.printf("reopen %d entries in %.3f ms, check=%b, file=%d MB%n", table.size(),
+                    reopenCost / 1e6, check, (table.fileSize() + longTable.fileSize()) >> 20);
+            table.close();
+            longTable.close();
+            file.delete();
+            new File(file.getPath() + ".long").delete();
+        }
+        if (!"mmap".equals(mode)) {
+            long gcCount = gcCount(), gcTime = gcTime();
+            long begin = System.nanoTime();
+            YOpenAddrHashTable<String, String> table = new YOpenAddrHashTable<>(16);
+            LongLongOpenAddrTable longTable = new LongLongOpenAddrTable(16);
+            for (long i = 0; i < n; i++) {
+                table.put("key-" + i, "value-" + i);
+                longTable.put(i, i);
+            }
+            long putCost = System.nanoTime() - begin;
+            long heap = YUtils.usedMemory();
+            print("heap", n, putCost, gcCount(), gcCount, gcTime(), gcTime, heap);
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void print(String name, long n, long putCost, long gcCount, long gcCountBase, long gcTime, long gcTimeBase, long heap) {
+        System.out.printf("%-5s entries=%d put=%d ns/op gc count=%d gc time=%d ms heap used=%d MB rss=%d MB%n",
+                name, n, putCost / n, gcCount - gcCountBase, gcTime - gcTimeBase, heap >> 20, rss() >> 10);
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += gc.getCollectionCount();
+        }
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += gc.getCollectionTime();
+        }
+        return time;
+    }
+
+    /**
+     * 进程常驻内存(KB)，只支持linux
+     * */
+    private static long rss() {
+        try (BufferedReader reader = new BufferedReader(new FileReader("/proc/self/status"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException e) {
+            // 非linux系统
+        }
+        return -1;
+    }
+}
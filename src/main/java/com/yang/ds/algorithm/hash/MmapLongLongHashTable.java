@@ -0,0 +1,193 @@
+package com.yang.ds.algorithm.hash;
+
+import com.yang.ds.datastruct.hash.HashTable;
+
+import java.io.File;
+
+/**
+ * long -> long 内存映射文件hash表
+ *
+ * 和LongLongOpenAddrTable的布局一样，只是数组放到了映射文件里面，每个槽位16字节 [key][value]，key=0表示空位置，
+ * key为0的元素存在文件头里面，线性探测，删除向前移动后面的元素(backward shift)，没有删除标记
+ * 不存在的key，get返回noEntryValue
+ * */
+public class MmapLongLongHashTable extends AbstractMmapTable implements HashTable<Long, Long> {
+
+    private static final int TYPE = 2;
+
+    private static final long FREE_KEY = 0;
+
+    private static final int SLOT_SIZE = 16;
+
+    /*key为0的元素，存在文件头里面*/
+    private static final int HAS_FREE_KEY_OFFSET = EXT_HEADER_OFFSET;
+    private static final int FREE_VALUE_OFFSET = EXT_HEADER_OFFSET + 8;
+
+    private final long noEntryValue;
+
+    public MmapLongLongHashTable(File file) {
+        this(file, AbstractHashTable.DEFAULT_INITIAL_CAPACITY);
+    }
+
+    public MmapLongLongHashTable(File file, long expected) {
+        this(file, expected, AbstractHashTable.DEFAULT_LOAD_FACTOR, 0);
+    }
+
+    /**
+     * 文件存在直接打开，不存在按照预期元素个数创建
+     * @param file 文件
+     * @param expected 预期元素个数
+     * @param loadFactor 装填因子
+     * @param noEntryValue 不存在key的时候get返回的值
+     * */
+    public MmapLongLongHashTable(File file, long expected, float loadFactor, long noEntryValue) {
+        super(file, TYPE, SLOT_SIZE, expected, loadFactor);
+        this.noEntryValue = noEntryValue;
+    }
+
+    private boolean hasFreeKey() {
+        return getLong(HAS_FREE_KEY_OFFSET) != 0;
+    }
+
+    /**
+     * 添加覆盖
+     * @param key key
+     * @param value value
+     * */
+    public void put(long key, long value) {
+        if (key == FREE_KEY) {
+            putLong(FREE_VALUE_OFFSET, value);
+            if (!hasFreeKey()) {
+                putLong(HAS_FREE_KEY_OFFSET, 1);
+                afterInsert(false);
+            }
+            return;
+        }
+        long idx = mix(key) & mask;
+        long k;
+        while ((k = getLong(slot(idx))) != FREE_KEY) {
+            if (k == key) {
+                putLong(slot(idx) + 8, value);
+                return;
+            }
+            idx = (idx + 1) & mask;
+        }
+        // 先写value，再写key，key写进去元素才可见
+        putLong(slot(idx) + 8, value);
+        putLong(slot(idx), key);
+        afterInsert(false);
+    }
+
+    /**
+     * 根据key获取value，不存在返回noEntryValue
+     * @param key key
+     * */
+    public long get(long key) {
+        if (key == FREE_KEY) {
+            return hasFreeKey() ? getLong(FREE_VALUE_OFFSET) : noEntryValue;
+        }
+        long idx = indexOf(key);
+        return idx < 0 ? noEntryValue : getLong(slot(idx) + 8);
+    }
+
+    public boolean containsKey(long key) {
+        return key == FREE_KEY ? hasFreeKey() : indexOf(key) >= 0;
+    }
+
+    /**
+     * 删除，后面同一个探测链上的元素向前移动
+     * @param key key
+     * */
+    public void remove(long key) {
+        if (key == FREE_KEY) {
+            if (hasFreeKey()) {
+                putLong(HAS_FREE_KEY_OFFSET, 0);
+                afterRemove(false);
+            }
+            return;
+        }
+        long idx = indexOf(key);
+        if (idx >= 0) {
+            shiftKeys(idx);
+            afterRemove(false);
+        }
+    }
+
+    private long indexOf(long key) {
+        long idx = mix(key) & mask;
+        long k;
+        while ((k = getLong(slot(idx))) != FREE_KEY) {
+            if (k == key) {
+                return idx;
+            }
+            idx = (idx + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * 删除idx位置的元素，把后面探测链上能前移的元素依次填补到空位置上，直到遇到空位置
+     * */
+    private void shiftKeys(long idx) {
+        long last;
+        long k;
+        for (; ; ) {
+            last = idx;
+            idx = (idx + 1) & mask;
+            for (; ; ) {
+                if ((k = getLong(slot(idx))) == FREE_KEY) {
+                    putLong(slot(last), FREE_KEY);
+                    return;
+                }
+                if (canShift(last, mix(k) & mask, idx)) {
+                    break;
+                }
+                idx = (idx + 1) & mask;
+            }
+            putLong(slot(last), k);
+            putLong(slot(last) + 8, getLong(slot(idx) + 8));
+        }
+    }
+
+    /**
+     * 和AbstractPrimitiveHashTable.canShift一样，槽位索引是long
+     * */
+    private static boolean canShift(long last, long home, long pos) {
+        return last <= pos ? (last >= home || home > pos) : (last >= home && home > pos);
+    }
+
+    @Override
+    protected void transfer(long newTable, long newMask) {
+        for (long i = 0; i < capacity; i++) {
+            long k = getLong(slot(i));
+            if (k == FREE_KEY) {
+                continue;
+            }
+            long idx = mix(k) & newMask;
+            while (getLong(newTable + idx * SLOT_SIZE) != FREE_KEY) {
+                idx = (idx + 1) & newMask;
+            }
+            putLong(newTable + idx * SLOT_SIZE, k);
+            putLong(newTable + idx * SLOT_SIZE + 8, getLong(slot(i) + 8));
+        }
+    }
+
+    @Override
+    public void put(Long key, Long value) {
+        put(key.longValue(), value.longValue());
+    }
+
+    @Override
+    public void remove(Long key) {
+        remove(key.longValue());
+    }
+
+    /**
+     * 不存在返回null
+     * */
+    @Override
+    public Long get(Long key) {
+        long k = key;
+        return containsKey(k) ? get(k) : null;
+    }
+}
@@ -0,0 +1,403 @@
+package com.yang.ds.algorithm.hash;
+
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Robin Hood hash表，开放地址法，替代YOpenAddrHashTable的再hash(双重hash)探测
+ *
+ * 1. YOpenAddrHashTable的问题:数组是质数大小，每次探测都要取模，再hash的步长让每次探测都跳到很远的位置，每一次探测基本上都是一次cache miss
+ *
+ * 2. 数组大小2^n，hash & mask定位，线性探测，探测的位置是连续内存
+ *
+ * 3. 劫富济贫(Robin Hood): 每个元素到自己理想位置的距离叫探测距离(dist)，插入的时候如果当前位置元素的探测距离比自己的小(富人),
+ * 就把位置抢过来，然后继续帮被抢的元素找位置，这样所有元素的探测距离都比较平均，方差很小，最长的探测距离也很短
+ *
+ * 4. 查找的时候，如果当前位置元素的探测距离比自己已经探测的距离小，说明要找的key不存在(如果存在，插入的时候一定会抢这个位置)，
+ * 不存在的key不用一直探测到空位置，提前结束
+ *
+ * 5. 删除不用删除标记，把后面探测距离大于0的元素依次向前移动一位(backward shift)，直到遇到空位置或者在理想位置上的元素，
+ * 删除之后数组和从来没有插入过这个元素一样，不会因为删除越来越慢
+ *
+ * 存储: table存key，values存value，hashes存hash值(0表示空位置)，hash值存下来扩容不用重新计算，比较的时候先比较hash值
+ *
+ * 限制: 装填因子必须小于1，数组满了之后探测找不到空位置；key不能为null，rehash期间老数组用null表示已经迁移走的位置
+ * */
+public class RobinHoodHashTable<K, V> extends AbstractHashTable<K, V> {
+
+    /**空位置的hash值*/
+    private static final int EMPTY = 0;
+
+    private Object[] values;
+
+    private int[] hashes;
+
+    /**rehash期间老数组的value和hash，老数组只读，迁移走或者删除的位置key置空，hash保留，保证探测距离不变*/
+    private Object[] oldValues;
+
+    private int[] oldHashes;
+
+    public RobinHoodHashTable() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    public RobinHoodHashTable(int size) {
+        this(size, DEFAULT_LOAD_FACTOR);
+    }
+
+    public RobinHoodHashTable(int size, float loadFactor) {
+        super(size, loadFactor);
+        if (loadFactor >= 1)
+            throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+        values = new Object[table.length];
+        hashes = new int[table.length];
+    }
+
+    /**
+     * murmur3的finalizer,让hash值的每一位都影响低位,2^n的数组只用到了低位
+     * hash值不能为0，0表示空位置
+     * */
+    private int spread(K key) {
+        int h = hash(key);
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h == EMPTY ? 1 : h;
+    }
+
+    /**
+     * pos位置上hash值为h的元素的探测距离
+     * */
+    private static int distance(int h, int pos, int mask) {
+        return (pos - (h & mask)) & mask;
+    }
+
+    @Override
+    void resize() {
+        if (size <= threshold || table.length >= MAX_CAPACITY) {
+            return;
+        }
+        grow(table.length << 1);
+    }
+
+    @Override
+    protected void grow(int newCap) {
+        rehashAll();
+        oldValues = values;
+        oldHashes = hashes;
+        values = new Object[newCap];
+        hashes = new int[newCap];
+        super.grow(newCap);
+        if (!isRehashing()) {
+            oldValues = null;
+            oldHashes = null;
+        }
+    }
+
+    @Override
+    void moveBucket(int idx) {
+        K key = keyAt(oldTable, idx);
+        if (key != null) {
+            insert(oldHashes[idx], key, valueAt(oldValues, idx));
+            oldTable[idx] = null;
+            oldValues[idx] = null;
+        }
+    }
+
+    @Override
+    protected void rehashStep() {
+        super.rehashStep();
+        if (!isRehashing()) {
+            oldValues = null;
+            oldHashes = null;
+        }
+    }
+
+    @Override
+    public void put(K key, V value) {
+        if (key == null)
+            throw new IllegalArgumentException("key can not be null");
+        rehashStep();
+        int h = spread(key);
+        int pos = indexOf(table, hashes, h, key);
+        if (pos >= 0) {
+            values[pos] = value;
+            return;
+        }
+        // rehash期间，老数组中存在的key删除，新数据只写入新数组
+        if (isRehashing()) {
+            int oldPos = indexOf(oldTable, oldHashes, h, key);
+            if (oldPos >= 0) {
+                oldTable[oldPos] = null;
+                oldValues[oldPos] = null;
+                size--;
+            }
+        }
+        insert(h, key, value);
+        size++;
+        resize();
+    }
+
+    /**
+     * 插入一个不存在的key，探测距离比当前位置元素大就抢占位置，被抢占的元素继续向后找位置
+     * */
+    private void insert(int h, K key, V value) {
+        int mask = table.length - 1;
+        int pos = h & mask;
+        int dist = 0;
+        Object curKey = key;
+        Object curValue = value;
+        int curHash = h;
+        for (; ; ) {
+            int existHash = hashes[pos];
+            if (existHash == EMPTY) {
+                table[pos] = curKey;
+                values[pos] = curValue;
+                hashes[pos] = curHash;
+                return;
+            }
+            int existDist = distance(existHash, pos, mask);
+            if (existDist < dist) {
+                // 劫富济贫，交换之后继续为被换出来的元素找位置
+                Object tmpKey = table[pos];
+                Object tmpValue = values[pos];
+                table[pos] = curKey;
+                values[pos] = curValue;
+                hashes[pos] = curHash;
+                curKey = tmpKey;
+                curValue = tmpValue;
+                curHash = existHash;
+                dist = existDist;
+            }
+            pos = (pos + 1) & mask;
+            dist++;
+        }
+    }
+
+    @Override
+    public V get(K key) {
+        rehashStep();
+        int h = spread(key);
+        int pos = indexOf(table, hashes, h, key);
+        if (pos >= 0) {
+            return valueAt(values, pos);
+        }
+        if (isRehashing()) {
+            pos = indexOf(oldTable, oldHashes, h, key);
+            if (pos >= 0) {
+                return valueAt(oldValues, pos);
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private K keyAt(Object[] keys, int pos) {
+        return (K) keys[pos];
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(Object[] vals, int pos) {
+        return (V) vals[pos];
+    }
+
+    /**
+     * 查找key所在位置，不存在返回-1
+     * 遇到空位置，或者遇到探测距离比当前已探测距离小的元素，说明不存在
+     * */
+    private int indexOf(Object[] keys, int[] hs, int h, K key) {
+        int mask = keys.length - 1;
+        int pos = h & mask;
+        for (int dist = 0; ; dist++) {
+            int existHash = hs[pos];
+            if (existHash == EMPTY || distance(existHash, pos, mask) < dist) {
+                return -1;
+            }
+            Object k = keys[pos];
+            if (existHash == h && k != null && k.equals(key)) {
+                return pos;
+            }
+            pos = (pos + 1) & mask;
+        }
+    }
+
+    @Override
+    public void remove(K key) {
+        rehashStep();
+        int h = spread(key);
+        int pos = indexOf(table, hashes, h, key);
+        if (pos >= 0) {
+            backwardShift(pos);
+            size--;
+            return;
+        }
+        if (isRehashing()) {
+            pos = indexOf(oldTable, oldHashes, h, key);
+            if (pos >= 0) {
+                oldTable[pos] = null;
+                oldValues[pos] = null;
+                size--;
+            }
+        }
+    }
+
+    /**
+     * 删除pos位置，后面的元素依次前移，直到空位置或者元素已经在自己的理想位置
+     * */
+    private void backwardShift(int pos) {
+        int mask = table.length - 1;
+        int next = (pos + 1) & mask;
+        while (hashes[next] != EMPTY && distance(hashes[next], next, mask) > 0) {
+            table[pos] = table[next];
+            values[pos] = values[next];
+            hashes[pos] = hashes[next];
+            pos = next;
+            next = (next + 1) & mask;
+        }
+        table[pos] = null;
+        values[pos] = null;
+        hashes[pos] = EMPTY;
+    }
+
+    /**
+     * 查找key需要探测的位置个数(包括最后一次比较)，用来统计探测长度的分布
+     * */
+    int probeCount(K key) {
+        int h = spread(key);
+        int mask = table.length - 1;
+        int pos = h & mask;
+        for (int dist = 0; ; dist++) {
+            int existHash = hashes[pos];
+            if (existHash == EMPTY || distance(existHash, pos, mask) < dist) {
+                return dist + 1;
+            }
+            if (existHash == h && key.equals(table[pos])) {
+                return dist + 1;
+            }
+            pos = (pos + 1) & mask;
+        }
+    }
+
+    /**
+     * key和value存在两个数组里面，没有节点对象，entry()每次创建一个Entry
+     * */
+    @Override
+    BucketCursor<K, V> cursor(final int lo, final int hi) {
+        return new BucketCursor<K, V>() {
+
+            private int idx = lo - 1;
+
+            @Override
+            public boolean next() {
+                while (++idx < hi) {
+                    if (hashes[idx] != EMPTY) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public K key() {
+                return keyAt(table, idx);
+            }
+
+            @Override
+            public V value() {
+                return valueAt(values, idx);
+            }
+
+            @Override
+            public Map.Entry<K, V> entry() {
+                return new AbstractMap.SimpleImmutableEntry<>(key(), value());
+            }
+        };
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < table.length; i++) {
+            if (hashes[i] == EMPTY) {
+                sb.append("null");
+            } else {
+                sb.append("[").append(table[i]).append(",").append(values[i]).append(",")
+                        .append(distance(hashes[i], i, table.length - 1)).append("]");
+            }
+            sb.append(" ");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 对比再hash探测(YOpenAddrHashTable)和Robin Hood探测的探测长度分布，以及命中和不命中的查找耗时
+     * 运行参数: [元素个数]
+     * */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        Random random = new Random(11);
+        String[] hitKeys = new String[n];
+        String[] missKeys = new String[n];
+        for (int i = 0; i < n; i++) {
+            hitKeys[i] = "key-" + random.nextLong();
+            missKeys[i] = "miss-" + random.nextLong();
+        }
+        YOpenAddrHashTable<String, Integer> doubleHash = new YOpenAddrHashTable<>(16);
+        RobinHoodHashTable<String, Integer> robinHood = new RobinHoodHashTable<>();
+        for (int i = 0; i < n; i++) {
+            doubleHash.put(hitKeys[i], i);
+            robinHood.put(hitKeys[i], i);
+        }
+        int[] dhHit = new int[64], dhMiss = new int[64], rhHit = new int[64], rhMiss = new int[64];
+        for (int i = 0; i < n; i++) {
+            dhHit[Math.min(63, doubleHash.probeCount(hitKeys[i]))]++;
+            dhMiss[Math.min(63, doubleHash.probeCount(missKeys[i]))]++;
+            rhHit[Math.min(63, robinHood.probeCount(hitKeys[i]))]++;
+            rhMiss[Math.min(63, robinHood.probeCount(missKeys[i]))]++;
+        }
+        printHistogram("double hashing hit", dhHit);
+        printHistogram("double hashing miss", dhMiss);
+        printHistogram("robin hood hit", rhHit);
+        printHistogram("robin hood miss", rhMiss);
+
+        for (int round = 1; round <= 2; round++) {
+            System.out.printf("round %d double hashing hit=%d ns miss=%d ns, robin hood hit=%d ns miss=%d ns%n", round,
+                    lookupCost(doubleHash, hitKeys), lookupCost(doubleHash, missKeys),
+                    lookupCost(robinHood, hitKeys), lookupCost(robinHood, missKeys));
+        }
+    }
+
+    private static void printHistogram(String name, int[] histogram) {
+        long total = 0, sum = 0, squareSum = 0;
+        int max = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            total += histogram[i];
+            sum += (long) i * histogram[i];
+            squareSum += (long) i * i * histogram[i];
+            if (histogram[i] > 0) {
+                max = i;
+            }
+        }
+        double mean = (double) sum / total;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= max; i++) {
+            sb.append(i).append(":").append(histogram[i]).append(" ");
+        }
+        System.out.printf("%-20s mean=%.3f variance=%.3f max=%d%s | %s%n", name, mean,
+                (double) squareSum / total - mean * mean, max, max == histogram.length - 1 ? "+" : "", sb);
+    }
+
+    private static long lookupCost(AbstractHashTable<String, Integer> table, String[] keys) {
+        long begin = System.nanoTime();
+        int hit = 0;
+        for (String key : keys) {
+            if (table.get(key) != null) {
+                hit++;
+            }
+        }
+        long cost = (System.nanoTime() - begin) / keys.length;
+        return hit < 0 ? -1 : cost;
+    }
+}
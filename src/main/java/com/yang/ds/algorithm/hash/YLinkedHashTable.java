@@ -1,10 +1,28 @@
 package com.yang.ds.algorithm.hash;
 
+import com.yang.ds.datastruct.tree.bstree.impl.RBTreeImpl;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.Map;
+
 /**
  *链表的实现相比较开放地址发，实现起来简单容易，但是查找因为链表的长度，时间复杂度应该是平均链表的长度m O(m)
+ *
+ * 树化(参考jdk8的HashMap): hash冲突严重(key分布不好或者被恶意构造相同hash的key攻击)的时候，一个桶的链表会很长，查找退化成O(N)
+ * 链表长度达到TREEIFY_THRESHOLD，并且链表中的key都是同一个类型的Comparable，就把这个桶转换成红黑树(TreeBin)，最坏O(logN)，
+ * 删除到UNTREEIFY_THRESHOLD转换回链表，两个阈值之间留了间隔，防止在阈值附近反复转换
+ * 树中按照compareTo比较，要求key的compareTo和equals一致
  * */
 public class YLinkedHashTable<K, V> extends AbstractHashTable<K, V> {
 
+    /**链表长度达到这个值转换成红黑树*/
+    static final int TREEIFY_THRESHOLD = 8;
+
+    /**红黑树节点个数减少到这个值转换回链表*/
+    static final int UNTREEIFY_THRESHOLD = 6;
+
     public YLinkedHashTable(int size) {
         super(size);
     }
@@ -16,115 +34,301 @@ public class YLinkedHashTable<K, V> extends AbstractHashTable<K, V> {
     @Override
     void resize() {
         // 判断元素数是否已经大于设定的法制了,默认数组大小的0.75的比例就需要扩充数组了,防止数据过多造成更多的hash冲突,生成更长的链表,链表的查询是O(N)
-        if (++size <= threshold) {
+        if (size <= threshold || table.length >= MAX_CAPACITY) {
             return;
         }
-
-        Object[] oldTab = table;
-        int newThr = threshold << 1;
+        // 阈值和数组的实际大小等比例扩大，保持加载因子的比例不变,同时扩大2倍,2^1,还是满足2的n次方，低位与运算还可以生效
         int newCap = table.length << 1;
+        grow(newCap >= MAX_CAPACITY ? MAX_CAPACITY : newCap);
+    }
 
-        // 阈值和数组的实际大小等比例扩大，保持加载因子的比例不变,同时扩大2倍,2^1,还是满足2的n次方，低位与运算还可以生效
-        threshold = newThr >= MAX_CAPACITY ? MAX_CAPACITY : newThr;
-        newCap = newCap >= MAX_CAPACITY ? MAX_CAPACITY : newCap;
-
-        // 更改hash表为新扩容的hash表，老的hash表oldTab将在方法结束，会gc掉
-        table = new Object[newCap];
-        // 老的hash表中的所有数据需要重新再次以新的hash表的大小重新添加
-        for (int i = 0; i < oldTab.length; i++) {
-            if (oldTab[i] != null) {
-                LinkedNode node = (LinkedNode) oldTab[i];
-                while (node != null) {
-                    putVal(node.key, node.value);
-                    node = node.next;
-                }
+    /**
+     * 老数组中的一个桶的链表(或者红黑树)，逐个节点重新挂到新数组中，不需要重新创建节点
+     * @param idx 老数组桶的索引
+     * */
+    @Override
+    void moveBucket(int idx) {
+        Object bin = oldTable[idx];
+        if (bin instanceof YLinkedHashTable.TreeBin) {
+            for (Iterator<LinkedNode> it = treeBin(bin).nodes(); it.hasNext(); ) {
+                LinkedNode node = it.next();
+                node.next = null;
+                addNode(table, node);
+            }
+        } else {
+            LinkedNode node = linked(bin);
+            while (node != null) {
+                LinkedNode next = node.next;
+                addNode(table, node);
+                node = next;
             }
         }
+        oldTable[idx] = null;
     }
 
     @Override
     public void put(K key, V value) {
+        rehashStep();
+        // 已经存在的key，无论在新数组还是rehash中的老数组，直接修改
+        LinkedNode exist = getNode(key);
+        if (exist != null) {
+            exist.value = value;
+            return;
+        }
+        // 新数据只添加到新数组
+        addNode(table, new LinkedNode(key, value));
+        size++;
         // 扩容
         resize();
-        putVal(key, value);
-        size++;
     }
 
     /**
-     * 添加值
-     * @param key   新插入的key
-     * @param value 新插入的值
+     * 添加一个不存在的节点
+     * 没有则创建一个链表node，采用，链表法来解决hash冲突,有则插入链表头部，链表太长转换成红黑树
+     * @param tab 数组
+     * @param node 新节点
      * */
-    private void putVal(K key, V value) {
-        int hash = hash(key);
-        int idx = hash & table.length - 1;
-        LinkedNode node = (LinkedNode) table[idx];
-        LinkedNode nNode = new LinkedNode(key, value);
-        // 没有则创建一个链表node，采用，链表法来解决hash冲突
-        if (node == null) {
-            table[idx] = nNode;
-        } else if (!set(key, value, node)) {
-            table[idx] = nNode;
-            nNode.next = node;
+    private void addNode(Object[] tab, LinkedNode node) {
+        int idx = hash(node.key) & tab.length - 1;
+        Object bin = tab[idx];
+        if (bin instanceof YLinkedHashTable.TreeBin) {
+            TreeBin treeBin = treeBin(bin);
+            if (treeBin.add(node)) {
+                return;
+            }
+            // key的类型和树中的不一样，没法比较，只能转换回链表
+            bin = treeBin.untreeify();
+        }
+        node.next = linked(bin);
+        tab[idx] = node;
+        int count = 0;
+        for (LinkedNode n = node; n != null; n = n.next) {
+            count++;
+        }
+        if (count >= TREEIFY_THRESHOLD) {
+            treeify(tab, idx);
         }
-        size++;
     }
 
     /**
-     * 修改已经存在的key
-     * @param key   新插入的key
-     * @param value 新插入的值
-     * @param node 存在的链表
+     * 链表转换成红黑树，链表中的key必须都是同一个类型的Comparable，否则不转换
+     * @param tab 数组
+     * @param idx 桶的索引
      * */
-    private boolean set(K key, V value, LinkedNode node) {
+    private void treeify(Object[] tab, int idx) {
+        LinkedNode head = linked(tab[idx]);
+        Class<?> keyClass = comparableClassFor(head.key);
+        if (keyClass == null) {
+            return;
+        }
+        for (LinkedNode n = head; n != null; n = n.next) {
+            if (n.key == null || n.key.getClass() != keyClass) {
+                return;
+            }
+        }
+        TreeBin bin = new TreeBin(keyClass);
+        LinkedNode node = head;
         while (node != null) {
-            if (node.key.equals(key)) {
-                node.value = value;
-                return true;
+            LinkedNode next = node.next;
+            node.next = null;
+            bin.add(node);
+            node = next;
+        }
+        tab[idx] = bin;
+    }
+
+    /**
+     * x的类型是C并且实现了Comparable<C>就返回C，否则返回null
+     * */
+    static Class<?> comparableClassFor(Object x) {
+        if (!(x instanceof Comparable)) {
+            return null;
+        }
+        Class<?> c = x.getClass();
+        if (c == String.class) {
+            return c;
+        }
+        for (Type t : c.getGenericInterfaces()) {
+            if (t instanceof ParameterizedType) {
+                ParameterizedType p = (ParameterizedType) t;
+                if (p.getRawType() == Comparable.class && p.getActualTypeArguments()[0] == c) {
+                    return c;
+                }
             }
-            node = node.next;
         }
-        return false;
+        return null;
     }
 
     @Override
     public void remove(K key) {
+        rehashStep();
+        if (!remove(table, key) && isRehashing()) {
+            remove(oldTable, key);
+        }
+    }
+
+    /**
+     * 从指定数组删除key
+     * @param tab 数组
+     * @param key 删除的key
+     * */
+    private boolean remove(Object[] tab, K key) {
         int hash = hash(key);
-        int idx = hash & table.length - 1;
-        LinkedNode node = (LinkedNode) table[idx];
+        int idx = hash & tab.length - 1;
+        if (tab[idx] instanceof YLinkedHashTable.TreeBin) {
+            TreeBin bin = treeBin(tab[idx]);
+            if (!bin.remove(key)) {
+                return false;
+            }
+            if (bin.count <= UNTREEIFY_THRESHOLD) {
+                tab[idx] = bin.untreeify();
+            }
+            size--;
+            return true;
+        }
+        LinkedNode node = linked(tab[idx]);
+        LinkedNode pre = null;
         while (node != null) {
             if (node.key.equals(key)) {
-                node = node.next;
-                table[idx] = node;
+                // 删除的是头节点，则桶直接指向下一个节点，否则前一个节点跳过删除的节点
+                if (pre == null) {
+                    tab[idx] = node.next;
+                } else {
+                    pre.next = node.next;
+                }
                 size--;
-                break;
+                return true;
             }
+            pre = node;
             node = node.next;
         }
+        return false;
     }
 
     @Override
     public V get(K key) {
+        rehashStep();
+        LinkedNode node = getNode(key);
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * 查找节点，rehash期间新老两个数组都需要查找
+     * @param key 查找的key
+     * */
+    private LinkedNode getNode(K key) {
+        LinkedNode node = getNode(table, key);
+        if (node == null && isRehashing()) {
+            node = getNode(oldTable, key);
+        }
+        return node;
+    }
+
+    private LinkedNode getNode(Object[] tab, K key) {
         int hash = hash(key);
-        int idx = hash & table.length - 1;
-        LinkedNode node = (LinkedNode) table[idx];
+        int idx = hash & tab.length - 1;
+        Object bin = tab[idx];
+        if (bin instanceof YLinkedHashTable.TreeBin) {
+            return treeBin(bin).find(key);
+        }
+        LinkedNode node = linked(bin);
         while (node != null) {
             if (node.key.equals(key)) {
-                return node.value;
+                return node;
             }
             node = node.next;
         }
         return null;
     }
 
+    /**
+     * 桶里是链表头节点或者TreeBin，内部类带着外部类的泛型参数，从Object转换是unchecked的
+     * */
+    @SuppressWarnings("unchecked")
+    private LinkedNode linked(Object bin) {
+        return (LinkedNode) bin;
+    }
+
+    @SuppressWarnings("unchecked")
+    private TreeBin treeBin(Object bin) {
+        return (TreeBin) bin;
+    }
+
+    @Override
+    BucketCursor<K, V> cursor(int lo, int hi) {
+        return new LinkedCursor(lo, hi);
+    }
+
+    /**
+     * 链表桶沿着next遍历，红黑树桶按照key的顺序遍历
+     * */
+    private class LinkedCursor implements BucketCursor<K, V> {
+
+        private int idx;
+
+        private final int hi;
+
+        private LinkedNode cur;
+
+        /**当前红黑树桶剩下的节点，不在红黑树桶中为null*/
+        private Iterator<LinkedNode> treeNodes;
+
+        LinkedCursor(int lo, int hi) {
+            this.idx = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        public boolean next() {
+            if (treeNodes != null) {
+                if (treeNodes.hasNext()) {
+                    cur = treeNodes.next();
+                    return true;
+                }
+                treeNodes = null;
+            } else if (cur != null && cur.next != null) {
+                cur = cur.next;
+                return true;
+            }
+            while (idx < hi) {
+                Object bin = table[idx++];
+                if (bin instanceof YLinkedHashTable.TreeBin) {
+                    treeNodes = treeBin(bin).nodes();
+                    cur = treeNodes.next();
+                    return true;
+                }
+                if (bin != null) {
+                    cur = linked(bin);
+                    return true;
+                }
+            }
+            cur = null;
+            return false;
+        }
+
+        @Override
+        public K key() {
+            return cur.key;
+        }
+
+        @Override
+        public V value() {
+            return cur.value;
+        }
+
+        @Override
+        public Map.Entry<K, V> entry() {
+            return cur;
+        }
+    }
+
     public String toString() {
         StringBuilder sb = new StringBuilder();
         for (int i = 0; i < table.length; i++) {
-            LinkedNode node = (LinkedNode) table[i];
             if (null == table[i]) {
                 sb.append("null");
             } else {
-                sb.append(node.toString());
+                sb.append(table[i].toString());
             }
             if (i != table.length - 1) {
                 sb.append(",");
@@ -133,7 +337,7 @@ public class YLinkedHashTable<K, V> extends AbstractHashTable<K, V> {
         return sb.toString();
     }
 
-    private class LinkedNode {
+    private class LinkedNode implements Map.Entry<K, V> {
 
         K key;
 
@@ -146,6 +350,23 @@ public class YLinkedHashTable<K, V> extends AbstractHashTable<K, V> {
             this.value = value;
         }
 
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            V old = this.value;
+            this.value = value;
+            return old;
+        }
+
         public String toString() {
             StringBuilder sb = new StringBuilder();
             LinkedNode node = this;
@@ -163,6 +384,84 @@ public class YLinkedHashTable<K, V> extends AbstractHashTable<K, V> {
         }
     }
 
+    /**
+     * 红黑树桶，树中的value是链表节点，修改value直接修改节点，转换回链表的时候节点复用
+     * */
+    private class TreeBin {
+
+        /**树中key的类型，只有这个类型的key可以放到树里面比较*/
+        final Class<?> keyClass;
+
+        final RBTreeImpl<Comparable<Object>, LinkedNode> tree = new RBTreeImpl<>();
+
+        int count;
+
+        TreeBin(Class<?> keyClass) {
+            this.keyClass = keyClass;
+        }
+
+        /**
+         * 添加一个不存在的节点，key类型不一样返回false
+         * */
+        boolean add(LinkedNode node) {
+            if (node.key == null || node.key.getClass() != keyClass) {
+                return false;
+            }
+            tree.add(comparable(node.key), node);
+            count++;
+            return true;
+        }
+
+        LinkedNode find(Object key) {
+            if (key == null || key.getClass() != keyClass) {
+                return null;
+            }
+            return tree.get(comparable(key));
+        }
+
+        boolean remove(Object key) {
+            if (find(key) == null) {
+                return false;
+            }
+            tree.delete(comparable(key));
+            count--;
+            return true;
+        }
+
+        /**
+         * 按照key的顺序遍历所有节点，不生成中间的列表
+         * */
+        Iterator<LinkedNode> nodes() {
+            return tree.midIterator();
+        }
+
+        @SuppressWarnings("unchecked")
+        private Comparable<Object> comparable(Object key) {
+            return (Comparable<Object>) key;
+        }
+
+        /**
+         * 转换回链表
+         * */
+        LinkedNode untreeify() {
+            LinkedNode head = null;
+            for (Iterator<LinkedNode> it = nodes(); it.hasNext(); ) {
+                LinkedNode node = it.next();
+                node.next = head;
+                head = node;
+            }
+            return head;
+        }
+
+        public String toString() {
+            StringBuilder sb = new StringBuilder("T[");
+            for (Iterator<LinkedNode> it = nodes(); it.hasNext(); ) {
+                sb.append(it.next().key).append(it.hasNext() ? "," : "");
+            }
+            return sb.append("]").toString();
+        }
+    }
+
     public static void main(String[] args) {
         AbstractHashTable<String, Integer> linkedHashTab = new YLinkedHashTable<>(2);
         System.out.println(linkedHashTab.toString());
@@ -172,5 +471,57 @@ public class YLinkedHashTable<K, V> extends AbstractHashTable<K, V> {
         System.out.println(linkedHashTab);
         linkedHashTab.put("y2", 3);
         System.out.println(linkedHashTab);
+
+        // hash冲突攻击，所有key的hashCode相同，对比树化的链表和再hash的开放地址
+        for (int round = 1; round <= 2; round++) {
+            floodCost(new YLinkedHashTable<String, Integer>(), 13);
+            floodCost(new YOpenAddrHashTable<String, Integer>(16), 13);
+        }
+
+        // 一次性rehash和渐进式rehash单次put的最大耗时对比，建议 -Xms4g -Xmx4g 减少gc对结果的干扰
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 4000000;
+        for (int round = 1; round <= 2; round++) {
+            printLatency("YLinkedHashTable", new YLinkedHashTable<Integer, Integer>(), 0, n);
+            printLatency("YLinkedHashTable", new YLinkedHashTable<Integer, Integer>(), 1, n);
+            printLatency("YOpenAddrHashTable", new YOpenAddrHashTable<Integer, Integer>(16), 0, n);
+            printLatency("YOpenAddrHashTable", new YOpenAddrHashTable<Integer, Integer>(16), 1, n);
+        }
+    }
+
+    /**
+     * "Aa"和"BB"的hashCode相同，k个拼接在一起可以得到2^k个hashCode相同的字符串
+     * */
+    private static void floodCost(AbstractHashTable<String, Integer> table, int k) {
+        int n = 1 << k;
+        String[] keys = new String[n];
+        for (int i = 0; i < n; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < k; j++) {
+                sb.append((i >>> j & 1) == 0 ? "Aa" : "BB");
+            }
+            keys[i] = sb.toString();
+        }
+        long begin = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            table.put(keys[i], i);
+        }
+        long putCost = (System.nanoTime() - begin) / n;
+        begin = System.nanoTime();
+        int hit = 0;
+        for (int i = 0; i < n; i++) {
+            if (table.get(keys[i]) != null) {
+                hit++;
+            }
+        }
+        long getCost = (System.nanoTime() - begin) / n;
+        System.out.printf("%-18s flooding keys=%d (same hashCode) put=%d ns get=%d ns hit=%d%n",
+                table.getClass().getSimpleName(), n, putCost, getCost, hit);
+    }
+
+    private static void printLatency(String name, AbstractHashTable<Integer, Integer> table, int step, int n) {
+        table.setRehashStep(step);
+        long[] latency = putLatency(table, n);
+        System.out.printf("%-18s rehashStep=%d entries=%d worst put=%.3f ms p999 put=%d ns avg put=%d ns%n",
+                name, step, n, latency[0] / 1e6, latency[1], latency[2]);
     }
 }
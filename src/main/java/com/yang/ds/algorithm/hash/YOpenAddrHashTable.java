@@ -3,6 +3,7 @@ package com.yang.ds.algorithm.hash;
 import com.yang.ds.algorithm.utils.YUtils;
 
 import java.util.Hashtable;
+import java.util.Map;
 
 /**
  * hash表实现，操作操作复杂度基本定格在O(1)
@@ -41,10 +42,29 @@ import java.util.Hashtable;
  * **/
 public class YOpenAddrHashTable<K, V> extends AbstractHashTable<K, V> {
 
+    /**
+     * 当前数组插入时出现过的最大探测次数，查找最多探测这么多次就可以结束了，
+     * 删除标记和rehash迁移走的位置不能置空，有了这个上限，查找不会因为删除标记太多而退化成遍历整个数组
+     * */
+    private int maxProbe;
+
+    /**rehash期间老数组的最大探测次数，老数组不再插入数据，这个值固定不变*/
+    private int oldMaxProbe;
+
+    /**默认删除标记(墓碑)占数组的比例超过1/4就整理数组*/
+    public static final float DEFAULT_TOMBSTONE_RATIO = 0.25f;
+
+    /**当前数组中删除标记(墓碑)的个数*/
+    private int tombstones;
+
+    /**删除标记占数组长度的比例超过这个值，重新整理数组，清除所有删除标记*/
+    private float tombstoneRatio = DEFAULT_TOMBSTONE_RATIO;
+
     public YOpenAddrHashTable(int size) {
         // 判断size是否是质数，如果不是质数则转换成质数
         int primeSize = tableForPrimeSize(size);
-        table = new Node[primeSize];
+        table = new Object[primeSize];
+        threshold = (int) (primeSize * loadFactor);
     }
 
     /**
@@ -61,79 +81,298 @@ public class YOpenAddrHashTable<K, V> extends AbstractHashTable<K, V> {
         return size;
     }
 
+    /**
+     * 元素个数超过阈值扩容两倍，开放地址法数组越满探测越长，不能等到数组满了再扩容
+     * */
     @Override
     void resize() {
-        Object[] oldTab = table;
-        int newSize = tableForPrimeSize(table.length << 1);
-        table = new Object[newSize];
-        for (Object n : oldTab) {
-            Node<K, V> node = (Node) n;
-            if (node != null && !node.isDeleted()) {
-                put(node.key, node.data);
-            }
+        if (size < threshold) {
+            return;
         }
-        // 循环结束,oldTab gc掉
+        grow(tableForPrimeSize(table.length << 1));
     }
 
+    /**
+     * 数组大小必须是质数
+     * */
+    @Override
+    protected int capacityFor(int expected) {
+        long need = (long) Math.ceil(expected / loadFactor) + 1;
+        return tableForPrimeSize((int) Math.min(need, MAX_CAPACITY));
+    }
+
+    @Override
+    protected void grow(int newCap) {
+        // 先完成上一次rehash，再切换探测次数上限，新数组没有删除标记
+        rehashAll();
+        oldMaxProbe = maxProbe;
+        maxProbe = 0;
+        tombstones = 0;
+        super.grow(newCap);
+    }
+
+    /**
+     * 老数组一个位置上的数据迁移到新数组，老数组上的node标记为删除，不能置空，否则会打断老数组上其他key的探测
+     * @param idx 老数组的索引
+     * */
+    @Override
+    void moveBucket(int idx) {
+        Node<K, V> node = (Node) oldTable[idx];
+        if (node != null && !node.isDeleted()) {
+            insert(new Node<>(node.key, node.data));
+            node.delete();
+        }
+    }
+
+    /**
+     * 添加覆盖
+     * 1. 探测过程中遇到删除标记不能停止，key有可能在删除标记的后面，记住遇到的第一个删除标记的位置
+     * 2. 探测到空位置，或者超过最大探测次数(后面不可能再有这个key)，说明key不存在，优先复用第一个删除标记的位置
+     * */
     @Override
     public void put(K key, V value) {
-        // 判断是否需要扩容
-        if (isFull()) {
-            // 扩容两倍，double
-            resize();
+        rehashStep();
+        int step = reHash(key, table.length);
+        int idx = index(key) % table.length;
+        int tombIdx = -1;
+        int tombProbes = 0;
+        int probes = 1;
+        Node<K, V> tmp;
+        while ((tmp = (Node) table[idx]) != null) {
+            if (tmp.isDeleted()) {
+                if (tombIdx < 0) {
+                    tombIdx = idx;
+                    tombProbes = probes;
+                }
+            } else if (tmp.getKey().equals(key)) {
+                // key已经存在则覆盖
+                tmp.data = value;
+                return;
+            }
+            if (probes >= maxProbe && tombIdx >= 0) {
+                break;
+            }
+            idx = (idx + step) % table.length;
+            probes++;
+        }
+        // rehash期间老数组中的key删除，新数据只写入新数组
+        if (isRehashing()) {
+            Node<K, V> old = getNode(oldTable, key);
+            if (old != null) {
+                old.delete();
+                size--;
+            }
+        }
+        if (tombIdx >= 0) {
+            // 复用删除标记的node对象
+            ((Node<K, V>) table[tombIdx]).reuse(key, value);
+            tombstones--;
+            probes = tombProbes;
+        } else {
+            table[idx] = new Node<>(key, value);
         }
+        if (probes > maxProbe) {
+            maxProbe = probes;
+        }
+        size++;
+        // 判断是否需要扩容，扩容两倍
+        resize();
+    }
+
+    /**
+     * 插入一个一定不存在的node到探测到的第一个空位置或者删除的位置，只有当前数组会插入数据
+     * @param node 插入的node
+     * */
+    private void insert(Node<K, V> node) {
         // 计算hash值
-        int hash = hash(key);
+        int hash = index(node.key);
         // 再hash 获取冲突探测的 step
-        int step = reHash(key);
+        int step = reHash(node.key, table.length);
         int idx = hash % table.length;
+        int probes = 1;
         Node tmp;
         while ((tmp = (Node) table[idx]) != null && !tmp.isDeleted()) {
             idx = (idx + step) % table.length;
+            probes++;
+        }
+        if (tmp != null) {
+            tombstones--;
+        }
+        table[idx] = node;
+        if (probes > maxProbe) {
+            maxProbe = probes;
         }
-        // 可以优化，对象复用
-        table[idx] = new Node(key, value);
-        size++;
     }
 
     @Override
     public void remove(K key) {
-        Node<K, V> findNode = getNode(key);
+        rehashStep();
+        Node<K, V> findNode = getNode(table, key);
         if (null != findNode) {
             findNode.delete();
             size--;
+            tombstones++;
+            if (tombstones > table.length * tombstoneRatio) {
+                compact();
+            }
+            return;
+        }
+        // 老数组中的删除标记，迁移完成就会随着老数组gc掉，不用统计
+        if (isRehashing()) {
+            findNode = getNode(oldTable, key);
+            if (null != findNode) {
+                findNode.delete();
+                size--;
+            }
+        }
+    }
+
+    /**
+     * 整理数组: 数组大小不变，所有存活的node重新放置一遍(node对象复用，不重新创建)，清除所有删除标记，最大探测次数也重新计算
+     * 删除很多的场景，删除标记会越来越多，探测越来越长，整理之后恢复到和没有删除过一样
+     * */
+    public void compact() {
+        rehashAll();
+        Object[] oldTab = table;
+        table = new Object[oldTab.length];
+        maxProbe = 0;
+        tombstones = 0;
+        for (Object n : oldTab) {
+            Node<K, V> node = (Node) n;
+            if (node != null && !node.isDeleted()) {
+                insert(node);
+            }
         }
     }
 
+    /**
+     * 当前数组中删除标记的个数
+     * */
+    public int tombstones() {
+        return tombstones;
+    }
+
+    /**
+     * 设置触发整理的删除标记比例
+     * @param tombstoneRatio 删除标记个数/数组长度 (0,1)
+     * */
+    public void setTombstoneRatio(float tombstoneRatio) {
+        if (tombstoneRatio <= 0 || tombstoneRatio >= 1 || Float.isNaN(tombstoneRatio))
+            throw new IllegalArgumentException("Illegal tombstone ratio: " + tombstoneRatio);
+        this.tombstoneRatio = tombstoneRatio;
+    }
+
     @Override
     public V get(K key) {
+        rehashStep();
         Node<K, V> findNode = getNode(key);
         return findNode == null ? null : findNode.getData();
     }
 
-    private Node getNode(K key) {
-        int hash = hash(key);
-        int step = reHash(key);
-        int idx = hash % table.length;
+    /**
+     * rehash期间新老两个数组都需要查找
+     * */
+    private Node<K, V> getNode(K key) {
+        Node<K, V> node = getNode(table, key);
+        if (node == null && isRehashing()) {
+            node = getNode(oldTable, key);
+        }
+        return node;
+    }
+
+    private Node<K, V> getNode(Object[] tab, K key) {
+        int hash = index(key);
+        int step = reHash(key, tab.length);
+        int idx = hash % tab.length;
         Node<K, V> tmp;
-        // 插入和查找的hash算法是一样的，如果移动到了null位置证明没有这个key对应的数据
-        while ((tmp = (Node) table[idx]) != null && !tmp.isDeleted()) {
-            if (tmp.getKey().equals(key)) {
+        // 插入和查找的hash算法是一样的，如果移动到了null位置证明没有这个key对应的数据,删除的位置需要继续向后探测
+        // 超过插入时的最大探测次数，说明不存在
+        int limit = tab == table ? maxProbe : oldMaxProbe;
+        for (int probes = 0; probes < limit && (tmp = (Node) tab[idx]) != null; probes++) {
+            if (!tmp.isDeleted() && tmp.getKey().equals(key)) {
                 return tmp;
             }
-            idx = (idx + step) % table.length;
+            idx = (idx + step) % tab.length;
         }
         return null;
     }
 
+    /**
+     * 查找key需要探测的位置个数，用来统计探测长度的分布
+     * */
+    int probeCount(K key) {
+        int step = reHash(key, table.length);
+        int idx = index(key) % table.length;
+        int probes = 1;
+        Node<K, V> tmp;
+        while (probes < maxProbe && (tmp = (Node) table[idx]) != null) {
+            if (!tmp.isDeleted() && tmp.getKey().equals(key)) {
+                break;
+            }
+            idx = (idx + step) % table.length;
+            probes++;
+        }
+        return probes;
+    }
+
+    /**
+     * hash值去掉符号位，负数取模会得到负数的索引
+     * */
+    private int index(K key) {
+        return hash(key) & 0x7fffffff;
+    }
+
     /**
      * 再hash的核心算法
      * @param key 需要再次hash的key
+     * @param length 数组长度，步长不能是数组长度的整数倍，否则原地探测
      * */
-    private int reHash(K key) {
+    private int reHash(K key, int length) {
         int constant = 17;
         // 取模范围在0到16，step 方位在17~1
-        return constant - (hash(key) % constant);
+        int step = (constant - (index(key) % constant)) % length;
+        return step == 0 ? 1 : step;
+    }
+
+    /**
+     * 跳过空位置和删除标记
+     * */
+    @Override
+    BucketCursor<K, V> cursor(final int lo, final int hi) {
+        return new BucketCursor<K, V>() {
+
+            private int idx = lo;
+
+            private Node<K, V> cur;
+
+            @Override
+            public boolean next() {
+                while (idx < hi) {
+                    Node<K, V> node = (Node<K, V>) table[idx++];
+                    if (node != null && !node.isDeleted()) {
+                        cur = node;
+                        return true;
+                    }
+                }
+                cur = null;
+                return false;
+            }
+
+            @Override
+            public K key() {
+                return cur.key;
+            }
+
+            @Override
+            public V value() {
+                return cur.data;
+            }
+
+            @Override
+            public Map.Entry<K, V> entry() {
+                return cur;
+            }
+        };
     }
 
     public String toString() {
@@ -151,7 +390,7 @@ public class YOpenAddrHashTable<K, V> extends AbstractHashTable<K, V> {
      * 数据存储node
      *
      * */
-    private class Node<K, V> {
+    private class Node<K, V> implements Map.Entry<K, V> {
         private int del = 1;
         private V data;
         private K key;
@@ -169,14 +408,36 @@ public class YOpenAddrHashTable<K, V> extends AbstractHashTable<K, V> {
             return del == -1;
         }
 
+        /**
+         * 删除标记的node复用
+         * */
+        public void reuse(K key, V data) {
+            this.key = key;
+            this.data = data;
+            this.del = 1;
+        }
+
         public V getData() {
             return data;
         }
 
+        @Override
         public K getKey() {
             return key;
         }
 
+        @Override
+        public V getValue() {
+            return data;
+        }
+
+        @Override
+        public V setValue(V value) {
+            V old = data;
+            data = value;
+            return old;
+        }
+
         public String toString() {
             return "[" + key + "," + data + "," + del + "]";
         }
@@ -194,5 +455,29 @@ public class YOpenAddrHashTable<K, V> extends AbstractHashTable<K, V> {
         table.remove("y2");
         System.out.println(table.get("y2"));
         System.out.println(table.toString());
+
+        // 逐个put和批量putAll(一次扩容到位)的耗时对比
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        Integer[] keys = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = i;
+        }
+        for (int round = 1; round <= 2; round++) {
+            long begin = System.nanoTime();
+            YOpenAddrHashTable<Integer, Integer> single = new YOpenAddrHashTable<>(16);
+            for (int i = 0; i < n; i++) {
+                single.put(keys[i], keys[i]);
+            }
+            long singleCost = System.nanoTime() - begin;
+            begin = System.nanoTime();
+            YOpenAddrHashTable<Integer, Integer> bulk = new YOpenAddrHashTable<>(16);
+            bulk.putAll(keys, keys);
+            long bulkCost = System.nanoTime() - begin;
+            begin = System.nanoTime();
+            long sum = bulk.parallelStream().mapToLong(e -> e.getValue()).sum();
+            long streamCost = System.nanoTime() - begin;
+            System.out.printf("round %d entries=%d put loop=%d ms putAll=%d ms parallel stream sum=%d ms (%d)%n", round, n,
+                    singleCost / 1000000, bulkCost / 1000000, streamCost / 1000000, sum);
+        }
     }
 }
@@ -0,0 +1,141 @@
+package com.yang.ds.algorithm.hash.strategy;
+
+import com.yang.ds.algorithm.hash.YLinkedHashTable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * hash算法的公共部分: 按类型分发key，字符串编码，小端读取
+ * */
+public abstract class AbstractHashStrategy implements HashStrategy {
+
+    /**ASCII字符串编码用的缓冲区，每个线程一个，避免每次hash都创建数组*/
+    private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[64];
+        }
+    };
+
+    @Override
+    public long hash64(CharSequence s) {
+        int len = s.length();
+        byte[] buf = BUFFER.get();
+        if (buf.length < len) {
+            buf = new byte[Math.max(len, buf.length << 1)];
+            BUFFER.set(buf);
+        }
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                // 非ASCII字符，直接编码
+                byte[] bytes = s.toString().getBytes(StandardCharsets.UTF_8);
+                return hash64(bytes, 0, bytes.length);
+            }
+            buf[i] = (byte) c;
+        }
+        return hash64(buf, 0, len);
+    }
+
+    @Override
+    public int hash(Object key) {
+        if (key == null) {
+            return 0;
+        }
+        long h;
+        if (key instanceof CharSequence) {
+            h = hash64((CharSequence) key);
+        } else if (key instanceof Long || key instanceof Integer || key instanceof Short || key instanceof Byte) {
+            h = hash64(((Number) key).longValue());
+        } else if (key instanceof byte[]) {
+            byte[] bytes = (byte[]) key;
+            h = hash64(bytes, 0, bytes.length);
+        } else {
+            h = hash64(key.hashCode());
+        }
+        return (int) (h ^ (h >>> 32));
+    }
+
+    protected static long getLong(byte[] b, int i) {
+        return (b[i] & 0xffL) | (b[i + 1] & 0xffL) << 8 | (b[i + 2] & 0xffL) << 16 | (b[i + 3] & 0xffL) << 24
+                | (b[i + 4] & 0xffL) << 32 | (b[i + 5] & 0xffL) << 40 | (b[i + 6] & 0xffL) << 48 | (b[i + 7] & 0xffL) << 56;
+    }
+
+    protected static long getInt(byte[] b, int i) {
+        return (b[i] & 0xffL) | (b[i + 1] & 0xffL) << 8 | (b[i + 2] & 0xffL) << 16 | (b[i + 3] & 0xffL) << 24;
+    }
+
+    /**
+     * murmur3的64位finalizer，每一位输入影响每一位输出
+     * */
+    protected static long fmix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * 几种有代表性的key集合，对比每种hash算法在2^n个桶上的分布和YLinkedHashTable的吞吐
+     * 最大桶长度和桶长度平方和/期望值(理想的随机分布约等于1 + 装填因子)越小越好
+     * 运行参数: [元素个数]
+     * */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 18;
+        Random random = new Random(17);
+        Object[][] keySets = new Object[4][n];
+        String[] names = {"long i<<10", "ip string", "seq string", "random long"};
+        for (int i = 0; i < n; i++) {
+            keySets[0][i] = (long) i << 10;
+            keySets[1][i] = "10." + (i >>> 16 & 0xff) + "." + (i >>> 8 & 0xff) + "." + (i & 0xff);
+            keySets[2][i] = String.format("user:%08d", i);
+            keySets[3][i] = random.nextLong();
+        }
+        String[] strategyNames = {"JDK", "SPREAD", "MURMUR3", "XXHASH64", "WYHASH"};
+        HashStrategy[] strategies = {JDK, SPREAD, MURMUR3, XXHASH64, WYHASH};
+        // 第一轮作为预热，以第二轮的结果为准
+        for (int round = 1; round <= 2; round++) {
+            System.out.println("round " + round);
+            for (int k = 0; k < keySets.length; k++) {
+                for (int s = 0; s < strategies.length; s++) {
+                    distribution(names[k], strategyNames[s], strategies[s], keySets[k]);
+                }
+            }
+        }
+    }
+
+    private static void distribution(String keyName, String strategyName, HashStrategy strategy, Object[] keys) {
+        int buckets = Integer.highestOneBit(keys.length) << 1;
+        int[] counts = new int[buckets];
+        long begin = System.nanoTime();
+        for (Object key : keys) {
+            counts[strategy.hash(key) & buckets - 1]++;
+        }
+        long hashCost = (System.nanoTime() - begin) / keys.length;
+        int max = 0;
+        long squareSum = 0;
+        for (int c : counts) {
+            max = Math.max(max, c);
+            squareSum += (long) c * c;
+        }
+        double expect = (double) keys.length * keys.length / buckets + keys.length;
+        YLinkedHashTable<Object, Object> table = new YLinkedHashTable<>(buckets);
+        table.setHashStrategy(strategy);
+        begin = System.nanoTime();
+        for (Object key : keys) {
+            table.put(key, key);
+        }
+        int hit = 0;
+        for (Object key : keys) {
+            if (table.get(key) != null) {
+                hit++;
+            }
+        }
+        long opCost = (System.nanoTime() - begin) / (2L * keys.length);
+        System.out.printf("%-12s %-9s max bucket=%-6d square sum/expect=%-8.3f hash=%d ns put/get=%d ns%s%n", keyName,
+                strategyName, max, squareSum / expect, hashCost, opCost, hit == keys.length ? "" : " ERROR");
+    }
+}
@@ -0,0 +1,50 @@
+package com.yang.ds.algorithm.hash.strategy;
+
+/**
+ * hash算法，hash表和一致性hash都可以指定使用哪一种
+ *
+ * 1. 实现只需要处理两种输入: 字节数组和long，字符串按照UTF-8编码成字节，整数类型的key直接按照long计算，其他对象对hashCode再计算一次
+ *
+ * 2. 输出64位，hash表只用低位(hash & mask)，所以低位必须和每一位输入都相关，JDK的hashCode对连续的数字/字符串低位几乎不变化
+ * */
+public interface HashStrategy {
+
+    /**Objects.hashCode，不做任何处理(hash表默认)*/
+    HashStrategy JDK = new JdkHashStrategy();
+
+    /**hashCode乘以黄金分割数再把高位异或到低位，代价最小*/
+    HashStrategy SPREAD = new SpreadHashStrategy();
+
+    /**MurmurHash3 x64_128取前64位*/
+    HashStrategy MURMUR3 = new Murmur3HashStrategy();
+
+    /**xxHash64*/
+    HashStrategy XXHASH64 = new XxHash64Strategy();
+
+    /**wyhash(final4)*/
+    HashStrategy WYHASH = new WyHashStrategy();
+
+    /**
+     * 字节数组的hash值
+     * @param data 数组
+     * @param off 开始位置
+     * @param len 长度
+     * */
+    long hash64(byte[] data, int off, int len);
+
+    /**
+     * long的hash值
+     * */
+    long hash64(long value);
+
+    /**
+     * 字符串的hash值，和UTF-8编码之后的字节数组的hash值一样
+     * */
+    long hash64(CharSequence s);
+
+    /**
+     * hash表使用的32位hash值，64位的高32位异或到低32位
+     * @param key key，可以为null
+     * */
+    int hash(Object key);
+}
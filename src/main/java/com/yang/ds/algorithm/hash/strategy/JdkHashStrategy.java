@@ -0,0 +1,29 @@
+package com.yang.ds.algorithm.hash.strategy;
+
+import java.util.Objects;
+
+/**
+ * JDK自带的hashCode，不做任何处理
+ * Long/Integer的hashCode就是数字本身，String的hashCode是31进制多项式，连续的key低位几乎一样
+ * */
+public class JdkHashStrategy extends AbstractHashStrategy {
+
+    @Override
+    public long hash64(byte[] data, int off, int len) {
+        int h = 1;
+        for (int i = off; i < off + len; i++) {
+            h = 31 * h + data[i];
+        }
+        return h;
+    }
+
+    @Override
+    public long hash64(long value) {
+        return Long.hashCode(value);
+    }
+
+    @Override
+    public int hash(Object key) {
+        return Objects.hashCode(key);
+    }
+}
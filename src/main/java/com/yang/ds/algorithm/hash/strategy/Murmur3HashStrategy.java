@@ -0,0 +1,92 @@
+package com.yang.ds.algorithm.hash.strategy;
+
+/**
+ * MurmurHash3 x64_128，每次处理16字节，返回128位结果的前64位
+ * long直接用finalizer(fmix64)
+ * */
+public class Murmur3HashStrategy extends AbstractHashStrategy {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private final long seed;
+
+    public Murmur3HashStrategy() {
+        this(0);
+    }
+
+    public Murmur3HashStrategy(long seed) {
+        this.seed = seed;
+    }
+
+    // 尾部switch故意不加break，依次累加剩下的字节
+    @SuppressWarnings("fallthrough")
+    @Override
+    public long hash64(byte[] data, int off, int len) {
+        long h1 = seed;
+        long h2 = seed;
+        int end = off + (len & ~15);
+        for (int i = off; i < end; i += 16) {
+            long k1 = getLong(data, i);
+            long k2 = getLong(data, i + 8);
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+        // 剩下不足16字节
+        long k1 = 0;
+        long k2 = 0;
+        switch (len & 15) {
+            case 15: k2 ^= (data[end + 14] & 0xffL) << 48;
+            case 14: k2 ^= (data[end + 13] & 0xffL) << 40;
+            case 13: k2 ^= (data[end + 12] & 0xffL) << 32;
+            case 12: k2 ^= (data[end + 11] & 0xffL) << 24;
+            case 11: k2 ^= (data[end + 10] & 0xffL) << 16;
+            case 10: k2 ^= (data[end + 9] & 0xffL) << 8;
+            case 9:
+                k2 ^= data[end + 8] & 0xffL;
+                h2 ^= mixK2(k2);
+            case 8: k1 ^= (data[end + 7] & 0xffL) << 56;
+            case 7: k1 ^= (data[end + 6] & 0xffL) << 48;
+            case 6: k1 ^= (data[end + 5] & 0xffL) << 40;
+            case 5: k1 ^= (data[end + 4] & 0xffL) << 32;
+            case 4: k1 ^= (data[end + 3] & 0xffL) << 24;
+            case 3: k1 ^= (data[end + 2] & 0xffL) << 16;
+            case 2: k1 ^= (data[end + 1] & 0xffL) << 8;
+            case 1:
+                k1 ^= data[end] & 0xffL;
+                h1 ^= mixK1(k1);
+            default:
+        }
+        h1 ^= len;
+        h2 ^= len;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        return h1 + h2;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    @Override
+    public long hash64(long value) {
+        return fmix64(value ^ seed);
+    }
+}
@@ -0,0 +1,27 @@
+package com.yang.ds.algorithm.hash.strategy;
+
+/**
+ * 对hashCode再扰动一次: 乘以黄金分割数(2^64/φ)，乘法让低位影响高位，再把高位异或到低位
+ * 只有一次乘法和移位，hashCode本身冲突的key扰动之后还是冲突
+ * */
+public class SpreadHashStrategy extends JdkHashStrategy {
+
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    @Override
+    public long hash64(byte[] data, int off, int len) {
+        return hash64(super.hash64(data, off, len));
+    }
+
+    @Override
+    public long hash64(long value) {
+        long h = value * GOLDEN;
+        return h ^ (h >>> 32);
+    }
+
+    @Override
+    public int hash(Object key) {
+        int h = super.hash(key) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
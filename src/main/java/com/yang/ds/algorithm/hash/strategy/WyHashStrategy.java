@@ -0,0 +1,102 @@
+package com.yang.ds.algorithm.hash.strategy;
+
+/**
+ * wyhash(final4)，核心是64位乘法得到128位结果，高低64位异或(mix)，每次处理16/48字节，短key很快
+ * java8没有Math.multiplyHigh，用32位拆分计算128位乘积的高64位
+ * long按照8个字节(小端)的输入计算，和hash64(byte[8])结果一样
+ * */
+public class WyHashStrategy extends AbstractHashStrategy {
+
+    private static final long S0 = 0x2d358dccaa6c78a5L;
+    private static final long S1 = 0x8bb84b93962eacc9L;
+    private static final long S2 = 0x4b33a62ed433d4a3L;
+    private static final long S3 = 0x4d5a2da51de1aa47L;
+
+    private final long seed;
+
+    public WyHashStrategy() {
+        this(0);
+    }
+
+    public WyHashStrategy(long seed) {
+        this.seed = seed ^ mix(seed ^ S0, S1);
+    }
+
+    @Override
+    public long hash64(byte[] data, int off, int len) {
+        long s = seed;
+        long a;
+        long b;
+        if (len <= 16) {
+            if (len >= 4) {
+                int shift = (len >>> 3) << 2;
+                a = getInt(data, off) << 32 | getInt(data, off + shift);
+                b = getInt(data, off + len - 4) << 32 | getInt(data, off + len - 4 - shift);
+            } else if (len > 0) {
+                a = (data[off] & 0xffL) << 16 | (data[off + (len >>> 1)] & 0xffL) << 8 | (data[off + len - 1] & 0xffL);
+                b = 0;
+            } else {
+                a = 0;
+                b = 0;
+            }
+        } else {
+            int p = off;
+            int i = len;
+            if (i > 48) {
+                long see1 = s;
+                long see2 = s;
+                do {
+                    s = mix(getLong(data, p) ^ S1, getLong(data, p + 8) ^ s);
+                    see1 = mix(getLong(data, p + 16) ^ S2, getLong(data, p + 24) ^ see1);
+                    see2 = mix(getLong(data, p + 32) ^ S3, getLong(data, p + 40) ^ see2);
+                    p += 48;
+                    i -= 48;
+                } while (i > 48);
+                s ^= see1 ^ see2;
+            }
+            while (i > 16) {
+                s = mix(getLong(data, p) ^ S1, getLong(data, p + 8) ^ s);
+                i -= 16;
+                p += 16;
+            }
+            a = getLong(data, p + i - 16);
+            b = getLong(data, p + i - 8);
+        }
+        return finish(a, b, s, len);
+    }
+
+    @Override
+    public long hash64(long value) {
+        long lo = value & 0xffffffffL;
+        long hi = value >>> 32;
+        return finish(lo << 32 | hi, hi << 32 | lo, seed, 8);
+    }
+
+    private static long finish(long a, long b, long s, long len) {
+        a ^= S1;
+        b ^= s;
+        long lo = a * b;
+        long hi = multiplyHigh(a, b);
+        return mix(lo ^ S0 ^ len, hi ^ S1);
+    }
+
+    /**
+     * 128位乘积的高64位和低64位异或
+     * */
+    private static long mix(long a, long b) {
+        return a * b ^ multiplyHigh(a, b);
+    }
+
+    /**
+     * 无符号64位乘法结果的高64位
+     * */
+    private static long multiplyHigh(long a, long b) {
+        long aLo = a & 0xffffffffL;
+        long aHi = a >>> 32;
+        long bLo = b & 0xffffffffL;
+        long bHi = b >>> 32;
+        long hiLo = aHi * bLo;
+        long cross = ((aLo * bLo) >>> 32) + (hiLo & 0xffffffffL) + aLo * bHi;
+        return aHi * bHi + (hiLo >>> 32) + (cross >>> 32);
+    }
+}
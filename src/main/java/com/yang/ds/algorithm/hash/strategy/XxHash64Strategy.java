@@ -0,0 +1,95 @@
+package com.yang.ds.algorithm.hash.strategy;
+
+/**
+ * xxHash64，4个累加器并行处理32字节，剩下的按8/4/1字节处理，最后avalanche
+ * long按照8个字节(小端)的输入计算，和hash64(byte[8])结果一样
+ * */
+public class XxHash64Strategy extends AbstractHashStrategy {
+
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long P3 = 0x165667B19E3779F9L;
+    private static final long P4 = 0x85EBCA77C2B2AE63L;
+    private static final long P5 = 0x27D4EB2F165667C5L;
+
+    private final long seed;
+
+    public XxHash64Strategy() {
+        this(0);
+    }
+
+    public XxHash64Strategy(long seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public long hash64(byte[] data, int off, int len) {
+        int end = off + len;
+        int i = off;
+        long h;
+        if (len >= 32) {
+            long v1 = seed + P1 + P2;
+            long v2 = seed + P2;
+            long v3 = seed;
+            long v4 = seed - P1;
+            int limit = end - 32;
+            do {
+                v1 = round(v1, getLong(data, i));
+                v2 = round(v2, getLong(data, i + 8));
+                v3 = round(v3, getLong(data, i + 16));
+                v4 = round(v4, getLong(data, i + 24));
+                i += 32;
+            } while (i <= limit);
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = mergeRound(h, v1);
+            h = mergeRound(h, v2);
+            h = mergeRound(h, v3);
+            h = mergeRound(h, v4);
+        } else {
+            h = seed + P5;
+        }
+        h += len;
+        for (; i + 8 <= end; i += 8) {
+            h ^= round(0, getLong(data, i));
+            h = Long.rotateLeft(h, 27) * P1 + P4;
+        }
+        if (i + 4 <= end) {
+            h ^= getInt(data, i) * P1;
+            h = Long.rotateLeft(h, 23) * P2 + P3;
+            i += 4;
+        }
+        for (; i < end; i++) {
+            h ^= (data[i] & 0xffL) * P5;
+            h = Long.rotateLeft(h, 11) * P1;
+        }
+        return avalanche(h);
+    }
+
+    @Override
+    public long hash64(long value) {
+        long h = seed + P5 + 8;
+        h ^= round(0, value);
+        h = Long.rotateLeft(h, 27) * P1 + P4;
+        return avalanche(h);
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * P2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * P1;
+    }
+
+    private static long mergeRound(long acc, long val) {
+        acc ^= round(0, val);
+        return acc * P1 + P4;
+    }
+
+    private static long avalanche(long h) {
+        h ^= h >>> 33;
+        h *= P2;
+        h ^= h >>> 29;
+        h *= P3;
+        h ^= h >>> 32;
+        return h;
+    }
+}
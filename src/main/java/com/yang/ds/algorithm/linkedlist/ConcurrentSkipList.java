@@ -0,0 +1,472 @@
+package com.yang.ds.algorithm.linkedlist;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * 无锁并发跳跃表(有序map)，参考《多处理器编程的艺术》的LockFreeSkipList
+ *
+ * 1. SkipList的查找路径保存在共享的stack字段里面，两个线程同时查找就会互相覆盖，这里查找路径(preds/succs)是每次调用的局部数组
+ *
+ * 2. 每个节点是一个塔: 一个key，每一层一个指向右边节点的引用(节点继承AtomicReferenceArray)，引用和删除标记放在一起CAS(删除之后换成Marker)
+ *
+ * 3. 删除分三步: 先把节点的value CAS成null(逻辑删除，CAS成功的线程才算删除成功，返回的就是CAS掉的value)，
+ * 再从上到下标记节点每一层的next，之后查找的时候发现标记过的节点，CAS前一个节点的next跳过它(物理删除)
+ *
+ * 4. 覆盖已经存在的key也是CAS value，value是null说明节点正在被删除，帮它标记之后重新插入新节点，
+ * 所以同一个key上并发的put/remove按value的CAS排成一个顺序，每个旧value只会被一个put或者remove返回
+ *
+ * 5. 插入先CAS第0层(插入成功)，再从下到上CAS每一层的索引，失败就重新查找前驱节点
+ *
+ * 6. get不修改任何引用，遇到标记的节点直接跳过，不加锁也不需要重试
+ * */
+public class ConcurrentSkipList<K extends Comparable<? super K>, V> {
+
+    /**最大层数*/
+    private static final int MAX_LEVEL = 32;
+
+    /**头尾哨兵节点，tail相当于正无穷*/
+    private final Node<K, V> head;
+
+    private final Node<K, V> tail;
+
+    /**true表示正序，false表示逆序*/
+    private final boolean order;
+
+    /**出现过的最高层数，查找从这一层开始，不用每次都从MAX_LEVEL开始，这个值偏小只会让查找慢一点，不影响正确性*/
+    private volatile int topLevel = 1;
+
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * 节点本身就是每一层右边节点的数组(塔)，节点被删除之后是包着右边节点的Marker，继承数组少一次间接访问
+     * */
+    private static final class Node<K, V> extends AtomicReferenceArray<Object> {
+
+        private static final long serialVersionUID = 1L;
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<Node, Object> VALUE =
+                AtomicReferenceFieldUpdater.newUpdater(Node.class, Object.class, "value");
+
+        final K key;
+
+        /**null表示已经被删除(或者正在删除)*/
+        volatile V value;
+
+        Node(K key, V value, int height) {
+            super(height);
+            this.key = key;
+            this.value = value;
+        }
+
+        int height() {
+            return length();
+        }
+
+        /**第0层被标记就是被删除了*/
+        boolean deleted() {
+            return get(0) instanceof Marker;
+        }
+
+        boolean casValue(V expect, V update) {
+            return VALUE.compareAndSet(this, expect, update);
+        }
+    }
+
+    /**
+     * 删除标记，引用和标记在同一个对象里面，一次CAS同时判断右边节点和是否删除
+     * 只有删除的时候才创建，没有删除的节点每一层直接指向右边节点，读的时候少一次间接访问
+     * */
+    private static final class Marker<K, V> {
+
+        final Node<K, V> next;
+
+        Marker(Node<K, V> next) {
+            this.next = next;
+        }
+    }
+
+    /**
+     * 某一层右边的节点，去掉删除标记
+     * */
+    @SuppressWarnings("unchecked")
+    private static <K, V> Node<K, V> right(Object next) {
+        return (Node<K, V>) (next instanceof Marker ? ((Marker<K, V>) next).next : next);
+    }
+
+    public ConcurrentSkipList() {
+        this(true);
+    }
+
+    public ConcurrentSkipList(boolean order) {
+        this.order = order;
+        head = new Node<>(null, null, MAX_LEVEL);
+        tail = new Node<>(null, null, MAX_LEVEL);
+        for (int i = 0; i < MAX_LEVEL; i++) {
+            head.set(i, tail);
+        }
+    }
+
+    /**
+     * 节点的key是否在key的前面，tail在所有key的后面
+     * */
+    private boolean before(Node<K, V> node, K key) {
+        if (node == tail) {
+            return false;
+        }
+        int cmp = node.key.compareTo(key);
+        return order ? cmp < 0 : cmp > 0;
+    }
+
+    private boolean same(Node<K, V> node, K key) {
+        return node != tail && node.key.compareTo(key) == 0;
+    }
+
+    /**
+     * 拍硬币决定层数，每一层的概率是1/2
+     * */
+    private static int randomLevel() {
+        int level = 1;
+        while (level < MAX_LEVEL && ThreadLocalRandom.current().nextBoolean()) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * 查找每一层key的前驱和后继，顺便物理删除路过的标记节点，CAS失败从头开始
+     * @param key 查找的key
+     * @param preds 每一层最后一个在key前面的节点，数组长度就是查找的层数
+     * @param succs 每一层第一个不在key前面的节点
+     * @return 第0层的后继是不是key
+     * */
+    @SuppressWarnings("unchecked")
+    private boolean find(K key, Node<K, V>[] preds, Node<K, V>[] succs) {
+        retry:
+        while (true) {
+            Node<K, V> pred = head;
+            for (int level = preds.length - 1; level >= 0; level--) {
+                Object first = pred.get(level);
+                if (first instanceof Marker) {
+                    // pred在上一层之后被删除了
+                    continue retry;
+                }
+                Node<K, V> curr = (Node<K, V>) first;
+                while (true) {
+                    Object next = curr.get(level);
+                    while (next instanceof Marker) {
+                        // curr已经被删除，跳过它，pred也被删除的话CAS失败
+                        Node<K, V> succ = ((Marker<K, V>) next).next;
+                        if (!pred.compareAndSet(level, curr, succ)) {
+                            continue retry;
+                        }
+                        curr = succ;
+                        next = curr.get(level);
+                    }
+                    if (before(curr, key)) {
+                        pred = curr;
+                        curr = (Node<K, V>) next;
+                    } else {
+                        break;
+                    }
+                }
+                preds[level] = pred;
+                succs[level] = curr;
+            }
+            return same(succs[0], key);
+        }
+    }
+
+    /**
+     * 查找路径，每次调用新建，线程之间不共享
+     * */
+    @SuppressWarnings("unchecked")
+    private static <K, V> Node<K, V>[] path(int levels) {
+        return (Node<K, V>[]) new Node<?, ?>[levels];
+    }
+
+    /**
+     * 添加覆盖
+     * @param key key
+     * @param value value
+     * @return 原来的value，不存在返回null
+     * */
+    public V put(K key, V value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("key and value can not be null");
+        }
+        int height = randomLevel();
+        int levels = Math.max(height, topLevel);
+        Node<K, V>[] preds = path(levels);
+        Node<K, V>[] succs = path(levels);
+        Node<K, V> node = null;
+        while (true) {
+            if (find(key, preds, succs)) {
+                Node<K, V> exist = succs[0];
+                V old = exist.value;
+                if (old == null) {
+                    // 节点正在被删除，帮它标记，下一次find会把它物理删除，然后插入新节点
+                    markAll(exist);
+                    continue;
+                }
+                if (exist.casValue(old, value)) {
+                    return old;
+                }
+                continue;
+            }
+            if (node == null) {
+                node = new Node<>(key, value, height);
+            }
+            for (int level = 0; level < height; level++) {
+                node.set(level, succs[level]);
+            }
+            // 第0层插入成功，节点就可见了
+            if (preds[0].compareAndSet(0, succs[0], node)) {
+                break;
+            }
+        }
+        count.increment();
+        int top;
+        while (height > (top = topLevel)) {
+            topLevel = Math.max(top, height);
+        }
+        // 从下到上建索引
+        for (int level = 1; level < height; level++) {
+            while (true) {
+                Node<K, V> succ = succs[level];
+                Object next = node.get(level);
+                if (next instanceof Marker || node.deleted()) {
+                    // 节点已经被删除，不用再建索引
+                    return null;
+                }
+                if (next != succ && !node.compareAndSet(level, next, succ)) {
+                    return null;
+                }
+                if (preds[level].compareAndSet(level, succ, node)) {
+                    break;
+                }
+                find(key, preds, succs);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 查找，不修改任何引用，跳过标记删除的节点
+     * */
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        if (key == null) {
+            return null;
+        }
+        Node<K, V> pred = head;
+        Node<K, V> curr = null;
+        for (int level = topLevel - 1; level >= 0; level--) {
+            curr = right(pred.get(level));
+            while (true) {
+                Object next = curr.get(level);
+                while (next instanceof Marker) {
+                    curr = ((Marker<K, V>) next).next;
+                    next = curr.get(level);
+                }
+                if (before(curr, key)) {
+                    pred = curr;
+                    curr = (Node<K, V>) next;
+                } else {
+                    break;
+                }
+            }
+        }
+        // 被删除的节点value是null
+        return same(curr, key) ? curr.value : null;
+    }
+
+    public boolean containsKey(K key) {
+        return get(key) != null;
+    }
+
+    /**
+     * 删除
+     * @return 删除的value，不存在返回null
+     * */
+    @SuppressWarnings("unchecked")
+    public V remove(K key) {
+        if (key == null) {
+            return null;
+        }
+        Node<K, V>[] preds = path(topLevel);
+        Node<K, V>[] succs = path(preds.length);
+        if (!find(key, preds, succs)) {
+            return null;
+        }
+        Node<K, V> node = succs[0];
+        // value CAS成null的线程删除成功
+        V value;
+        do {
+            value = node.value;
+            if (value == null) {
+                return null;
+            }
+        } while (!node.casValue(value, null));
+        count.decrement();
+        markAll(node);
+        // 物理删除，节点的索引可能比查找的层数高
+        if (node.height() > preds.length) {
+            preds = path(node.height());
+            succs = path(preds.length);
+        }
+        find(key, preds, succs);
+        return value;
+    }
+
+    /**
+     * 从上到下标记节点每一层的next，删除的线程和发现value是null的put都会调用，已经标记过的层跳过
+     * */
+    @SuppressWarnings("unchecked")
+    private void markAll(Node<K, V> node) {
+        for (int level = node.height() - 1; level >= 0; level--) {
+            Object next = node.get(level);
+            while (!(next instanceof Marker)) {
+                node.compareAndSet(level, next, new Marker<>((Node<K, V>) next));
+                next = node.get(level);
+            }
+        }
+    }
+
+    /**
+     * 按顺序遍历第0层，弱一致性，遍历期间的并发修改可能看到也可能看不到
+     * */
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Node<K, V> curr = (Node<K, V>) head.get(0);
+        while (curr != tail) {
+            Object next = curr.get(0);
+            if (next instanceof Marker) {
+                curr = ((Marker<K, V>) next).next;
+            } else {
+                V value = curr.value;
+                if (value != null) {
+                    action.accept(curr.key, value);
+                }
+                curr = (Node<K, V>) next;
+            }
+        }
+    }
+
+    /**
+     * 元素个数，并发修改的时候是近似值
+     * */
+    public int size() {
+        long n = count.sum();
+        return n < 0 ? 0 : (n > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) n);
+    }
+
+    /**
+     * 读多写少(90%get,9%put,1%remove)的混合负载，线程数从1到64，对比全局锁的SkipList和jdk的ConcurrentSkipListMap
+     * 运行参数: [key个数] [每个线程的操作次数] [最大线程数]
+     * */
+    public static void main(String[] args) throws InterruptedException {
+        final int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        final int ops = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        // 第一轮作为预热
+        System.out.println("warm up");
+        round(1, n, ops);
+        for (int threads = 1; threads <= maxThreads; threads <<= 1) {
+            round(threads, n, ops);
+        }
+    }
+
+    private static void round(int threads, final int n, final int ops) throws InterruptedException {
+        final ConcurrentSkipList<Integer, Integer> lockFree = new ConcurrentSkipList<>();
+        final ConcurrentSkipListMap<Integer, Integer> jdk = new ConcurrentSkipListMap<>();
+        final SkipList<Integer> locked = new SkipList<>(20, true);
+        for (int i = 0; i < n; i += 2) {
+            lockFree.put(i, i);
+            jdk.put(i, i);
+            locked.insert(i);
+        }
+        final Object lock = new Object();
+        double lockedOps = throughput(threads, n, ops, new Operation() {
+            @Override
+            public void run(int op, int key) {
+                synchronized (lock) {
+                    if (op == 0) {
+                        locked.delete(key);
+                    } else if (op < 10) {
+                        locked.insert(key);
+                    } else {
+                        locked.get(key);
+                    }
+                }
+            }
+        });
+        double lockFreeOps = throughput(threads, n, ops, new Operation() {
+            @Override
+            public void run(int op, int key) {
+                if (op == 0) {
+                    lockFree.remove(key);
+                } else if (op < 10) {
+                    lockFree.put(key, key);
+                } else {
+                    lockFree.get(key);
+                }
+            }
+        });
+        double jdkOps = throughput(threads, n, ops, new Operation() {
+            @Override
+            public void run(int op, int key) {
+                if (op == 0) {
+                    jdk.remove(key);
+                } else if (op < 10) {
+                    jdk.put(key, key);
+                } else {
+                    jdk.get(key);
+                }
+            }
+        });
+        System.out.printf("threads=%-3d synchronized SkipList=%.0f ops/s ConcurrentSkipList=%.0f ops/s ConcurrentSkipListMap=%.0f ops/s%n",
+                threads, lockedOps, lockFreeOps, jdkOps);
+    }
+
+    private interface Operation {
+        /**
+         * @param op 0~99，0删除，1~9添加，其他查询
+         * */
+        void run(int op, int key);
+    }
+
+    private static double throughput(int threads, final int n, final int ops, final Operation operation) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch end = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < ops; i++) {
+                        operation.run(random.nextInt(100), random.nextInt(n));
+                    }
+                    end.countDown();
+                }
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        end.await();
+        return (double) threads * ops * 1e9 / (System.nanoTime() - begin);
+    }
+}
@@ -1,7 +1,9 @@
 package com.yang.ds.algorithm.linkedlist;
 
+import com.yang.ds.algorithm.utils.YUtils;
+
+import java.util.Arrays;
 import java.util.Random;
-import java.util.Stack;
 
 
 /**
@@ -13,21 +15,39 @@ import java.util.Stack;
  * <p>
  * 突然感觉特么的，红黑树真是比这个东东复杂不知多少倍啊，跳跃表，只需要掌握链表，栈自己脑子想想代码基本就能弄出来，红黑树得600行代码，而且不能保证
  * 每次写完都没bug
+ * <p>
+ * 节点布局：每个元素只有一个节点(塔)，第0层的右边节点直接放在节点里，第1层以上的右边节点和跨度放在数组里，
+ * 不再是每一层一个带right/down的节点，元素只存一次，查找的时候向下走不需要再跳到另一个对象
+ * <p>
+ * 层数：可以构造时固定，也可以随元素个数增长(size每增加到1/p倍最大层数加1，层数约等于log(1/p)N)，层数固定太小元素多了查找接近线性
  */
-public class SkipList {
+public class SkipList<T extends Comparable<? super T>> {
+
+    // 拍硬币决定概率，1/2
+    private static final double PROBABILITY = 0.5;
 
-    // 拍硬币决定概率，1/2,random 随机 ps:bound the upper bound (exclusive)
-    private static final int RATE = 2;
-    //顶层头节点
-    private Node head;
+    // 最大层数上限
+    private static final int MAX_LEVEL = 32;
 
-    //相邻两层元素个数的比例
-    private int rate = RATE;
+    //头节点，所有层的开始
+    private Node<T> head;
 
-    //跳跃表层数
+    //每个节点出现在上一层的概率，相邻两层元素个数的比例是1/probability
+    private final double probability;
+
+    //跳跃表最大层数，新节点的层数不超过这个值
     private int level;
 
-    //所有层节点个数
+    //最大层数是否随元素个数增长
+    private final boolean autoLevel;
+
+    //元素个数达到这个值最大层数加1
+    private double growSize;
+
+    //实际有节点的最高层数，查询从这一层开始
+    private int topLevel = 1;
+
+    //元素个数
     private int size;
 
     //true表示正序，false表示逆序
@@ -36,133 +56,206 @@ public class SkipList {
     //随机数
     private Random random;
 
-    //保存查询时遍历的节点
-    private Stack<Node> stack;
+    //保存查询时每一层遍历到的最后一个节点
+    private Node<T>[] update;
 
-    //节点类
-    private static class Node {
+    //查询路径上每个节点的位置，ranks[i]是update[i]前面的元素个数
+    private int[] ranks;
 
-        private Comparable comparable;
+    //节点类，一个元素一个节点
+    private static class Node<T> {
 
-        //同一层的右边节点
-        private Node right;
+        private final T comparable;
 
-        //下一层的对应节点
-        private Node down;
+        //第0层的右边节点
+        private Node<T> right;
 
-        public Node(Comparable comparable) {
+        //第1层以上的右边节点，up[i - 1]是第i层，只有一层的节点为null
+        private Node<T>[] up;
+
+        //第1层以上到右边节点跨过的底层元素个数，右边没有节点时为0，第0层都是1不用存
+        private int[] span;
+
+        public Node(T comparable, int height) {
             this.comparable = comparable;
-            this.right = null;
-            this.down = null;
+            if (height > 1) {
+                this.up = newNodes(height - 1);
+                this.span = new int[height - 1];
+            }
+        }
+
+        private Node<T> next(int level) {
+            return level == 0 ? right : up[level - 1];
+        }
+
+        private void setNext(int level, Node<T> node) {
+            if (level == 0)
+                right = node;
+            else
+                up[level - 1] = node;
+        }
+
+        private int span(int level) {
+            return level == 0 ? 1 : span[level - 1];
+        }
+
+        private void setSpan(int level, int value) {
+            if (level > 0)
+                span[level - 1] = value;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> Node<T>[] newNodes(int n) {
+            return (Node<T>[]) new Node<?>[n];
+        }
+
+        //头节点层数增加
+        private void grow(int height) {
+            up = up == null ? newNodes(height - 1) : Arrays.copyOf(up, height - 1);
+            span = span == null ? new int[height - 1] : Arrays.copyOf(span, height - 1);
         }
     }
 
+    /**
+     * 固定层数
+     */
     public SkipList(int level, boolean order) {
+        this(level, order, PROBABILITY);
+    }
+
+    /**
+     * 固定层数
+     * @param probability 节点出现在上一层的概率
+     */
+    public SkipList(int level, boolean order, double probability) {
+        this(level, order, probability, false);
+    }
+
+    /**
+     * 层数随元素个数增长
+     */
+    public SkipList(boolean order) {
+        this(order, PROBABILITY);
+    }
+
+    /**
+     * 层数随元素个数增长
+     * @param probability 节点出现在上一层的概率，越小每个元素的平均层数越少(占用内存越少)，每一层向右走的步数越多
+     */
+    public SkipList(boolean order, double probability) {
+        this(1, order, probability, true);
+    }
+
+    private SkipList(int level, boolean order, double probability, boolean autoLevel) {
+        if (level < 1 || level > MAX_LEVEL)
+            throw new IllegalArgumentException("Illegal level: " + level);
+        if (!(probability > 0 && probability < 1))
+            throw new IllegalArgumentException("Illegal probability: " + probability);
         this.level = level;
-        this.size = 0;
-        this.size = 0;
         this.order = order;
+        this.probability = probability;
+        this.autoLevel = autoLevel;
+        this.growSize = 1 / probability;
         this.random = new Random();
-        this.stack = new Stack<Node>();
+        this.update = Node.newNodes(level);
+        this.ranks = new int[level];
 
         // 哨兵模式，初始化一个空头,头节点的值默认为null
-        this.head = new Node(null);
+        this.head = new Node<>(null, level);
+    }
 
-        // 生成一个纵向的链,从上到下的链
-        Node temp = head;
-        for (int i = 1; i < level; i++) {
-            temp.down = new Node(null);
-            // 下一层链表关联上
-            temp = temp.down;
-        }
+    /**
+     * a是否排在b前面
+     */
+    private boolean before(T a, T b) {
+        int cmp = a.compareTo(b);
+        return order ? cmp < 0 : cmp > 0;
     }
 
     /**
-     * 查询元素，从纵向链表的head开始向右，向下，歌词啊哈哈，进行链表遍历
-     * 1. 查找的是插入位置，不判断是否找到，查询方法，自己判断.right是否需指定值相等，如果相等则找到，否则没有找到,(不包含相等元素，相等元素覆盖)
-     * 2. 之所以返回相等元素之前的一个元素，是想把重复元素覆盖掉，.right赋值的时候可以直接覆盖(此程序中没有，用的是判断，也可以直接强覆盖)
-     * 查询元素，自顶向下
+     * 查询元素，从head的最高层开始向右，向下
      * 正序时，返回底层【小于】给定值的最大的节点，包含头节点
      * 逆序时，返回底层【大于】给定值的最小的节点，包含头节点
-     * <p>
-     * ps: 链表的最后一层不放入栈中，栈只保存从第二层链表开始的路径
-     */
-    private Node search(Comparable comparable) {
-        // 每次遍历清空栈，保存新的路径
-        stack.clear();
-
-        //从顶层开始
-        Node temp = head;
-        while (true) {
-            while (temp.right != null) {
-                /*
-                * 正序，从小到大,遇到比目标元素大的停止，开始向下引用的方向走,目标遍历到的node是比当前node小，并且是最大的
-                * 这样就可以向下走，就可以找到底层的链表，插入位置了，相当于是红黑树中左子树最大的节点，找到左子树，然后向右递归
-                * 找到最大，这个相当于就是一个前继节点，前继节点之后插入
-                *
-                * */
-                if (order && temp.right.comparable.compareTo(comparable) >= 0)
-                    break;
-                // 逆序，从大到小
-                if (!order && temp.right.comparable.compareTo(comparable) <= 0)
-                    break;
-                // 继续向右移动，右侧要么是比当前大，要不就是比当前小
-                temp = temp.right;
+     * 每一层遍历到的最后一个节点和它的位置保存在update和ranks中
+     */
+    private Node<T> search(T comparable) {
+        Node<T> temp = head;
+        int rank = 0;
+        for (int i = topLevel - 1; i >= 0; i--) {
+            Node<T> next;
+            // 遇到不在给定值前面的节点停止，开始向下走
+            while ((next = temp.next(i)) != null && before(next.comparable, comparable)) {
+                rank += temp.span(i);
+                temp = next;
             }
-            // 上一层链表找到了合适位置开始向下找,最后一层插入的链表，没有down引用
-            if (temp.down == null)
-                break;
-
-            // 保存遍历路径，除了最后一层真正存储数据的链表
-            //
-            stack.push(temp);
-
-            // 向下一层移动
-            temp = temp.down;
+            update[i] = temp;
+            ranks[i] = rank;
         }
         return temp;
     }
 
+    /**
+     * 拍硬币决定新节点的层数
+     */
+    private int randomLevel() {
+        int height = 1;
+        while (height < level && random.nextDouble() < probability) {
+            height++;
+        }
+        return height;
+    }
+
     /**
      * 添加元素
      * 若元素已存在，则返回，保证无重复元素
      */
-    public void insert(Comparable comparable) {
-        Node temp = search(comparable);
+    public void insert(T comparable) {
+        Node<T> temp = search(comparable);
         //元素已存在
         if (temp.right != null && temp.right.comparable.compareTo(comparable) == 0)
             return;
-        Node node = new Node(comparable);
-        Node other;
-
-        //根据随机数，自底向上添加每层的新节点
-        while (true) {
-            //当前层添加
-            node.right = temp.right;
-            temp.right = node;
-
-            // 抛硬币决定上一层是否添加索引,随机数0和1之间产生，每次都是1/2,决定是否向上一层链表插入
-            if (random.nextInt(rate) != 0 || stack.isEmpty()) {
-                break;
-            }
-
-            // 上一层node取出
-            temp = stack.pop();
-
-            // 上一层增加一个node，down指向当前层节点
-            other = node;
-            node = new Node(comparable);
-            node.down = other;
+        int height = randomLevel();
+        // 新节点比现有的层都高，高出的层从头节点开始
+        for (int i = topLevel; i < height; i++) {
+            update[i] = head;
+            ranks[i] = 0;
+            head.setSpan(i, 0);
+        }
+        topLevel = Math.max(topLevel, height);
+
+        Node<T> node = new Node<>(comparable, height);
+        // 新节点的位置，从1开始
+        int rank = ranks[0] + 1;
+        for (int i = 0; i < height; i++) {
+            Node<T> pred = update[i];
+            Node<T> next = pred.next(i);
+            //前一个节点原来的跨度分成两段，新节点后面的元素位置都加1
+            node.setSpan(i, next == null ? 0 : pred.span(i) - (rank - ranks[i]) + 1);
+            pred.setSpan(i, rank - ranks[i]);
+            node.setNext(i, next);
+            pred.setNext(i, node);
+        }
+        // 更高层没有新节点，跨过新节点的跨度加1
+        for (int i = height; i < topLevel; i++) {
+            if (update[i].next(i) != null)
+                update[i].setSpan(i, update[i].span(i) + 1);
         }
         size++;
+        if (autoLevel && size >= growSize && level < MAX_LEVEL) {
+            level++;
+            growSize /= probability;
+            head.grow(level);
+            update = Node.newNodes(level);
+            ranks = new int[level];
+        }
     }
 
     /**
      * 查找
      */
-    public Comparable get(Comparable cmp) {
-        Node result = search(cmp);
-        if (result != null && result.right != null && result.right.comparable.compareTo(cmp) == 0) {
+    public T get(T cmp) {
+        Node<T> result = search(cmp);
+        if (result.right != null && result.right.comparable.compareTo(cmp) == 0) {
             return result.right.comparable;
         }
         return null;
@@ -170,41 +263,214 @@ public class SkipList {
 
     //删除元素
     //若元素不存在，则返回，否则删除所有层中包含的元素
-    public void delete(Comparable comparable) {
-        Node temp = search(comparable);
+    public void delete(T comparable) {
+        Node<T> temp = search(comparable);
+        Node<T> node = temp.right;
         //元素不存在
-        if (temp.right == null || temp.right.comparable.compareTo(comparable) != 0)
+        if (node == null || node.comparable.compareTo(comparable) != 0)
             return;
-        while (true) {
+        for (int i = 0; i < topLevel; i++) {
+            Node<T> pred = update[i];
+            if (pred.next(i) == node) {
+                //从底层开始，依次删除每层的元素，两段跨度合并
+                Node<T> next = node.next(i);
+                pred.setSpan(i, next == null ? 0 : pred.span(i) + node.span(i) - 1);
+                pred.setNext(i, next);
+            } else if (pred.next(i) != null) {
+                //当前层没有这个元素(层数是随机的)，跨过被删除元素的跨度减1
+                pred.setSpan(i, pred.span(i) - 1);
+            }
+        }
+        // 最高层空了降低查询开始的层数
+        while (topLevel > 1 && head.next(topLevel - 1) == null) {
+            topLevel--;
+        }
+        size--;
+    }
 
-            //当前层的元素不存在,索引都是随机的很可能没有指定的值，所以索引如果没有了，说明再上一层肯定也没有
-            if (temp.right == null || temp.right.comparable.compareTo(comparable) != 0)
-                break;
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 当前最大层数
+     */
+    public int level() {
+        return level;
+    }
 
-            //从底层开始，依次删除每层的元素
-            temp.right = temp.right.right;
+    /**
+     * 元素的排名，O(logN)
+     * @return 元素在跳跃表中的位置(按order的顺序，从0开始)，不存在返回-1
+     */
+    public int rank(T comparable) {
+        Node<T> temp = head;
+        int rank = 0;
+        for (int i = topLevel - 1; i >= 0; i--) {
+            Node<T> next;
+            // 和search一样，只是相等的元素也向右走，最后停在元素本身上
+            while ((next = temp.next(i)) != null && !before(comparable, next.comparable)) {
+                rank += temp.span(i);
+                temp = next;
+            }
+        }
+        if (temp != head && temp.comparable.compareTo(comparable) == 0)
+            return rank - 1;
+        return -1;
+    }
 
-            //到达顶层结束
-            if (stack.isEmpty())
+    /**
+     * 第index个元素(按order的顺序，从0开始)，O(logN)
+     */
+    public T select(int index) {
+        if (index < 0 || index >= size)
+            throw new IllegalArgumentException("Illegal index: " + index + ", size: " + size);
+        int target = index + 1;
+        int rank = 0;
+        Node<T> temp = head;
+        for (int i = topLevel - 1; i >= 0; i--) {
+            Node<T> next;
+            // 跨度不超过目标位置就向右走，否则向下
+            while ((next = temp.next(i)) != null && rank + temp.span(i) <= target) {
+                rank += temp.span(i);
+                temp = next;
+            }
+            if (rank == target)
                 break;
+        }
+        return temp.comparable;
+    }
 
-            // 继续删除上一层
-            temp = stack.pop();
+    /**
+     * lo <= 元素 <= hi的元素个数(按元素的大小，和order无关)，lo > hi返回0，O(logN)
+     */
+    public int countInRange(T lo, T hi) {
+        if (lo.compareTo(hi) > 0)
+            return 0;
+        // 逆序时大的元素在前面
+        return order ? countBefore(hi, true) - countBefore(lo, false) : countBefore(lo, true) - countBefore(hi, false);
+    }
+
+    /**
+     * 排在给定值前面的元素个数
+     * @param inclusive 是否包含和给定值相等的元素
+     */
+    private int countBefore(T comparable, boolean inclusive) {
+        Node<T> temp = head;
+        int rank = 0;
+        for (int i = topLevel - 1; i >= 0; i--) {
+            Node<T> next;
+            while ((next = temp.next(i)) != null) {
+                int cmp = next.comparable.compareTo(comparable);
+                if (cmp == 0 ? !inclusive : (order ? cmp > 0 : cmp < 0))
+                    break;
+                rank += temp.span(i);
+                temp = next;
+            }
         }
-        size--;
+        return rank;
     }
 
-    public int size() {
-        return size;
+    /**
+     * 遍历底层链表计算排名，O(N)，作为rank的对比
+     */
+    private int walkRank(T comparable) {
+        int rank = 0;
+        for (Node<T> temp = head.right; temp != null; temp = temp.right, rank++) {
+            if (temp.comparable.compareTo(comparable) == 0)
+                return rank;
+        }
+        return -1;
+    }
+
+    /**
+     * 遍历底层链表找第index个元素，O(N)，作为select的对比
+     */
+    private T walkSelect(int index) {
+        Node<T> temp = head.right;
+        for (int i = 0; i < index; i++) {
+            temp = temp.right;
+        }
+        return temp.comparable;
     }
 
     public static void main(String[] args) {
-        SkipList skipList = new SkipList(4, true);
+        SkipList<Integer> skipList = new SkipList<>(4, true);
         skipList.insert(5);
         skipList.insert(7);
         skipList.insert(9);
         skipList.insert(18);
         System.out.println(skipList.get(6));
         System.out.println(new Random().nextInt(2));
+        System.out.println(skipList.rank(9) + " " + skipList.select(3) + " " + skipList.countInRange(6, 18));
+
+        // rank/select和遍历底层链表对比，运行参数: [元素个数] [查询次数]
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        SkipList<Integer> list = new SkipList<>(32 - Integer.numberOfLeadingZeros(n), true);
+        Random random = new Random(17);
+        for (int i = 0; i < n; i++) {
+            list.insert(random.nextInt());
+        }
+        Integer[] keys = new Integer[queries];
+        int[] indexes = new int[queries];
+        for (int i = 0; i < queries; i++) {
+            indexes[i] = random.nextInt(list.size());
+            keys[i] = list.select(indexes[i]);
+        }
+        // 第一轮作为预热，以第二轮的结果为准
+        for (int round = 1; round <= 2; round++) {
+            long check = 0;
+            long begin = System.nanoTime();
+            for (int i = 0; i < queries; i++) {
+                check += list.rank(keys[i]) + list.select(indexes[i]).hashCode();
+            }
+            long indexCost = (System.nanoTime() - begin) / queries;
+            begin = System.nanoTime();
+            for (int i = 0; i < queries; i++) {
+                check -= list.walkRank(keys[i]) + list.walkSelect(indexes[i]).hashCode();
+            }
+            long walkCost = (System.nanoTime() - begin) / queries;
+            begin = System.nanoTime();
+            for (int i = 0; i < queries; i++) {
+                // 大于等于第index个元素的个数是size - index
+                check += list.countInRange(keys[i], Integer.MAX_VALUE) - (list.size() - indexes[i]);
+            }
+            long rangeCost = (System.nanoTime() - begin) / queries;
+            System.out.printf("round %d n=%d rank+select=%d ns walk base list=%d ns countInRange=%d ns%s%n",
+                    round, list.size(), indexCost, walkCost, rangeCost, check == 0 ? "" : " ERROR");
+        }
+
+        // 固定层数和层数自增长对比每个元素占用的内存和查找耗时，固定4层的元素个数最多10万，否则插入太慢
+        list = null;
+        Integer[] values = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = random.nextInt();
+        }
+        memoryAndGet("fixed level=4", new SkipList<>(4, true), Arrays.copyOf(values, Math.min(n, 100000)));
+        memoryAndGet("fixed level=" + (32 - Integer.numberOfLeadingZeros(n)), new SkipList<>(32 - Integer.numberOfLeadingZeros(n), true), values);
+        memoryAndGet("auto p=1/2", new SkipList<>(true), values);
+        memoryAndGet("auto p=1/4", new SkipList<>(true, 0.25), values);
+    }
+
+    private static void memoryAndGet(String name, SkipList<Integer> list, Integer[] values) {
+        long before = YUtils.usedMemory();
+        for (Integer value : values) {
+            list.insert(value);
+        }
+        long bytes = YUtils.usedMemory() - before;
+        int hit = 0;
+        // 第一轮作为预热
+        long begin = 0;
+        for (int round = 1; round <= 2; round++) {
+            begin = System.nanoTime();
+            for (Integer value : values) {
+                if (list.get(value) != null)
+                    hit++;
+            }
+        }
+        long cost = (System.nanoTime() - begin) / values.length;
+        System.out.printf("%-16s n=%-8d level=%-3d %.1f bytes/key get=%d ns%s%n", name, list.size(), list.level(),
+                (double) bytes / list.size(), cost, hit == 2 * values.length ? "" : " ERROR");
     }
 }
@@ -0,0 +1,27 @@
+package com.yang.ds.algorithm.utils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * 基准测试用的分配统计，只给各个数据结构的main对比分配的内存，库代码不要依赖
+ * 依赖HotSpot的com.sun.management.ThreadMXBean，其他虚拟机上不支持，返回-1
+ * */
+public final class AllocationCounter {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private AllocationCounter() {
+    }
+
+    /**
+     * 当前线程累计分配的字节数，两次调用的差是中间分配的内存
+     * */
+    public static long threadAllocatedBytes() {
+        if (!(THREADS instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+        return threads.isThreadAllocatedMemorySupported() ? threads.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+    }
+}
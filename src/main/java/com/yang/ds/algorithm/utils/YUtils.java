@@ -1,6 +1,8 @@
 package com.yang.ds.algorithm.utils;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 public class YUtils {
 
@@ -56,6 +58,242 @@ public class YUtils {
         return -(low + 1);// 没有找到，返回需要插入的位置索引(为了区别正常索引,所以+1取负数，用的时候反操作)
     }
 
+    /**
+     * 查找的元素个数不超过这个值的时候用线性扫描
+     * HotSpot没有把计数循环向量化，线性扫描每个元素大约一个时钟周期，只在很小的范围内比二分快
+     * */
+    public static final int LINEAR_SEARCH_THRESHOLD = 8;
+
+    /**
+     * 查找范围的字节数超过这个值(大约是末级缓存的大小)的时候用有分支的查找
+     * 数据在缓存中的时候无分支查找没有预测失败，更快；不在缓存中的时候每层都要等一次内存读，
+     * 无分支查找下一次读的地址依赖这一次的结果，只能串行等待，
+     * 有分支的查找CPU会按预测提前执行下一层的读，相当于预取，反而更快
+     * */
+    public static final int SPECULATIVE_SEARCH_BYTES = 8 << 20;
+
+    /**
+     * 有序数组[from, to)中第一个大于等于key的位置，都小于key返回to
+     * 按元素个数选择查找方式: 很小的范围线性扫描，在缓存中的范围无分支二分，很大的范围有分支二分，
+     * B树节点内的查找都走这里
+     * */
+    public static int lowerBound(long[] a, int from, int to, long key) {
+        int len = to - from;
+        if (len <= LINEAR_SEARCH_THRESHOLD) {
+            return linearLowerBound(a, from, to, key);
+        }
+        return len <= SPECULATIVE_SEARCH_BYTES / 8 ? branchlessLowerBound(a, from, to, key) : branchyLowerBound(a, from, to, key);
+    }
+
+    /**
+     * 无分支二分: 每次只比较一次，区间长度固定减半，循环次数只和长度有关，
+     * 循环体里面的条件赋值JIT会编译成cmov，没有分支预测失败，对节点内几十到几百个key的查找比普通二分快
+     * */
+    public static int branchlessLowerBound(long[] a, int from, int to, long key) {
+        int len = to - from;
+        if (len <= 0) {
+            return from;
+        }
+        int base = from;
+        while (len > 1) {
+            int half = len >>> 1;
+            base = a[base + half - 1] < key ? base + half : base;
+            len -= half;
+        }
+        return a[base] < key ? base + 1 : base;
+    }
+
+    /**
+     * 线性扫描: 数出小于key的元素个数，不提前退出，循环里面没有分支，
+     * 数组有序所以个数就是第一个大于等于key的位置
+     * */
+    public static int linearLowerBound(long[] a, int from, int to, long key) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            count += a[i] < key ? 1 : 0;
+        }
+        return from + count;
+    }
+
+    /**
+     * 普通二分，每次比较都是一个分支，数组很大不在缓存中的时候用
+     * */
+    public static int branchyLowerBound(long[] a, int from, int to, long key) {
+        int low = from, high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (a[mid] < key)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * int数组的lowerBound
+     * */
+    public static int lowerBound(int[] a, int from, int to, int key) {
+        int len = to - from;
+        if (len <= LINEAR_SEARCH_THRESHOLD) {
+            return linearLowerBound(a, from, to, key);
+        }
+        return len <= SPECULATIVE_SEARCH_BYTES / 4 ? branchlessLowerBound(a, from, to, key) : branchyLowerBound(a, from, to, key);
+    }
+
+    public static int branchlessLowerBound(int[] a, int from, int to, int key) {
+        int len = to - from;
+        if (len <= 0) {
+            return from;
+        }
+        int base = from;
+        while (len > 1) {
+            int half = len >>> 1;
+            base = a[base + half - 1] < key ? base + half : base;
+            len -= half;
+        }
+        return a[base] < key ? base + 1 : base;
+    }
+
+    public static int linearLowerBound(int[] a, int from, int to, int key) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            count += a[i] < key ? 1 : 0;
+        }
+        return from + count;
+    }
+
+    public static int branchyLowerBound(int[] a, int from, int to, int key) {
+        int low = from, high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (a[mid] < key)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Comparable数组[from, to)的二分查找，返回值和binarySearch(List, key)一样: 找到返回下标，找不到返回-(插入位置 + 1)
+     * 比较要调用compareTo，比较的次数比分支预测更重要，所以还是每次比较三路分支，相等的时候提前返回，
+     * 只是省掉了List.get和Arrays.asList的包装
+     * */
+    @SuppressWarnings("unchecked")
+    public static <K> int binarySearch(Object[] a, int from, int to, K key) {
+        if (null == a || null == key) {
+            throw new IllegalArgumentException("args exit null");
+        }
+        int low = from, high = to - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = ((Comparable<? super K>) a[mid]).compareTo(key);
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Eytzinger布局中每个位置对应的有序数组下标
+     * Eytzinger布局就是把有序数组按完全二叉搜索树的层序(BFS)存放: 下标从1开始，k的孩子是2k和2k+1，
+     * 查找的路径从数组头部往后走，前几层集中在开头几个cache line里面，一直在缓存中；
+     * 第k个位置往下4层的16个节点是连续的[16k, 16k + 16)，一个cache line装得下(long是两个)，
+     * 比普通二分每层跳到相距很远的位置cache miss少
+     * @return 长度n + 1，order[k]是位置k的元素在有序数组中的下标，order[0] = n(eytzingerLowerBound返回0表示都小于key)
+     * */
+    public static int[] eytzingerOrder(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("illegal size " + n);
+        }
+        int[] order = new int[n + 1];
+        order[0] = n;
+        // 中序遍历完全二叉树就是有序的顺序，用栈代替递归
+        int[] stack = new int[32];
+        int top = 0, k = 1, i = 0;
+        while (k <= n || top > 0) {
+            while (k <= n) {
+                stack[top++] = k;
+                k = 2 * k;
+            }
+            k = stack[--top];
+            order[k] = i++;
+            k = 2 * k + 1;
+        }
+        return order;
+    }
+
+    /**
+     * 有序数组转成Eytzinger布局，长度n + 1，下标0不使用
+     * 只适合不再修改的有序数组，比如批量加载之后只读的索引
+     * */
+    public static long[] eytzinger(long[] sorted) {
+        int[] order = eytzingerOrder(sorted.length);
+        long[] e = new long[sorted.length + 1];
+        for (int k = 1; k < e.length; k++) {
+            e[k] = sorted[order[k]];
+        }
+        return e;
+    }
+
+    public static int[] eytzinger(int[] sorted) {
+        int[] order = eytzingerOrder(sorted.length);
+        int[] e = new int[sorted.length + 1];
+        for (int k = 1; k < e.length; k++) {
+            e[k] = sorted[order[k]];
+        }
+        return e;
+    }
+
+    /**
+     * Eytzinger布局中第一个大于等于key的位置，都小于key返回0
+     * 每层只比较一次，k = 2k + (e[k] < key)；走到叶子下面之后，
+     * 最后一次向左走(比较结果是大于等于)的位置就是结果: 去掉k末尾连续的1和再上一位
+     * 对应的有序数组下标是eytzingerOrder(n)[结果]
+     *
+     * 在缓存中的时候无分支；超过SPECULATIVE_SEARCH_BYTES的时候用分支，CPU按预测提前读下一层，
+     * 两个孩子2k、2k + 1在同一个cache line里面，预测错了读到的也是需要的那一行，
+     * Java没有预取指令，这就是预取的效果
+     * */
+    public static int eytzingerLowerBound(long[] e, long key) {
+        int n = e.length - 1, k = 1;
+        if (n <= SPECULATIVE_SEARCH_BYTES / 8) {
+            while (k <= n) {
+                k = 2 * k + (e[k] < key ? 1 : 0);
+            }
+        } else {
+            while (k <= n) {
+                if (e[k] < key)
+                    k = 2 * k + 1;
+                else
+                    k = 2 * k;
+            }
+        }
+        return k >>> (Integer.numberOfTrailingZeros(~k) + 1);
+    }
+
+    public static int eytzingerLowerBound(int[] e, int key) {
+        int n = e.length - 1, k = 1;
+        if (n <= SPECULATIVE_SEARCH_BYTES / 4) {
+            while (k <= n) {
+                k = 2 * k + (e[k] < key ? 1 : 0);
+            }
+        } else {
+            while (k <= n) {
+                if (e[k] < key)
+                    k = 2 * k + 1;
+                else
+                    k = 2 * k;
+            }
+        }
+        return k >>> (Integer.numberOfTrailingZeros(~k) + 1);
+    }
+
 
     /**
      * 判断是否是质数的方法
@@ -113,7 +351,112 @@ public class YUtils {
         return bitSize <= 0 ? defaultSize : (bitSize > maxSize ? maxSize : bitSize + 1);
     }
 
+    /**
+     * 获取当前堆已经使用的内存大小(字节)，先多次gc，尽量让统计的值只包含存活的对象,用来粗略的对比数据结构的内存占用
+     * */
+    public static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * 查找内核对比: 数组长度从8到10M，随机查找，每次查找的平均耗时(ns)
+     * jdk是Arrays.binarySearch，adaptive是按长度选择的lowerBound，eytzinger按长度选择有没有分支，
+     * list是binarySearch(List)，array是binarySearch(Object[])
+     * 运行参数: [最大长度]
+     * */
     public static void main(String[] args) {
-        System.out.println(YUtils.isPrime(49));
+        int maxSize = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        int[] sizes = {8, 16, 32, 64, 128, 256, 1024, 4096, 65536, 1 << 20, 10000000};
+        int queries = 1 << 21;
+        long[] probes = new long[queries];
+        // 第一轮作为预热，以第二轮的结果为准
+        for (int round = 1; round <= 2; round++) {
+            System.out.printf("round %d %9s %8s %10s %8s %8s %10s %8s %8s%n", round, "size", "jdk", "branchless",
+                    "linear", "adaptive", "eytzinger", "list", "array");
+            for (int size : sizes) {
+                if (size > maxSize) {
+                    break;
+                }
+                long[] a = new long[size];
+                for (int i = 0; i < size; i++) {
+                    a[i] = 2L * i;
+                }
+                long[] e = eytzinger(a);
+                int[] order = eytzingerOrder(size);
+                Random random = new Random(size);
+                for (int i = 0; i < queries; i++) {
+                    probes[i] = random.nextInt(2 * size);
+                }
+                long check = 0, begin = System.nanoTime();
+                for (long key : probes) {
+                    int i = Arrays.binarySearch(a, key);
+                    check += i >= 0 ? i : -i - 1;
+                }
+                long jdk = System.nanoTime() - begin;
+                begin = System.nanoTime();
+                for (long key : probes) {
+                    check -= branchlessLowerBound(a, 0, size, key);
+                }
+                long branchless = System.nanoTime() - begin;
+                long linear = -1;
+                if (size <= 1024) {
+                    begin = System.nanoTime();
+                    for (long key : probes) {
+                        check += linearLowerBound(a, 0, size, key);
+                    }
+                    linear = System.nanoTime() - begin;
+                }
+                begin = System.nanoTime();
+                for (long key : probes) {
+                    check -= lowerBound(a, 0, size, key);
+                }
+                long adaptive = System.nanoTime() - begin;
+                begin = System.nanoTime();
+                for (long key : probes) {
+                    check += order[eytzingerLowerBound(e, key)];
+                }
+                long eytz = System.nanoTime() - begin;
+                long list = -1, array = -1;
+                if (size <= 1 << 20) {
+                    Long[] boxed = new Long[size];
+                    for (int i = 0; i < size; i++) {
+                        boxed[i] = a[i];
+                    }
+                    List<Long> boxedList = Arrays.asList(boxed);
+                    int n = Math.min(queries, 1 << 19);
+                    Long[] boxedProbes = new Long[n];
+                    for (int i = 0; i < n; i++) {
+                        boxedProbes[i] = probes[i];
+                    }
+                    begin = System.nanoTime();
+                    for (Long key : boxedProbes) {
+                        check += binarySearch(boxedList, key);
+                    }
+                    list = (System.nanoTime() - begin) * queries / n;
+                    begin = System.nanoTime();
+                    for (Long key : boxedProbes) {
+                        check -= binarySearch(boxed, 0, size, key);
+                    }
+                    array = (System.nanoTime() - begin) * queries / n;
+                }
+                System.out.printf("round %d %9d %8.1f %10.1f %8s %8.1f %10.1f %8s %8s  (%d)%n", round, size,
+                        (double) jdk / queries, (double) branchless / queries, perQuery(linear, queries),
+                        (double) adaptive / queries, (double) eytz / queries, perQuery(list, queries),
+                        perQuery(array, queries), check);
+            }
+        }
+    }
+
+    private static String perQuery(long cost, int queries) {
+        return cost < 0 ? "-" : String.format("%.1f", (double) cost / queries);
     }
 }
@@ -0,0 +1,31 @@
+package com.yang.ds.datastruct.hash;
+
+/**
+ * hash表遍历游标，和Iterator不同，每个元素不创建Entry对象，遍历过程中没有对象分配
+ * <pre>
+ * HashCursor<K, V> cursor = table.cursor();
+ * while (cursor.next()) {
+ *     cursor.key();
+ *     cursor.value();
+ * }
+ * </pre>
+ * 遍历期间不能修改hash表
+ * */
+public interface HashCursor<K, V> {
+
+    /**
+     * 移动到下一个元素
+     * @return 没有下一个元素返回false
+     * */
+    boolean next();
+
+    /**
+     * 当前元素的key
+     * */
+    K key();
+
+    /**
+     * 当前元素的value
+     * */
+    V value();
+}
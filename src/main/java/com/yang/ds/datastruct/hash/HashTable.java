@@ -19,4 +19,49 @@ public interface HashTable<K, V> {
      *@param key 存储key值
      * */
     V get(K key);
+
+    /**
+     * 元素个数
+     * */
+    int size();
+
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * 批量添加覆盖，keys[i]对应values[i]
+     * @param keys key数组
+     * @param values value数组，长度和keys一样
+     * */
+    default void putAll(K[] keys, V[] values) {
+        if (keys.length != values.length)
+            throw new IllegalArgumentException("keys length " + keys.length + " != values length " + values.length);
+        for (int i = 0; i < keys.length; i++) {
+            put(keys[i], values[i]);
+        }
+    }
+
+    /**
+     * 批量获取，out[i]为keys[i]对应的value，不存在为null
+     * @param keys key数组
+     * @param out 结果数组，长度不能小于keys
+     * */
+    default void getAll(K[] keys, V[] out) {
+        if (out.length < keys.length)
+            throw new IllegalArgumentException("out length " + out.length + " < keys length " + keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            out[i] = get(keys[i]);
+        }
+    }
+
+    /**
+     * 批量删除
+     * @param keys key数组
+     * */
+    default void removeAll(K[] keys) {
+        for (K key : keys) {
+            remove(key);
+        }
+    }
 }
@@ -0,0 +1,30 @@
+package com.yang.ds.datastruct.hash;
+
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 支持遍历的hash表，只有能遍历全部元素的实现才实现这个接口
+ * */
+public interface IterableHashTable<K, V> extends HashTable<K, V> {
+
+    /**
+     * 遍历游标，遍历过程中没有对象分配
+     * */
+    HashCursor<K, V> cursor();
+
+    /**
+     * 可以拆分的遍历器，支持并行流
+     * */
+    Spliterator<Map.Entry<K, V>> spliterator();
+
+    default Stream<Map.Entry<K, V>> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    default Stream<Map.Entry<K, V>> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+}
@@ -1,13 +1,11 @@
 package com.yang.ds.datastruct.tree.bstree;
 
-public interface BSNode<K extends Comparable<? super K>, V> {
-
-    K key();
-
-    V value();
+public interface BSNode<K extends Comparable<? super K>, V> extends TreeNode<K, V> {
 
+    @Override
     BSNode<K, V> left();
 
+    @Override
     BSNode<K, V> right();
 
     BSNode<K, V> parent();
@@ -1,8 +1,6 @@
 package com.yang.ds.datastruct.tree.bstree;
 
-import java.util.List;
-
-public interface BSTree<K extends Comparable<? super K>, V> {
+public interface BSTree<K extends Comparable<? super K>, V> extends BSTreeView<K, V> {
 
     /**
      * 添加
@@ -16,35 +14,4 @@ public interface BSTree<K extends Comparable<? super K>, V> {
      * @param key
      * */
     void delete(K key);
-
-    /**
-     * 查找
-     * @param key
-     * */
-    V get(K key);
-
-    /**
-     * 最大值
-     * */
-    V getMax();
-
-    /**
-     * 最小值
-     * */
-    V getMin();
-
-    /**
-     * 中序遍历，左,根,右
-     * */
-    List<V> midErgodic();
-
-    /**
-     * 前序遍历,根,左,右
-     * */
-    List<V> preErgodic();
-
-    /**
-     * 后续遍历，左,右,根
-     * */
-    List<V> afterErgodic();
 }
@@ -0,0 +1,116 @@
+package com.yang.ds.datastruct.tree.bstree;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 二叉查找树的查询和遍历，不包含修改操作
+ * */
+public interface BSTreeView<K extends Comparable<? super K>, V> {
+
+    /**
+     * 查找
+     * @param key
+     * */
+    V get(K key);
+
+    /**
+     * 最大值
+     * */
+    V getMax();
+
+    /**
+     * 最小值
+     * */
+    V getMin();
+
+    /**
+     * 节点个数
+     * */
+    int size();
+
+    /**
+     * 小于等于key的最大key，没有返回null
+     * */
+    K floor(K key);
+
+    /**
+     * 大于等于key的最小key，没有返回null
+     * */
+    K ceiling(K key);
+
+    /**
+     * 小于key的节点个数，也就是key在中序遍历中的位置(key不存在的时候是插入的位置)
+     * */
+    int rank(K key);
+
+    /**
+     * 中序遍历中第k个(从0开始)节点的key
+     * @param k [0, size())
+     * */
+    K select(int k);
+
+    /**
+     * key在[lo, hi]之间的节点个数
+     * @param lo 下边界，null表示没有下边界
+     * @param hi 上边界，null表示没有上边界
+     * */
+    int count(K lo, K hi);
+
+    /**
+     * key在[lo, hi]之间的value，按key的顺序
+     * @param lo 下边界，null表示没有下边界
+     * @param hi 上边界，null表示没有上边界
+     * */
+    List<V> range(K lo, K hi);
+
+    /**
+     * 中序遍历，左,根,右
+     * */
+    List<V> midErgodic();
+
+    /**
+     * 前序遍历,根,左,右
+     * */
+    List<V> preErgodic();
+
+    /**
+     * 后续遍历，左,右,根
+     * */
+    List<V> afterErgodic();
+
+    /**
+     * 中序遍历的迭代器，next的时候才去找下一个节点，不需要先把结果放到集合里面
+     * 遍历期间不能修改树
+     * */
+    Iterator<V> midIterator();
+
+    /**
+     * 前序遍历的迭代器
+     * */
+    Iterator<V> preIterator();
+
+    /**
+     * 后序遍历的迭代器
+     * */
+    Iterator<V> afterIterator();
+
+    /**
+     * key在[lo, hi]之间的中序遍历迭代器，先定位到第一个大于等于lo的节点，遇到大于hi的key结束
+     * @param lo 下边界，null表示没有下边界
+     * @param hi 上边界，null表示没有上边界
+     * */
+    Iterator<V> rangeIterator(K lo, K hi);
+
+    /**
+     * 可以拆分的中序遍历器，按子树的节点个数从中间拆分
+     * */
+    Spliterator<V> spliterator();
+
+    default Stream<V> stream(boolean parallel) {
+        return StreamSupport.stream(spliterator(), parallel);
+    }
+}
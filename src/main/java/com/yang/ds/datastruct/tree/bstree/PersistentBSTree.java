@@ -0,0 +1,20 @@
+package com.yang.ds.datastruct.tree.bstree;
+
+/**
+ * 持久化的二叉查找树，修改不改变当前版本，返回修改之后的新版本，旧版本可以继续使用
+ * */
+public interface PersistentBSTree<K extends Comparable<? super K>, V> extends BSTreeView<K, V> {
+
+    /**
+     * 添加或者替换，返回新版本
+     * @param key
+     * @param value
+     * */
+    PersistentBSTree<K, V> put(K key, V value);
+
+    /**
+     * 删除，返回新版本
+     * @param key
+     * */
+    PersistentBSTree<K, V> remove(K key);
+}
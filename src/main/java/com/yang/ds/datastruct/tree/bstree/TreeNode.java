@@ -0,0 +1,20 @@
+package com.yang.ds.datastruct.tree.bstree;
+
+/**
+ * 没有父节点引用的树节点，持久化的树节点被多个版本共用，只能向下访问
+ * */
+public interface TreeNode<K extends Comparable<? super K>, V> {
+
+    K key();
+
+    V value();
+
+    TreeNode<K, V> left();
+
+    TreeNode<K, V> right();
+
+    /**
+     * 以这个节点为根的子树的节点个数
+     * */
+    int size();
+}
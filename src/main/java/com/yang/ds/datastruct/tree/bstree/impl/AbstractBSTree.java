@@ -2,8 +2,10 @@ package com.yang.ds.datastruct.tree.bstree.impl;
 
 import com.yang.ds.datastruct.tree.bstree.BSNode;
 import com.yang.ds.datastruct.tree.bstree.BSTree;
+import com.yang.ds.datastruct.tree.bstree.TreeNode;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 public abstract class AbstractBSTree<K extends Comparable<? super K>, V> implements BSTree<K, V> {
 
@@ -15,6 +17,11 @@ public abstract class AbstractBSTree<K extends Comparable<? super K>, V> impleme
     public static final int INSERT = 1;
     public static final int FIND = 2;
 
+    /**遍历顺序*/
+    private static final int MID = 1;
+    private static final int PRE = 2;
+    private static final int AFTER = 3;
+
     /**
      *判断节点的方向，孩子节点在父节点的哪一侧
      * @param child 孩子节点
@@ -134,59 +141,356 @@ public abstract class AbstractBSTree<K extends Comparable<? super K>, V> impleme
         return node != null ? node.value() : null;
     }
 
-    public abstract BSNode root();
+    /**
+     * 子树的节点个数，空树是0
+     * */
+    protected int sizeOf(TreeNode<?, ?> node) {
+        return TreeNodes.sizeOf(node);
+    }
 
-    protected boolean isEmpty() {
-        return root() == null;
+    /**
+     * 添加之后，从新节点的父节点开始向上，每个祖先的子树都多了一个节点
+     * */
+    protected void incrementSize(BSNode<K, V> parent) {
+        for (BSNode<K, V> cur = parent; cur != null; cur = cur.parent()) {
+            setSize(cur, cur.size() + 1);
+        }
+    }
+
+    /**
+     * 删除之后，从结构发生变化的最低的节点开始向上，用左右孩子重新计算每个祖先的子树节点个数
+     * (后继节点顶替删除节点的时候，后继节点的子树个数不是简单的减一)
+     * */
+    protected void updateSizeUp(BSNode<K, V> node) {
+        for (BSNode<K, V> cur = node; cur != null; cur = cur.parent()) {
+            updateSize(cur);
+        }
+    }
+
+    /**
+     * 设置子树的节点个数，子类的节点自己保存
+     * */
+    protected abstract void setSize(BSNode<K, V> node, int size);
+
+    /**
+     * 用左右孩子重新计算节点的子树节点个数，旋转之后调用
+     * */
+    protected void updateSize(BSNode<K, V> node) {
+        setSize(node, sizeOf(node.left()) + sizeOf(node.right()) + 1);
     }
 
     @Override
-    public List<V> midErgodic() {
-        List<V> values = new ArrayList<>();
-        midErgodic(root(), values);
-        return values;
+    public int size() {
+        return sizeOf(root());
     }
 
-    private void midErgodic(BSNode<K, V> cur, List<V> values) {
-        // 边界值
-        if (cur == null) {
-            return;
+    @Override
+    public K floor(K key) {
+        checkKey(key);
+        return TreeNodes.floor(root(), key);
+    }
+
+    @Override
+    public K ceiling(K key) {
+        checkKey(key);
+        return TreeNodes.ceiling(root(), key);
+    }
+
+    @Override
+    public int rank(K key) {
+        checkKey(key);
+        return TreeNodes.rank(root(), key, false);
+    }
+
+    @Override
+    public K select(int k) {
+        if (k < 0 || k >= size()) {
+            throw new IllegalArgumentException("Illegal rank: " + k + ", size: " + size());
         }
-        midErgodic(cur.left(), values);
-        values.add(cur.value());
-        midErgodic(cur.right(), values);
+        return nodeAt(k).key();
     }
 
     @Override
-    public List<V> preErgodic() {
+    public int count(K lo, K hi) {
+        return TreeNodes.count(root(), lo, hi);
+    }
+
+    @Override
+    public List<V> range(K lo, K hi) {
         List<V> values = new ArrayList<>();
-        preErgodic(root(), values);
+        range(root(), lo, hi, values);
         return values;
     }
 
-    private void preErgodic(BSNode<K, V> cur, List<V> values) {
+    /**
+     * 中序遍历，只进入可能有[lo, hi]之间的key的子树，O(树高 + 结果个数)
+     * */
+    private void range(BSNode<K, V> cur, K lo, K hi, List<V> values) {
         if (cur == null) {
             return;
         }
-        values.add(cur.value());
-        preErgodic(cur.left(), values);
-        preErgodic(cur.right(), values);
+        boolean aboveLo = lo == null || lo.compareTo(cur.key()) <= 0;
+        boolean belowHi = hi == null || hi.compareTo(cur.key()) >= 0;
+        if (aboveLo) {
+            range(cur.left(), lo, hi, values);
+        }
+        if (aboveLo && belowHi) {
+            values.add(cur.value());
+        }
+        if (belowHi) {
+            range(cur.right(), lo, hi, values);
+        }
+    }
+
+    private void checkKey(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("key is null");
+        }
+    }
+
+    public abstract BSNode<K, V> root();
+
+    protected boolean isEmpty() {
+        return root() == null;
+    }
+
+    @Override
+    public List<V> midErgodic() {
+        return toList(midIterator());
+    }
+
+    @Override
+    public List<V> preErgodic() {
+        return toList(preIterator());
     }
 
     @Override
     public List<V> afterErgodic() {
-        List<V> values = new ArrayList<>();
-        afterErgodic(root(), values);
+        return toList(afterIterator());
+    }
+
+    private List<V> toList(Iterator<V> iterator) {
+        List<V> values = new ArrayList<>(size());
+        while (iterator.hasNext()) {
+            values.add(iterator.next());
+        }
         return values;
     }
 
-    private void afterErgodic(BSNode<K, V> cur, List<V> values) {
-        if (cur == null) {
-            return;
+    @Override
+    public Iterator<V> midIterator() {
+        return new NodeIterator(MID, isEmpty() ? null : getMinNode(root()), null);
+    }
+
+    @Override
+    public Iterator<V> preIterator() {
+        return new NodeIterator(PRE, root(), null);
+    }
+
+    @Override
+    public Iterator<V> afterIterator() {
+        return new NodeIterator(AFTER, isEmpty() ? null : afterFirst(root()), null);
+    }
+
+    @Override
+    public Iterator<V> rangeIterator(K lo, K hi) {
+        return new NodeIterator(MID, lo == null ? (isEmpty() ? null : getMinNode(root())) : ceilingNode(lo), hi);
+    }
+
+    /**
+     * 沿父节点引用找下一个节点，不需要栈，额外空间O(1)，
+     * 每条边最多上下各走一次，整个遍历是O(n)，单次next均摊O(1)
+     * */
+    private class NodeIterator implements Iterator<V> {
+
+        private final int order;
+
+        /**上边界，null表示没有*/
+        private final K hi;
+
+        private BSNode<K, V> next;
+
+        NodeIterator(int order, BSNode<K, V> first, K hi) {
+            this.order = order;
+            this.hi = hi;
+            next = first;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null && (hi == null || hi.compareTo(next.key()) >= 0);
+        }
+
+        @Override
+        public V next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            BSNode<K, V> node = next;
+            next = order == MID ? successor(node) : (order == PRE ? preNext(node) : afterNext(node));
+            return node.value();
+        }
+    }
+
+    /**
+     * 中序遍历的下一个节点: 有右子树是右子树的最小节点，否则向上找到第一个从左边上来的祖先
+     * */
+    protected BSNode<K, V> successor(BSNode<K, V> node) {
+        if (node.right() != null) {
+            return getMinNode(node.right());
+        }
+        BSNode<K, V> cur = node, parent = node.parent();
+        while (parent != null && cur == parent.right()) {
+            cur = parent;
+            parent = parent.parent();
+        }
+        return parent;
+    }
+
+    /**
+     * 前序遍历的下一个节点: 先左孩子，再右孩子，都没有的时候向上找到第一个从左边上来并且有右孩子的祖先，取它的右孩子
+     * */
+    private BSNode<K, V> preNext(BSNode<K, V> node) {
+        if (node.left() != null) {
+            return node.left();
+        }
+        if (node.right() != null) {
+            return node.right();
+        }
+        BSNode<K, V> cur = node, parent = node.parent();
+        while (parent != null) {
+            if (cur == parent.left() && parent.right() != null) {
+                return parent.right();
+            }
+            cur = parent;
+            parent = parent.parent();
+        }
+        return null;
+    }
+
+    /**
+     * 后序遍历的第一个节点: 能向左就向左，否则向右，直到叶子
+     * */
+    private BSNode<K, V> afterFirst(BSNode<K, V> node) {
+        BSNode<K, V> cur = node;
+        while (!isLeaf(cur)) {
+            cur = cur.left() != null ? cur.left() : cur.right();
+        }
+        return cur;
+    }
+
+    /**
+     * 后序遍历的下一个节点: 从左边上来并且父节点有右子树，是右子树的第一个节点，否则是父节点
+     * */
+    private BSNode<K, V> afterNext(BSNode<K, V> node) {
+        BSNode<K, V> parent = node.parent();
+        if (parent == null) {
+            return null;
+        }
+        if (node == parent.left() && parent.right() != null) {
+            return afterFirst(parent.right());
+        }
+        return parent;
+    }
+
+    /**
+     * 第一个key大于等于key的节点，没有返回null
+     * */
+    private BSNode<K, V> ceilingNode(K key) {
+        BSNode<K, V> cur = root(), ceiling = null;
+        while (cur != null) {
+            if (key.compareTo(cur.key()) <= 0) {
+                ceiling = cur;
+                cur = cur.left();
+            } else {
+                cur = cur.right();
+            }
+        }
+        return ceiling;
+    }
+
+    /**
+     * 节点在中序遍历中的位置: 左子树的个数，加上向上每次从右边上来的时候父节点和它左子树的个数
+     * */
+    private int rankOf(BSNode<K, V> node) {
+        int rank = sizeOf(node.left());
+        for (BSNode<K, V> cur = node, parent = node.parent(); parent != null; cur = parent, parent = parent.parent()) {
+            if (cur == parent.right()) {
+                rank += sizeOf(parent.left()) + 1;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * 中序遍历中第k个节点
+     * */
+    private BSNode<K, V> nodeAt(int k) {
+        return (BSNode<K, V>) TreeNodes.nodeAt(root(), k);
+    }
+
+    @Override
+    public Spliterator<V> spliterator() {
+        return new NodeSpliterator(isEmpty() ? null : getMinNode(root()), size());
+    }
+
+    /**
+     * 中序遍历中从current开始的remaining个节点
+     * 拆分的时候用子树节点个数找到中间的节点(rankOf + nodeAt，O(树高))，前一半交给新的遍历器，
+     * 两边的个数是准确的，所以是SIZED | SUBSIZED
+     * */
+    private class NodeSpliterator implements Spliterator<V> {
+
+        private BSNode<K, V> current;
+
+        private int remaining;
+
+        NodeSpliterator(BSNode<K, V> current, int remaining) {
+            this.current = current;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super V> action) {
+            if (remaining <= 0) {
+                return false;
+            }
+            BSNode<K, V> node = current;
+            remaining--;
+            current = remaining > 0 ? successor(node) : null;
+            action.accept(node.value());
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super V> action) {
+            while (remaining > 0) {
+                tryAdvance(action);
+            }
+        }
+
+        @Override
+        public Spliterator<V> trySplit() {
+            if (remaining < 2) {
+                return null;
+            }
+            int half = remaining >>> 1;
+            BSNode<K, V> mid = nodeAt(rankOf(current) + half);
+            NodeSpliterator prefix = new NodeSpliterator(current, half);
+            current = mid;
+            remaining -= half;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return remaining;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED;
         }
-        afterErgodic(cur.left(), values);
-        afterErgodic(cur.right(), values);
-        values.add(cur.value());
     }
 
     @Override
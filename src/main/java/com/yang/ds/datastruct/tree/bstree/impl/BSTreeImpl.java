@@ -37,6 +37,7 @@ public class BSTreeImpl<K extends Comparable<? super K>, V> extends AbstractBSTr
         } else {
             addChild(RIGHT, parent, nNode);
         }
+        incrementSize(parent);
     }
 
     /**
@@ -52,7 +53,8 @@ public class BSTreeImpl<K extends Comparable<? super K>, V> extends AbstractBSTr
         if (needDel == null) {
             return;
         }
-        int lr = lr(needDel, needDel.parent);
+        // root没有父节点，不会用到lr
+        int lr = needDel == root ? 0 : lr(needDel, needDel.parent);
 
         // case1叶子节点,直接删除
         if (isLeaf(needDel)) {
@@ -62,6 +64,7 @@ public class BSTreeImpl<K extends Comparable<? super K>, V> extends AbstractBSTr
             } else {
                 addChild(lr, needDel.parent, null);
             }
+            updateSizeUp(needDel.parent);
             return;
         }
 
@@ -74,6 +77,7 @@ public class BSTreeImpl<K extends Comparable<? super K>, V> extends AbstractBSTr
             } else {
                 addChild(lr, needDel.parent, child);
             }
+            updateSizeUp(needDel.parent);
             return;
         }
 
@@ -81,9 +85,13 @@ public class BSTreeImpl<K extends Comparable<? super K>, V> extends AbstractBSTr
         if (hasTowChild(needDel)) {
             // 选举出后继节点
             Node replacement = getMinNode(needDel.right);
+            // 后继节点是不是删除节点的右孩子，下面修改后继节点的父节点之前先记下来
+            boolean rightChild = replacement.parent == needDel;
+            // 结构变化的最低位置: 后继节点原来的父节点，后继节点是右孩子的时候就是后继节点自己
+            Node lowest = rightChild ? replacement : replacement.parent;
             // 如果删除的为root节点，则更换root为选举的后继节点
             // 1.后继节点右侧孩子处理,后继节点父节点不是被删除的节点
-            if (replacement.parent != needDel) {
+            if (!rightChild) {
                 addChild(LEFT, replacement.parent, replacement.right);
             }
 
@@ -96,9 +104,10 @@ public class BSTreeImpl<K extends Comparable<? super K>, V> extends AbstractBSTr
             // 链接删除节点左孩子
             addChild(LEFT, replacement, needDel.left);
             // 链接删除节点右孩子，如果后继节点的父节点是删除节点，则无需处理右侧孩子
-            if (replacement.parent != needDel) {
+            if (!rightChild) {
                 addChild(RIGHT, replacement, needDel.right);
             }
+            updateSizeUp(lowest);
         }
     }
 
@@ -122,16 +131,23 @@ public class BSTreeImpl<K extends Comparable<? super K>, V> extends AbstractBSTr
     }
 
     @Override
-    public BSNode root() {
+    public BSNode<K, V> root() {
         return root;
     }
 
+    @Override
+    protected void setSize(BSNode<K, V> node, int size) {
+        ((Node) node).size = size;
+    }
+
     private class Node implements BSNode<K, V> {
         private K key;
         private V value;
         private Node left;
         private Node right;
         private Node parent;
+        // 以这个节点为根的子树的节点个数
+        private int size = 1;
 
         public Node(K key, V value) {
             this.key = key;
@@ -163,6 +179,11 @@ public class BSTreeImpl<K extends Comparable<? super K>, V> extends AbstractBSTr
             return parent;
         }
 
+        @Override
+        public int size() {
+            return size;
+        }
+
         @Override
         public String toString() {
             return value.toString();
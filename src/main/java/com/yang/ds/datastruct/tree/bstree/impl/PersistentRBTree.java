@@ -0,0 +1,836 @@
+package com.yang.ds.datastruct.tree.bstree.impl;
+
+import com.yang.ds.algorithm.utils.AllocationCounter;
+import com.yang.ds.datastruct.tree.bstree.PersistentBSTree;
+import com.yang.ds.datastruct.tree.bstree.TreeNode;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * 持久化(不可变、结构共享)的红黑树
+ *
+ * 1. 节点创建之后不再修改，put/remove只复制从根到修改位置路径上的节点(path copying)，
+ * 再加上旋转、改色时碰到的路径旁边的兄弟节点，每次修改分配O(log n)个节点，其他子树新旧版本共用，
+ * 返回新的树，原来的树不变
+ *
+ * 2. 任何一个版本都可以同时交给任意多个线程读，不需要加锁；发布新版本的时候写线程之间自己串行，
+ * 一次volatile写替换引用即可，读线程拿到的一定是某次修改之后完整的树
+ *
+ * 3. 节点可能被多个版本的不同父节点共用，不能有父节点引用，所以用左倾红黑树(2-3树的等价形式)，
+ * 修改都是从根向下递归，回溯的时候修复，不需要向上找父节点；迭代器用从根到当前节点的路径栈代替父节点引用，
+ * 对外的节点是没有parent()的TreeNode
+ *
+ * 4. 实现的是PersistentBSTree，只有返回新版本的put/remove，没有BSTree原地修改的add/delete
+ * */
+public class PersistentRBTree<K extends Comparable<? super K>, V> implements PersistentBSTree<K, V> {
+
+    private static final boolean RED = true;
+    private static final boolean BLACK = false;
+
+    /**遍历顺序*/
+    private static final int MID = 1;
+    private static final int PRE = 2;
+    private static final int AFTER = 3;
+
+    private final Node<K, V> root;
+
+    /**
+     * 空树
+     * */
+    public PersistentRBTree() {
+        this(null);
+    }
+
+    private PersistentRBTree(Node<K, V> root) {
+        this.root = root;
+    }
+
+    /**
+     * 添加或者替换key的value，返回新版本，当前版本不变
+     * key已经存在并且value是同一个对象的时候返回this
+     * */
+    @Override
+    public PersistentRBTree<K, V> put(K key, V value) {
+        checkKey(key);
+        Node<K, V> newRoot = put(root, key, value);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentRBTree<>(blacken(newRoot));
+    }
+
+    /**
+     * 删除key，返回新版本，当前版本不变，key不存在的时候返回this
+     * */
+    @Override
+    public PersistentRBTree<K, V> remove(K key) {
+        checkKey(key);
+        if (findNode(key) == null) {
+            return this;
+        }
+        Node<K, V> r = root;
+        // 左右孩子都是黑色的时候先把根涂红，保证向下的路径上当前节点或者它的左孩子是红色
+        if (!isRed(r.left) && !isRed(r.right)) {
+            r = r.withColor(RED);
+        }
+        return new PersistentRBTree<>(blacken(delete(r, key)));
+    }
+
+    public TreeNode<K, V> root() {
+        return root;
+    }
+
+    private Node<K, V> put(Node<K, V> h, K key, V value) {
+        if (h == null) {
+            return new Node<>(key, value, null, null, RED);
+        }
+        int cmp = key.compareTo(h.key);
+        if (cmp < 0) {
+            Node<K, V> left = put(h.left, key, value);
+            return left == h.left ? h : balance(h.key, h.value, left, h.right, h.red);
+        } else if (cmp > 0) {
+            Node<K, V> right = put(h.right, key, value);
+            return right == h.right ? h : balance(h.key, h.value, h.left, right, h.red);
+        }
+        return h.value == value ? h : new Node<>(h.key, value, h.left, h.right, h.red);
+    }
+
+    /**
+     * 要删除的key一定存在，向下的时候保证当前节点或者它的左孩子是红色(不会从2-节点里删除)，回溯的时候balance
+     * */
+    private Node<K, V> delete(Node<K, V> h, K key) {
+        if (key.compareTo(h.key) < 0) {
+            if (!isRed(h.left) && !isRed(h.left.left)) {
+                h = moveRedLeft(h);
+            }
+            return balance(h.key, h.value, delete(h.left, key), h.right, h.red);
+        }
+        if (isRed(h.left)) {
+            h = rotateRight(h);
+        }
+        if (key.compareTo(h.key) == 0 && h.right == null) {
+            return null;
+        }
+        if (!isRed(h.right) && !isRed(h.right.left)) {
+            h = moveRedRight(h);
+        }
+        if (key.compareTo(h.key) == 0) {
+            // 用右子树的最小节点顶替
+            Node<K, V> min = h.right;
+            while (min.left != null) {
+                min = min.left;
+            }
+            return balance(min.key, min.value, h.left, deleteMin(h.right), h.red);
+        }
+        return balance(h.key, h.value, h.left, delete(h.right, key), h.red);
+    }
+
+    private Node<K, V> deleteMin(Node<K, V> h) {
+        if (h.left == null) {
+            return null;
+        }
+        if (!isRed(h.left) && !isRed(h.left.left)) {
+            h = moveRedLeft(h);
+        }
+        return balance(h.key, h.value, deleteMin(h.left), h.right, h.red);
+    }
+
+    /**
+     * 用修改之后的孩子创建节点，顺便修复: 右倾的红色左旋，连续两个红色右旋，左右都是红色翻转颜色(红色上移)
+     * 直接在参数上旋转，只创建最后用到的节点
+     * */
+    private Node<K, V> balance(K key, V value, Node<K, V> left, Node<K, V> right, boolean red) {
+        if (isRed(right) && !isRed(left)) {
+            left = new Node<>(key, value, left, right.left, RED);
+            key = right.key;
+            value = right.value;
+            right = right.right;
+        }
+        if (isRed(left) && isRed(left.left)) {
+            right = new Node<>(key, value, left.right, right, RED);
+            key = left.key;
+            value = left.value;
+            left = left.left;
+        }
+        if (isRed(left) && isRed(right)) {
+            left = left.withColor(!left.red);
+            right = right.withColor(!right.red);
+            red = !red;
+        }
+        return new Node<>(key, value, left, right, red);
+    }
+
+    /**
+     *   h              x
+     * a  x    ---->  h   c
+     *   b c         a b
+     * */
+    private Node<K, V> rotateLeft(Node<K, V> h) {
+        Node<K, V> x = h.right;
+        return new Node<>(x.key, x.value, new Node<>(h.key, h.value, h.left, x.left, RED), x.right, h.red);
+    }
+
+    /**
+     *    h              x
+     *  x  c     --->  a  h
+     * a b               b c
+     * */
+    private Node<K, V> rotateRight(Node<K, V> h) {
+        Node<K, V> x = h.left;
+        return new Node<>(x.key, x.value, x.left, new Node<>(h.key, h.value, x.right, h.right, RED), h.red);
+    }
+
+    /**
+     * 节点和两个孩子都翻转颜色
+     * */
+    private Node<K, V> flipColors(Node<K, V> h) {
+        return new Node<>(h.key, h.value, h.left.withColor(!h.left.red), h.right.withColor(!h.right.red), !h.red);
+    }
+
+    /**
+     * h是红色，左孩子和左孙子都是黑色，把h或者右兄弟的key借给左孩子，让左孩子或者左孙子变红
+     * */
+    private Node<K, V> moveRedLeft(Node<K, V> h) {
+        h = flipColors(h);
+        if (isRed(h.right.left)) {
+            h = rotateLeft(new Node<>(h.key, h.value, h.left, rotateRight(h.right), h.red));
+            h = flipColors(h);
+        }
+        return h;
+    }
+
+    /**
+     * h是红色，右孩子和右孩子的左孩子都是黑色，让右孩子或者它的孩子变红
+     * */
+    private Node<K, V> moveRedRight(Node<K, V> h) {
+        h = flipColors(h);
+        if (isRed(h.left.left)) {
+            h = flipColors(rotateRight(h));
+        }
+        return h;
+    }
+
+    private boolean isRed(Node<K, V> node) {
+        return node != null && node.red;
+    }
+
+    private Node<K, V> blacken(Node<K, V> node) {
+        return node == null || !node.red ? node : node.withColor(BLACK);
+    }
+
+    private static int sizeOf(Node<?, ?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private void checkKey(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("key is null");
+        }
+    }
+
+    private Node<K, V> findNode(K key) {
+        Node<K, V> cur = root;
+        while (cur != null) {
+            int cmp = key.compareTo(cur.key);
+            if (cmp == 0) {
+                return cur;
+            }
+            cur = cmp < 0 ? cur.left : cur.right;
+        }
+        return null;
+    }
+
+    @Override
+    public V get(K key) {
+        checkKey(key);
+        Node<K, V> node = findNode(key);
+        return node != null ? node.value : null;
+    }
+
+    @Override
+    public V getMax() {
+        if (root == null) {
+            return null;
+        }
+        Node<K, V> cur = root;
+        while (cur.right != null) {
+            cur = cur.right;
+        }
+        return cur.value;
+    }
+
+    @Override
+    public V getMin() {
+        if (root == null) {
+            return null;
+        }
+        Node<K, V> cur = root;
+        while (cur.left != null) {
+            cur = cur.left;
+        }
+        return cur.value;
+    }
+
+    @Override
+    public int size() {
+        return sizeOf(root);
+    }
+
+    @Override
+    public K floor(K key) {
+        checkKey(key);
+        return TreeNodes.floor(root, key);
+    }
+
+    @Override
+    public K ceiling(K key) {
+        checkKey(key);
+        return TreeNodes.ceiling(root, key);
+    }
+
+    @Override
+    public int rank(K key) {
+        checkKey(key);
+        return TreeNodes.rank(root, key, false);
+    }
+
+    @Override
+    public K select(int k) {
+        if (k < 0 || k >= size()) {
+            throw new IllegalArgumentException("Illegal rank: " + k + ", size: " + size());
+        }
+        return TreeNodes.nodeAt(root, k).key();
+    }
+
+    @Override
+    public int count(K lo, K hi) {
+        return TreeNodes.count(root, lo, hi);
+    }
+
+    @Override
+    public List<V> range(K lo, K hi) {
+        return toList(rangeIterator(lo, hi), count(lo, hi));
+    }
+
+    @Override
+    public List<V> midErgodic() {
+        return toList(midIterator(), size());
+    }
+
+    @Override
+    public List<V> preErgodic() {
+        return toList(preIterator(), size());
+    }
+
+    @Override
+    public List<V> afterErgodic() {
+        return toList(afterIterator(), size());
+    }
+
+    private List<V> toList(Iterator<V> iterator, int capacity) {
+        List<V> values = new ArrayList<>(capacity);
+        while (iterator.hasNext()) {
+            values.add(iterator.next());
+        }
+        return values;
+    }
+
+    @Override
+    public Iterator<V> midIterator() {
+        PathIterator iterator = new PathIterator(MID, null);
+        iterator.pushLeft(root);
+        return iterator;
+    }
+
+    @Override
+    public Iterator<V> preIterator() {
+        PathIterator iterator = new PathIterator(PRE, null);
+        if (root != null) {
+            iterator.push(root);
+        }
+        return iterator;
+    }
+
+    @Override
+    public Iterator<V> afterIterator() {
+        PathIterator iterator = new PathIterator(AFTER, null);
+        iterator.pushAfterFirst(root);
+        return iterator;
+    }
+
+    @Override
+    public Iterator<V> rangeIterator(K lo, K hi) {
+        PathIterator iterator = new PathIterator(MID, hi);
+        if (lo == null) {
+            iterator.pushLeft(root);
+        } else {
+            iterator.pushCeiling(lo);
+        }
+        return iterator;
+    }
+
+    /**
+     * 遍历的是创建迭代器时的版本，之后的put/remove不影响
+     * 栈里是从根到下一个节点的路径(栈顶是下一个节点)，代替父节点引用，找下一个节点的方式和AbstractBSTree一样
+     * 红黑树每条路径的黑色节点个数bh满足 2^bh - 1 <= n，路径上红色节点不会比黑色多，
+     * 所以路径长度不超过 2 * (floor(log2 n) + 1)，栈按这个大小一次分配好
+     * */
+    private final class PathIterator implements Iterator<V> {
+
+        private final int order;
+
+        /**上边界，null表示没有*/
+        private final K hi;
+
+        private final Node<K, V>[] path;
+
+        private int depth;
+
+        @SuppressWarnings("unchecked")
+        PathIterator(int order, K hi) {
+            this.order = order;
+            this.hi = hi;
+            path = (Node<K, V>[]) new Node<?, ?>[2 * (32 - Integer.numberOfLeadingZeros(size()))];
+        }
+
+        void push(Node<K, V> node) {
+            path[depth++] = node;
+        }
+
+        Node<K, V> peek() {
+            return path[depth - 1];
+        }
+
+        /**
+         * node和它的左孩子、左孙子...依次入栈，栈顶是node子树的最小节点
+         * */
+        void pushLeft(Node<K, V> node) {
+            for (Node<K, V> cur = node; cur != null; cur = cur.left) {
+                push(cur);
+            }
+        }
+
+        /**
+         * 后序遍历的第一个节点: 能向左就向左，否则向右，直到叶子
+         * */
+        void pushAfterFirst(Node<K, V> node) {
+            for (Node<K, V> cur = node; cur != null; cur = cur.left != null ? cur.left : cur.right) {
+                push(cur);
+            }
+        }
+
+        /**
+         * 定位到第一个key大于等于key的节点，查找路径上在它下面的节点不是它的祖先，最后截掉
+         * */
+        void pushCeiling(K key) {
+            int ceiling = 0;
+            for (Node<K, V> cur = root; cur != null; ) {
+                push(cur);
+                if (key.compareTo(cur.key) <= 0) {
+                    ceiling = depth;
+                    cur = cur.left;
+                } else {
+                    cur = cur.right;
+                }
+            }
+            depth = ceiling;
+        }
+
+        /**
+         * 定位到中序遍历中第k个节点，查找路径上的节点都是它的祖先
+         * */
+        void pushRank(int k) {
+            Node<K, V> cur = root;
+            while (true) {
+                push(cur);
+                int left = sizeOf(cur.left);
+                if (k < left) {
+                    cur = cur.left;
+                } else if (k == left) {
+                    return;
+                } else {
+                    k -= left + 1;
+                    cur = cur.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return depth > 0 && (hi == null || hi.compareTo(peek().key) >= 0);
+        }
+
+        @Override
+        public V next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Node<K, V> node = peek();
+            if (order == MID) {
+                midNext(node);
+            } else if (order == PRE) {
+                preNext(node);
+            } else {
+                afterNext();
+            }
+            return node.value;
+        }
+
+        /**
+         * 有右子树是右子树的最小节点，否则出栈直到第一个从左边上来的祖先
+         * */
+        private void midNext(Node<K, V> node) {
+            if (node.right != null) {
+                pushLeft(node.right);
+                return;
+            }
+            Node<K, V> cur = path[--depth];
+            while (depth > 0 && peek().right == cur) {
+                cur = path[--depth];
+            }
+        }
+
+        /**
+         * 先左孩子，再右孩子，都没有的时候出栈直到第一个从左边上来并且有右孩子的祖先，取它的右孩子
+         * */
+        private void preNext(Node<K, V> node) {
+            if (node.left != null) {
+                push(node.left);
+                return;
+            }
+            if (node.right != null) {
+                push(node.right);
+                return;
+            }
+            Node<K, V> cur = path[--depth];
+            while (depth > 0) {
+                Node<K, V> parent = peek();
+                if (cur == parent.left && parent.right != null) {
+                    push(parent.right);
+                    return;
+                }
+                cur = path[--depth];
+            }
+        }
+
+        /**
+         * 从左边上来并且父节点有右子树，是右子树的第一个节点，否则是父节点(已经在栈顶)
+         * */
+        private void afterNext() {
+            Node<K, V> cur = path[--depth];
+            if (depth > 0 && cur == peek().left && peek().right != null) {
+                pushAfterFirst(peek().right);
+            }
+        }
+    }
+
+    @Override
+    public Spliterator<V> spliterator() {
+        return new PathSpliterator(0, size());
+    }
+
+    /**
+     * 中序遍历中[index, end)之间的节点，拆分的时候前一半交给新的遍历器，
+     * 第一次tryAdvance的时候才用pushRank定位(O(树高))，两边的个数是准确的，所以是SIZED | SUBSIZED
+     * */
+    private final class PathSpliterator implements Spliterator<V> {
+
+        private int index;
+
+        private final int end;
+
+        private PathIterator iterator;
+
+        PathSpliterator(int index, int end) {
+            this.index = index;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super V> action) {
+            if (index >= end) {
+                return false;
+            }
+            if (iterator == null) {
+                iterator = new PathIterator(MID, null);
+                iterator.pushRank(index);
+            }
+            index++;
+            action.accept(iterator.next());
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super V> action) {
+            while (index < end) {
+                tryAdvance(action);
+            }
+        }
+
+        @Override
+        public Spliterator<V> trySplit() {
+            int half = (end - index) >>> 1;
+            if (half == 0) {
+                return null;
+            }
+            PathSpliterator prefix = new PathSpliterator(index, index + half);
+            index += half;
+            iterator = null;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.IMMUTABLE;
+        }
+    }
+
+    /**
+     * 不可变节点，子树节点个数在创建的时候算好
+     * */
+    private static final class Node<K extends Comparable<? super K>, V> implements TreeNode<K, V> {
+        private final K key;
+        private final V value;
+        private final Node<K, V> left;
+        private final Node<K, V> right;
+        private final boolean red;
+        private final int size;
+
+        Node(K key, V value, Node<K, V> left, Node<K, V> right, boolean red) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.red = red;
+            this.size = sizeOf(left) + sizeOf(right) + 1;
+        }
+
+        Node<K, V> withColor(boolean red) {
+            return red == this.red ? this : new Node<>(key, value, left, right, red);
+        }
+
+        @Override
+        public K key() {
+            return key;
+        }
+
+        @Override
+        public V value() {
+            return value;
+        }
+
+        @Override
+        public TreeNode<K, V> left() {
+            return left;
+        }
+
+        @Override
+        public TreeNode<K, V> right() {
+            return right;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            String color = red ? "R" : "B";
+            return color + value;
+        }
+    }
+
+    /**
+     * 路由表: 大量线程读，少量线程改
+     * */
+    private interface RoutingTable {
+
+        Integer get(int key);
+
+        /**
+         * key存在就删除，不存在就添加，表的大小基本不变
+         * */
+        void update(int key);
+    }
+
+    /**
+     * 持久化红黑树，写之间加锁，volatile发布新版本，读不加锁
+     * */
+    private static final class PersistentTable implements RoutingTable {
+
+        private volatile PersistentRBTree<Integer, Integer> current = new PersistentRBTree<>();
+
+        @Override
+        public Integer get(int key) {
+            return current.get(key);
+        }
+
+        @Override
+        public synchronized void update(int key) {
+            PersistentRBTree<Integer, Integer> tree = current;
+            current = tree.get(key) == null ? tree.put(key, key) : tree.remove(key);
+        }
+    }
+
+    /**
+     * 现在的做法: 每次修改复制整棵RBTreeImpl，修改副本之后volatile发布，读不加锁
+     * */
+    private static final class CopyTable implements RoutingTable {
+
+        private volatile RBTreeImpl<Integer, Integer> current = new RBTreeImpl<>();
+
+        @Override
+        public Integer get(int key) {
+            return current.get(key);
+        }
+
+        @Override
+        public synchronized void update(int key) {
+            RBTreeImpl<Integer, Integer> copy = new RBTreeImpl<>();
+            for (Iterator<Integer> iterator = current.midIterator(); iterator.hasNext(); ) {
+                Integer value = iterator.next();
+                copy.add(value, value);
+            }
+            if (copy.get(key) == null) {
+                copy.add(key, key);
+            } else {
+                copy.delete(key);
+            }
+            current = copy;
+        }
+    }
+
+    /**
+     * 一棵RBTreeImpl，用读写锁保护
+     * */
+    private static final class LockedTable implements RoutingTable {
+
+        private final RBTreeImpl<Integer, Integer> tree = new RBTreeImpl<>();
+
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        @Override
+        public Integer get(int key) {
+            lock.readLock().lock();
+            try {
+                return tree.get(key);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public void update(int key) {
+            lock.writeLock().lock();
+            try {
+                if (tree.get(key) == null) {
+                    tree.add(key, key);
+                } else {
+                    tree.delete(key);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * threads个线程一共执行ops次操作，1%是update，返回耗时(ns)
+     * */
+    private static long run(final RoutingTable table, final int keys, int threads, final int ops) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final long[] check = new long[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            final int count = ops / threads;
+            new Thread(() -> {
+                Random random = new Random(id);
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                long sum = 0;
+                for (int i = 0; i < count; i++) {
+                    int key = random.nextInt(keys);
+                    if (random.nextInt(100) == 0) {
+                        table.update(key);
+                    } else {
+                        Integer value = table.get(key);
+                        sum += value == null ? 0 : value;
+                    }
+                }
+                check[id] = sum;
+                done.countDown();
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        return System.nanoTime() - begin;
+    }
+
+    /**
+     * 99%读1%写，对比持久化红黑树、每次修改复制整棵RBTreeImpl、读写锁保护的RBTreeImpl的吞吐，
+     * 以及单线程下每次修改分配的内存
+     * 运行参数: [节点个数] [线程数]
+     * */
+    public static void main(String[] args) throws InterruptedException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int ops = 1000000, copyOps = 20000, updates = 100000;
+        // 第一轮作为预热，以第二轮的结果为准
+        for (int round = 1; round <= 2; round++) {
+            // key在[0, 2n)里随机，先放进去一半，update的时候有就删、没有就加，大小稳定在n附近
+            RoutingTable[] tables = {new PersistentTable(), new CopyTable(), new LockedTable()};
+            String[] names = {"persistent", "copy whole tree", "read-write lock"};
+            Random random = new Random(round);
+            PersistentRBTree<Integer, Integer> init = new PersistentRBTree<>();
+            RBTreeImpl<Integer, Integer> initCopy = new RBTreeImpl<>();
+            while (init.size() < n) {
+                int key = random.nextInt(2 * n);
+                if (init.get(key) == null) {
+                    init = init.put(key, key);
+                    initCopy.add(key, key);
+                    ((LockedTable) tables[2]).tree.add(key, key);
+                }
+            }
+            ((PersistentTable) tables[0]).current = init;
+            ((CopyTable) tables[1]).current = initCopy;
+            for (int i = 0; i < tables.length; i++) {
+                // 复制整棵树太慢，少做一些操作
+                int count = i == 1 ? copyOps : ops;
+                long cost = run(tables[i], 2 * n, threads, count);
+                System.out.printf("round %d %s: %d threads, %d ops, %d ns/op%n", round, names[i], threads, count,
+                        cost / count);
+            }
+            long allocated = AllocationCounter.threadAllocatedBytes();
+            long begin = System.nanoTime();
+            PersistentRBTree<Integer, Integer> tree = init;
+            for (int i = 0; i < updates; i++) {
+                int key = random.nextInt(2 * n);
+                tree = tree.get(key) == null ? tree.put(key, key) : tree.remove(key);
+            }
+            System.out.printf("round %d persistent put/remove: %d ns/op, %d bytes/op, size=%d, old version size=%d%n",
+                    round, (System.nanoTime() - begin) / updates, (AllocationCounter.threadAllocatedBytes() - allocated) / updates,
+                    tree.size(), init.size());
+        }
+    }
+}
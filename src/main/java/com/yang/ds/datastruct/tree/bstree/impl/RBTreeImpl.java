@@ -1,8 +1,14 @@
 package com.yang.ds.datastruct.tree.bstree.impl;
 
+import com.yang.ds.algorithm.utils.AllocationCounter;
 import com.yang.ds.datastruct.tree.bstree.BSNode;
 import com.yang.ds.datastruct.tree.bstree.BSTree;
 
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
 /**
  * 红黑树实现
  *
@@ -44,6 +50,8 @@ public class RBTreeImpl<K extends Comparable<? super K>, V> extends AbstractBSTr
         } else {
             addChild(RIGHT, parent, nNode);
         }
+        // 路径上每个祖先的子树多一个节点，之后的旋转自己维护，改色不影响
+        incrementSize(parent);
 
         // 红黑树插入平衡修复
         insertBalanceFix(nNode);
@@ -119,6 +127,9 @@ public class RBTreeImpl<K extends Comparable<? super K>, V> extends AbstractBSTr
         }
         addChild(RIGHT, x, y.left);
         addChild(LEFT, y, x);
+        // 只有x和y的子树变了，先算下面的x
+        updateSize(x);
+        updateSize(y);
     }
 
     /**
@@ -139,6 +150,8 @@ public class RBTreeImpl<K extends Comparable<? super K>, V> extends AbstractBSTr
         }
         addChild(LEFT, y, x.right);
         addChild(RIGHT, x, y);
+        updateSize(y);
+        updateSize(x);
     }
 
     private void addChild(int lr, Node parent, Node child) {
@@ -168,88 +181,75 @@ public class RBTreeImpl<K extends Comparable<? super K>, V> extends AbstractBSTr
         if (null == key) {
             throw new IllegalArgumentException("key is not null");
         }
+        if (isEmpty()) {
+            return;
+        }
         // 查找节点
         Node needDel = findNode(key, root, FIND);
         if (null == needDel) {
             return;
         }
-
-        // 叶子节点(case1/case3),不会执行case2，叶子节点删除RD位置上一定NIL
-        if (isLeaf(needDel)) {
-            // 这正删除的节点
-            Node rd = needDel;
-            if (root == needDel) {
-                root = (Node) NIL;
-                return;
-            }
-            int lr = lr(needDel, needDel.parent);
-            addChild(lr, needDel.parent, null);
-            //case1
-            if (isRed(rd)) {
-                return;
-            }
-
-            /*红黑平衡处理*/
-            // case2
-            deleteBalanceFix(rd.parent);
-            return;
-        }
-        // 存在一个子树(case2),如果存在一个子树，一定是RD删除之前是黑色，并且只存在一个红色孩子,RD为红色只能有俩不为NIL黑色孩子，RD为黑色可以存在一个红色孩子
-        if (justOneChild(needDel)) {
-            Node child = needDel.left != null ? needDel.left : needDel.right;
-            if (needDel == root) {
-                replaceRoot(child);
-            }
-            int lr = lr(needDel, needDel.parent);
-            addChild(lr, needDel.parent, child);
-
-            /*红黑平衡处理*/
-            // case2
-            setBlack(child);
-            return;
-        }
-        // 存在两个子树(case1/case2/case3)
+        // RD位置上顶替上来的孩子(可能是NIL)和它的父节点，RD删除之前的颜色
+        Node child;
+        Node childParent;
+        int rdColor;
+        // 存在两个子树,后继节点替换D的位置并且继承D的颜色，真正删除的位置是后继节点原来的位置,后继节点一定没有左孩子
         if (hasTowChild(needDel)) {
             Node replace = getMinNode(needDel.right);
-            Node replaceRChild = replace.right;
-            Node rdParent = parentOf(replace) == needDel ? replace : parentOf(replace);
-            // 后继右孩子
-            if (parentOf(replace) != needDel) {
-                // 后继节点在左面，父节点不是D，则一定没有左孩子，只有右孩子，右子树最小，如果有左孩子，肯定还会继续向左找后继
-                addChild(LEFT, replace.parent, replace.right);
+            rdColor = replace.color;
+            child = replace.right;
+            if (parentOf(replace) == needDel) {
+                childParent = replace;
+            } else {
+                // 后继节点在左面，父节点不是D，后继的右孩子挂到后继父节点的左面，D的右子树挂到后继的右面
+                childParent = parentOf(replace);
+                addChild(LEFT, childParent, child);
+                addChild(RIGHT, replace, needDel.right);
             }
-
-            // 删除节点左孩子,两种后继节点，无论哪种，D的左孩子链
+            // D的左孩子链
             addChild(LEFT, replace, needDel.left);
-
-            // 删除节点右孩子
-            if (parentOf(replace) != needDel) {
-                addChild(RIGHT, replace, needDel.right);
+            if (needDel == root) {
+                replaceRoot(replace);
+            } else {
+                addChild(lr(needDel, needDel.parent), needDel.parent, replace);
             }
-
-            // 父节点
-            if (root != needDel) {
-                int lr = lr(needDel, needDel.parent);
-                addChild(lr, needDel.parent, replace);
+            setColor(replace, needDel.color);
+        } else {
+            // 叶子节点或者只有一个子树，孩子直接顶替D的位置
+            child = needDel.left != null ? needDel.left : needDel.right;
+            childParent = needDel.parent;
+            rdColor = needDel.color;
+            if (needDel == root) {
+                if (child == NIL) {
+                    root = (Node) NIL;
+                } else {
+                    replaceRoot(child);
+                }
             } else {
-                replaceRoot(replace);
+                addChild(lr(needDel, needDel.parent), needDel.parent, child);
             }
+        }
 
-            /*红黑平衡处理*/
-            // case1
-            if (isRed(replace)) {
-                return;
-            }
+        // 从RD的位置向上重新计算子树节点个数，平衡修复的旋转自己维护
+        updateSizeUp(childParent);
 
-            //case2
-            if (isRed(replaceRChild)) {
-                setBlack(replaceRChild);
-                return;
-            }
-            // case3
-            deleteBalanceFix(rdParent);
+        /*红黑平衡处理*/
+        // case1 RD是红色，黑色节点个数不变
+        if (rdColor == RED) {
+            return;
+        }
+        // case2 RD是黑色，顶替上来的孩子是红色，涂黑
+        if (isRed(child)) {
+            setBlack(child);
+            return;
+        }
+        // case3 RD是黑色，顶替上来的是NIL
+        if (childParent != null) {
+            deleteBalanceFix(childParent);
+        }
+        if (root != NIL) {
+            setBlack(root);
         }
-        setBlack(root);
     }
 
     /**
@@ -270,9 +270,10 @@ public class RBTreeImpl<K extends Comparable<? super K>, V> extends AbstractBSTr
     private void deleteBalanceFix(Node parent) {
         // 第一次处理，如果出现RD为黑色一定是NIL，后续如果当前子树处理不了，RD改成P向上一层回溯，才会是不为NIl的黑色节点
         Node rd = (Node) NIL;
-        int rdOfPlr = lr(rd, parent);
         // rd如果一直是黑色，则不断向上回溯，直到root节点
         while (isBlack(rd) && rd != root) {
+            // case5回溯之后rd变了，rd在父节点的方向需要重新计算
+            int rdOfPlr = lr(rd, parent);
             // 因为存在旋转，更改rd所以兄弟会根据循会发生变化
             Node sib = brotherOf(rd, parent);
             int sibOfPLr = lr(sib, parent);
@@ -352,10 +353,15 @@ public class RBTreeImpl<K extends Comparable<? super K>, V> extends AbstractBSTr
     }
 
     @Override
-    public BSNode root() {
+    public BSNode<K, V> root() {
         return root;
     }
 
+    @Override
+    protected void setSize(BSNode<K, V> node, int size) {
+        ((Node) node).size = size;
+    }
+
     private Node leftOf(Node node) {
         return node.left;
     }
@@ -415,6 +421,8 @@ public class RBTreeImpl<K extends Comparable<? super K>, V> extends AbstractBSTr
         private Node right;
         private Node parent;
         private int color;
+        // 以这个节点为根的子树的节点个数
+        private int size = 1;
 
         public Node(K key, V value, int color) {
             this.key = key;
@@ -447,10 +455,108 @@ public class RBTreeImpl<K extends Comparable<? super K>, V> extends AbstractBSTr
             return parent;
         }
 
+        @Override
+        public int size() {
+            return size;
+        }
+
         @Override
         public String toString() {
             String color = this.color == RED ? "R" : "B";
             return color + value.toString();
         }
     }
+
+    /**
+     * rank、select、floor、range和原来用midErgodic取出整个有序列表再查找的对比，
+     * 整棵树遍历midErgodic和midIterator的耗时、分配的内存，只取前100个的耗时，以及添加删除的耗时
+     * 运行参数: [节点个数]
+     * */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int ops = 200000, scans = 20;
+        // 第一轮作为预热，以第二轮的结果为准
+        for (int round = 1; round <= 2; round++) {
+            Random random = new Random(round);
+            RBTreeImpl<Integer, Integer> tree = new RBTreeImpl<>();
+            long begin = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                int key = random.nextInt(Integer.MAX_VALUE);
+                tree.add(key, key);
+            }
+            System.out.printf("round %d add %d: %d ns/op%n", round, n, (System.nanoTime() - begin) / n);
+            long check = 0;
+            begin = System.nanoTime();
+            for (int i = 0; i < ops; i++) {
+                check += tree.rank(random.nextInt(Integer.MAX_VALUE));
+                check += tree.select(random.nextInt(n));
+                Integer floor = tree.floor(random.nextInt(Integer.MAX_VALUE));
+                check += floor == null ? 0 : floor;
+            }
+            long cost = System.nanoTime() - begin;
+            begin = System.nanoTime();
+            for (int i = 0; i < ops; i++) {
+                int lo = random.nextInt(Integer.MAX_VALUE - 200000);
+                check += tree.range(lo, lo + 200000).size();
+            }
+            long rangeCost = System.nanoTime() - begin;
+            System.out.printf("round %d rank+select+floor: %d ns/op, range(~100 keys): %d ns/op%n", round,
+                    cost / ops, rangeCost / ops);
+            // 原来的做法: 中序遍历出有序列表，再二分或者按下标取
+            begin = System.nanoTime();
+            for (int i = 0; i < scans; i++) {
+                List<Integer> sorted = tree.midErgodic();
+                int key = random.nextInt(Integer.MAX_VALUE);
+                int loc = Collections.binarySearch(sorted, key);
+                check += (loc >= 0 ? loc : -loc - 1) + sorted.get(random.nextInt(n));
+            }
+            System.out.printf("round %d midErgodic + binarySearch: %d ns/op%n", round, (System.nanoTime() - begin) / scans);
+            // 整棵树遍历: 先生成List和迭代器，前100个，并行流
+            long allocated = AllocationCounter.threadAllocatedBytes();
+            begin = System.nanoTime();
+            for (Integer value : tree.midErgodic()) {
+                check += value;
+            }
+            System.out.printf("round %d midErgodic: %d ms, allocated %d MB%n", round, (System.nanoTime() - begin) / 1000000,
+                    (AllocationCounter.threadAllocatedBytes() - allocated) >> 20);
+            allocated = AllocationCounter.threadAllocatedBytes();
+            begin = System.nanoTime();
+            Iterator<Integer> iterator = tree.midIterator();
+            while (iterator.hasNext()) {
+                check += iterator.next();
+            }
+            System.out.printf("round %d midIterator: %d ms, allocated %d bytes%n", round, (System.nanoTime() - begin) / 1000000,
+                    AllocationCounter.threadAllocatedBytes() - allocated);
+            begin = System.nanoTime();
+            for (int i = 0; i < scans; i++) {
+                iterator = tree.midIterator();
+                for (int j = 0; j < 100 && iterator.hasNext(); j++) {
+                    check += iterator.next();
+                }
+            }
+            long first = (System.nanoTime() - begin) / scans;
+            begin = System.nanoTime();
+            for (int i = 0; i < scans; i++) {
+                List<Integer> values = tree.midErgodic();
+                for (int j = 0; j < 100 && j < values.size(); j++) {
+                    check += values.get(j);
+                }
+            }
+            System.out.printf("round %d first 100: midIterator %d ns, midErgodic %d ns%n", round, first,
+                    (System.nanoTime() - begin) / scans);
+            begin = System.nanoTime();
+            check += tree.stream(false).mapToLong(Integer::longValue).sum();
+            long sequential = System.nanoTime() - begin;
+            begin = System.nanoTime();
+            check += tree.stream(true).mapToLong(Integer::longValue).sum();
+            System.out.printf("round %d stream sum: sequential %d ms, parallel %d ms (%d cpus)%n", round,
+                    sequential / 1000000, (System.nanoTime() - begin) / 1000000, Runtime.getRuntime().availableProcessors());
+            begin = System.nanoTime();
+            for (int i = 0; i < ops; i++) {
+                tree.delete(tree.select(random.nextInt(tree.size())));
+            }
+            System.out.printf("round %d select + delete: %d ns/op, size=%d (%d)%n", round, (System.nanoTime() - begin) / ops,
+                    tree.size(), check);
+        }
+    }
 }
@@ -0,0 +1,109 @@
+package com.yang.ds.datastruct.tree.bstree.impl;
+
+import com.yang.ds.datastruct.tree.bstree.TreeNode;
+
+/**
+ * 基于子树节点个数的有序查询，只从根向下访问，不需要父节点引用，
+ * 可变的树(AbstractBSTree)和持久化的树(PersistentRBTree)共用，都是O(树高)
+ * */
+final class TreeNodes {
+
+    private TreeNodes() {
+    }
+
+    /**
+     * 子树的节点个数，空树是0
+     * */
+    static int sizeOf(TreeNode<?, ?> node) {
+        return node == null ? 0 : node.size();
+    }
+
+    /**
+     * 小于等于key的最大key，没有返回null
+     * */
+    static <K extends Comparable<? super K>> K floor(TreeNode<K, ?> root, K key) {
+        TreeNode<K, ?> cur = root;
+        K floor = null;
+        while (cur != null) {
+            int cmp = key.compareTo(cur.key());
+            if (cmp == 0) {
+                return cur.key();
+            }
+            if (cmp < 0) {
+                cur = cur.left();
+            } else {
+                // cur小于key，是候选，再去右子树找更大的
+                floor = cur.key();
+                cur = cur.right();
+            }
+        }
+        return floor;
+    }
+
+    /**
+     * 大于等于key的最小key，没有返回null
+     * */
+    static <K extends Comparable<? super K>> K ceiling(TreeNode<K, ?> root, K key) {
+        TreeNode<K, ?> cur = root;
+        K ceiling = null;
+        while (cur != null) {
+            int cmp = key.compareTo(cur.key());
+            if (cmp == 0) {
+                return cur.key();
+            }
+            if (cmp > 0) {
+                cur = cur.right();
+            } else {
+                ceiling = cur.key();
+                cur = cur.left();
+            }
+        }
+        return ceiling;
+    }
+
+    /**
+     * 小于key(inclusive为true的时候是小于等于)的节点个数
+     * 从根向下，向右走的时候左子树和当前节点都在key的左边，加上左子树的节点个数 + 1
+     * */
+    static <K extends Comparable<? super K>> int rank(TreeNode<K, ?> root, K key, boolean inclusive) {
+        TreeNode<K, ?> cur = root;
+        int rank = 0;
+        while (cur != null) {
+            int cmp = key.compareTo(cur.key());
+            if (cmp < 0 || (cmp == 0 && !inclusive)) {
+                cur = cur.left();
+            } else {
+                rank += sizeOf(cur.left()) + 1;
+                cur = cur.right();
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * 中序遍历中第k个节点，k必须在[0, size)之间
+     * */
+    static <K extends Comparable<? super K>, V> TreeNode<K, V> nodeAt(TreeNode<K, V> root, int k) {
+        TreeNode<K, V> cur = root;
+        while (true) {
+            int left = sizeOf(cur.left());
+            if (k < left) {
+                cur = cur.left();
+            } else if (k == left) {
+                return cur;
+            } else {
+                k -= left + 1;
+                cur = cur.right();
+            }
+        }
+    }
+
+    /**
+     * lo <= key <= hi的节点个数，lo/hi为null表示没有这一侧的边界
+     * */
+    static <K extends Comparable<? super K>> int count(TreeNode<K, ?> root, K lo, K hi) {
+        int high = hi == null ? sizeOf(root) : rank(root, hi, true);
+        int low = lo == null ? 0 : rank(root, lo, false);
+        return Math.max(0, high - low);
+    }
+}
@@ -0,0 +1,84 @@
+package com.yang.ds.datastruct.tree.btree;
+
+import java.util.Comparator;
+import java.util.function.ToLongFunction;
+
+/**
+ * 范围聚合用的幺半群(monoid): 单位元 + 满足结合律的合并
+ * B+树的非叶子节点给每个孩子保存一个子树的聚合值，范围聚合只需要合并两条边界路径上的值，
+ * 合并的顺序就是key的顺序，所以不要求满足交换律
+ * @param <V> value类型
+ * @param <A> 聚合值类型
+ * */
+public interface Aggregator<V, A> {
+
+    /**
+     * 单位元，空范围的聚合值
+     * */
+    A identity();
+
+    /**
+     * 单个value的聚合值
+     * */
+    A lift(V value);
+
+    /**
+     * 合并相邻的两段，left的key都在right前面
+     * */
+    A combine(A left, A right);
+
+    /**
+     * 求和
+     * @param mapper value转成long
+     * */
+    static <V> Aggregator<V, Long> sum(final ToLongFunction<? super V> mapper) {
+        return new Aggregator<V, Long>() {
+            @Override
+            public Long identity() {
+                return 0L;
+            }
+
+            @Override
+            public Long lift(V value) {
+                return mapper.applyAsLong(value);
+            }
+
+            @Override
+            public Long combine(Long left, Long right) {
+                return left + right;
+            }
+        };
+    }
+
+    /**
+     * 最小值，空范围是null
+     * */
+    static <V> Aggregator<V, V> min(final Comparator<? super V> comparator) {
+        return new Aggregator<V, V>() {
+            @Override
+            public V identity() {
+                return null;
+            }
+
+            @Override
+            public V lift(V value) {
+                return value;
+            }
+
+            @Override
+            public V combine(V left, V right) {
+                if (left == null || right == null) {
+                    return left == null ? right : left;
+                }
+                return comparator.compare(right, left) < 0 ? right : left;
+            }
+        };
+    }
+
+    /**
+     * 最大值，空范围是null
+     * */
+    static <V> Aggregator<V, V> max(Comparator<? super V> comparator) {
+        return min(comparator.reversed());
+    }
+}
@@ -1,6 +1,11 @@
 package com.yang.ds.datastruct.tree.btree;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * B+tree接口
@@ -11,4 +16,30 @@ public interface BPlusTree<K extends Comparable<? super K>, V> extends BTree<K,
     }
 
     List<V> searchRange(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy);
+
+    /**
+     * 范围遍历游标，beginKey/endKey为null表示没有下边界/上边界
+     * @param descending true从endKey向beginKey倒序遍历
+     * */
+    RangeCursor<K, V> rangeCursor(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy, boolean descending);
+
+    /**
+     * 范围遍历
+     * @param offset 跳过的元素个数
+     * @param limit 最多返回的元素个数
+     * @param descending true倒序
+     * */
+    default Iterator<Map.Entry<K, V>> rangeIterator(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy,
+                                                    long offset, long limit, boolean descending) {
+        return rangeCursor(beginKey, beginPolicy, endKey, endPolicy, descending).skip(offset).limit(limit).iterator();
+    }
+
+    /**
+     * 可以拆分的正序范围遍历器，按内部节点的孩子划分key的范围，不需要先把结果放到集合里面
+     * */
+    Spliterator<Map.Entry<K, V>> rangeSpliterator(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy);
+
+    default Stream<Map.Entry<K, V>> rangeStream(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy, boolean parallel) {
+        return StreamSupport.stream(rangeSpliterator(beginKey, beginPolicy, endKey, endPolicy), parallel);
+    }
 }
@@ -1,5 +1,8 @@
 package com.yang.ds.datastruct.tree.btree;
 
+import java.util.Iterator;
+import java.util.Map;
+
 /**
  * b-tree接口
  * */
@@ -31,4 +34,13 @@ public interface BTree<K extends Comparable<? super K>, V> {
      * */
     String treeToString();
 
+    /**
+     * 用有序数据自底向上重建整棵树，替换原来的数据
+     * 从左到右按装填因子装满叶子，再逐层向上构造非叶子节点，没有查找、插入移动和分裂
+     * @param sortedEntries 按key严格递增的数据，key不能为null，否则抛出IllegalArgumentException，原来的树保持不变
+     * @param fillFactor 装填因子(0, 1]，每个节点装满的比例，1表示装满，后续插入会马上分裂，
+     *                   不会小于节点的最少元素个数
+     * */
+    void bulkLoad(Iterator<Map.Entry<K, V>> sortedEntries, double fillFactor);
+
 }
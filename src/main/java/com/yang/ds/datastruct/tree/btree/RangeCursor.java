@@ -0,0 +1,78 @@
+package com.yang.ds.datastruct.tree.btree;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * B+树范围遍历游标，沿着叶子节点的链表按需向后(或向前)移动，不会把结果先放到集合里面
+ * <pre>
+ * RangeCursor<K, V> cursor = tree.rangeCursor(begin, INCLUSIVE, end, EXCLUSIVE, false).skip(offset).limit(limit);
+ * while (cursor.next()) {
+ *     cursor.key();
+ *     cursor.value();
+ * }
+ * </pre>
+ * 遍历期间不能修改树
+ * */
+public interface RangeCursor<K, V> {
+
+    /**
+     * 移动到下一个元素
+     * @return 没有下一个元素返回false
+     * */
+    boolean next();
+
+    /**
+     * 当前元素的key
+     * */
+    K key();
+
+    /**
+     * 当前元素的value
+     * */
+    V value();
+
+    /**
+     * 跳过n个元素(offset)，整个叶子节点一起跳过，不访问跳过的元素
+     * @return 游标本身
+     * */
+    RangeCursor<K, V> skip(long n);
+
+    /**
+     * 最多再返回n个元素(limit)
+     * @return 游标本身
+     * */
+    RangeCursor<K, V> limit(long n);
+
+    /**
+     * 转换成Iterator，每个元素创建一个Entry
+     * */
+    default Iterator<Map.Entry<K, V>> iterator() {
+        return new Iterator<Map.Entry<K, V>>() {
+            /**是否已经移动到了下一个元素还没有返回*/
+            private boolean ready;
+
+            private boolean end;
+
+            @Override
+            public boolean hasNext() {
+                if (!ready && !end) {
+                    ready = RangeCursor.this.next();
+                    end = !ready;
+                }
+                return ready;
+            }
+
+            @Override
+            public Map.Entry<K, V> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                ready = false;
+                return new AbstractMap.SimpleImmutableEntry<>(key(), value());
+            }
+        };
+    }
+}
@@ -5,6 +5,7 @@ import com.yang.ds.datastruct.tree.btree.node.BInnerNode;
 import com.yang.ds.datastruct.tree.btree.node.BNode;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public abstract class AbstractBNode<K extends Comparable<? super K>, V> implements BNode<K, V> {
@@ -75,4 +76,41 @@ public abstract class AbstractBNode<K extends Comparable<? super K>, V> implemen
     public List<V> values() {
         throw new UnsupportedOperationException("no value");
     }
+
+    /**
+     * 批量加载时每个节点装的个数
+     * @param max 节点最多的个数
+     * @param min 节点最少的个数
+     * @param fillFactor 装填因子(0, 1]
+     * */
+    static int fillSize(int max, int min, double fillFactor) {
+        if (!(fillFactor > 0 && fillFactor <= 1)) {
+            throw new IllegalArgumentException("Illegal fill factor: " + fillFactor);
+        }
+        return Math.max(min, Math.min(max, (int) Math.ceil(max * fillFactor)));
+    }
+
+    /**
+     * 批量加载时n个元素(孩子)分组，每组per个，最后一组不足min个的时候和前一组合并(不超过max)或者两组平分
+     * @return 每组的个数
+     * */
+    static int[] groupSizes(int n, int per, int min, int max) {
+        int groups = Math.max(1, (n + per - 1) / per);
+        int[] sizes = new int[groups];
+        for (int i = 0; i < groups; i++) {
+            sizes[i] = Math.min(per, n - i * per);
+        }
+        int last = sizes[groups - 1];
+        if (groups > 1 && last < min) {
+            int total = sizes[groups - 2] + last;
+            if (total <= max) {
+                sizes = Arrays.copyOf(sizes, groups - 1);
+                sizes[groups - 2] = total;
+            } else {
+                sizes[groups - 2] = total - total / 2;
+                sizes[groups - 1] = total / 2;
+            }
+        }
+        return sizes;
+    }
 }
@@ -0,0 +1,80 @@
+package com.yang.ds.datastruct.tree.btree.impl;
+
+import com.yang.ds.datastruct.tree.btree.RangeCursor;
+
+/**
+ * 在内存里的叶子上移动的范围游标，next/skip/limit的逻辑各种B+树都一样，
+ * 子类负责定位到第一个元素、移动到下一个叶子和读取元素
+ * */
+abstract class AbstractRangeCursor<K, V> implements RangeCursor<K, V> {
+
+    protected final boolean descending;
+
+    /**下一个元素在当前叶子中的位置，正序可能等于叶子的元素个数，倒序可能是-1，表示在下一个叶子里*/
+    protected int idx;
+
+    private boolean end;
+
+    /**剩余可以返回的元素个数*/
+    private long remaining = Long.MAX_VALUE;
+
+    protected AbstractRangeCursor(boolean descending) {
+        this.descending = descending;
+    }
+
+    /**
+     * 当前叶子走完了，移动到下一个(倒序是前一个)有元素的叶子
+     * @return 没有叶子了返回false
+     * */
+    protected abstract boolean normalize();
+
+    /**
+     * 当前叶子的元素个数
+     * */
+    protected abstract int count();
+
+    /**
+     * idx位置的元素没有超出另一个边界的时候，记录下来作为key()和value()
+     * @return 超出边界返回false，后面的元素都不在范围内
+     * */
+    protected abstract boolean load(int idx);
+
+    @Override
+    public boolean next() {
+        if (end || !normalize() || remaining <= 0 || !load(idx)) {
+            end = true;
+            return false;
+        }
+        idx += descending ? -1 : 1;
+        remaining--;
+        return true;
+    }
+
+    @Override
+    public RangeCursor<K, V> skip(long n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Illegal offset: " + n);
+        }
+        // 跳过的元素如果超出了边界，next的时候一样会判断出来
+        while (n > 0 && !end) {
+            if (!normalize()) {
+                end = true;
+                break;
+            }
+            long available = descending ? idx + 1 : count() - idx;
+            long step = Math.min(n, available);
+            idx += descending ? -step : step;
+            n -= step;
+        }
+        return this;
+    }
+
+    @Override
+    public RangeCursor<K, V> limit(long n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Illegal limit: " + n);
+        }
+        remaining = n;
+        return this;
+    }
+}
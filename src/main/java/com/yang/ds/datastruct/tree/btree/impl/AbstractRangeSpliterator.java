@@ -0,0 +1,112 @@
+package com.yang.ds.datastruct.tree.btree.impl;
+
+import com.yang.ds.datastruct.tree.btree.BPlusTree.RangePolicy;
+import com.yang.ds.datastruct.tree.btree.RangeCursor;
+
+import java.util.AbstractMap;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * B+树的正序范围遍历器，拆分时从根向下找到范围跨越多个孩子的第一个内部节点，用中间的分隔key把范围分成两半，
+ * 前一半返回，自己保留后一半。已经开始遍历了不再拆分
+ * 元素个数不知道，从Long.MAX_VALUE开始每次拆分减半，并行流按这个估计值决定拆分的深度
+ *
+ * 各种B+树只是节点的存储不一样，子类提供游标和从根向下查找分隔key，其他的都在这里
+ * */
+abstract class AbstractRangeSpliterator<K extends Comparable<? super K>, V> implements Spliterator<Map.Entry<K, V>> {
+
+    protected K beginKey;
+    protected RangePolicy beginPolicy;
+    protected final K endKey;
+    protected final RangePolicy endPolicy;
+    private long est;
+    private RangeCursor<K, V> cursor;
+
+    protected AbstractRangeSpliterator(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy, long est) {
+        this.beginKey = beginKey;
+        this.beginPolicy = beginPolicy;
+        this.endKey = endKey;
+        this.endPolicy = endPolicy;
+        this.est = est;
+    }
+
+    /**
+     * 当前范围的正序游标
+     * */
+    protected abstract RangeCursor<K, V> cursor();
+
+    /**
+     * 从根向下找到范围跨越多个孩子的第一个内部节点，返回它的分隔key中用来拆分的那一个(见splitIndex)，没有返回null
+     * */
+    protected abstract K splitKey();
+
+    /**
+     * 同一棵树上[beginKey, splitKey)的遍历器
+     * */
+    protected abstract AbstractRangeSpliterator<K, V> prefix(K splitKey, long est);
+
+    /**
+     * 内部节点中用来拆分的分隔key的位置
+     * 分隔key[lo, hi)都大于beginKey，最后一个可能等于endKey，拆分之后后一半是空的，不能用，剩下的取中间那个
+     * @param lo beginKey所在孩子的位置
+     * @param hi endKey所在孩子的位置
+     * @param lastReachesEnd 分隔key[hi - 1]是否大于等于endKey
+     * @return 没有可用的分隔key返回-1
+     * */
+    static int splitIndex(int lo, int hi, boolean lastReachesEnd) {
+        int last = lastReachesEnd ? hi - 2 : hi - 1;
+        return last >= lo ? (lo + last + 1) >>> 1 : -1;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Map.Entry<K, V>> action) {
+        if (cursor == null) {
+            cursor = cursor();
+        }
+        if (!cursor.next()) {
+            return false;
+        }
+        action.accept(new AbstractMap.SimpleImmutableEntry<>(cursor.key(), cursor.value()));
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super Map.Entry<K, V>> action) {
+        while (tryAdvance(action)) {
+        }
+    }
+
+    @Override
+    public Spliterator<Map.Entry<K, V>> trySplit() {
+        if (cursor != null) {
+            return null;
+        }
+        K splitKey = splitKey();
+        if (splitKey == null) {
+            return null;
+        }
+        est >>>= 1;
+        Spliterator<Map.Entry<K, V>> prefix = prefix(splitKey, est);
+        beginKey = splitKey;
+        beginPolicy = RangePolicy.INCLUSIVE;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return est;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SORTED | DISTINCT | NONNULL;
+    }
+
+    @Override
+    public Comparator<? super Map.Entry<K, V>> getComparator() {
+        return Map.Entry.comparingByKey();
+    }
+}
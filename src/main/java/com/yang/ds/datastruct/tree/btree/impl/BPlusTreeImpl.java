@@ -1,16 +1,21 @@
 package com.yang.ds.datastruct.tree.btree.impl;
 
 import com.yang.ds.algorithm.utils.YUtils;
+import com.yang.ds.datastruct.tree.btree.Aggregator;
 import com.yang.ds.datastruct.tree.btree.BPlusTree;
+import com.yang.ds.datastruct.tree.btree.RangeCursor;
 import com.yang.ds.datastruct.tree.btree.node.BDelIndexer;
 import com.yang.ds.datastruct.tree.btree.node.BInnerNode;
 import com.yang.ds.datastruct.tree.btree.node.BLeafNode;
 import com.yang.ds.datastruct.tree.btree.node.BNode;
 
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Spliterator;
 
 /**
  * B+树(m阶)
@@ -25,7 +30,7 @@ import java.util.List;
  * 8.叶子节点包含所有数据的key和value，上层节点的key在叶子节点中都能找到
  * 9.上层节点的key均来自右侧分裂节点向下获取第一个左侧子孩子直到递归到叶子节点的第一个最左侧key
  * 10.第二层非叶子节点的值都是其下面叶子节点分裂后的新节点的最左侧的第一个key
- * 11.底层的叶子节点需要形成一个单项链表，方便范围查找，可以在链表上直接进行，而不再需要通过树的索引来判断
+ * 11.底层的叶子节点需要形成一个双向链表，方便范围查找，可以在链表上直接进行(正序沿next，倒序沿prev)，而不再需要通过树的索引来判断
  *
  * 分裂：参考B树分裂一样的原理 不同有一下两点
  * 1. 叶子节点分裂，上提key的同时，右侧新分裂的节点，数组第一个key就是上提的key，所以第二层节点和叶子节点有这特殊的关系
@@ -50,12 +55,41 @@ public class BPlusTreeImpl<K extends Comparable<? super K>, V> implements BPlusT
     private BNode<K, V> root;
     // 树的阶
     private int degree = 5;
+    // 非叶子节点是否保存每个孩子子树的元素个数
+    private final boolean counted;
+    // 非叶子节点保存每个孩子子树的聚合值，null表示不聚合
+    private final Aggregator<Object, Object> aggregator;
 
     public BPlusTreeImpl(int degree) {
+        this(degree, false, null);
+    }
+
+    /**
+     * @param counted 是否统计子树的元素个数，开启之后可以用count做O(log n)的范围计数
+     * */
+    public BPlusTreeImpl(int degree, boolean counted) {
+        this(degree, counted, null);
+    }
+
+    /**
+     * 统计子树的元素个数和聚合值，可以用count、aggregate做O(log n)的范围计数和聚合
+     * @param aggregator 聚合方式，比如Aggregator.sum
+     * */
+    public BPlusTreeImpl(int degree, Aggregator<? super V, ?> aggregator) {
+        this(degree, true, aggregator);
+        if (aggregator == null) {
+            throw new IllegalArgumentException("aggregator can not be null");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private BPlusTreeImpl(int degree, boolean counted, Aggregator<? super V, ?> aggregator) {
         if (degree < MIN_DEGREE) {
             throw new IllegalArgumentException("degree is less than " + MIN_DEGREE + "" + "," + degree);
         }
         this.degree = degree;
+        this.counted = counted;
+        this.aggregator = (Aggregator<Object, Object>) aggregator;
         root = new LeafNode<>(degree);
     }
 
@@ -81,7 +115,438 @@ public class BPlusTreeImpl<K extends Comparable<? super K>, V> implements BPlusT
 
     @Override
     public List<V> searchRange(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy) {
-        return ((Range) root).getRange(beginKey, beginPolicy, endKey, endPolicy);
+        List<V> result = new ArrayList<>();
+        RangeCursor<K, V> cursor = rangeCursor(beginKey, beginPolicy, endKey, endPolicy, false);
+        while (cursor.next()) {
+            result.add(cursor.value());
+        }
+        return result;
+    }
+
+    @Override
+    public RangeCursor<K, V> rangeCursor(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy, boolean descending) {
+        return new LeafCursor(beginKey, beginPolicy, endKey, endPolicy, descending);
+    }
+
+    @Override
+    public Spliterator<Map.Entry<K, V>> rangeSpliterator(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy) {
+        return new RangeSpliterator(beginKey, beginPolicy, endKey, endPolicy, Long.MAX_VALUE);
+    }
+
+    /**
+     * 节点类型转换，叶子和非叶子是内部类，类型带着外部类的泛型参数，从BNode转换是unchecked的
+     * */
+    @SuppressWarnings("unchecked")
+    private <T extends Comparable<? super T>, U> LeafNode<T, U> asLeaf(BNode<T, U> node) {
+        return (LeafNode<T, U>) node;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Comparable<? super T>, U> InnerNode<T, U> asInner(BNode<T, U> node) {
+        return (InnerNode<T, U>) node;
+    }
+
+    /**
+     * key所在的叶子节点，key为null返回最左侧的叶子
+     * */
+    private LeafNode<K, V> leafOf(K key) {
+        BNode<K, V> node = root;
+        while (node instanceof BInnerNode) {
+            BInnerNode<K, V> inner = (BInnerNode<K, V>) node;
+            node = key == null ? inner.children().get(0) : inner.getChild(key);
+        }
+        return asLeaf(node);
+    }
+
+    /**
+     * 最右侧的叶子
+     * */
+    private LeafNode<K, V> lastLeaf() {
+        BNode<K, V> node = root;
+        while (node instanceof BInnerNode) {
+            List<BNode<K, V>> children = ((BInnerNode<K, V>) node).children();
+            node = children.get(children.size() - 1);
+        }
+        return asLeaf(node);
+    }
+
+    /**
+     * key是否满足下边界
+     * */
+    static <K extends Comparable<? super K>> boolean afterBegin(K key, K beginKey, RangePolicy beginPolicy) {
+        if (beginKey == null) {
+            return true;
+        }
+        int cmp = key.compareTo(beginKey);
+        return beginPolicy == RangePolicy.INCLUSIVE ? cmp >= 0 : cmp > 0;
+    }
+
+    /**
+     * key是否满足上边界
+     * */
+    static <K extends Comparable<? super K>> boolean beforeEnd(K key, K endKey, RangePolicy endPolicy) {
+        if (endKey == null) {
+            return true;
+        }
+        int cmp = key.compareTo(endKey);
+        return endPolicy == RangePolicy.INCLUSIVE ? cmp <= 0 : cmp < 0;
+    }
+
+    /**
+     * 叶子链表上的范围游标，正序从beginKey所在的叶子沿next走，倒序从endKey所在的叶子沿prev走，
+     * 遇到超出另一个边界的key结束
+     * */
+    private class LeafCursor extends AbstractRangeCursor<K, V> {
+
+        private final K beginKey;
+        private final RangePolicy beginPolicy;
+        private final K endKey;
+        private final RangePolicy endPolicy;
+
+        /**下一个元素所在的叶子，null表示结束*/
+        private LeafNode<K, V> leaf;
+
+        private K key;
+        private V value;
+
+        private LeafCursor(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy, boolean descending) {
+            super(descending);
+            this.beginKey = beginKey;
+            this.beginPolicy = beginPolicy;
+            this.endKey = endKey;
+            this.endPolicy = endPolicy;
+            if (!descending) {
+                leaf = leafOf(beginKey);
+                if (beginKey != null) {
+                    int loc = YUtils.binarySearch(leaf.keys(), beginKey);
+                    idx = loc >= 0 ? (beginPolicy == RangePolicy.INCLUSIVE ? loc : loc + 1) : -loc - 1;
+                }
+            } else {
+                leaf = endKey == null ? lastLeaf() : leafOf(endKey);
+                idx = leaf.keyNumber() - 1;
+                if (endKey != null) {
+                    int loc = YUtils.binarySearch(leaf.keys(), endKey);
+                    idx = loc >= 0 ? (endPolicy == RangePolicy.INCLUSIVE ? loc : loc - 1) : -loc - 2;
+                }
+            }
+        }
+
+        @Override
+        protected boolean normalize() {
+            if (!descending) {
+                while (leaf != null && idx >= leaf.keyNumber()) {
+                    leaf = asLeaf(leaf.next);
+                    idx = 0;
+                }
+            } else {
+                while (leaf != null && idx < 0) {
+                    leaf = asLeaf(leaf.prev);
+                    idx = leaf == null ? -1 : leaf.keyNumber() - 1;
+                }
+            }
+            return leaf != null;
+        }
+
+        @Override
+        protected int count() {
+            return leaf.keyNumber();
+        }
+
+        @Override
+        protected boolean load(int idx) {
+            K k = leaf.keys().get(idx);
+            if (descending ? !afterBegin(k, beginKey, beginPolicy) : !beforeEnd(k, endKey, endPolicy)) {
+                return false;
+            }
+            key = k;
+            value = leaf.values().get(idx);
+            return true;
+        }
+
+        @Override
+        public K key() {
+            return key;
+        }
+
+        @Override
+        public V value() {
+            return value;
+        }
+    }
+
+    /**
+     * 拆分时用内部节点的分隔key
+     * */
+    private class RangeSpliterator extends AbstractRangeSpliterator<K, V> {
+
+        private RangeSpliterator(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy, long est) {
+            super(beginKey, beginPolicy, endKey, endPolicy, est);
+        }
+
+        @Override
+        protected RangeCursor<K, V> cursor() {
+            return rangeCursor(beginKey, beginPolicy, endKey, endPolicy, false);
+        }
+
+        @Override
+        protected K splitKey() {
+            BNode<K, V> node = root;
+            while (node instanceof BInnerNode) {
+                InnerNode<K, V> inner = asInner(node);
+                List<K> keys = inner.keys();
+                int lo = beginKey == null ? 0 : inner.childIndex(beginKey);
+                int hi = endKey == null ? inner.keyNumber() : inner.childIndex(endKey);
+                int i = splitIndex(lo, hi, hi > lo && endKey != null && keys.get(hi - 1).compareTo(endKey) >= 0);
+                if (i >= 0) {
+                    // 第i + 1个孩子的所有key都大于等于keys[i]
+                    return keys.get(i);
+                }
+                node = inner.getChild(lo);
+            }
+            return null;
+        }
+
+        @Override
+        protected AbstractRangeSpliterator<K, V> prefix(K splitKey, long est) {
+            return new RangeSpliterator(beginKey, beginPolicy, splitKey, RangePolicy.EXCLUSIVE, est);
+        }
+    }
+
+    /**
+     * 范围内元素的个数，边界为null表示不限制
+     * 从根向下，范围完整覆盖的孩子直接用父节点保存的个数，只沿着两个边界的路径向下，不访问范围内部的叶子
+     * */
+    public long count(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy) {
+        if (!counted) {
+            throw new IllegalStateException("tree is not counted");
+        }
+        return count(root, beginKey, beginPolicy, endKey, endPolicy);
+    }
+
+    private long count(BNode<K, V> node, K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy) {
+        if (node instanceof LeafNode) {
+            LeafNode<K, V> leaf = asLeaf(node);
+            return Math.max(0, leaf.endIndex(endKey, endPolicy) - leaf.beginIndex(beginKey, beginPolicy));
+        }
+        InnerNode<K, V> inner = asInner(node);
+        if (beginKey == null && endKey == null) {
+            return inner.count(0, inner.keyNumber() + 1);
+        }
+        int lo = beginKey == null ? 0 : inner.childIndex(beginKey);
+        int hi = endKey == null ? inner.keyNumber() : inner.childIndex(endKey);
+        if (lo == hi) {
+            return count(inner.getChild(lo), beginKey, beginPolicy, endKey, endPolicy);
+        }
+        if (lo > hi) {
+            return 0;
+        }
+        // 中间的孩子整个在范围内，两边的孩子只有一侧边界
+        return count(inner.getChild(lo), beginKey, beginPolicy, null, null) + inner.count(lo + 1, hi)
+                + count(inner.getChild(hi), null, null, endKey, endPolicy);
+    }
+
+    /**
+     * 范围内value的聚合值，聚合方式由构造参数的Aggregator决定，边界为null表示不限制
+     * 和count一样只访问两个边界的路径，O(log n)
+     * */
+    @SuppressWarnings("unchecked")
+    public <A> A aggregate(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy) {
+        if (aggregator == null) {
+            throw new IllegalStateException("tree has no aggregator");
+        }
+        return (A) aggregate(root, beginKey, beginPolicy, endKey, endPolicy);
+    }
+
+    private Object aggregate(BNode<K, V> node, K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy) {
+        if (node instanceof LeafNode) {
+            LeafNode<K, V> leaf = asLeaf(node);
+            return leaf.aggregate(leaf.beginIndex(beginKey, beginPolicy), leaf.endIndex(endKey, endPolicy));
+        }
+        InnerNode<K, V> inner = asInner(node);
+        if (beginKey == null && endKey == null) {
+            return inner.aggregate(0, inner.keyNumber() + 1);
+        }
+        int lo = beginKey == null ? 0 : inner.childIndex(beginKey);
+        int hi = endKey == null ? inner.keyNumber() : inner.childIndex(endKey);
+        if (lo == hi) {
+            return aggregate(inner.getChild(lo), beginKey, beginPolicy, endKey, endPolicy);
+        }
+        if (lo > hi) {
+            return aggregator.identity();
+        }
+        Object left = aggregate(inner.getChild(lo), beginKey, beginPolicy, null, null);
+        Object right = aggregate(inner.getChild(hi), null, null, endKey, endPolicy);
+        return aggregator.combine(aggregator.combine(left, inner.aggregate(lo + 1, hi)), right);
+    }
+
+    @Override
+    public void bulkLoad(Iterator<Map.Entry<K, V>> sortedEntries, double fillFactor) {
+        int maxKeys = degree - 1, minKeys = Math.max(1, (degree + 1) / 2 - 1);
+        int leafSize = AbstractBNode.fillSize(maxKeys, minKeys, fillFactor);
+        // 当前层的节点和每个节点最左侧叶子的第一个key(上一层的索引key)
+        List<BNode<K, V>> level = new ArrayList<>();
+        List<K> firstKeys = new ArrayList<>();
+        LeafNode<K, V> leaf = null;
+        K last = null;
+        while (sortedEntries.hasNext()) {
+            Map.Entry<K, V> entry = sortedEntries.next();
+            K key = entry.getKey();
+            if (key == null || (last != null && key.compareTo(last) <= 0)) {
+                throw new IllegalArgumentException("entries must be sorted by key without duplicates: " + last + ", " + key);
+            }
+            // 叶子装满了，向右新建一个叶子，链接next/prev
+            if (leaf == null || leaf.keyNumber() == leafSize) {
+                LeafNode<K, V> newLeaf = new LeafNode<>(degree);
+                if (leaf != null) {
+                    leaf.next = newLeaf;
+                    newLeaf.prev = leaf;
+                }
+                leaf = newLeaf;
+                level.add(leaf);
+                firstKeys.add(key);
+            }
+            leaf.keys.add(key);
+            leaf.values.add(entry.getValue());
+            last = key;
+        }
+        if (leaf == null) {
+            root = new LeafNode<>(degree);
+            return;
+        }
+        // 最后一个叶子不够最少元素个数，和前一个叶子合并或者平分
+        int n = level.size();
+        if (n > 1 && leaf.keyNumber() < minKeys) {
+            LeafNode<K, V> prev = asLeaf(level.get(n - 2));
+            int[] sizes = AbstractBNode.groupSizes(prev.keyNumber() + leaf.keyNumber(), leafSize, minKeys, maxKeys);
+            if (sizes.length == 1) {
+                prev.keys.addAll(leaf.keys);
+                prev.values.addAll(leaf.values);
+                prev.next = null;
+                level.remove(n - 1);
+                firstKeys.remove(n - 1);
+            } else {
+                int from = sizes[0], to = prev.keyNumber();
+                leaf.keys.addAll(0, prev.keys.subList(from, to));
+                leaf.values.addAll(0, prev.values.subList(from, to));
+                prev.keys.subList(from, to).clear();
+                prev.values.subList(from, to).clear();
+                firstKeys.set(n - 1, leaf.keys.get(0));
+            }
+        }
+        // 逐层向上，每个非叶子节点的key是除了第一个孩子之外每个孩子的最小key
+        int fanout = AbstractBNode.fillSize(degree, minKeys + 1, fillFactor);
+        while (level.size() > 1) {
+            int[] sizes = AbstractBNode.groupSizes(level.size(), fanout, minKeys + 1, degree);
+            List<BNode<K, V>> parents = new ArrayList<>(sizes.length);
+            List<K> parentKeys = new ArrayList<>(sizes.length);
+            int i = 0;
+            for (int size : sizes) {
+                InnerNode<K, V> inner = new InnerNode<>(degree);
+                parentKeys.add(firstKeys.get(i));
+                for (int j = 0; j < size; j++, i++) {
+                    if (j > 0) {
+                        inner.keys.add(firstKeys.get(i));
+                    }
+                    inner.children.add(level.get(i));
+                }
+                inner.refresh(0, size - 1);
+                parents.add(inner);
+            }
+            level = parents;
+            firstKeys = parentKeys;
+        }
+        root = level.get(0);
+    }
+
+    /**
+     * 逐个插入和批量加载对比耗时和叶子的平均装填率，
+     * 以及开启子树统计之后count、aggregate和searchRange的范围计数、求和对比
+     * 运行参数: [元素个数] [阶]
+     * */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        int degree = args.length > 1 ? Integer.parseInt(args[1]) : 128;
+        List<Map.Entry<Integer, Integer>> entries = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(i, i));
+        }
+        // 第一轮作为预热，以第二轮的结果为准
+        for (int round = 1; round <= 2; round++) {
+            BPlusTreeImpl<Integer, Integer> tree = new BPlusTreeImpl<>(degree);
+            long begin = System.nanoTime();
+            for (Map.Entry<Integer, Integer> entry : entries) {
+                tree.insert(entry.getKey(), entry.getValue());
+            }
+            printLoad(round, "insert", tree, n, System.nanoTime() - begin);
+            for (double fillFactor : new double[]{1.0, 0.7}) {
+                tree = new BPlusTreeImpl<>(degree);
+                begin = System.nanoTime();
+                tree.bulkLoad(entries.iterator(), fillFactor);
+                printLoad(round, "bulkLoad " + fillFactor, tree, n, System.nanoTime() - begin);
+            }
+        }
+        for (int round = 1; round <= 2; round++) {
+            BPlusTreeImpl<Integer, Integer> plain = new BPlusTreeImpl<>(degree);
+            BPlusTreeImpl<Integer, Integer> summed = new BPlusTreeImpl<>(degree, Aggregator.<Integer>sum(Integer::longValue));
+            long begin = System.nanoTime();
+            for (Map.Entry<Integer, Integer> entry : entries) {
+                plain.insert(entry.getKey(), entry.getValue());
+            }
+            long plainCost = System.nanoTime() - begin;
+            begin = System.nanoTime();
+            for (Map.Entry<Integer, Integer> entry : entries) {
+                summed.insert(entry.getKey(), entry.getValue());
+            }
+            long summedCost = System.nanoTime() - begin;
+            BPlusTreeImpl<Integer, Integer> counted = new BPlusTreeImpl<>(degree, true);
+            begin = System.nanoTime();
+            for (Map.Entry<Integer, Integer> entry : entries) {
+                counted.insert(entry.getKey(), entry.getValue());
+            }
+            long countedCost = System.nanoTime() - begin;
+            System.out.printf("round %d insert plain %d ns/key, counted %d ns/key, counted+sum %d ns/key%n",
+                    round, plainCost / n, countedCost / n, summedCost / n);
+            Random random = new Random(round);
+            int queries = 2000, span = n / 10;
+            long check = 0;
+            begin = System.nanoTime();
+            for (int i = 0; i < queries; i++) {
+                int from = random.nextInt(n - span);
+                long total = 0;
+                for (int value : plain.searchRange(from, RangePolicy.INCLUSIVE, from + span, RangePolicy.EXCLUSIVE)) {
+                    total += value;
+                }
+                check += total;
+            }
+            long scanCost = System.nanoTime() - begin;
+            random = new Random(round);
+            begin = System.nanoTime();
+            for (int i = 0; i < queries; i++) {
+                int from = random.nextInt(n - span);
+                check -= summed.<Long>aggregate(from, RangePolicy.INCLUSIVE, from + span, RangePolicy.EXCLUSIVE);
+                check += summed.count(from, RangePolicy.INCLUSIVE, from + span, RangePolicy.EXCLUSIVE) - span;
+            }
+            long aggCost = System.nanoTime() - begin;
+            System.out.printf("round %d range of %d keys: searchRange+sum %d ns/query, count+aggregate %d ns/query (check %d)%n",
+                    round, span, scanCost / queries, aggCost / queries, check);
+        }
+    }
+
+    private static void printLoad(int round, String name, BPlusTreeImpl<Integer, Integer> tree, int n, long cost) {
+        int leaves = tree.leafCount();
+        System.out.printf("round %d %-14s %d ms %d ns/key leaves=%d leaf fill=%.1f%%%n", round, name, cost / 1000000,
+                cost / n, leaves, 100.0 * n / leaves / (tree.degree - 1));
+    }
+
+    /**
+     * 叶子节点个数
+     * */
+    private int leafCount() {
+        int count = 0;
+        for (LeafNode<K, V> leaf = leafOf(null); leaf != null; leaf = asLeaf(leaf.next)) {
+            count++;
+        }
+        return count;
     }
 
     private BNode splitRoot(BNode origin, BNode<K, V> rightSib) {
@@ -92,6 +557,7 @@ public class BPlusTreeImpl<K extends Comparable<? super K>, V> implements BPlusT
         newRoot.keys.add(splitKey);
         newRoot.children.add(origin);
         newRoot.children.add(rightSib);
+        newRoot.refresh(0, 1);
         return newRoot;
     }
 
@@ -106,28 +572,142 @@ public class BPlusTreeImpl<K extends Comparable<? super K>, V> implements BPlusT
         }
     }
 
-    /**
-     * 实现范围查找接口，只有B+tree 存在
-     * */
-    private interface Range<K extends Comparable<? super K>, V> {
-        List<V> getRange(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy);
-    }
-
-    private class InnerNode<K extends Comparable<? super K>, V> extends AbstractBNode<K, V> implements Range<K, V>, BInnerNode<K, V> {
+    private class InnerNode<K extends Comparable<? super K>, V> extends AbstractBNode<K, V> implements BInnerNode<K, V> {
         private List<BNode<K, V>> children;
+        /**每个孩子子树的元素个数，和children一一对应，没有开启统计为null*/
+        private long[] counts;
+        /**每个孩子子树的聚合值，和children一一对应，没有聚合为null*/
+        private Object[] aggs;
 
         protected InnerNode(int degree) {
             super(degree);
             this.keys = new ArrayList<>(degree);
             children = new ArrayList<>(degree);
+            if (counted) {
+                // 上溢出的时候有degree个key，degree+1个孩子
+                counts = new long[degree + 1];
+                if (aggregator != null) {
+                    aggs = new Object[degree + 1];
+                }
+            }
+        }
+
+        /**
+         * 根据第i个孩子重新计算它的个数和聚合值，孩子是非叶子就合并它保存的值，是叶子就合并叶子的value
+         * */
+        private void refresh(int i) {
+            BNode<K, V> child = children.get(i);
+            if (child instanceof InnerNode) {
+                InnerNode<K, V> inner = asInner(child);
+                int n = inner.children.size();
+                counts[i] = inner.count(0, n);
+                if (aggs != null) {
+                    aggs[i] = inner.aggregate(0, n);
+                }
+            } else {
+                LeafNode<K, V> leaf = asLeaf(child);
+                counts[i] = leaf.keyNumber();
+                if (aggs != null) {
+                    aggs[i] = leaf.aggregate(0, leaf.keyNumber());
+                }
+            }
+        }
+
+        /**
+         * 重新计算[from, to]之间存在的孩子
+         * */
+        private void refresh(int from, int to) {
+            if (counts == null) {
+                return;
+            }
+            for (int i = Math.max(0, from); i <= to && i < children.size(); i++) {
+                refresh(i);
+            }
+        }
+
+        /**
+         * 第[from, to)个孩子的元素个数之和
+         * */
+        private long count(int from, int to) {
+            long count = 0;
+            for (int i = from; i < to; i++) {
+                count += counts[i];
+            }
+            return count;
+        }
+
+        /**
+         * 第[from, to)个孩子按顺序合并的聚合值
+         * */
+        private Object aggregate(int from, int to) {
+            Object agg = aggregator.identity();
+            for (int i = from; i < to; i++) {
+                agg = aggregator.combine(agg, aggs[i]);
+            }
+            return agg;
+        }
+
+        /**
+         * children在i位置插入了一个孩子之后，统计值跟着后移，空出i位置
+         * */
+        private void openSlot(int i) {
+            if (counts == null) {
+                return;
+            }
+            int moved = children.size() - 1 - i;
+            System.arraycopy(counts, i, counts, i + 1, moved);
+            if (aggs != null) {
+                System.arraycopy(aggs, i, aggs, i + 1, moved);
+            }
+        }
+
+        /**
+         * children删除了i位置的孩子之后，统计值跟着前移
+         * */
+        private void closeSlot(int i) {
+            if (counts == null) {
+                return;
+            }
+            int n = children.size();
+            System.arraycopy(counts, i + 1, counts, i, n - i);
+            if (aggs != null) {
+                System.arraycopy(aggs, i + 1, aggs, i, n - i);
+                aggs[n] = null;
+            }
+        }
+
+        /**
+         * 把other第[from, to)个孩子的统计值复制到自己的第at个孩子开始的位置
+         * */
+        private void copySlots(InnerNode<K, V> other, int from, int to, int at) {
+            if (counts == null) {
+                return;
+            }
+            System.arraycopy(other.counts, from, counts, at, to - from);
+            if (aggs != null) {
+                System.arraycopy(other.aggs, from, aggs, at, to - from);
+            }
+        }
+
+        /**
+         * 删除第i个孩子(合并之后右侧的孩子)
+         * */
+        private void removeChild(int i) {
+            children.remove(i);
+            closeSlot(i);
         }
 
         @Override
         public BNode<K, V> getChild(K key) {
+            return children().get(childIndex(key));
+        }
+
+        /**
+         * key所在孩子的位置，存在相等，则从右侧值域查找孩子
+         * */
+        private int childIndex(K key) {
             int loc = YUtils.binarySearch(keys(), key);
-            // 存在相等，则从右侧值域查找孩子
-            int childIdx = loc >= 0 ? loc + 1 : -loc - 1;
-            return children().get(childIdx);
+            return loc >= 0 ? loc + 1 : -loc - 1;
         }
 
         @Override
@@ -140,11 +720,14 @@ public class BPlusTreeImpl<K extends Comparable<? super K>, V> implements BPlusT
 
         @Override
         public void insert(K key, V value) {
-            BNode<K, V> child = getChild(key);
+            int childIdx = childIndex(key);
+            BNode<K, V> child = getChild(childIdx);
             child.insert(key, value);
             if (child.isOverflow()) {
                 insertChild(child.split());
             }
+            // 孩子和分裂出来的右侧兄弟重新统计
+            refresh(childIdx, childIdx + 1);
             if (root.isOverflow()) {
                 root = splitRoot(this, split());
             }
@@ -176,10 +759,14 @@ public class BPlusTreeImpl<K extends Comparable<? super K>, V> implements BPlusT
             // 删除如果下溢出，则进行平衡修复
             if (child.isUnderflow()) {
                 BNode newRoot = fixBalance(child, this, indexer);
+                // 孩子和参与旋转、合并的兄弟重新统计
+                refresh(childIdx - 1, childIdx + 1);
                 // 根节点下溢出了，用上一次合并的主节点作为新的根
                 if (root.keyNumber() == 0 && newRoot != null) {
                     root = newRoot;
                 }
+            } else {
+                refresh(childIdx, childIdx);
             }
             return repKey;
         }
@@ -198,6 +785,7 @@ public class BPlusTreeImpl<K extends Comparable<? super K>, V> implements BPlusT
             keys.add(childIdx, splitKey);
             // 分裂的孩子的位置永远在分裂上提元素所在位置的右侧值域，所以+1,左侧值域为元素索引位置
             children().add(childIdx + 1, rightSib);
+            openSlot(childIdx + 1);
         }
 
         @Override
@@ -206,13 +794,15 @@ public class BPlusTreeImpl<K extends Comparable<? super K>, V> implements BPlusT
             K splitUpKey = parent.keys().get(delIndexer.splitUpKeyIdx());
             sibling.keys().add(0, splitUpKey);
 
-            // 合并key和children
+            // 合并key和children，兄弟孩子的统计值跟着复制过来
+            int at = children().size();
             keys().addAll(sibling.keys());
             children().addAll(((BInnerNode) sibling).children());
+            copySlots(asInner(sibling), 0, children().size() - at, at);
 
             // 父节点删除分裂的key，并且删除分裂的孩子
             parent.keys().remove(delIndexer.splitUpKeyIdx());
-            ((BInnerNode) parent).children().remove(delIndexer.splitUpKeyIdx() + 1);
+            ((InnerNode) parent).removeChild(delIndexer.splitUpKeyIdx() + 1);
         }
 
         @Override
@@ -227,9 +817,11 @@ public class BPlusTreeImpl<K extends Comparable<? super K>, V> implements BPlusT
             K leftFirstKey = rightSib.keys().remove(0);
             parent.keys().set(delIndexer.leftRotateUpKeyIdx(), leftFirstKey);
 
-            // 后继节点孩子转移作为自己的最后一个孩子
-            BNode<K, V> leftFirstChild = ((BInnerNode<K, V>) rightSib).children().remove(0);
-            children().add(leftFirstChild);
+            // 后继节点孩子转移作为自己的最后一个孩子，统计值一起转移
+            InnerNode<K, V> right = asInner(rightSib);
+            children().add(right.children.get(0));
+            copySlots(right, 0, 1, children().size() - 1);
+            right.removeChild(0);
         }
 
         @Override
@@ -245,9 +837,12 @@ public class BPlusTreeImpl<K extends Comparable<? super K>, V> implements BPlusT
             K rightLastKey = leftSib.keys().remove(keyNumber - 1);
             parent.keys().set(delIndexer.rightRotateUpKeyIdx(), rightLastKey);
 
-            // 前继节点的最后一个孩子作为自己的第一个孩子
-            BNode<K, V> rightLastChild = ((BInnerNode<K, V>) leftSib).children().remove(keyNumber);
-            children().add(0, rightLastChild);
+            // 前继节点的最后一个孩子作为自己的第一个孩子，统计值一起转移
+            InnerNode<K, V> left = asInner(leftSib);
+            children().add(0, left.children.get(keyNumber));
+            openSlot(0);
+            copySlots(left, keyNumber, keyNumber + 1, 0);
+            left.removeChild(keyNumber);
         }
 
         @Override
@@ -258,17 +853,13 @@ public class BPlusTreeImpl<K extends Comparable<? super K>, V> implements BPlusT
             rightSib.keys.addAll(keys().subList(from, to));
             // +1是右侧孩子的位置
             rightSib.children.addAll(children().subList(from + 1, to + 1));
+            rightSib.copySlots(this, from + 1, to + 1, 0);
             //GC
             keys.subList(from, to).clear();
             children.subList(from + 1, to + 1).clear();
             return rightSib;
         }
 
-        @Override
-        public List<V> getRange(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy) {
-            return ((Range) getChild(beginKey)).getRange(beginKey, beginPolicy, endKey, endPolicy);
-        }
-
         @Override
         public List<BNode<K, V>> children() {
             return children;
@@ -281,8 +872,9 @@ public class BPlusTreeImpl<K extends Comparable<? super K>, V> implements BPlusT
     }
 
 
-    private class LeafNode<K extends Comparable<? super K>, V> extends AbstractBNode<K, V> implements Range<K, V>, BLeafNode<K, V> {
+    private class LeafNode<K extends Comparable<? super K>, V> extends AbstractBNode<K, V> implements BLeafNode<K, V> {
         private BNode<K, V> next;
+        private BNode<K, V> prev;
         private List<V> values;
 
         public LeafNode(int degree) {
@@ -327,6 +919,39 @@ public class BPlusTreeImpl<K extends Comparable<? super K>, V> implements BPlusT
             return loc >= 0 ? values.get(loc) : null;
         }
 
+        /**
+         * 第一个满足下边界的位置
+         * */
+        private int beginIndex(K beginKey, RangePolicy beginPolicy) {
+            if (beginKey == null) {
+                return 0;
+            }
+            int loc = YUtils.binarySearch(keys(), beginKey);
+            return loc >= 0 ? (beginPolicy == RangePolicy.INCLUSIVE ? loc : loc + 1) : -loc - 1;
+        }
+
+        /**
+         * 最后一个满足上边界的位置+1
+         * */
+        private int endIndex(K endKey, RangePolicy endPolicy) {
+            if (endKey == null) {
+                return keyNumber();
+            }
+            int loc = YUtils.binarySearch(keys(), endKey);
+            return loc >= 0 ? (endPolicy == RangePolicy.INCLUSIVE ? loc + 1 : loc) : -loc - 1;
+        }
+
+        /**
+         * [from, to)位置的value按顺序合并的聚合值
+         * */
+        private Object aggregate(int from, int to) {
+            Object agg = aggregator.identity();
+            for (int i = from; i < to; i++) {
+                agg = aggregator.combine(agg, aggregator.lift(values.get(i)));
+            }
+            return agg;
+        }
+
         @Override
         public void merge(BNode<K, V> parent, BNode<K, V> sibling, BDelIndexer delIndexer) {
             // merge兄弟节点的所有key
@@ -335,9 +960,12 @@ public class BPlusTreeImpl<K extends Comparable<? super K>, V> implements BPlusT
 
             // 删除父节点的分裂的key
             parent.keys().remove(delIndexer.splitUpKeyIdx());
-            ((BInnerNode) parent).children().remove(delIndexer.splitUpKeyIdx() + 1);
+            ((InnerNode) parent).removeChild(delIndexer.splitUpKeyIdx() + 1);
             // 从右向左合并，需要把兄弟节点的下一个引用换成自己的
             next = ((LeafNode) sibling).next;
+            if (next != null) {
+                asLeaf(next).prev = this;
+            }
         }
 
         @Override
@@ -384,6 +1012,10 @@ public class BPlusTreeImpl<K extends Comparable<? super K>, V> implements BPlusT
             values().subList(from, to).clear();
             // 更改右侧兄弟的引用关系
             rightSib.next = next;
+            rightSib.prev = this;
+            if (next != null) {
+                asLeaf(next).prev = rightSib;
+            }
             next = rightSib;
             return rightSib;
         }
@@ -393,33 +1025,6 @@ public class BPlusTreeImpl<K extends Comparable<? super K>, V> implements BPlusT
             return values;
         }
 
-        @Override
-        public List<V> getRange(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy) {
-            List<V> result = new LinkedList<V>();
-            LeafNode node = this;
-            while (node != null) {
-                Iterator<K> kIt = node.keys().iterator();
-                Iterator<V> vIt = node.values().iterator();
-                while (kIt.hasNext()) {
-                    K key = kIt.next();
-                    V value = vIt.next();
-                    int cmp1 = key.compareTo(beginKey);
-                    int cmp2 = key.compareTo(endKey);
-                    // 在左右边界范围内
-                    if (((beginPolicy == RangePolicy.EXCLUSIVE && cmp1 > 0) || (beginPolicy == RangePolicy.INCLUSIVE && cmp1 >= 0))
-                            && ((endPolicy == RangePolicy.EXCLUSIVE && cmp2 < 0) || (endPolicy == RangePolicy.INCLUSIVE && cmp2 <= 0)))
-                        result.add(value);
-                        // 右边界超出
-                    else if ((endPolicy == RangePolicy.EXCLUSIVE && cmp2 >= 0)
-                            || (endPolicy == RangePolicy.INCLUSIVE && cmp2 > 0))
-                        return result;
-                }
-                // 继续获取下一个节点，进行范围查找
-                node = (LeafNode) node.next;
-            }
-            return result;
-        }
-
         @Override
         public String toString() {
             return keys.toString();
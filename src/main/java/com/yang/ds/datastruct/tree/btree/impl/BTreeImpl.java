@@ -8,7 +8,9 @@ import com.yang.ds.datastruct.tree.btree.node.BLeafNode;
 import com.yang.ds.datastruct.tree.btree.node.BNode;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  *
@@ -117,6 +119,113 @@ public class BTreeImpl<K extends Comparable<? super K>, V> implements BTree<K, V
         return BtreeStringBuilder.toString(root);
     }
 
+    @Override
+    public void bulkLoad(Iterator<Map.Entry<K, V>> sortedEntries, double fillFactor) {
+        int maxKeys = degree - 1, minKeys = Math.max(1, (degree + 1) / 2 - 1);
+        int leafSize = AbstractBNode.fillSize(maxKeys, minKeys, fillFactor);
+        // 当前层的节点，以及相邻两个节点之间的分隔元素(上一层的key和value)，separators[i]在level[i]和level[i + 1]之间
+        List<BNode<K, V>> level = new ArrayList<>();
+        List<K> sepKeys = new ArrayList<>();
+        List<V> sepValues = new ArrayList<>();
+        LeafNode<K, V> leaf = null;
+        // 当前叶子装满了，下一个元素作为分隔元素
+        boolean full = false;
+        K last = null;
+        while (sortedEntries.hasNext()) {
+            Map.Entry<K, V> entry = sortedEntries.next();
+            K key = entry.getKey();
+            if (key == null || (last != null && key.compareTo(last) <= 0)) {
+                throw new IllegalArgumentException("entries must be sorted by key without duplicates: " + last + ", " + key);
+            }
+            last = key;
+            if (full) {
+                sepKeys.add(key);
+                sepValues.add(entry.getValue());
+                leaf = null;
+                full = false;
+                continue;
+            }
+            if (leaf == null) {
+                leaf = new LeafNode<>(degree);
+                level.add(leaf);
+            }
+            leaf.keys.add(key);
+            leaf.values.add(entry.getValue());
+            full = leaf.keyNumber() == leafSize;
+        }
+        if (level.isEmpty()) {
+            root = new LeafNode(degree);
+            return;
+        }
+        // 最后一个元素成了分隔元素，后面没有叶子，单独放到一个新叶子里，前一个叶子的最后一个元素作为分隔元素
+        if (sepKeys.size() == level.size()) {
+            LeafNode<K, V> prev = (LeafNode<K, V>) level.get(level.size() - 1);
+            leaf = new LeafNode<>(degree);
+            leaf.keys.add(sepKeys.remove(sepKeys.size() - 1));
+            leaf.values.add(sepValues.remove(sepValues.size() - 1));
+            sepKeys.add(prev.keys.remove(prev.keyNumber() - 1));
+            sepValues.add(prev.values.remove(prev.values.size() - 1));
+            level.add(leaf);
+        }
+        // 最后两个叶子不够最少元素个数，合并(加上中间的分隔元素)或者平分
+        int n = level.size();
+        LeafNode<K, V> lastLeaf = (LeafNode<K, V>) level.get(n - 1);
+        if (n > 1 && (lastLeaf.keyNumber() < minKeys || level.get(n - 2).keyNumber() < minKeys)) {
+            LeafNode<K, V> prev = (LeafNode<K, V>) level.get(n - 2);
+            List<K> keys = new ArrayList<>(prev.keys);
+            List<V> values = new ArrayList<>(prev.values);
+            keys.add(sepKeys.remove(n - 2));
+            values.add(sepValues.remove(n - 2));
+            keys.addAll(lastLeaf.keys);
+            values.addAll(lastLeaf.values);
+            level.remove(n - 1);
+            prev.keys.clear();
+            prev.values.clear();
+            if (keys.size() <= maxKeys) {
+                prev.keys.addAll(keys);
+                prev.values.addAll(values);
+            } else {
+                int mid = keys.size() / 2;
+                prev.keys.addAll(keys.subList(0, mid));
+                prev.values.addAll(values.subList(0, mid));
+                sepKeys.add(keys.get(mid));
+                sepValues.add(values.get(mid));
+                lastLeaf = new LeafNode<>(degree);
+                lastLeaf.keys.addAll(keys.subList(mid + 1, keys.size()));
+                lastLeaf.values.addAll(values.subList(mid + 1, values.size()));
+                level.add(lastLeaf);
+            }
+        }
+        // 逐层向上，组内的分隔元素作为非叶子节点的key，组之间的分隔元素继续上提
+        int fanout = AbstractBNode.fillSize(degree, minKeys + 1, fillFactor);
+        while (level.size() > 1) {
+            int[] sizes = AbstractBNode.groupSizes(level.size(), fanout, minKeys + 1, degree);
+            List<BNode<K, V>> parents = new ArrayList<>(sizes.length);
+            List<K> parentKeys = new ArrayList<>(sizes.length);
+            List<V> parentValues = new ArrayList<>(sizes.length);
+            int i = 0;
+            for (int g = 0; g < sizes.length; g++) {
+                InnerNode<K, V> inner = new InnerNode<>(degree);
+                for (int j = 0; j < sizes[g]; j++, i++) {
+                    if (j > 0) {
+                        inner.keys.add(sepKeys.get(i - 1));
+                        inner.values.add(sepValues.get(i - 1));
+                    }
+                    inner.children.add(level.get(i));
+                }
+                if (g < sizes.length - 1) {
+                    parentKeys.add(sepKeys.get(i - 1));
+                    parentValues.add(sepValues.get(i - 1));
+                }
+                parents.add(inner);
+            }
+            level = parents;
+            sepKeys = parentKeys;
+            sepValues = parentValues;
+        }
+        root = level.get(0);
+    }
+
     private class KeyValue<K, V> {
         K key;
         V value;
@@ -240,8 +349,14 @@ public class BTreeImpl<K extends Comparable<? super K>, V> implements BTree<K, V
 
         @Override
         public void insert(K key, V value) {
+            // 非叶子节点存在这个key，直接更新value
+            int loc = YUtils.binarySearch(keys(), key);
+            if (loc >= 0) {
+                values.set(loc, value);
+                return;
+            }
             // 递归到叶子节点进行插入
-            BNode child = getChild(key);
+            BNode child = getChild(-loc - 1);
             child.insert(key, value);
             if (child.isOverflow()) {
                 insertChild(child.split());
@@ -283,7 +398,7 @@ public class BTreeImpl<K extends Comparable<? super K>, V> implements BTree<K, V
             int keyIdx = loc >= 0 ? loc + 1 : -loc - 1;
 
             keys.add(keyIdx, splitKey);
-            values.add(splitValue);
+            values.add(keyIdx, splitValue);
 
             children.add(keyIdx + 1, rightSib);
         }
@@ -0,0 +1,745 @@
+package com.yang.ds.datastruct.tree.btree.impl;
+
+import com.yang.ds.datastruct.tree.btree.BPlusTree;
+import com.yang.ds.datastruct.tree.btree.RangeCursor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 并发B+树，Lehman-Yao的B-link树
+ *
+ * 1. 每个节点有一个右指针(right)指向同一层右边的节点，和一个上界(highKey)，节点中的key都小于highKey，
+ * 节点分裂的时候右半部分先放到新节点，再把原节点的highKey改成分隔key、right指向新节点，
+ * 分隔key插入父节点之前，从父节点下来的查找发现key >= highKey就沿着right向右走，照样能找到
+ *
+ * 2. 节点内容(keys/values或者孩子、highKey、right)是不可变的Content，修改时复制一份新的，一次volatile写替换，
+ * 读操作(search、范围遍历)不加锁也不重试，任何时候看到的都是某个完整版本的节点
+ *
+ * 3. 写操作不加锁地向下查找并记录路径，只锁要修改的节点，加锁之后如果key >= highKey(节点在这期间分裂了)，解锁向右移动；
+ * 分裂之后先解锁再去锁父节点(路径中记录的父节点，同样可能需要向右移动)，任何时候最多持有一个节点的锁，不会死锁
+ *
+ * 4. 根节点分裂的时候创建新根，root是volatile的，根变化之后找不到父节点的线程从新根向下找到对应层的节点
+ *
+ * 5. 和Lehman-Yao一样删除不合并节点，节点可以变空
+ *
+ * 每个节点的key和内容都是不可变的，所以倒序遍历不需要prev指针: 当前叶子走完之后用它的下界(lowKey)重新从根向下找左边的叶子
+ * */
+public class ConcurrentBLinkTree<K extends Comparable<? super K>, V> implements BPlusTree<K, V> {
+
+    /**阶，节点最多degree - 1个key*/
+    private final int degree;
+
+    private volatile Node<K> root;
+
+    /**创建新根的锁*/
+    private final Object rootLock = new Object();
+
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * 节点，层数和下界不变，内容整体替换；写操作synchronized节点本身
+     * */
+    private static final class Node<K> {
+
+        /**0是叶子*/
+        final int level;
+
+        /**节点中的key都大于等于lowKey，null表示负无穷(每一层最左边的节点)，分裂出来的右节点的lowKey就是分隔key*/
+        final K lowKey;
+
+        volatile Content<K> content;
+
+        Node(int level, K lowKey, Content<K> content) {
+            this.level = level;
+            this.lowKey = lowKey;
+            this.content = content;
+        }
+    }
+
+    /**
+     * 节点内容，不可变
+     * */
+    private static final class Content<K> {
+
+        final Object[] keys;
+
+        /**叶子是value，非叶子是孩子节点(比keys多一个)*/
+        final Object[] slots;
+
+        /**节点中的key都小于highKey，null表示正无穷(每一层最右边的节点)*/
+        final K highKey;
+
+        final Node<K> right;
+
+        Content(Object[] keys, Object[] slots, K highKey, Node<K> right) {
+            this.keys = keys;
+            this.slots = slots;
+            this.highKey = highKey;
+            this.right = right;
+        }
+    }
+
+    public ConcurrentBLinkTree(int degree) {
+        if (degree < MIN_DEGREE) {
+            throw new IllegalArgumentException("degree is less than " + MIN_DEGREE + "" + "," + degree);
+        }
+        this.degree = degree;
+        root = emptyLeaf();
+    }
+
+    private static <K> Node<K> emptyLeaf() {
+        return new Node<>(0, null, new Content<K>(new Object[0], new Object[0], null, null));
+    }
+
+    /**
+     * 和Collections.binarySearch一样，没找到返回-(插入位置) - 1
+     * */
+    @SuppressWarnings("unchecked")
+    private static <K extends Comparable<? super K>> int search(Object[] keys, K key) {
+        int lo = 0, hi = keys.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = ((K) keys[mid]).compareTo(key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    /**
+     * key超出了节点的上界，需要向右移动
+     * */
+    private static <K extends Comparable<? super K>> boolean beyond(Content<K> content, K key) {
+        return content.highKey != null && key.compareTo(content.highKey) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K extends Comparable<? super K>> Node<K> child(Content<K> content, K key) {
+        int loc = search(content.keys, key);
+        return (Node<K>) content.slots[loc >= 0 ? loc + 1 : -loc - 1];
+    }
+
+    private static Object[] insertAt(Object[] array, int pos, Object element) {
+        Object[] result = new Object[array.length + 1];
+        System.arraycopy(array, 0, result, 0, pos);
+        result[pos] = element;
+        System.arraycopy(array, pos, result, pos + 1, array.length - pos);
+        return result;
+    }
+
+    private static Object[] removeAt(Object[] array, int pos) {
+        Object[] result = new Object[array.length - 1];
+        System.arraycopy(array, 0, result, 0, pos);
+        System.arraycopy(array, pos + 1, result, pos, result.length - pos);
+        return result;
+    }
+
+    private static void checkKey(Object key) {
+        if (key == null)
+            throw new IllegalArgumentException("key can not be null");
+    }
+
+    /**
+     * 不加锁地向下找到key所在的叶子，key为null找最左边的叶子
+     * @param path 不为null的时候记录经过的每一层的节点(向右移动之后的)
+     * */
+    @SuppressWarnings("unchecked")
+    private Node<K> leafOf(K key, List<Node<K>> path) {
+        Node<K> node = root;
+        while (true) {
+            Content<K> content = node.content;
+            if (key != null && beyond(content, key)) {
+                node = content.right;
+                continue;
+            }
+            if (node.level == 0) {
+                return node;
+            }
+            if (path != null) {
+                path.add(node);
+            }
+            node = key == null ? (Node<K>) content.slots[0] : child(content, key);
+        }
+    }
+
+    /**
+     * 不加锁地向下找到包含小于bound的最大key的叶子，bound为null找最右边的叶子
+     * */
+    @SuppressWarnings("unchecked")
+    private Node<K> leafBefore(K bound) {
+        Node<K> node = root;
+        while (true) {
+            Content<K> content = node.content;
+            if (content.right != null && (bound == null || content.highKey.compareTo(bound) < 0)) {
+                node = content.right;
+                continue;
+            }
+            if (node.level == 0) {
+                return node;
+            }
+            // 第i个孩子的key都小于keys[i]
+            int i = content.keys.length;
+            if (bound != null) {
+                int loc = search(content.keys, bound);
+                i = loc >= 0 ? loc : -loc - 1;
+            }
+            node = (Node<K>) content.slots[i];
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V search(K key) {
+        checkKey(key);
+        Content<K> content = leafOf(key, null).content;
+        // 找到叶子之后读到的内容可能已经分裂了
+        while (beyond(content, key)) {
+            content = content.right.content;
+        }
+        int loc = search(content.keys, key);
+        return loc >= 0 ? (V) content.slots[loc] : null;
+    }
+
+    @Override
+    public void insert(K key, V value) {
+        checkKey(key);
+        List<Node<K>> path = new ArrayList<>();
+        Node<K> node = leafOf(key, path);
+        Node<K> right;
+        while (true) {
+            Node<K> next;
+            synchronized (node) {
+                Content<K> content = node.content;
+                if (beyond(content, key)) {
+                    next = content.right;
+                } else {
+                    int loc = search(content.keys, key);
+                    if (loc >= 0) {
+                        Object[] values = content.slots.clone();
+                        values[loc] = value;
+                        node.content = new Content<>(content.keys, values, content.highKey, content.right);
+                        return;
+                    }
+                    count.increment();
+                    int pos = -loc - 1;
+                    Object[] keys = insertAt(content.keys, pos, key);
+                    Object[] values = insertAt(content.slots, pos, value);
+                    if (keys.length < degree) {
+                        node.content = new Content<>(keys, values, content.highKey, content.right);
+                        return;
+                    }
+                    right = split(node, keys, values, content);
+                    break;
+                }
+            }
+            node = next;
+        }
+        insertParent(path, node, right);
+    }
+
+    /**
+     * 分裂加锁的节点，右半部分放到新节点，再替换原节点的内容(highKey是分隔key，right指向新节点)
+     * @param keys 插入之后的key，个数等于degree
+     * @return 新的右节点，lowKey是分隔key
+     * */
+    @SuppressWarnings("unchecked")
+    private Node<K> split(Node<K> node, Object[] keys, Object[] slots, Content<K> content) {
+        int n = keys.length, m = n / 2;
+        K splitKey = (K) keys[m];
+        Node<K> right;
+        if (node.level == 0) {
+            right = new Node<>(0, splitKey, new Content<>(Arrays.copyOfRange(keys, m, n),
+                    Arrays.copyOfRange(slots, m, n), content.highKey, content.right));
+            node.content = new Content<>(Arrays.copyOf(keys, m), Arrays.copyOf(slots, m), splitKey, right);
+        } else {
+            // 非叶子的分隔key上提，不保留在右节点
+            right = new Node<>(node.level, splitKey, new Content<>(Arrays.copyOfRange(keys, m + 1, n),
+                    Arrays.copyOfRange(slots, m + 1, n + 1), content.highKey, content.right));
+            node.content = new Content<>(Arrays.copyOf(keys, m), Arrays.copyOf(slots, m + 1), splitKey, right);
+        }
+        return right;
+    }
+
+    /**
+     * 分隔key(right.lowKey)和新节点插入父节点，父节点满了继续分裂
+     * @param path 向下查找时经过的节点，最后一个是left的父节点(之后可能分裂过)
+     * */
+    private void insertParent(List<Node<K>> path, Node<K> left, Node<K> right) {
+        while (true) {
+            K splitKey = right.lowKey;
+            Node<K> parent;
+            if (!path.isEmpty()) {
+                parent = path.remove(path.size() - 1);
+            } else {
+                synchronized (rootLock) {
+                    if (root == left) {
+                        root = new Node<>(left.level + 1, null, new Content<K>(new Object[]{splitKey},
+                                new Object[]{left, right}, null, null));
+                        return;
+                    }
+                }
+                // 查找的时候left所在层是最高层，现在根已经变了
+                parent = nodeAt(splitKey, left.level + 1);
+            }
+            Node<K> sibling;
+            while (true) {
+                Node<K> next;
+                synchronized (parent) {
+                    Content<K> content = parent.content;
+                    if (beyond(content, splitKey)) {
+                        next = content.right;
+                    } else {
+                        int pos = -search(content.keys, splitKey) - 1;
+                        Object[] keys = insertAt(content.keys, pos, splitKey);
+                        Object[] children = insertAt(content.slots, pos + 1, right);
+                        if (keys.length < degree) {
+                            parent.content = new Content<>(keys, children, content.highKey, content.right);
+                            return;
+                        }
+                        sibling = split(parent, keys, children, content);
+                        break;
+                    }
+                }
+                parent = next;
+            }
+            left = parent;
+            right = sibling;
+        }
+    }
+
+    /**
+     * 找到level层中包含key的节点
+     * */
+    private Node<K> nodeAt(K key, int level) {
+        Node<K> node = root;
+        // 同一层左边节点分裂出来的根还没有创建，等分裂根的线程
+        while (node.level < level) {
+            Thread.yield();
+            node = root;
+        }
+        while (true) {
+            Content<K> content = node.content;
+            if (beyond(content, key)) {
+                node = content.right;
+            } else if (node.level > level) {
+                node = child(content, key);
+            } else {
+                return node;
+            }
+        }
+    }
+
+    @Override
+    public void delete(K key) {
+        checkKey(key);
+        Node<K> node = leafOf(key, null);
+        while (true) {
+            Node<K> next;
+            synchronized (node) {
+                Content<K> content = node.content;
+                if (beyond(content, key)) {
+                    next = content.right;
+                } else {
+                    int loc = search(content.keys, key);
+                    if (loc >= 0) {
+                        node.content = new Content<>(removeAt(content.keys, loc), removeAt(content.slots, loc),
+                                content.highKey, content.right);
+                        count.decrement();
+                    }
+                    return;
+                }
+            }
+            node = next;
+        }
+    }
+
+    /**
+     * 元素个数，并发修改的时候是近似值
+     * */
+    public long size() {
+        return count.sum();
+    }
+
+    @Override
+    public List<V> searchRange(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy) {
+        List<V> result = new ArrayList<>();
+        RangeCursor<K, V> cursor = rangeCursor(beginKey, beginPolicy, endKey, endPolicy, false);
+        while (cursor.next()) {
+            result.add(cursor.value());
+        }
+        return result;
+    }
+
+    @Override
+    public RangeCursor<K, V> rangeCursor(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy, boolean descending) {
+        return new LinkCursor(beginKey, beginPolicy, endKey, endPolicy, descending);
+    }
+
+    /**
+     * 在叶子内容的快照上遍历，弱一致: 不会重复也不会乱序，遍历期间的修改可能看得到也可能看不到
+     * 正序沿right移动，倒序用当前叶子的lowKey重新向下查找左边的叶子
+     * */
+    private class LinkCursor extends AbstractRangeCursor<K, V> {
+
+        private final K beginKey;
+        private final RangePolicy beginPolicy;
+        private final K endKey;
+        private final RangePolicy endPolicy;
+
+        /**当前叶子和它的内容快照，null表示结束，idx是下一个元素在快照中的位置*/
+        private Node<K> leaf;
+        private Content<K> content;
+
+        private K key;
+        private V value;
+
+        private LinkCursor(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy, boolean descending) {
+            super(descending);
+            this.beginKey = beginKey;
+            this.beginPolicy = beginPolicy;
+            this.endKey = endKey;
+            this.endPolicy = endPolicy;
+            if (!descending) {
+                load(leafOf(beginKey, null), beginKey);
+                if (beginKey != null) {
+                    int loc = search(content.keys, beginKey);
+                    idx = loc >= 0 ? (beginPolicy == RangePolicy.INCLUSIVE ? loc : loc + 1) : -loc - 1;
+                }
+            } else if (endKey == null) {
+                loadBefore(null);
+            } else {
+                load(leafOf(endKey, null), endKey);
+                int loc = search(content.keys, endKey);
+                idx = loc >= 0 ? (endPolicy == RangePolicy.INCLUSIVE ? loc : loc - 1) : -loc - 2;
+            }
+        }
+
+        /**
+         * 读取叶子的快照，key超出上界的时候向右移动
+         * */
+        private void load(Node<K> node, K key) {
+            Content<K> c = node.content;
+            while (key != null && beyond(c, key)) {
+                node = c.right;
+                c = node.content;
+            }
+            leaf = node;
+            content = c;
+            idx = 0;
+        }
+
+        /**
+         * 读取包含小于bound的最大key的叶子，只遍历其中小于bound的部分
+         * */
+        private void loadBefore(K bound) {
+            Node<K> node = leafBefore(bound);
+            Content<K> c = node.content;
+            while (c.right != null && (bound == null || c.highKey.compareTo(bound) < 0)) {
+                node = c.right;
+                c = node.content;
+            }
+            leaf = node;
+            content = c;
+            idx = c.keys.length - 1;
+            if (bound != null) {
+                int loc = search(c.keys, bound);
+                idx = (loc >= 0 ? loc : -loc - 1) - 1;
+            }
+        }
+
+        @Override
+        protected boolean normalize() {
+            if (!descending) {
+                while (leaf != null && idx >= content.keys.length) {
+                    Node<K> right = content.right;
+                    if (right == null) {
+                        leaf = null;
+                    } else {
+                        load(right, null);
+                    }
+                }
+            } else {
+                while (leaf != null && idx < 0) {
+                    if (leaf.lowKey == null) {
+                        leaf = null;
+                    } else {
+                        loadBefore(leaf.lowKey);
+                    }
+                }
+            }
+            return leaf != null;
+        }
+
+        @Override
+        protected int count() {
+            return content.keys.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected boolean load(int idx) {
+            K k = (K) content.keys[idx];
+            if (descending ? !BPlusTreeImpl.afterBegin(k, beginKey, beginPolicy) : !BPlusTreeImpl.beforeEnd(k, endKey, endPolicy)) {
+                return false;
+            }
+            key = k;
+            value = (V) content.slots[idx];
+            return true;
+        }
+
+        @Override
+        public K key() {
+            return key;
+        }
+
+        @Override
+        public V value() {
+            return value;
+        }
+    }
+
+    @Override
+    public Spliterator<Map.Entry<K, V>> rangeSpliterator(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy) {
+        return new LinkSpliterator(beginKey, beginPolicy, endKey, endPolicy, Long.MAX_VALUE);
+    }
+
+    /**
+     * 和BPlusTreeImpl的范围遍历器一样按非叶子节点的分隔key拆分，拆分只看节点快照，
+     * 两半都按key的范围遍历，结构在拆分之后变化也不影响结果
+     * */
+    private class LinkSpliterator extends AbstractRangeSpliterator<K, V> {
+
+        private LinkSpliterator(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy, long est) {
+            super(beginKey, beginPolicy, endKey, endPolicy, est);
+        }
+
+        @Override
+        protected RangeCursor<K, V> cursor() {
+            return rangeCursor(beginKey, beginPolicy, endKey, endPolicy, false);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected K splitKey() {
+            Node<K> node = root;
+            while (node.level > 0) {
+                Content<K> content = node.content;
+                Object[] keys = content.keys;
+                int lo = beginKey == null ? 0 : childIndex(keys, beginKey);
+                int hi = endKey == null ? keys.length : childIndex(keys, endKey);
+                int i = splitIndex(lo, hi, hi > lo && endKey != null && ((K) keys[hi - 1]).compareTo(endKey) >= 0);
+                if (i >= 0) {
+                    return (K) keys[i];
+                }
+                node = (Node<K>) content.slots[lo];
+            }
+            return null;
+        }
+
+        private int childIndex(Object[] keys, K key) {
+            int loc = search(keys, key);
+            return loc >= 0 ? loc + 1 : -loc - 1;
+        }
+
+        @Override
+        protected AbstractRangeSpliterator<K, V> prefix(K splitKey, long est) {
+            return new LinkSpliterator(beginKey, beginPolicy, splitKey, RangePolicy.EXCLUSIVE, est);
+        }
+    }
+
+    /**
+     * 在旁边建好整棵树再一次替换root，并发的读操作看到的是旧树或者新树，不能和其他写操作并发
+     * */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void bulkLoad(Iterator<Map.Entry<K, V>> sortedEntries, double fillFactor) {
+        int maxKeys = degree - 1, minKeys = Math.max(1, (degree + 1) / 2 - 1);
+        int leafSize = AbstractBNode.fillSize(maxKeys, minKeys, fillFactor);
+        List<Object> keys = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        K last = null;
+        while (sortedEntries.hasNext()) {
+            Map.Entry<K, V> entry = sortedEntries.next();
+            K key = entry.getKey();
+            if (key == null || (last != null && key.compareTo(last) <= 0)) {
+                throw new IllegalArgumentException("entries must be sorted by key without duplicates: " + last + ", " + key);
+            }
+            keys.add(key);
+            values.add(entry.getValue());
+            last = key;
+        }
+        if (keys.isEmpty()) {
+            root = emptyLeaf();
+            count.reset();
+            return;
+        }
+        // 当前层的分组从右向左创建节点，这样创建的时候就知道right和highKey
+        int[] sizes = AbstractBNode.groupSizes(keys.size(), leafSize, minKeys, maxKeys);
+        List<Object> level = keys, slots = values;
+        int height = 0;
+        while (true) {
+            List<Node<K>> nodes = new ArrayList<>(sizes.length);
+            List<Object> firstKeys = new ArrayList<>(sizes.length);
+            int[] starts = new int[sizes.length + 1];
+            for (int i = 0; i < sizes.length; i++) {
+                starts[i + 1] = starts[i] + sizes[i];
+            }
+            Node<K> right = null;
+            K highKey = null;
+            for (int i = sizes.length - 1; i >= 0; i--) {
+                int from = starts[i], to = starts[i + 1];
+                Object[] nodeKeys;
+                Object[] nodeSlots;
+                K first;
+                if (height == 0) {
+                    nodeKeys = level.subList(from, to).toArray();
+                    nodeSlots = slots.subList(from, to).toArray();
+                    first = (K) level.get(from);
+                } else {
+                    // 非叶子: 除第一个孩子之外每个孩子的最小key
+                    nodeKeys = level.subList(from + 1, to).toArray();
+                    nodeSlots = slots.subList(from, to).toArray();
+                    first = (K) level.get(from);
+                }
+                Node<K> node = new Node<>(height, i == 0 ? null : first, new Content<>(nodeKeys, nodeSlots, highKey, right));
+                nodes.add(node);
+                firstKeys.add(first);
+                right = node;
+                highKey = first;
+            }
+            if (nodes.size() == 1) {
+                count.reset();
+                count.add(keys.size());
+                root = nodes.get(0);
+                return;
+            }
+            Collections.reverse(nodes);
+            Collections.reverse(firstKeys);
+            level = firstKeys;
+            slots = new ArrayList<Object>(nodes);
+            height++;
+            int fanout = AbstractBNode.fillSize(degree, minKeys + 1, fillFactor);
+            sizes = AbstractBNode.groupSizes(nodes.size(), fanout, minKeys + 1, degree);
+        }
+    }
+
+    /**
+     * 每一层从最左边的节点沿right打印
+     * */
+    @Override
+    @SuppressWarnings("unchecked")
+    public String treeToString() {
+        StringBuilder sb = new StringBuilder();
+        Node<K> first = root;
+        while (first != null) {
+            for (Node<K> node = first; node != null; node = node.content.right) {
+                sb.append(Arrays.toString(node.content.keys));
+            }
+            sb.append('\n');
+            first = first.level == 0 ? null : (Node<K>) first.content.slots[0];
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 不同线程数下全局锁BPlusTreeImpl和B-link树的吞吐量，90%查询、9%添加、1%删除
+     * 运行参数: [key范围] [每个线程的操作次数] [最大线程数]
+     * */
+    public static void main(String[] args) throws InterruptedException {
+        final int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        final int ops = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        // 第一轮作为预热
+        System.out.println("warm up");
+        round(1, n, ops);
+        for (int threads = 1; threads <= maxThreads; threads <<= 1) {
+            round(threads, n, ops);
+        }
+    }
+
+    private static void round(int threads, final int n, final int ops) throws InterruptedException {
+        final BPlusTreeImpl<Integer, Integer> locked = new BPlusTreeImpl<>(64);
+        final ConcurrentBLinkTree<Integer, Integer> blink = new ConcurrentBLinkTree<>(64);
+        for (int i = 0; i < n; i += 2) {
+            locked.insert(i, i);
+            blink.insert(i, i);
+        }
+        final Object lock = new Object();
+        double lockedOps = throughput(threads, n, ops, new Operation() {
+            @Override
+            public void run(int op, int key) {
+                synchronized (lock) {
+                    if (op == 0) {
+                        locked.delete(key);
+                    } else if (op < 10) {
+                        locked.insert(key, key);
+                    } else {
+                        locked.search(key);
+                    }
+                }
+            }
+        });
+        double blinkOps = throughput(threads, n, ops, new Operation() {
+            @Override
+            public void run(int op, int key) {
+                if (op == 0) {
+                    blink.delete(key);
+                } else if (op < 10) {
+                    blink.insert(key, key);
+                } else {
+                    blink.search(key);
+                }
+            }
+        });
+        System.out.printf("threads=%-3d synchronized BPlusTreeImpl=%.0f ops/s ConcurrentBLinkTree=%.0f ops/s%n",
+                threads, lockedOps, blinkOps);
+    }
+
+    private interface Operation {
+        /**
+         * @param op 0~99，0删除，1~9添加，其他查询
+         * */
+        void run(int op, int key);
+    }
+
+    private static double throughput(int threads, final int n, final int ops, final Operation operation) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch end = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < ops; i++) {
+                        operation.run(random.nextInt(100), random.nextInt(n));
+                    }
+                    end.countDown();
+                }
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        end.await();
+        return (double) threads * ops * 1e9 / (System.nanoTime() - begin);
+    }
+}
@@ -0,0 +1,804 @@
+package com.yang.ds.datastruct.tree.btree.impl;
+
+import com.yang.ds.algorithm.utils.YUtils;
+import com.yang.ds.datastruct.tree.btree.BPlusTree;
+import com.yang.ds.datastruct.tree.btree.RangeCursor;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 写时复制(copy-on-write)的B+树，支持快照(MVCC读)
+ *
+ * 1. 节点创建之后不再修改，修改时只复制从根到叶子路径上的节点(path copying)，其他子树新旧版本共用，
+ * 每次修改得到一个新的根，和版本号、元素个数一起作为一个Version，一次volatile写发布
+ *
+ * 2. 读操作先读一次当前Version，之后都在这个版本上进行，不加锁，看到的一定是某次修改之后的完整的树；
+ * 写操作之间用锁串行，不会阻塞读
+ *
+ * 3. openSnapshot固定当前版本，返回只读的BPlusTree视图，长时间的范围遍历在快照上进行，不影响后续写入；
+ * 用完需要close
+ *
+ * 4. 节点不可变，叶子之间没有next/prev链表(否则修改一个叶子要复制整个链表)，范围遍历用从根到叶子的路径栈移动
+ *
+ * 5. 回收: 树本身只引用最新版本，旧版本的节点只被打开的快照引用，快照close之后释放它的根，
+ * 没有快照引用的旧节点就是不可达的，由GC回收；oldestVersion可以查看还被快照固定的最旧版本
+ * */
+public class CowBPlusTree<K extends Comparable<? super K>, V> implements BPlusTree<K, V> {
+
+    private final int degree;
+
+    private final int maxKeys;
+
+    private final int minKeys;
+
+    private volatile Version current;
+
+    /**写操作的锁*/
+    private final Object writeLock = new Object();
+
+    /**打开的快照: 版本号 -> 个数*/
+    private final TreeMap<Long, Integer> snapshots = new TreeMap<>();
+
+    /**
+     * 不可变的节点，数组的长度就是元素个数
+     * */
+    private static final class Node {
+
+        final Object[] keys;
+
+        /**叶子是value，非叶子是孩子(比keys多一个)*/
+        final Object[] slots;
+
+        final boolean leaf;
+
+        Node(boolean leaf, Object[] keys, Object[] slots) {
+            this.leaf = leaf;
+            this.keys = keys;
+            this.slots = slots;
+        }
+
+        int size() {
+            return keys.length;
+        }
+
+        Node child(int i) {
+            return (Node) slots[i];
+        }
+    }
+
+    /**
+     * 一个版本: 根节点、版本号、元素个数和高度
+     * */
+    private static final class Version {
+
+        final Node root;
+
+        final long version;
+
+        final long size;
+
+        final int height;
+
+        Version(Node root, long version, long size, int height) {
+            this.root = root;
+            this.version = version;
+            this.size = size;
+            this.height = height;
+        }
+    }
+
+    /**
+     * 分裂的结果，插入时从下向上传递
+     * */
+    private static final class Split {
+
+        Object key;
+
+        Node right;
+
+        /**是否新增了元素(不是更新)*/
+        boolean added;
+    }
+
+    public CowBPlusTree(int degree) {
+        if (degree < MIN_DEGREE) {
+            throw new IllegalArgumentException("degree is less than " + MIN_DEGREE + "" + "," + degree);
+        }
+        this.degree = degree;
+        maxKeys = degree - 1;
+        minKeys = Math.max(1, (degree + 1) / 2 - 1);
+        current = new Version(emptyLeaf(), 0, 0, 1);
+    }
+
+    private static Node emptyLeaf() {
+        return new Node(true, new Object[0], new Object[0]);
+    }
+
+    private static <K extends Comparable<? super K>> int search(Object[] keys, K key) {
+        return YUtils.binarySearch(keys, 0, keys.length, key);
+    }
+
+    private static <K extends Comparable<? super K>> int childIndex(Node inner, K key) {
+        int loc = search(inner.keys, key);
+        return loc >= 0 ? loc + 1 : -loc - 1;
+    }
+
+    private static Object[] insertAt(Object[] array, int pos, Object element) {
+        Object[] result = new Object[array.length + 1];
+        System.arraycopy(array, 0, result, 0, pos);
+        result[pos] = element;
+        System.arraycopy(array, pos, result, pos + 1, array.length - pos);
+        return result;
+    }
+
+    private static Object[] removeAt(Object[] array, int pos) {
+        Object[] result = new Object[array.length - 1];
+        System.arraycopy(array, 0, result, 0, pos);
+        System.arraycopy(array, pos + 1, result, pos, result.length - pos);
+        return result;
+    }
+
+    private static Object[] replaceAt(Object[] array, int pos, Object element) {
+        Object[] result = array.clone();
+        result[pos] = element;
+        return result;
+    }
+
+    private static Object[] concat(Object[] a, Object[] b) {
+        Object[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    private static void checkKey(Object key) {
+        if (key == null)
+            throw new IllegalArgumentException("key can not be null");
+    }
+
+    /**
+     * 当前版本号，每次修改加1
+     * */
+    public long version() {
+        return current.version;
+    }
+
+    public long size() {
+        return current.size;
+    }
+
+    @Override
+    public V search(K key) {
+        return search(current.root, key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V search(Node node, K key) {
+        checkKey(key);
+        while (!node.leaf) {
+            node = node.child(childIndex(node, key));
+        }
+        int loc = search(node.keys, key);
+        return loc >= 0 ? (V) node.slots[loc] : null;
+    }
+
+    @Override
+    public void insert(K key, V value) {
+        checkKey(key);
+        synchronized (writeLock) {
+            Version v = current;
+            Split split = new Split();
+            Node root = insert(v.root, key, value, split);
+            int height = v.height;
+            if (split.right != null) {
+                root = new Node(false, new Object[]{split.key}, new Object[]{root, split.right});
+                height++;
+            }
+            current = new Version(root, v.version + 1, split.added ? v.size + 1 : v.size, height);
+        }
+    }
+
+    /**
+     * 复制路径插入
+     * @return 替换node的新节点，分裂的时候是左半部分，右半部分和分隔key放在split里面
+     * */
+    private Node insert(Node node, K key, V value, Split split) {
+        if (node.leaf) {
+            int loc = search(node.keys, key);
+            if (loc >= 0) {
+                return new Node(true, node.keys, replaceAt(node.slots, loc, value));
+            }
+            split.added = true;
+            int pos = -loc - 1;
+            Object[] keys = insertAt(node.keys, pos, key);
+            Object[] values = insertAt(node.slots, pos, value);
+            if (keys.length <= maxKeys) {
+                return new Node(true, keys, values);
+            }
+            int m = keys.length / 2;
+            split.key = keys[m];
+            split.right = new Node(true, Arrays.copyOfRange(keys, m, keys.length), Arrays.copyOfRange(values, m, values.length));
+            return new Node(true, Arrays.copyOf(keys, m), Arrays.copyOf(values, m));
+        }
+        int ci = childIndex(node, key);
+        Node child = insert(node.child(ci), key, value, split);
+        if (split.right == null) {
+            return new Node(false, node.keys, replaceAt(node.slots, ci, child));
+        }
+        Object[] keys = insertAt(node.keys, ci, split.key);
+        Object[] children = insertAt(replaceAt(node.slots, ci, child), ci + 1, split.right);
+        split.right = null;
+        if (keys.length <= maxKeys) {
+            return new Node(false, keys, children);
+        }
+        // 非叶子分裂，中间的key上提
+        int m = keys.length / 2;
+        split.key = keys[m];
+        split.right = new Node(false, Arrays.copyOfRange(keys, m + 1, keys.length), Arrays.copyOfRange(children, m + 1, children.length));
+        return new Node(false, Arrays.copyOf(keys, m), Arrays.copyOf(children, m + 1));
+    }
+
+    @Override
+    public void delete(K key) {
+        checkKey(key);
+        synchronized (writeLock) {
+            Version v = current;
+            Node root = delete(v.root, key);
+            if (root == v.root) {
+                return;
+            }
+            int height = v.height;
+            // 根节点没有key了，唯一的孩子作为新根
+            if (!root.leaf && root.size() == 0) {
+                root = root.child(0);
+                height--;
+            }
+            current = new Version(root, v.version + 1, v.size - 1, height);
+        }
+    }
+
+    /**
+     * 复制路径删除，孩子不够最少个数的时候向兄弟借或者合并(兄弟和父节点一起复制)
+     * @return 替换node的新节点，key不存在返回node本身
+     * */
+    private Node delete(Node node, K key) {
+        if (node.leaf) {
+            int loc = search(node.keys, key);
+            return loc < 0 ? node : new Node(true, removeAt(node.keys, loc), removeAt(node.slots, loc));
+        }
+        int ci = childIndex(node, key);
+        Node old = node.child(ci);
+        Node child = delete(old, key);
+        if (child == old) {
+            return node;
+        }
+        if (child.size() >= minKeys) {
+            return new Node(false, node.keys, replaceAt(node.slots, ci, child));
+        }
+        Node left = ci > 0 ? node.child(ci - 1) : null;
+        Node right = ci < node.size() ? node.child(ci + 1) : null;
+        Object[] keys = node.keys.clone();
+        Object[] children = node.slots.clone();
+        if (left != null && left.size() > minKeys) {
+            // 左兄弟的最后一个元素移过来
+            int ln = left.size();
+            Node newChild;
+            if (child.leaf) {
+                newChild = new Node(true, insertAt(child.keys, 0, left.keys[ln - 1]), insertAt(child.slots, 0, left.slots[ln - 1]));
+                keys[ci - 1] = left.keys[ln - 1];
+            } else {
+                newChild = new Node(false, insertAt(child.keys, 0, keys[ci - 1]), insertAt(child.slots, 0, left.slots[ln]));
+                keys[ci - 1] = left.keys[ln - 1];
+            }
+            children[ci - 1] = new Node(left.leaf, Arrays.copyOf(left.keys, ln - 1), Arrays.copyOf(left.slots, left.slots.length - 1));
+            children[ci] = newChild;
+            return new Node(false, keys, children);
+        }
+        if (right != null && right.size() > minKeys) {
+            // 右兄弟的第一个元素移过来
+            Node newChild;
+            if (child.leaf) {
+                newChild = new Node(true, insertAt(child.keys, child.size(), right.keys[0]), insertAt(child.slots, child.size(), right.slots[0]));
+                keys[ci] = right.keys[1];
+            } else {
+                newChild = new Node(false, insertAt(child.keys, child.size(), keys[ci]), insertAt(child.slots, child.slots.length, right.slots[0]));
+                keys[ci] = right.keys[0];
+            }
+            children[ci] = newChild;
+            children[ci + 1] = new Node(right.leaf, removeAt(right.keys, 0), removeAt(right.slots, 0));
+            return new Node(false, keys, children);
+        }
+        // 合并到左边的节点，删除中间的分隔key和右边的孩子
+        int i = left != null ? ci - 1 : ci;
+        Node l = left != null ? left : child, r = left != null ? child : right;
+        Node merged = l.leaf ? new Node(true, concat(l.keys, r.keys), concat(l.slots, r.slots))
+                : new Node(false, concat(insertAt(l.keys, l.size(), keys[i]), r.keys), concat(l.slots, r.slots));
+        children[i] = merged;
+        return new Node(false, removeAt(keys, i), removeAt(children, i + 1));
+    }
+
+    @Override
+    public List<V> searchRange(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy) {
+        return searchRange(current, beginKey, beginPolicy, endKey, endPolicy);
+    }
+
+    private List<V> searchRange(Version version, K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy) {
+        List<V> result = new ArrayList<>();
+        RangeCursor<K, V> cursor = new PathCursor(version, beginKey, beginPolicy, endKey, endPolicy, false);
+        while (cursor.next()) {
+            result.add(cursor.value());
+        }
+        return result;
+    }
+
+    @Override
+    public RangeCursor<K, V> rangeCursor(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy, boolean descending) {
+        return new PathCursor(current, beginKey, beginPolicy, endKey, endPolicy, descending);
+    }
+
+    /**
+     * 在一个版本上遍历，记录从根到当前叶子的路径，当前叶子走完了回到最近一个还有下一个(倒序是前一个)孩子的祖先，再向下
+     * */
+    private class PathCursor extends AbstractRangeCursor<K, V> {
+
+        private final K beginKey;
+        private final RangePolicy beginPolicy;
+        private final K endKey;
+        private final RangePolicy endPolicy;
+
+        /**path[0]是根，path[height - 1]是当前叶子*/
+        private final Node[] path;
+        /**每一层非叶子节点中当前孩子的位置，叶子层是idx*/
+        private final int[] index;
+
+        private K key;
+        private V value;
+
+        private PathCursor(Version version, K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy, boolean descending) {
+            super(descending);
+            this.beginKey = beginKey;
+            this.beginPolicy = beginPolicy;
+            this.endKey = endKey;
+            this.endPolicy = endPolicy;
+            path = new Node[version.height];
+            index = new int[version.height];
+            K start = descending ? endKey : beginKey;
+            Node node = version.root;
+            for (int level = 0; ; level++) {
+                path[level] = node;
+                if (node.leaf) {
+                    break;
+                }
+                index[level] = start != null ? childIndex(node, start) : descending ? node.size() : 0;
+                node = node.child(index[level]);
+            }
+            Node leaf = path[path.length - 1];
+            if (start == null) {
+                idx = descending ? leaf.size() - 1 : 0;
+            } else {
+                int loc = search(leaf.keys, start);
+                if (!descending) {
+                    idx = loc >= 0 ? (beginPolicy == RangePolicy.INCLUSIVE ? loc : loc + 1) : -loc - 1;
+                } else {
+                    idx = loc >= 0 ? (endPolicy == RangePolicy.INCLUSIVE ? loc : loc - 1) : -loc - 2;
+                }
+            }
+        }
+
+        @Override
+        protected boolean normalize() {
+            int last = path.length - 1;
+            while (descending ? idx < 0 : idx >= path[last].size()) {
+                // 向上找到还有下一个孩子的祖先
+                int level = last - 1;
+                while (level >= 0 && (descending ? index[level] == 0 : index[level] == path[level].size())) {
+                    level--;
+                }
+                if (level < 0) {
+                    return false;
+                }
+                index[level] += descending ? -1 : 1;
+                // 向下走到最左(倒序最右)的叶子
+                for (; level < last; level++) {
+                    Node child = path[level].child(index[level]);
+                    path[level + 1] = child;
+                    if (child.leaf) {
+                        idx = descending ? child.size() - 1 : 0;
+                    } else {
+                        index[level + 1] = descending ? child.size() : 0;
+                    }
+                }
+            }
+            return true;
+        }
+
+        @Override
+        protected int count() {
+            return path[path.length - 1].size();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected boolean load(int idx) {
+            Node leaf = path[path.length - 1];
+            K k = (K) leaf.keys[idx];
+            if (descending ? !BPlusTreeImpl.afterBegin(k, beginKey, beginPolicy) : !BPlusTreeImpl.beforeEnd(k, endKey, endPolicy)) {
+                return false;
+            }
+            key = k;
+            value = (V) leaf.slots[idx];
+            return true;
+        }
+
+        @Override
+        public K key() {
+            return key;
+        }
+
+        @Override
+        public V value() {
+            return value;
+        }
+    }
+
+    @Override
+    public Spliterator<Map.Entry<K, V>> rangeSpliterator(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy) {
+        return new VersionSpliterator(current, beginKey, beginPolicy, endKey, endPolicy, Long.MAX_VALUE);
+    }
+
+    /**
+     * 和BPlusTreeImpl的范围遍历器一样按内部节点的分隔key拆分，拆分出来的部分都在同一个版本上遍历
+     * */
+    private class VersionSpliterator extends AbstractRangeSpliterator<K, V> {
+
+        private final Version version;
+
+        private VersionSpliterator(Version version, K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy, long est) {
+            super(beginKey, beginPolicy, endKey, endPolicy, est);
+            this.version = version;
+        }
+
+        @Override
+        protected RangeCursor<K, V> cursor() {
+            return new PathCursor(version, beginKey, beginPolicy, endKey, endPolicy, false);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected K splitKey() {
+            Node node = version.root;
+            while (!node.leaf) {
+                int lo = beginKey == null ? 0 : childIndex(node, beginKey);
+                int hi = endKey == null ? node.size() : childIndex(node, endKey);
+                int i = splitIndex(lo, hi, hi > lo && endKey != null && ((K) node.keys[hi - 1]).compareTo(endKey) >= 0);
+                if (i >= 0) {
+                    return (K) node.keys[i];
+                }
+                node = node.child(lo);
+            }
+            return null;
+        }
+
+        @Override
+        protected AbstractRangeSpliterator<K, V> prefix(K splitKey, long est) {
+            return new VersionSpliterator(version, beginKey, beginPolicy, splitKey, RangePolicy.EXCLUSIVE, est);
+        }
+
+        @Override
+        public int characteristics() {
+            return super.characteristics() | IMMUTABLE;
+        }
+    }
+
+    /**
+     * 自底向上建一棵新树，作为一个新版本发布，已经打开的快照不受影响
+     * */
+    @Override
+    public void bulkLoad(Iterator<Map.Entry<K, V>> sortedEntries, double fillFactor) {
+        int leafSize = AbstractBNode.fillSize(maxKeys, minKeys, fillFactor);
+        List<Object> keys = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        K last = null;
+        while (sortedEntries.hasNext()) {
+            Map.Entry<K, V> entry = sortedEntries.next();
+            K key = entry.getKey();
+            if (key == null || (last != null && key.compareTo(last) <= 0)) {
+                throw new IllegalArgumentException("entries must be sorted by key without duplicates: " + last + ", " + key);
+            }
+            keys.add(key);
+            values.add(entry.getValue());
+            last = key;
+        }
+        Node root = emptyLeaf();
+        int height = 1;
+        if (!keys.isEmpty()) {
+            // 叶子分组，最后一个叶子不够最少个数的时候和前一个合并或者平分
+            int[] sizes = AbstractBNode.groupSizes(keys.size(), leafSize, minKeys, maxKeys);
+            List<Object> level = new ArrayList<>(sizes.length);
+            List<Object> firstKeys = new ArrayList<>(sizes.length);
+            int from = 0;
+            for (int size : sizes) {
+                level.add(new Node(true, keys.subList(from, from + size).toArray(), values.subList(from, from + size).toArray()));
+                firstKeys.add(keys.get(from));
+                from += size;
+            }
+            // 逐层向上，每个非叶子节点的key是除了第一个孩子之外每个孩子的最小key
+            int fanout = AbstractBNode.fillSize(degree, minKeys + 1, fillFactor);
+            while (level.size() > 1) {
+                sizes = AbstractBNode.groupSizes(level.size(), fanout, minKeys + 1, degree);
+                List<Object> parents = new ArrayList<>(sizes.length);
+                List<Object> parentKeys = new ArrayList<>(sizes.length);
+                from = 0;
+                for (int size : sizes) {
+                    parents.add(new Node(false, firstKeys.subList(from + 1, from + size).toArray(), level.subList(from, from + size).toArray()));
+                    parentKeys.add(firstKeys.get(from));
+                    from += size;
+                }
+                level = parents;
+                firstKeys = parentKeys;
+                height++;
+            }
+            root = (Node) level.get(0);
+        }
+        synchronized (writeLock) {
+            current = new Version(root, current.version + 1, keys.size(), height);
+        }
+    }
+
+    @Override
+    public String treeToString() {
+        return treeToString(current.root);
+    }
+
+    private static String treeToString(Node root) {
+        StringBuilder sb = new StringBuilder();
+        List<Node> level = new ArrayList<>();
+        level.add(root);
+        while (!level.isEmpty()) {
+            List<Node> children = new ArrayList<>();
+            for (Node node : level) {
+                sb.append(Arrays.toString(node.keys));
+                if (!node.leaf) {
+                    for (Object child : node.slots) {
+                        children.add((Node) child);
+                    }
+                }
+            }
+            sb.append('\n');
+            level = children;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 固定当前版本，返回只读视图，之后的修改在快照上都看不到
+     * */
+    public Snapshot openSnapshot() {
+        // 读current和登记在同一个锁里，oldestVersion不会漏掉正在打开的快照
+        synchronized (snapshots) {
+            Version version = current;
+            snapshots.merge(version.version, 1, Integer::sum);
+            return new Snapshot(version);
+        }
+    }
+
+    /**
+     * 打开的快照个数
+     * */
+    public int openSnapshots() {
+        synchronized (snapshots) {
+            int count = 0;
+            for (int n : snapshots.values()) {
+                count += n;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * 还被快照固定的最旧版本号，没有打开的快照返回当前版本号，比它旧的版本的节点已经不可达了
+     * */
+    public long oldestVersion() {
+        synchronized (snapshots) {
+            return snapshots.isEmpty() ? current.version : snapshots.firstKey();
+        }
+    }
+
+    private void release(long version) {
+        synchronized (snapshots) {
+            Integer n = snapshots.get(version);
+            if (n == 1) {
+                snapshots.remove(version);
+            } else {
+                snapshots.put(version, n - 1);
+            }
+        }
+    }
+
+    /**
+     * 只读快照，修改方法抛出UnsupportedOperationException，close之后不能再使用
+     * */
+    public final class Snapshot implements BPlusTree<K, V>, Closeable {
+
+        private final long versionNumber;
+
+        /**close之后置为null，释放对旧版本节点的引用*/
+        private volatile Version version;
+
+        private Snapshot(Version version) {
+            this.version = version;
+            versionNumber = version.version;
+        }
+
+        private Version version() {
+            Version v = version;
+            if (v == null) {
+                throw new IllegalStateException("Snapshot of version " + versionNumber + " is closed");
+            }
+            return v;
+        }
+
+        /**
+         * 快照的版本号
+         * */
+        public long versionNumber() {
+            return versionNumber;
+        }
+
+        public long size() {
+            return version().size;
+        }
+
+        @Override
+        public V search(K key) {
+            return CowBPlusTree.this.search(version().root, key);
+        }
+
+        @Override
+        public List<V> searchRange(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy) {
+            return CowBPlusTree.this.searchRange(version(), beginKey, beginPolicy, endKey, endPolicy);
+        }
+
+        @Override
+        public RangeCursor<K, V> rangeCursor(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy, boolean descending) {
+            return new PathCursor(version(), beginKey, beginPolicy, endKey, endPolicy, descending);
+        }
+
+        @Override
+        public Spliterator<Map.Entry<K, V>> rangeSpliterator(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy) {
+            return new VersionSpliterator(version(), beginKey, beginPolicy, endKey, endPolicy, Long.MAX_VALUE);
+        }
+
+        @Override
+        public String treeToString() {
+            return CowBPlusTree.treeToString(version().root);
+        }
+
+        @Override
+        public void insert(K key, V value) {
+            throw new UnsupportedOperationException("Snapshot is read only");
+        }
+
+        @Override
+        public void delete(K key) {
+            throw new UnsupportedOperationException("Snapshot is read only");
+        }
+
+        @Override
+        public void bulkLoad(Iterator<Map.Entry<K, V>> sortedEntries, double fillFactor) {
+            throw new UnsupportedOperationException("Snapshot is read only");
+        }
+
+        /**
+         * 关闭快照，可以重复调用
+         * */
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (version == null) {
+                    return;
+                }
+                version = null;
+            }
+            release(versionNumber);
+        }
+    }
+
+    /**
+     * 写入线程不停地插入，同时报表线程反复全量遍历:
+     * 全局锁的BPlusTreeImpl遍历期间写入被阻塞，CowBPlusTree在快照上遍历，写入不受影响
+     * 运行参数: [初始元素个数] [每轮秒数]
+     * */
+    public static void main(String[] args) throws InterruptedException {
+        final int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        final long millis = args.length > 1 ? Long.parseLong(args[1]) * 1000 : 5000;
+        // 第一轮作为预热，以第二轮的结果为准
+        for (int round = 1; round <= 2; round++) {
+            final BPlusTreeImpl<Integer, Integer> locked = new BPlusTreeImpl<>(64);
+            final CowBPlusTree<Integer, Integer> cow = new CowBPlusTree<>(64);
+            for (int i = 0; i < n; i++) {
+                locked.insert(i, i);
+                cow.insert(i, i);
+            }
+            final Object lock = new Object();
+            long[] result = ingestWhileScanning(millis, n, new Runnable() {
+                private int next = n;
+
+                @Override
+                public void run() {
+                    synchronized (lock) {
+                        locked.insert(next, next);
+                        next++;
+                    }
+                }
+            }, new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (lock) {
+                        RangeCursor<Integer, Integer> cursor = locked.rangeCursor(null, null, null, null, false);
+                        while (cursor.next()) {
+                        }
+                    }
+                }
+            });
+            System.out.printf("round %d synchronized BPlusTreeImpl: ingest %d ops/s, longest insert stall %d ms, %d full scans%n",
+                    round, result[0], result[1], result[2]);
+            result = ingestWhileScanning(millis, n, new Runnable() {
+                private int next = n;
+
+                @Override
+                public void run() {
+                    cow.insert(next, next);
+                    next++;
+                }
+            }, new Runnable() {
+                @Override
+                public void run() {
+                    try (CowBPlusTree<Integer, Integer>.Snapshot snapshot = cow.openSnapshot()) {
+                        RangeCursor<Integer, Integer> cursor = snapshot.rangeCursor(null, null, null, null, false);
+                        while (cursor.next()) {
+                        }
+                    }
+                }
+            });
+            System.out.printf("round %d CowBPlusTree snapshots:     ingest %d ops/s, longest insert stall %d ms, %d full scans%n",
+                    round, result[0], result[1], result[2]);
+        }
+    }
+
+    /**
+     * @return [写入次数/秒, 最长的一次写入耗时(ms), 遍历次数]
+     * */
+    private static long[] ingestWhileScanning(long millis, int n, final Runnable ingest, final Runnable scan) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + millis;
+        final AtomicLong scans = new AtomicLong();
+        Thread reporter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (System.currentTimeMillis() < deadline) {
+                    scan.run();
+                    scans.incrementAndGet();
+                }
+            }
+        });
+        reporter.start();
+        long ops = 0, maxStall = 0;
+        long begin = System.nanoTime();
+        while (System.currentTimeMillis() < deadline) {
+            long start = System.nanoTime();
+            ingest.run();
+            maxStall = Math.max(maxStall, System.nanoTime() - start);
+            ops++;
+        }
+        long cost = System.nanoTime() - begin;
+        reporter.join();
+        return new long[]{(long) (ops * 1e9 / cost), maxStall / 1000000, scans.get()};
+    }
+}
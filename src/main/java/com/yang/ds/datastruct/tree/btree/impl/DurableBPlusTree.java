@@ -0,0 +1,664 @@
+package com.yang.ds.datastruct.tree.btree.impl;
+
+import com.yang.ds.datastruct.tree.btree.BPlusTree;
+import com.yang.ds.datastruct.tree.btree.RangeCursor;
+import com.yang.ds.datastruct.tree.btree.page.PageCodec;
+import com.yang.ds.datastruct.tree.btree.page.WriteAheadLog;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * 给内存中的B+树加上持久化: 预写日志(WAL) + checkpoint，进程重启之后不需要从源数据重建
+ *
+ * 1. insert/delete先追加到WriteAheadLog再修改内存中的树，等日志刷盘之后返回，返回之后进程崩溃也不会丢失。
+ * 多个线程同时提交的时候一次fsync提交一批(组提交)，syncInterval控制两次fsync的最小间隔
+ *
+ * 2. checkpoint: 挡住写操作，日志切换到新段，同时固定CowBPlusTree的快照(只是读一次当前版本)，马上放开写操作；
+ * 之后在快照上按key的顺序把整棵树写到checkpoint文件，文件写完刷盘之后原子地rename替换旧的checkpoint，
+ * 再删除旧的日志段。写文件和刷盘期间写操作不受影响，只在切换日志段的时候等一次fsync。
+ * WAL里checkpoint之后的记录达到checkpointRecords条的时候，由后台线程做checkpoint，提交的线程不等待
+ *
+ * 3. 恢复: 用checkpoint文件里有序的数据bulkLoad重建树(没有查找和分裂)，再重放checkpoint之后的日志，
+ * 重启时间取决于checkpoint的大小和日志的长度，而不是从源数据重新插入
+ *
+ * checkpoint文件布局:
+ * <pre>
+ * [magic 8][key大小 4][value大小 4][lsn 8][元素个数 8][key value]...[crc32 4]
+ * </pre>
+ *
+ * 写操作之间互斥(保证日志的顺序和修改树的顺序一样)，读操作直接读CowBPlusTree的当前版本，不加锁；
+ * 修改在刷盘之前已经对读可见
+ * */
+public class DurableBPlusTree<K extends Comparable<? super K>, V> implements BPlusTree<K, V>, Closeable {
+
+    public static final long DEFAULT_CHECKPOINT_RECORDS = 1000000;
+
+    static final String CHECKPOINT = "checkpoint";
+
+    private static final String CHECKPOINT_TMP = "checkpoint.tmp";
+
+    private static final long MAGIC = 0x5943484b504f4e54L;
+
+    private static final int HEADER = 32;
+
+    /**恢复的时候bulkLoad的装填因子，给之后的插入留空间*/
+    private static final double FILL_FACTOR = 0.7;
+
+    private final File dir;
+
+    private final CowBPlusTree<K, V> tree;
+
+    private final PageCodec<K> keyCodec;
+
+    private final PageCodec<V> valueCodec;
+
+    private final WriteAheadLog<K, V> wal;
+
+    private final long checkpointRecords;
+
+    /**写操作之间互斥，checkpoint切换日志段和固定快照的时候也要拿，保证快照正好是重放到lsn的结果*/
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /**同一时间只有一个checkpoint*/
+    private final Object checkpointLock = new Object();
+
+    /**做自动checkpoint的后台线程，checkpointRecords为0的时候是null*/
+    private final ExecutorService checkpointer;
+
+    /**已经交给后台线程、还没开始的自动checkpoint，最多一个*/
+    private final AtomicBoolean checkpointScheduled = new AtomicBoolean();
+
+    /**最近一次自动checkpoint的异常，之后成功了清空，close的时候抛出*/
+    private volatile RuntimeException checkpointFailure;
+
+    /**最近一次checkpoint包含的最后一个lsn*/
+    private volatile long checkpointLsn;
+
+    private final AtomicLong checkpoints = new AtomicLong();
+
+    private final long replayedRecords;
+
+    public DurableBPlusTree(File dir, CowBPlusTree<K, V> tree, PageCodec<K> keyCodec, PageCodec<V> valueCodec) {
+        this(dir, tree, keyCodec, valueCodec, 0, TimeUnit.MICROSECONDS, DEFAULT_CHECKPOINT_RECORDS);
+    }
+
+    /**
+     * 打开目录，从checkpoint和WAL恢复数据
+     * @param tree 内存中的树，原来的数据清空，checkpoint在它的快照上进行
+     * @param syncInterval 组提交两次fsync的最小间隔，0表示提交的时候马上刷盘
+     * @param checkpointRecords WAL里checkpoint之后的记录达到这个个数的时候自动checkpoint，0表示不自动checkpoint
+     * */
+    public DurableBPlusTree(File dir, CowBPlusTree<K, V> tree, PageCodec<K> keyCodec, PageCodec<V> valueCodec,
+                            long syncInterval, TimeUnit unit, long checkpointRecords) {
+        if (checkpointRecords < 0)
+            throw new IllegalArgumentException("Illegal checkpoint records: " + checkpointRecords);
+        this.dir = dir;
+        this.tree = tree;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.checkpointRecords = checkpointRecords;
+        wal = new WriteAheadLog<>(dir, keyCodec, valueCodec, syncInterval, unit);
+        File tmp = new File(dir, CHECKPOINT_TMP);
+        if (tmp.exists() && !tmp.delete())
+            throw new UncheckedIOException(new IOException("Can not delete " + tmp));
+        checkpointLsn = loadCheckpoint();
+        replayedRecords = wal.recover(checkpointLsn, tree::insert, tree::delete);
+        checkpointer = checkpointRecords == 0 ? null : Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "checkpoint-" + dir.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private long loadCheckpoint() {
+        File file = new File(dir, CHECKPOINT);
+        if (!file.exists()) {
+            tree.bulkLoad(Collections.<Map.Entry<K, V>>emptyIterator(), FILL_FACTOR);
+            return 0;
+        }
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            readFully(in, header);
+            if (header.hasRemaining() || header.getLong(0) != MAGIC || header.getInt(8) != keyCodec.size()
+                    || header.getInt(12) != valueCodec.size())
+                throw new IllegalStateException("File " + file + " is not a checkpoint with key size " + keyCodec.size()
+                        + " and value size " + valueCodec.size());
+            CheckpointReader reader = new CheckpointReader(in, header.getLong(24));
+            tree.bulkLoad(reader, FILL_FACTOR);
+            reader.verify(file);
+            return header.getLong(16);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 顺序读取checkpoint文件里的元素，读完之后校验crc
+     * */
+    private class CheckpointReader implements Iterator<Map.Entry<K, V>> {
+
+        private final FileChannel in;
+
+        private final int entrySize = keyCodec.size() + valueCodec.size();
+
+        private final ByteBuffer block = ByteBuffer.allocate(entrySize * Math.max(1, 65536 / entrySize) + 4);
+
+        private final CRC32 crc = new CRC32();
+
+        private long remaining;
+
+        CheckpointReader(FileChannel in, long count) {
+            this.in = in;
+            remaining = count;
+            block.flip();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            fill(entrySize);
+            int offset = block.position();
+            crc.update(block.array(), offset, entrySize);
+            K key = keyCodec.read(block, offset);
+            V value = valueCodec.read(block, offset + keyCodec.size());
+            block.position(offset + entrySize);
+            remaining--;
+            return new AbstractMap.SimpleImmutableEntry<>(key, value);
+        }
+
+        private void fill(int n) {
+            if (block.remaining() >= n) {
+                return;
+            }
+            block.compact();
+            try {
+                readFully(in, block);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            block.flip();
+            if (block.remaining() < n)
+                throw new IllegalStateException("Checkpoint is truncated");
+        }
+
+        void verify(File file) {
+            if (remaining > 0)
+                throw new IllegalStateException("Checkpoint " + file + " is not fully loaded");
+            fill(4);
+            if (block.getInt() != (int) crc.getValue())
+                throw new IllegalStateException("Checkpoint " + file + " is corrupted");
+        }
+    }
+
+    private static void readFully(FileChannel in, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer) < 0) {
+                break;
+            }
+        }
+    }
+
+    private static void checkKey(Object key) {
+        if (key == null) {
+            throw new IllegalArgumentException("key can not be null");
+        }
+    }
+
+    @Override
+    public void insert(K key, V value) {
+        checkKey(key);
+        long lsn;
+        writeLock.lock();
+        try {
+            // 先编码写日志，codec抛出异常的时候树不变
+            lsn = wal.append(WriteAheadLog.INSERT, key, value);
+            tree.insert(key, value);
+        } finally {
+            writeLock.unlock();
+        }
+        commit(lsn);
+    }
+
+    @Override
+    public void delete(K key) {
+        checkKey(key);
+        long lsn;
+        writeLock.lock();
+        try {
+            lsn = wal.append(WriteAheadLog.DELETE, key, null);
+            tree.delete(key);
+        } finally {
+            writeLock.unlock();
+        }
+        commit(lsn);
+    }
+
+    /**
+     * 释放写锁之后再等刷盘，等待期间其它线程可以继续修改，一起提交；
+     * 日志够多的时候把checkpoint交给后台线程，不在提交的线程里做
+     * */
+    private void commit(long lsn) {
+        wal.sync(lsn);
+        if (checkpointer != null && lsn - checkpointLsn >= checkpointRecords && checkpointScheduled.compareAndSet(false, true)) {
+            checkpointer.execute(this::backgroundCheckpoint);
+        }
+    }
+
+    private void backgroundCheckpoint() {
+        // 开始之后的提交可以再安排下一次，checkpoint(checkpointRecords)会跳过日志不够的那次
+        checkpointScheduled.set(false);
+        try {
+            checkpoint(checkpointRecords);
+            checkpointFailure = null;
+        } catch (RuntimeException e) {
+            // 日志还在，数据不会丢失，下次达到条件的时候重试
+            checkpointFailure = e;
+        }
+    }
+
+    @Override
+    public V search(K key) {
+        return tree.search(key);
+    }
+
+    @Override
+    public String treeToString() {
+        return tree.treeToString();
+    }
+
+    @Override
+    public List<V> searchRange(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy) {
+        return tree.searchRange(beginKey, beginPolicy, endKey, endPolicy);
+    }
+
+    @Override
+    public RangeCursor<K, V> rangeCursor(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy, boolean descending) {
+        return tree.rangeCursor(beginKey, beginPolicy, endKey, endPolicy, descending);
+    }
+
+    @Override
+    public Spliterator<Map.Entry<K, V>> rangeSpliterator(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy) {
+        return tree.rangeSpliterator(beginKey, beginPolicy, endKey, endPolicy);
+    }
+
+    /**
+     * 批量加载之后马上checkpoint，加载的数据不写日志
+     * */
+    @Override
+    public void bulkLoad(Iterator<Map.Entry<K, V>> sortedEntries, double fillFactor) {
+        synchronized (checkpointLock) {
+            writeLock.lock();
+            try {
+                tree.bulkLoad(sortedEntries, fillFactor);
+                // 新的checkpoint替换之前不能有新的日志，否则崩溃之后会在旧数据上重放
+                long lsn = wal.rollover();
+                writeCheckpoint(tree, lsn);
+                publishCheckpoint(lsn);
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 把当前的数据写到checkpoint，删除之前的日志，在调用的线程里做，写文件期间不挡住写操作
+     * */
+    public void checkpoint() {
+        checkpoint(0);
+    }
+
+    /**
+     * @param minRecords 上次checkpoint之后的日志少于这个个数的时候不做(其它线程已经做过)
+     * */
+    private void checkpoint(long minRecords) {
+        synchronized (checkpointLock) {
+            long lsn;
+            CowBPlusTree<K, V>.Snapshot snapshot;
+            // 切换日志段和固定快照之间不能有修改，快照就是重放到lsn的结果
+            writeLock.lock();
+            try {
+                if (wal.lastLsn() - checkpointLsn < minRecords) {
+                    return;
+                }
+                lsn = wal.rollover();
+                snapshot = tree.openSnapshot();
+            } finally {
+                writeLock.unlock();
+            }
+            try {
+                writeCheckpoint(snapshot, lsn);
+            } finally {
+                snapshot.close();
+            }
+            // 替换之前崩溃的话用旧的checkpoint和日志恢复，结果一样
+            publishCheckpoint(lsn);
+        }
+    }
+
+    /**
+     * 按key的顺序写到临时文件并刷盘
+     * @param source 当前的树或者它的快照
+     * */
+    private void writeCheckpoint(BPlusTree<K, V> source, long lsn) {
+        int entrySize = keyCodec.size() + valueCodec.size();
+        ByteBuffer block = ByteBuffer.allocate(entrySize * Math.max(1, 65536 / entrySize));
+        CRC32 crc = new CRC32();
+        long count = 0;
+        try (FileChannel out = FileChannel.open(new File(dir, CHECKPOINT_TMP).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            out.position(HEADER);
+            RangeCursor<K, V> cursor = source.rangeCursor(null, null, null, null, false);
+            while (cursor.next()) {
+                if (block.remaining() < entrySize) {
+                    write(out, block, crc);
+                }
+                int offset = block.position();
+                keyCodec.write(block, offset, cursor.key());
+                valueCodec.write(block, offset + keyCodec.size(), cursor.value());
+                block.position(offset + entrySize);
+                count++;
+            }
+            write(out, block, crc);
+            block.putInt((int) crc.getValue()).flip();
+            while (block.hasRemaining()) {
+                out.write(block);
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.putLong(MAGIC).putInt(keyCodec.size()).putInt(valueCodec.size()).putLong(lsn).putLong(count).flip();
+            while (header.hasRemaining()) {
+                out.write(header, header.position());
+            }
+            out.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void write(FileChannel out, ByteBuffer block, CRC32 crc) throws IOException {
+        crc.update(block.array(), 0, block.position());
+        block.flip();
+        while (block.hasRemaining()) {
+            out.write(block);
+        }
+        block.clear();
+    }
+
+    /**
+     * 原子地替换旧的checkpoint，删除已经包含在checkpoint中的日志段
+     * */
+    private void publishCheckpoint(long lsn) {
+        try {
+            Files.move(new File(dir, CHECKPOINT_TMP).toPath(), new File(dir, CHECKPOINT).toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            // rename要刷目录才能持久，有的平台不能打开目录，忽略
+            try (FileChannel directory = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+                directory.force(true);
+            } catch (IOException ignored) {
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        checkpointLsn = lsn;
+        checkpoints.incrementAndGet();
+        wal.deleteBefore(lsn);
+    }
+
+    /**
+     * 最近一次checkpoint包含的最后一个lsn
+     * */
+    public long checkpointLsn() {
+        return checkpointLsn;
+    }
+
+    /**
+     * 打开之后做过的checkpoint次数
+     * */
+    public long checkpoints() {
+        return checkpoints.get();
+    }
+
+    /**
+     * 打开的时候重放的日志记录个数
+     * */
+    public long replayedRecords() {
+        return replayedRecords;
+    }
+
+    public WriteAheadLog<K, V> wal() {
+        return wal;
+    }
+
+    /**
+     * 等已经开始或者安排好的后台checkpoint做完，日志刷盘之后关闭，不再做新的checkpoint，下次打开的时候重放日志
+     * 后台checkpoint最后一次失败了的话，关闭之后抛出IllegalStateException(数据在日志里，没有丢失)
+     * */
+    @Override
+    public void close() {
+        if (checkpointer != null) {
+            checkpointer.shutdown();
+            boolean interrupted = false;
+            while (!checkpointer.isTerminated()) {
+                try {
+                    checkpointer.awaitTermination(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        wal.close();
+        RuntimeException failure = checkpointFailure;
+        if (failure != null)
+            throw new IllegalStateException("Background checkpoint failed", failure);
+    }
+
+    /**
+     * 1. 组提交: 不同线程数和fsync间隔下每秒提交的个数和每次fsync提交的记录个数
+     * 2. 恢复: checkpoint + 日志重放的重启时间，和逐个插入重建对比
+     * 运行参数: [元素个数] [checkpoint之后的日志记录个数]
+     * */
+    public static void main(String[] args) throws Exception {
+        final int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        final int tail = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+        int[] threadCounts = {1, 4, 16};
+        long[] intervals = {0, 100, 500, 2000};
+        // 第一轮作为预热，以第二轮的结果为准
+        for (int round = 1; round <= 2; round++) {
+            for (int threads : threadCounts) {
+                for (long interval : intervals) {
+                    groupCommit(round, threads, interval, 1000);
+                }
+            }
+        }
+
+        File dir = Files.createTempDirectory("durable-bplustree").toFile();
+        try {
+            try (DurableBPlusTree<Long, Long> tree = new DurableBPlusTree<>(dir, new CowBPlusTree<Long, Long>(64),
+                    PageCodec.LONG, PageCodec.LONG, 500, TimeUnit.MICROSECONDS, 0)) {
+                long begin = System.nanoTime();
+                tree.bulkLoad(sequence(n), 0.7);
+                System.out.printf("bulkLoad + checkpoint %d keys: %d ms, checkpoint %d MB%n", n,
+                        (System.nanoTime() - begin) / 1000000, new File(dir, CHECKPOINT).length() >> 20);
+                begin = System.nanoTime();
+                runWriters(tree, 16, tail, Long.MAX_VALUE);
+                System.out.printf("%d commits after checkpoint by 16 threads: %d ms, %d fsyncs, WAL %d MB%n", tail,
+                        (System.nanoTime() - begin) / 1000000, tree.wal().syncs(),
+                        (long) tail * tree.wal().recordSize() >> 20);
+            }
+            for (int round = 1; round <= 2; round++) {
+                long begin = System.nanoTime();
+                try (DurableBPlusTree<Long, Long> tree = new DurableBPlusTree<>(dir, new CowBPlusTree<Long, Long>(64),
+                        PageCodec.LONG, PageCodec.LONG)) {
+                    System.out.printf("round %d recover checkpoint + %d WAL records: %d ms%n", round,
+                            tree.replayedRecords(), (System.nanoTime() - begin) / 1000000);
+                    if (round == 2) {
+                        begin = System.nanoTime();
+                        tree.checkpoint();
+                        System.out.printf("checkpoint: %d ms%n", (System.nanoTime() - begin) / 1000000);
+                    }
+                }
+            }
+            long begin = System.nanoTime();
+            try (DurableBPlusTree<Long, Long> tree = new DurableBPlusTree<>(dir, new CowBPlusTree<Long, Long>(64),
+                    PageCodec.LONG, PageCodec.LONG)) {
+                System.out.printf("recover checkpoint only (%d WAL records): %d ms%n", tree.replayedRecords(),
+                        (System.nanoTime() - begin) / 1000000);
+                checkpointWhileWriting(tree);
+            }
+            // 对比: 逐个插入重建同样的数据
+            begin = System.nanoTime();
+            CowBPlusTree<Long, Long> rebuilt = new CowBPlusTree<>(64);
+            Random random = new Random(1);
+            for (long i = 0; i < n; i++) {
+                rebuilt.insert(2 * i, 2 * i);
+            }
+            for (int i = 0; i < tail; i++) {
+                long key = random.nextInt(Integer.MAX_VALUE);
+                rebuilt.insert(key, key);
+            }
+            System.out.printf("rebuild by %d inserts: %d ms%n", n + tail, (System.nanoTime() - begin) / 1000000);
+        } finally {
+            deleteDir(dir);
+        }
+    }
+
+    /**
+     * 一个线程不停地提交，同时做一次checkpoint，看checkpoint期间提交的最大延迟
+     * */
+    private static void checkpointWhileWriting(final DurableBPlusTree<Long, Long> tree) throws InterruptedException {
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicLong maxLatency = new AtomicLong();
+        final AtomicLong commits = new AtomicLong();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Random random = new Random(7);
+                while (!stop.get()) {
+                    long key = random.nextInt(Integer.MAX_VALUE);
+                    long begin = System.nanoTime();
+                    tree.insert(key, key);
+                    maxLatency.set(Math.max(maxLatency.get(), System.nanoTime() - begin));
+                    commits.incrementAndGet();
+                }
+            }
+        });
+        writer.start();
+        Thread.sleep(200);
+        maxLatency.set(0);
+        commits.set(0);
+        long begin = System.nanoTime();
+        tree.checkpoint();
+        long cost = System.nanoTime() - begin;
+        long during = commits.get();
+        stop.set(true);
+        writer.join();
+        System.out.printf("checkpoint while writing: %d ms, %d commits during checkpoint, max commit latency %d us%n",
+                cost / 1000000, during, maxLatency.get() / 1000);
+    }
+
+    private static void groupCommit(int round, int threads, long intervalMicros, long millis) throws Exception {
+        File dir = Files.createTempDirectory("durable-bplustree").toFile();
+        try (DurableBPlusTree<Long, Long> tree = new DurableBPlusTree<>(dir, new CowBPlusTree<Long, Long>(64),
+                PageCodec.LONG, PageCodec.LONG, intervalMicros, TimeUnit.MICROSECONDS, 0)) {
+            long begin = System.nanoTime();
+            long commits = runWriters(tree, threads, Integer.MAX_VALUE, begin + millis * 1000000);
+            long cost = System.nanoTime() - begin;
+            long syncs = tree.wal().syncs();
+            System.out.printf("round %d threads=%2d syncInterval=%4dus: %7d commits/s, %6d fsyncs/s, %6.1f commits/fsync, "
+                            + "latency %5d us%n", round, threads, intervalMicros, commits * 1000000000L / cost,
+                    syncs * 1000000000L / cost, (double) commits / Math.max(1, syncs), cost / 1000 * threads / commits);
+        } finally {
+            deleteDir(dir);
+        }
+    }
+
+    /**
+     * threads个线程随机插入，一共commits次或者到deadline为止
+     * @return 提交的次数
+     * */
+    private static long runWriters(final DurableBPlusTree<Long, Long> tree, int threads, final int commits,
+                                   final long deadline) throws InterruptedException {
+        final AtomicLong done = new AtomicLong();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final Random random = new Random(t);
+            workers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (done.get() < commits && System.nanoTime() < deadline) {
+                        long key = random.nextInt(Integer.MAX_VALUE);
+                        tree.insert(key, key);
+                        done.incrementAndGet();
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return done.get();
+    }
+
+    private static Iterator<Map.Entry<Long, Long>> sequence(final int n) {
+        return new Iterator<Map.Entry<Long, Long>>() {
+            private long i;
+
+            @Override
+            public boolean hasNext() {
+                return i < n;
+            }
+
+            @Override
+            public Map.Entry<Long, Long> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                long key = 2 * i++;
+                return new AbstractMap.SimpleImmutableEntry<>(key, key);
+            }
+        };
+    }
+
+    private static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+}
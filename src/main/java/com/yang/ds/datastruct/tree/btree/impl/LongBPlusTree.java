@@ -0,0 +1,665 @@
+package com.yang.ds.datastruct.tree.btree.impl;
+
+import com.yang.ds.algorithm.utils.YUtils;
+import com.yang.ds.datastruct.tree.btree.BPlusTree;
+import com.yang.ds.datastruct.tree.btree.RangeCursor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Spliterator;
+
+/**
+ * long类型key的B+树(m阶)，规则和BPlusTreeImpl一样
+ *
+ * BPlusTreeImpl的节点是List<K>和ArrayList，每个节点有好几个对象，每个key还要装箱，查找时每次比较都是List.get和compareTo，
+ * 这里节点直接放long[] keys和Object[] values/children，数组按最大个数一次分配好，节点内用YUtils.lowerBound查找(按节点大小选择线性扫描或者无分支二分)
+ *
+ * 接口方法(Long)转成long调用对应的基本类型方法，key不能为null
+ * */
+public class LongBPlusTree<V> implements BPlusTree<Long, V> {
+
+    private final int degree;
+
+    /**节点最多的key个数*/
+    private final int maxKeys;
+
+    /**非根节点最少的key个数*/
+    private final int minKeys;
+
+    private Node root;
+
+    /**树的高度，只有一个叶子是1*/
+    private int height = 1;
+
+    private long size;
+
+    /**
+     * 节点，数组多留一个位置，先插入再分裂
+     * */
+    private abstract static class Node {
+
+        final long[] keys;
+
+        int size;
+
+        Node(int degree) {
+            keys = new long[degree];
+        }
+    }
+
+    private static final class Leaf extends Node {
+
+        final Object[] values;
+
+        Leaf next;
+
+        Leaf prev;
+
+        Leaf(int degree) {
+            super(degree);
+            values = new Object[degree];
+        }
+    }
+
+    private static final class Inner extends Node {
+
+        final Node[] children;
+
+        Inner(int degree) {
+            super(degree);
+            children = new Node[degree + 1];
+        }
+    }
+
+    public LongBPlusTree(int degree) {
+        if (degree < MIN_DEGREE) {
+            throw new IllegalArgumentException("degree is less than " + MIN_DEGREE + "" + "," + degree);
+        }
+        this.degree = degree;
+        maxKeys = degree - 1;
+        minKeys = Math.max(1, (degree + 1) / 2 - 1);
+        root = new Leaf(degree);
+    }
+
+    /**
+     * key所在的孩子下标，等于分隔key的在右侧孩子
+     * */
+    private static int childIndex(Inner inner, long key) {
+        int i = YUtils.lowerBound(inner.keys, 0, inner.size, key);
+        return i < inner.size && inner.keys[i] == key ? i + 1 : i;
+    }
+
+    /**
+     * key所在的叶子，leftmost为true时忽略key找最左边的叶子
+     * */
+    private Leaf leafOf(long key, boolean leftmost) {
+        Node node = root;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            node = inner.children[leftmost ? 0 : childIndex(inner, key)];
+        }
+        return (Leaf) node;
+    }
+
+    private Leaf lastLeaf() {
+        Node node = root;
+        while (node instanceof Inner) {
+            node = ((Inner) node).children[node.size];
+        }
+        return (Leaf) node;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V search(long key) {
+        Leaf leaf = leafOf(key, false);
+        int i = YUtils.lowerBound(leaf.keys, 0, leaf.size, key);
+        return i < leaf.size && leaf.keys[i] == key ? (V) leaf.values[i] : null;
+    }
+
+    public void insert(long key, V value) {
+        Inner[] path = new Inner[height - 1];
+        int[] index = new int[height - 1];
+        Node node = root;
+        for (int level = 0; level < height - 1; level++) {
+            Inner inner = (Inner) node;
+            int ci = childIndex(inner, key);
+            path[level] = inner;
+            index[level] = ci;
+            node = inner.children[ci];
+        }
+        Leaf leaf = (Leaf) node;
+        int n = leaf.size;
+        int pos = YUtils.lowerBound(leaf.keys, 0, n, key);
+        if (pos < n && leaf.keys[pos] == key) {
+            leaf.values[pos] = value;
+            return;
+        }
+        System.arraycopy(leaf.keys, pos, leaf.keys, pos + 1, n - pos);
+        System.arraycopy(leaf.values, pos, leaf.values, pos + 1, n - pos);
+        leaf.keys[pos] = key;
+        leaf.values[pos] = value;
+        leaf.size = ++n;
+        size++;
+        if (n <= maxKeys) {
+            return;
+        }
+        // 叶子分裂，右半部分移到新叶子，插入到双向链表
+        Leaf right = new Leaf(degree);
+        int mid = n / 2;
+        System.arraycopy(leaf.keys, mid, right.keys, 0, n - mid);
+        System.arraycopy(leaf.values, mid, right.values, 0, n - mid);
+        Arrays.fill(leaf.values, mid, n, null);
+        right.size = n - mid;
+        leaf.size = mid;
+        right.next = leaf.next;
+        right.prev = leaf;
+        if (leaf.next != null) {
+            leaf.next.prev = right;
+        }
+        leaf.next = right;
+        long splitKey = right.keys[0];
+        Node newChild = right;
+        // 分隔key逐层插入父节点，父节点满了继续分裂
+        for (int level = height - 2; level >= 0; level--) {
+            Inner parent = path[level];
+            int ci = index[level];
+            int pn = parent.size;
+            System.arraycopy(parent.keys, ci, parent.keys, ci + 1, pn - ci);
+            System.arraycopy(parent.children, ci + 1, parent.children, ci + 2, pn - ci);
+            parent.keys[ci] = splitKey;
+            parent.children[ci + 1] = newChild;
+            parent.size = ++pn;
+            if (pn <= maxKeys) {
+                return;
+            }
+            // 非叶子分裂，中间的key上提，不保留在右侧节点
+            Inner sibling = new Inner(degree);
+            int m = pn / 2;
+            splitKey = parent.keys[m];
+            System.arraycopy(parent.keys, m + 1, sibling.keys, 0, pn - m - 1);
+            System.arraycopy(parent.children, m + 1, sibling.children, 0, pn - m);
+            Arrays.fill(parent.children, m + 1, pn + 1, null);
+            sibling.size = pn - m - 1;
+            parent.size = m;
+            newChild = sibling;
+        }
+        Inner newRoot = new Inner(degree);
+        newRoot.keys[0] = splitKey;
+        newRoot.children[0] = root;
+        newRoot.children[1] = newChild;
+        newRoot.size = 1;
+        root = newRoot;
+        height++;
+    }
+
+    public void delete(long key) {
+        Inner[] path = new Inner[height - 1];
+        int[] index = new int[height - 1];
+        Node node = root;
+        for (int level = 0; level < height - 1; level++) {
+            Inner inner = (Inner) node;
+            int ci = childIndex(inner, key);
+            path[level] = inner;
+            index[level] = ci;
+            node = inner.children[ci];
+        }
+        Leaf leaf = (Leaf) node;
+        int n = leaf.size;
+        int pos = YUtils.lowerBound(leaf.keys, 0, n, key);
+        if (pos == n || leaf.keys[pos] != key) {
+            return;
+        }
+        System.arraycopy(leaf.keys, pos + 1, leaf.keys, pos, n - pos - 1);
+        System.arraycopy(leaf.values, pos + 1, leaf.values, pos, n - pos - 1);
+        leaf.values[n - 1] = null;
+        leaf.size = n - 1;
+        size--;
+        // 从叶子向上，不够最少key个数的节点向兄弟借一个，兄弟也不够就合并，合并之后父节点少一个key继续向上检查
+        for (int level = height - 2; level >= 0 && node.size < minKeys; level--) {
+            Inner parent = path[level];
+            int ci = index[level];
+            Node left = ci > 0 ? parent.children[ci - 1] : null;
+            Node right = ci < parent.size ? parent.children[ci + 1] : null;
+            if (left != null && left.size > minKeys) {
+                borrowFromLeft(parent, ci, left, node);
+                return;
+            }
+            if (right != null && right.size > minKeys) {
+                borrowFromRight(parent, ci, node, right);
+                return;
+            }
+            if (left != null) {
+                merge(parent, ci - 1, left, node);
+            } else {
+                merge(parent, ci, node, right);
+            }
+            node = parent;
+        }
+        // 根节点没有key了，唯一的孩子作为新根
+        if (root instanceof Inner && root.size == 0) {
+            root = ((Inner) root).children[0];
+            height--;
+        }
+    }
+
+    /**
+     * 左兄弟的最后一个元素移到node的最前面
+     * @param ci node在parent中的下标
+     * */
+    private static void borrowFromLeft(Inner parent, int ci, Node left, Node node) {
+        int n = node.size;
+        System.arraycopy(node.keys, 0, node.keys, 1, n);
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node, from = (Leaf) left;
+            System.arraycopy(leaf.values, 0, leaf.values, 1, n);
+            leaf.keys[0] = from.keys[from.size - 1];
+            leaf.values[0] = from.values[from.size - 1];
+            from.values[from.size - 1] = null;
+            parent.keys[ci - 1] = leaf.keys[0];
+        } else {
+            // 非叶子: 父节点的分隔key下移，左兄弟的最后一个key上移
+            Inner inner = (Inner) node, from = (Inner) left;
+            System.arraycopy(inner.children, 0, inner.children, 1, n + 1);
+            inner.keys[0] = parent.keys[ci - 1];
+            inner.children[0] = from.children[from.size];
+            from.children[from.size] = null;
+            parent.keys[ci - 1] = from.keys[from.size - 1];
+        }
+        node.size = n + 1;
+        left.size--;
+    }
+
+    /**
+     * 右兄弟的第一个元素移到node的最后面
+     * */
+    private static void borrowFromRight(Inner parent, int ci, Node node, Node right) {
+        int n = node.size, rn = right.size;
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node, from = (Leaf) right;
+            leaf.keys[n] = from.keys[0];
+            leaf.values[n] = from.values[0];
+            System.arraycopy(from.keys, 1, from.keys, 0, rn - 1);
+            System.arraycopy(from.values, 1, from.values, 0, rn - 1);
+            from.values[rn - 1] = null;
+            parent.keys[ci] = from.keys[0];
+        } else {
+            Inner inner = (Inner) node, from = (Inner) right;
+            inner.keys[n] = parent.keys[ci];
+            inner.children[n + 1] = from.children[0];
+            parent.keys[ci] = from.keys[0];
+            System.arraycopy(from.keys, 1, from.keys, 0, rn - 1);
+            System.arraycopy(from.children, 1, from.children, 0, rn);
+            from.children[rn] = null;
+        }
+        node.size = n + 1;
+        right.size = rn - 1;
+    }
+
+    /**
+     * right合并到left，删除父节点中的分隔key(下标i)和right
+     * */
+    private static void merge(Inner parent, int i, Node left, Node right) {
+        int ln = left.size, rn = right.size;
+        if (left instanceof Leaf) {
+            Leaf l = (Leaf) left, r = (Leaf) right;
+            System.arraycopy(r.keys, 0, l.keys, ln, rn);
+            System.arraycopy(r.values, 0, l.values, ln, rn);
+            l.size = ln + rn;
+            l.next = r.next;
+            if (r.next != null) {
+                r.next.prev = l;
+            }
+        } else {
+            // 非叶子: 父节点的分隔key下移到两个节点中间
+            Inner l = (Inner) left, r = (Inner) right;
+            l.keys[ln] = parent.keys[i];
+            System.arraycopy(r.keys, 0, l.keys, ln + 1, rn);
+            System.arraycopy(r.children, 0, l.children, ln + 1, rn + 1);
+            l.size = ln + 1 + rn;
+        }
+        int pn = parent.size;
+        System.arraycopy(parent.keys, i + 1, parent.keys, i, pn - i - 1);
+        System.arraycopy(parent.children, i + 2, parent.children, i + 1, pn - i - 1);
+        parent.children[pn] = null;
+        parent.size = pn - 1;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    private static long checkKey(Long key) {
+        if (key == null)
+            throw new IllegalArgumentException("key can not be null");
+        return key;
+    }
+
+    @Override
+    public void insert(Long key, V value) {
+        insert(checkKey(key), value);
+    }
+
+    @Override
+    public void delete(Long key) {
+        delete(checkKey(key));
+    }
+
+    @Override
+    public V search(Long key) {
+        return search(checkKey(key));
+    }
+
+    @Override
+    public List<V> searchRange(Long beginKey, RangePolicy beginPolicy, Long endKey, RangePolicy endPolicy) {
+        List<V> result = new ArrayList<>();
+        RangeCursor<Long, V> cursor = rangeCursor(beginKey, beginPolicy, endKey, endPolicy, false);
+        while (cursor.next()) {
+            result.add(cursor.value());
+        }
+        return result;
+    }
+
+    @Override
+    public RangeCursor<Long, V> rangeCursor(Long beginKey, RangePolicy beginPolicy, Long endKey, RangePolicy endPolicy, boolean descending) {
+        return new LeafCursor(beginKey, beginPolicy, endKey, endPolicy, descending);
+    }
+
+    /**
+     * 和BPlusTreeImpl的游标一样沿叶子链表移动，边界比较直接比较long
+     * */
+    private class LeafCursor extends AbstractRangeCursor<Long, V> {
+
+        /**下边界，没有下边界是Long.MIN_VALUE并且包含*/
+        private final long low;
+        private final boolean lowInclusive;
+        private final long high;
+        private final boolean highInclusive;
+
+        /**下一个元素所在的叶子，null表示结束*/
+        private Leaf leaf;
+
+        private long key;
+        private V value;
+
+        private LeafCursor(Long beginKey, RangePolicy beginPolicy, Long endKey, RangePolicy endPolicy, boolean descending) {
+            super(descending);
+            low = beginKey == null ? Long.MIN_VALUE : beginKey;
+            lowInclusive = beginKey == null || beginPolicy == RangePolicy.INCLUSIVE;
+            high = endKey == null ? Long.MAX_VALUE : endKey;
+            highInclusive = endKey == null || endPolicy == RangePolicy.INCLUSIVE;
+            if (!descending) {
+                leaf = leafOf(low, beginKey == null);
+                int i = YUtils.lowerBound(leaf.keys, 0, leaf.size, low);
+                idx = !lowInclusive && i < leaf.size && leaf.keys[i] == low ? i + 1 : i;
+            } else {
+                leaf = endKey == null ? lastLeaf() : leafOf(high, false);
+                int i = YUtils.lowerBound(leaf.keys, 0, leaf.size, high);
+                idx = highInclusive && i < leaf.size && leaf.keys[i] == high ? i : i - 1;
+            }
+        }
+
+        @Override
+        protected boolean normalize() {
+            if (!descending) {
+                while (leaf != null && idx >= leaf.size) {
+                    leaf = leaf.next;
+                    idx = 0;
+                }
+            } else {
+                while (leaf != null && idx < 0) {
+                    leaf = leaf.prev;
+                    idx = leaf == null ? -1 : leaf.size - 1;
+                }
+            }
+            return leaf != null;
+        }
+
+        @Override
+        protected int count() {
+            return leaf.size;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected boolean load(int idx) {
+            long k = leaf.keys[idx];
+            if (descending ? (lowInclusive ? k < low : k <= low) : (highInclusive ? k > high : k >= high)) {
+                return false;
+            }
+            key = k;
+            value = (V) leaf.values[idx];
+            return true;
+        }
+
+        @Override
+        public Long key() {
+            return key;
+        }
+
+        @Override
+        public V value() {
+            return value;
+        }
+    }
+
+    @Override
+    public Spliterator<Map.Entry<Long, V>> rangeSpliterator(Long beginKey, RangePolicy beginPolicy, Long endKey, RangePolicy endPolicy) {
+        return new RangeSpliterator(beginKey, beginPolicy, endKey, endPolicy, Long.MAX_VALUE);
+    }
+
+    /**
+     * 和BPlusTreeImpl的范围遍历器一样按内部节点的分隔key拆分
+     * */
+    private class RangeSpliterator extends AbstractRangeSpliterator<Long, V> {
+
+        private RangeSpliterator(Long beginKey, RangePolicy beginPolicy, Long endKey, RangePolicy endPolicy, long est) {
+            super(beginKey, beginPolicy, endKey, endPolicy, est);
+        }
+
+        @Override
+        protected RangeCursor<Long, V> cursor() {
+            return rangeCursor(beginKey, beginPolicy, endKey, endPolicy, false);
+        }
+
+        @Override
+        protected Long splitKey() {
+            Node node = root;
+            while (node instanceof Inner) {
+                Inner inner = (Inner) node;
+                int lo = beginKey == null ? 0 : childIndex(inner, beginKey);
+                int hi = endKey == null ? inner.size : childIndex(inner, endKey);
+                int i = splitIndex(lo, hi, hi > lo && endKey != null && inner.keys[hi - 1] >= endKey);
+                if (i >= 0) {
+                    return inner.keys[i];
+                }
+                node = inner.children[lo];
+            }
+            return null;
+        }
+
+        @Override
+        protected AbstractRangeSpliterator<Long, V> prefix(Long splitKey, long est) {
+            return new RangeSpliterator(beginKey, beginPolicy, splitKey, RangePolicy.EXCLUSIVE, est);
+        }
+    }
+
+    @Override
+    public void bulkLoad(Iterator<Map.Entry<Long, V>> sortedEntries, double fillFactor) {
+        int leafSize = AbstractBNode.fillSize(maxKeys, minKeys, fillFactor);
+        // 当前层的节点和每个节点最左侧叶子的第一个key(上一层的索引key)
+        List<Node> level = new ArrayList<>();
+        LongList firstKeys = new LongList();
+        Leaf leaf = null;
+        long count = 0;
+        while (sortedEntries.hasNext()) {
+            Map.Entry<Long, V> entry = sortedEntries.next();
+            Long boxed = entry.getKey();
+            if (boxed == null || (leaf != null && boxed <= leaf.keys[leaf.size - 1])) {
+                throw new IllegalArgumentException("entries must be sorted by key without duplicates: "
+                        + (leaf == null ? null : leaf.keys[leaf.size - 1]) + ", " + boxed);
+            }
+            long key = boxed;
+            if (leaf == null || leaf.size == leafSize) {
+                Leaf newLeaf = new Leaf(degree);
+                if (leaf != null) {
+                    leaf.next = newLeaf;
+                    newLeaf.prev = leaf;
+                }
+                leaf = newLeaf;
+                level.add(leaf);
+                firstKeys.add(key);
+            }
+            leaf.keys[leaf.size] = key;
+            leaf.values[leaf.size++] = entry.getValue();
+            count++;
+        }
+        size = count;
+        height = 1;
+        if (leaf == null) {
+            root = new Leaf(degree);
+            return;
+        }
+        // 最后一个叶子不够最少元素个数，和前一个叶子合并或者平分
+        int n = level.size();
+        if (n > 1 && leaf.size < minKeys) {
+            Leaf prev = (Leaf) level.get(n - 2);
+            int[] sizes = AbstractBNode.groupSizes(prev.size + leaf.size, leafSize, minKeys, maxKeys);
+            if (sizes.length == 1) {
+                System.arraycopy(leaf.keys, 0, prev.keys, prev.size, leaf.size);
+                System.arraycopy(leaf.values, 0, prev.values, prev.size, leaf.size);
+                prev.size += leaf.size;
+                prev.next = null;
+                level.remove(n - 1);
+                firstKeys.size--;
+            } else {
+                int moved = prev.size - sizes[0];
+                System.arraycopy(leaf.keys, 0, leaf.keys, moved, leaf.size);
+                System.arraycopy(leaf.values, 0, leaf.values, moved, leaf.size);
+                System.arraycopy(prev.keys, sizes[0], leaf.keys, 0, moved);
+                System.arraycopy(prev.values, sizes[0], leaf.values, 0, moved);
+                Arrays.fill(prev.values, sizes[0], prev.size, null);
+                prev.size = sizes[0];
+                leaf.size += moved;
+                firstKeys.keys[n - 1] = leaf.keys[0];
+            }
+        }
+        // 逐层向上，每个非叶子节点的key是除了第一个孩子之外每个孩子的最小key
+        int fanout = AbstractBNode.fillSize(degree, minKeys + 1, fillFactor);
+        while (level.size() > 1) {
+            int[] sizes = AbstractBNode.groupSizes(level.size(), fanout, minKeys + 1, degree);
+            List<Node> parents = new ArrayList<>(sizes.length);
+            LongList parentKeys = new LongList();
+            int i = 0;
+            for (int groupSize : sizes) {
+                Inner inner = new Inner(degree);
+                parentKeys.add(firstKeys.keys[i]);
+                for (int j = 0; j < groupSize; j++, i++) {
+                    if (j > 0) {
+                        inner.keys[j - 1] = firstKeys.keys[i];
+                    }
+                    inner.children[j] = level.get(i);
+                }
+                inner.size = groupSize - 1;
+                parents.add(inner);
+            }
+            level = parents;
+            firstKeys = parentKeys;
+            height++;
+        }
+        root = level.get(0);
+    }
+
+    /**
+     * 批量加载时每层节点的第一个key
+     * */
+    private static final class LongList {
+
+        long[] keys = new long[16];
+
+        int size;
+
+        void add(long key) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            keys[size++] = key;
+        }
+    }
+
+    @Override
+    public String treeToString() {
+        StringBuilder sb = new StringBuilder();
+        List<Node> level = new ArrayList<>();
+        level.add(root);
+        while (!level.isEmpty()) {
+            List<Node> children = new ArrayList<>();
+            for (Node node : level) {
+                sb.append(Arrays.toString(Arrays.copyOf(node.keys, node.size)));
+                if (node instanceof Inner) {
+                    children.addAll(Arrays.asList(((Inner) node).children).subList(0, node.size + 1));
+                }
+            }
+            sb.append('\n');
+            level = children;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * long索引上BPlusTreeImpl<Long, V>和LongBPlusTree的内存和随机点查耗时
+     * 运行参数: [元素个数] [阶]，1000万个key需要-Xmx3g左右
+     * */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        int degree = args.length > 1 ? Integer.parseInt(args[1]) : 128;
+        int lookups = 2000000;
+        long[] probes = new long[lookups];
+        Random random = new Random(1);
+        for (int i = 0; i < lookups; i++) {
+            probes[i] = (long) random.nextInt(n) * 3;
+        }
+        // 所有value用同一个对象，只比较树本身的内存
+        final Object value = new Object();
+        // 第一轮作为预热，以第二轮的结果为准
+        for (int round = 1; round <= 2; round++) {
+            long base = YUtils.usedMemory();
+            BPlusTreeImpl<Long, Object> boxed = new BPlusTreeImpl<>(degree);
+            for (long i = 0; i < n; i++) {
+                boxed.insert(i * 3, value);
+            }
+            long memory = YUtils.usedMemory() - base;
+            long begin = System.nanoTime();
+            int found = 0;
+            for (long probe : probes) {
+                if (boxed.search(probe) != null) {
+                    found++;
+                }
+            }
+            long cost = System.nanoTime() - begin;
+            System.out.printf("round %d BPlusTreeImpl<Long> %5.1f B/key, search %4d ns/op, found=%d%n", round,
+                    (double) memory / n, cost / lookups, found);
+            boxed = null;
+
+            base = YUtils.usedMemory();
+            LongBPlusTree<Object> primitive = new LongBPlusTree<>(degree);
+            for (long i = 0; i < n; i++) {
+                primitive.insert(i * 3, value);
+            }
+            memory = YUtils.usedMemory() - base;
+            begin = System.nanoTime();
+            found = 0;
+            for (long probe : probes) {
+                if (primitive.search(probe) != null) {
+                    found++;
+                }
+            }
+            cost = System.nanoTime() - begin;
+            System.out.printf("round %d LongBPlusTree       %5.1f B/key, search %4d ns/op, found=%d%n", round,
+                    (double) memory / n, cost / lookups, found);
+        }
+    }
+}
@@ -0,0 +1,496 @@
+package com.yang.ds.datastruct.tree.btree.impl;
+
+import com.yang.ds.algorithm.utils.YUtils;
+import com.yang.ds.datastruct.tree.btree.BTree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * long类型key的B树(m阶)，规则和BTreeImpl一样，非叶子节点也存储value
+ *
+ * 节点直接放long[] keys、Object[] values和Node[] children(叶子为null)，数组按最大个数一次分配好，
+ * 节点内用YUtils.lowerBound查找(按节点大小选择线性扫描或者无分支二分)，插入、删除不递归，向下查找的时候记录路径，再沿路径向上分裂或者旋转、合并
+ *
+ * 删除非叶子节点的key和BTreeImpl一样用后继(右侧孩子的最小key)替换，转换成删除叶子的key
+ * */
+public class LongBTree<V> implements BTree<Long, V> {
+
+    private final int degree;
+
+    private final int maxKeys;
+
+    private final int minKeys;
+
+    private Node root;
+
+    private int height = 1;
+
+    private long size;
+
+    /**
+     * 节点，数组多留一个位置，先插入再分裂
+     * */
+    private static final class Node {
+
+        final long[] keys;
+
+        final Object[] values;
+
+        /**叶子为null*/
+        final Node[] children;
+
+        int size;
+
+        Node(int degree, boolean leaf) {
+            keys = new long[degree];
+            values = new Object[degree];
+            children = leaf ? null : new Node[degree + 1];
+        }
+
+        boolean leaf() {
+            return children == null;
+        }
+    }
+
+    public LongBTree(int degree) {
+        if (degree < MIN_DEGREE) {
+            throw new IllegalArgumentException("degree is less than " + MIN_DEGREE + "" + "," + degree);
+        }
+        this.degree = degree;
+        maxKeys = degree - 1;
+        minKeys = Math.max(1, (degree + 1) / 2 - 1);
+        root = new Node(degree, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V search(long key) {
+        Node node = root;
+        while (true) {
+            int i = YUtils.lowerBound(node.keys, 0, node.size, key);
+            if (i < node.size && node.keys[i] == key) {
+                return (V) node.values[i];
+            }
+            if (node.leaf()) {
+                return null;
+            }
+            node = node.children[i];
+        }
+    }
+
+    public void insert(long key, V value) {
+        Node[] path = new Node[height - 1];
+        int[] index = new int[height - 1];
+        Node node = root;
+        int level = 0;
+        int pos;
+        while (true) {
+            pos = YUtils.lowerBound(node.keys, 0, node.size, key);
+            if (pos < node.size && node.keys[pos] == key) {
+                node.values[pos] = value;
+                return;
+            }
+            if (node.leaf()) {
+                break;
+            }
+            path[level] = node;
+            index[level++] = pos;
+            node = node.children[pos];
+        }
+        int n = node.size;
+        System.arraycopy(node.keys, pos, node.keys, pos + 1, n - pos);
+        System.arraycopy(node.values, pos, node.values, pos + 1, n - pos);
+        node.keys[pos] = key;
+        node.values[pos] = value;
+        node.size = ++n;
+        size++;
+        // 分裂，中间元素上提，右半部分(和对应的孩子)移到新节点
+        while (n > maxKeys) {
+            Node right = new Node(degree, node.leaf());
+            int m = n / 2;
+            long splitKey = node.keys[m];
+            Object splitValue = node.values[m];
+            System.arraycopy(node.keys, m + 1, right.keys, 0, n - m - 1);
+            System.arraycopy(node.values, m + 1, right.values, 0, n - m - 1);
+            Arrays.fill(node.values, m, n, null);
+            if (!node.leaf()) {
+                System.arraycopy(node.children, m + 1, right.children, 0, n - m);
+                Arrays.fill(node.children, m + 1, n + 1, null);
+            }
+            right.size = n - m - 1;
+            node.size = m;
+            if (--level < 0) {
+                Node newRoot = new Node(degree, false);
+                newRoot.keys[0] = splitKey;
+                newRoot.values[0] = splitValue;
+                newRoot.children[0] = root;
+                newRoot.children[1] = right;
+                newRoot.size = 1;
+                root = newRoot;
+                height++;
+                return;
+            }
+            Node parent = path[level];
+            int ci = index[level];
+            n = parent.size;
+            System.arraycopy(parent.keys, ci, parent.keys, ci + 1, n - ci);
+            System.arraycopy(parent.values, ci, parent.values, ci + 1, n - ci);
+            System.arraycopy(parent.children, ci + 1, parent.children, ci + 2, n - ci);
+            parent.keys[ci] = splitKey;
+            parent.values[ci] = splitValue;
+            parent.children[ci + 1] = right;
+            parent.size = ++n;
+            node = parent;
+        }
+    }
+
+    public void delete(long key) {
+        Node[] path = new Node[height - 1];
+        int[] index = new int[height - 1];
+        Node node = root;
+        int level = 0;
+        int pos;
+        while (true) {
+            pos = YUtils.lowerBound(node.keys, 0, node.size, key);
+            if (pos < node.size && node.keys[pos] == key) {
+                break;
+            }
+            if (node.leaf()) {
+                return;
+            }
+            path[level] = node;
+            index[level++] = pos;
+            node = node.children[pos];
+        }
+        if (!node.leaf()) {
+            // 非叶子节点: 右侧孩子一直向左找到后继，替换之后删除后继
+            Node found = node;
+            int foundPos = pos;
+            path[level] = node;
+            index[level++] = pos + 1;
+            node = node.children[pos + 1];
+            while (!node.leaf()) {
+                path[level] = node;
+                index[level++] = 0;
+                node = node.children[0];
+            }
+            found.keys[foundPos] = node.keys[0];
+            found.values[foundPos] = node.values[0];
+            pos = 0;
+        }
+        int n = node.size;
+        System.arraycopy(node.keys, pos + 1, node.keys, pos, n - pos - 1);
+        System.arraycopy(node.values, pos + 1, node.values, pos, n - pos - 1);
+        node.values[n - 1] = null;
+        node.size = n - 1;
+        size--;
+        // 从叶子向上，不够最少key个数的节点向兄弟借(旋转)，兄弟也不够就合并
+        while (--level >= 0 && node.size < minKeys) {
+            Node parent = path[level];
+            int ci = index[level];
+            Node left = ci > 0 ? parent.children[ci - 1] : null;
+            Node right = ci < parent.size ? parent.children[ci + 1] : null;
+            if (left != null && left.size > minKeys) {
+                rotateRight(parent, ci, left, node);
+                return;
+            }
+            if (right != null && right.size > minKeys) {
+                rotateLeft(parent, ci, node, right);
+                return;
+            }
+            if (left != null) {
+                merge(parent, ci - 1, left, node);
+            } else {
+                merge(parent, ci, node, right);
+            }
+            node = parent;
+        }
+        if (!root.leaf() && root.size == 0) {
+            root = root.children[0];
+            height--;
+        }
+    }
+
+    /**
+     * 右旋: 父节点的key下移到node最前面，左兄弟的最后一个key上移到父节点
+     * */
+    private static void rotateRight(Node parent, int ci, Node left, Node node) {
+        int n = node.size, ln = left.size;
+        System.arraycopy(node.keys, 0, node.keys, 1, n);
+        System.arraycopy(node.values, 0, node.values, 1, n);
+        node.keys[0] = parent.keys[ci - 1];
+        node.values[0] = parent.values[ci - 1];
+        if (!node.leaf()) {
+            System.arraycopy(node.children, 0, node.children, 1, n + 1);
+            node.children[0] = left.children[ln];
+            left.children[ln] = null;
+        }
+        parent.keys[ci - 1] = left.keys[ln - 1];
+        parent.values[ci - 1] = left.values[ln - 1];
+        left.values[ln - 1] = null;
+        node.size = n + 1;
+        left.size = ln - 1;
+    }
+
+    /**
+     * 左旋: 父节点的key下移到node最后面，右兄弟的第一个key上移到父节点
+     * */
+    private static void rotateLeft(Node parent, int ci, Node node, Node right) {
+        int n = node.size, rn = right.size;
+        node.keys[n] = parent.keys[ci];
+        node.values[n] = parent.values[ci];
+        parent.keys[ci] = right.keys[0];
+        parent.values[ci] = right.values[0];
+        System.arraycopy(right.keys, 1, right.keys, 0, rn - 1);
+        System.arraycopy(right.values, 1, right.values, 0, rn - 1);
+        right.values[rn - 1] = null;
+        if (!node.leaf()) {
+            node.children[n + 1] = right.children[0];
+            System.arraycopy(right.children, 1, right.children, 0, rn);
+            right.children[rn] = null;
+        }
+        node.size = n + 1;
+        right.size = rn - 1;
+    }
+
+    /**
+     * 合并: 父节点的key(下标i)下移到left和right中间，删除父节点中的key和right
+     * */
+    private static void merge(Node parent, int i, Node left, Node right) {
+        int ln = left.size, rn = right.size;
+        left.keys[ln] = parent.keys[i];
+        left.values[ln] = parent.values[i];
+        System.arraycopy(right.keys, 0, left.keys, ln + 1, rn);
+        System.arraycopy(right.values, 0, left.values, ln + 1, rn);
+        if (!left.leaf()) {
+            System.arraycopy(right.children, 0, left.children, ln + 1, rn + 1);
+        }
+        left.size = ln + 1 + rn;
+        int pn = parent.size;
+        System.arraycopy(parent.keys, i + 1, parent.keys, i, pn - i - 1);
+        System.arraycopy(parent.values, i + 1, parent.values, i, pn - i - 1);
+        System.arraycopy(parent.children, i + 2, parent.children, i + 1, pn - i - 1);
+        parent.values[pn - 1] = null;
+        parent.children[pn] = null;
+        parent.size = pn - 1;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    private static long checkKey(Long key) {
+        if (key == null)
+            throw new IllegalArgumentException("key can not be null");
+        return key;
+    }
+
+    @Override
+    public void insert(Long key, V value) {
+        insert(checkKey(key), value);
+    }
+
+    @Override
+    public void delete(Long key) {
+        delete(checkKey(key));
+    }
+
+    @Override
+    public V search(Long key) {
+        return search(checkKey(key));
+    }
+
+    /**
+     * 和BTreeImpl一样: 叶子之间的元素作为分隔元素上提，最后两个叶子不够最少个数的时候合并或者平分
+     * */
+    @Override
+    public void bulkLoad(Iterator<Map.Entry<Long, V>> sortedEntries, double fillFactor) {
+        int leafSize = AbstractBNode.fillSize(maxKeys, minKeys, fillFactor);
+        // 当前层的节点，以及相邻两个节点之间的分隔元素，separator i在level[i]和level[i + 1]之间
+        List<Node> level = new ArrayList<>();
+        List<Long> sepKeys = new ArrayList<>();
+        List<Object> sepValues = new ArrayList<>();
+        Node leaf = null;
+        // 当前叶子装满了，下一个元素作为分隔元素
+        boolean full = false;
+        Long last = null;
+        long count = 0;
+        while (sortedEntries.hasNext()) {
+            Map.Entry<Long, V> entry = sortedEntries.next();
+            Long key = entry.getKey();
+            if (key == null || (last != null && key <= last)) {
+                throw new IllegalArgumentException("entries must be sorted by key without duplicates: " + last + ", " + key);
+            }
+            last = key;
+            count++;
+            if (full) {
+                sepKeys.add(key);
+                sepValues.add(entry.getValue());
+                leaf = null;
+                full = false;
+                continue;
+            }
+            if (leaf == null) {
+                leaf = new Node(degree, true);
+                level.add(leaf);
+            }
+            leaf.keys[leaf.size] = key;
+            leaf.values[leaf.size++] = entry.getValue();
+            full = leaf.size == leafSize;
+        }
+        size = count;
+        height = 1;
+        if (level.isEmpty()) {
+            root = new Node(degree, true);
+            return;
+        }
+        // 最后一个元素成了分隔元素，后面没有叶子，单独放到一个新叶子里，前一个叶子的最后一个元素作为分隔元素
+        if (sepKeys.size() == level.size()) {
+            Node prev = level.get(level.size() - 1);
+            leaf = new Node(degree, true);
+            leaf.keys[0] = sepKeys.remove(sepKeys.size() - 1);
+            leaf.values[0] = sepValues.remove(sepValues.size() - 1);
+            leaf.size = 1;
+            sepKeys.add(prev.keys[prev.size - 1]);
+            sepValues.add(prev.values[prev.size - 1]);
+            prev.values[--prev.size] = null;
+            level.add(leaf);
+        }
+        // 最后两个叶子不够最少元素个数，合并(加上中间的分隔元素)或者平分
+        int n = level.size();
+        Node lastLeaf = level.get(n - 1);
+        if (n > 1 && (lastLeaf.size < minKeys || level.get(n - 2).size < minKeys)) {
+            Node prev = level.get(n - 2);
+            int total = prev.size + 1 + lastLeaf.size;
+            long[] keys = new long[total];
+            Object[] values = new Object[total];
+            System.arraycopy(prev.keys, 0, keys, 0, prev.size);
+            System.arraycopy(prev.values, 0, values, 0, prev.size);
+            keys[prev.size] = sepKeys.remove(n - 2);
+            values[prev.size] = sepValues.remove(n - 2);
+            System.arraycopy(lastLeaf.keys, 0, keys, prev.size + 1, lastLeaf.size);
+            System.arraycopy(lastLeaf.values, 0, values, prev.size + 1, lastLeaf.size);
+            level.remove(n - 1);
+            Arrays.fill(prev.values, null);
+            int mid = total <= maxKeys ? total : total / 2;
+            System.arraycopy(keys, 0, prev.keys, 0, mid);
+            System.arraycopy(values, 0, prev.values, 0, mid);
+            prev.size = mid;
+            if (mid < total) {
+                sepKeys.add(keys[mid]);
+                sepValues.add(values[mid]);
+                lastLeaf = new Node(degree, true);
+                System.arraycopy(keys, mid + 1, lastLeaf.keys, 0, total - mid - 1);
+                System.arraycopy(values, mid + 1, lastLeaf.values, 0, total - mid - 1);
+                lastLeaf.size = total - mid - 1;
+                level.add(lastLeaf);
+            }
+        }
+        // 逐层向上，组内的分隔元素作为非叶子节点的key，组之间的分隔元素继续上提
+        int fanout = AbstractBNode.fillSize(degree, minKeys + 1, fillFactor);
+        while (level.size() > 1) {
+            int[] sizes = AbstractBNode.groupSizes(level.size(), fanout, minKeys + 1, degree);
+            List<Node> parents = new ArrayList<>(sizes.length);
+            List<Long> parentKeys = new ArrayList<>(sizes.length);
+            List<Object> parentValues = new ArrayList<>(sizes.length);
+            int i = 0;
+            for (int g = 0; g < sizes.length; g++) {
+                Node inner = new Node(degree, false);
+                for (int j = 0; j < sizes[g]; j++, i++) {
+                    if (j > 0) {
+                        inner.keys[j - 1] = sepKeys.get(i - 1);
+                        inner.values[j - 1] = sepValues.get(i - 1);
+                    }
+                    inner.children[j] = level.get(i);
+                }
+                inner.size = sizes[g] - 1;
+                if (g < sizes.length - 1) {
+                    parentKeys.add(sepKeys.get(i - 1));
+                    parentValues.add(sepValues.get(i - 1));
+                }
+                parents.add(inner);
+            }
+            level = parents;
+            sepKeys = parentKeys;
+            sepValues = parentValues;
+            height++;
+        }
+        root = level.get(0);
+    }
+
+    @Override
+    public String treeToString() {
+        StringBuilder sb = new StringBuilder();
+        List<Node> level = new ArrayList<>();
+        level.add(root);
+        while (!level.isEmpty()) {
+            List<Node> children = new ArrayList<>();
+            for (Node node : level) {
+                sb.append(Arrays.toString(Arrays.copyOf(node.keys, node.size)));
+                if (!node.leaf()) {
+                    children.addAll(Arrays.asList(node.children).subList(0, node.size + 1));
+                }
+            }
+            sb.append('\n');
+            level = children;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * long索引上BTreeImpl<Long, V>和LongBTree的内存和随机点查耗时
+     * 运行参数: [元素个数] [阶]，1000万个key需要-Xmx3g左右
+     * */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        int degree = args.length > 1 ? Integer.parseInt(args[1]) : 128;
+        int lookups = 2000000;
+        long[] probes = new long[lookups];
+        Random random = new Random(1);
+        for (int i = 0; i < lookups; i++) {
+            probes[i] = (long) random.nextInt(n) * 3;
+        }
+        final Object value = new Object();
+        // 第一轮作为预热，以第二轮的结果为准
+        for (int round = 1; round <= 2; round++) {
+            long base = YUtils.usedMemory();
+            BTreeImpl<Long, Object> boxed = new BTreeImpl<>(degree);
+            for (long i = 0; i < n; i++) {
+                boxed.insert(i * 3, value);
+            }
+            long memory = YUtils.usedMemory() - base;
+            long begin = System.nanoTime();
+            int found = 0;
+            for (long probe : probes) {
+                if (boxed.search(probe) != null) {
+                    found++;
+                }
+            }
+            long cost = System.nanoTime() - begin;
+            System.out.printf("round %d BTreeImpl<Long> %5.1f B/key, search %4d ns/op, found=%d%n", round,
+                    (double) memory / n, cost / lookups, found);
+            boxed = null;
+
+            base = YUtils.usedMemory();
+            LongBTree<Object> primitive = new LongBTree<>(degree);
+            for (long i = 0; i < n; i++) {
+                primitive.insert(i * 3, value);
+            }
+            memory = YUtils.usedMemory() - base;
+            begin = System.nanoTime();
+            found = 0;
+            for (long probe : probes) {
+                if (primitive.search(probe) != null) {
+                    found++;
+                }
+            }
+            cost = System.nanoTime() - begin;
+            System.out.printf("round %d LongBTree       %5.1f B/key, search %4d ns/op, found=%d%n", round,
+                    (double) memory / n, cost / lookups, found);
+        }
+    }
+}
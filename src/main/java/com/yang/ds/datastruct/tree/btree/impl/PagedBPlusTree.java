@@ -0,0 +1,883 @@
+package com.yang.ds.datastruct.tree.btree.impl;
+
+import com.yang.ds.datastruct.tree.btree.BPlusTree;
+import com.yang.ds.datastruct.tree.btree.RangeCursor;
+import com.yang.ds.datastruct.tree.btree.page.BufferPool;
+import com.yang.ds.datastruct.tree.btree.page.Page;
+import com.yang.ds.datastruct.tree.btree.page.PageCodec;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Spliterator;
+
+/**
+ * 基于磁盘页面的B+树，数据比内存大的时候使用
+ *
+ * 1. 文件按固定大小的页面划分，第0页是元数据页，其他每个页面是一个节点，孩子和叶子的next/prev都是页号(0表示没有)
+ * 2. 页面通过BufferPool访问，只有最近使用的页面在内存中，访问节点之前pin，用完unpin，修改过的页面换出时写回
+ * 3. key/value通过PageCodec定长编码，节点内的元素位置固定，直接在页面上二分查找，不需要反序列化整个节点
+ *
+ * 节点页面布局:
+ * <pre>
+ * 头部24字节: [类型 4][元素个数 4][next 8][prev 8]
+ * 叶子:     [头部][keys: leafSlots * keySize][values: leafSlots * valueSize]
+ * 非叶子:   [头部][keys: innerSlots * keySize][children: (innerSlots + 1) * 8]
+ * </pre>
+ * 页面比节点的容量多留一个位置，先插入再分裂，逻辑和内存版本BPlusTreeImpl一样
+ *
+ * 点查从根到叶子每层pin一个页面，最多height次页面读；范围遍历定位到起始叶子之后沿next/prev链表，
+ * 页面读的次数是height + 范围覆盖的叶子个数
+ *
+ * 删除不合并节点(很多数据库的B+树也是这样)，叶子可以变空，空间在之后的插入中复用，
+ * 范围遍历会跳过空叶子；bulkLoad可以重新整理，装载失败的时候原来的树不变
+ *
+ * 元数据(根页号、高度、元素个数)在flush/close的时候写回，不是线程安全的
+ * */
+public class PagedBPlusTree<K extends Comparable<? super K>, V> implements BPlusTree<K, V>, Closeable {
+
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+
+    public static final int DEFAULT_POOL_PAGES = 1024;
+
+    private static final long MAGIC = 0x5950414745425054L;
+
+    /**页号0是元数据页，作为空指针*/
+    private static final long NULL = 0;
+
+    private static final int LEAF = 1;
+
+    private static final int INNER = 2;
+
+    private static final int TYPE_OFFSET = 0;
+
+    private static final int COUNT_OFFSET = 4;
+
+    private static final int NEXT_OFFSET = 8;
+
+    private static final int PREV_OFFSET = 16;
+
+    private static final int HEADER = 24;
+
+    private final BufferPool pool;
+
+    private final PageCodec<K> keyCodec;
+
+    private final PageCodec<V> valueCodec;
+
+    private final int keySize;
+
+    private final int valueSize;
+
+    /**叶子页面可以放的元素个数，节点容量是leafSlots - 1*/
+    private final int leafSlots;
+
+    /**非叶子页面可以放的key个数，节点容量是innerSlots - 1*/
+    private final int innerSlots;
+
+    private final int valueBase;
+
+    private final int childBase;
+
+    private long root;
+
+    private int height;
+
+    private long size;
+
+    public PagedBPlusTree(File file, PageCodec<K> keyCodec, PageCodec<V> valueCodec) {
+        this(file, keyCodec, valueCodec, DEFAULT_PAGE_SIZE, DEFAULT_POOL_PAGES);
+    }
+
+    /**
+     * 打开文件中已有的树，文件不存在或者为空的时候新建
+     * @param pageSize 页面大小
+     * @param poolPages 缓冲池的页面个数，至少3个(分裂的时候同时pin三个页面)
+     * */
+    public PagedBPlusTree(File file, PageCodec<K> keyCodec, PageCodec<V> valueCodec, int pageSize, int poolPages) {
+        if (poolPages < 3)
+            throw new IllegalArgumentException("Illegal buffer pool pages: " + poolPages);
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        keySize = keyCodec.size();
+        valueSize = valueCodec.size();
+        leafSlots = (pageSize - HEADER) / (keySize + valueSize);
+        innerSlots = (pageSize - HEADER - 8) / (keySize + 8);
+        if (leafSlots < 3 || innerSlots < 3)
+            throw new IllegalArgumentException("Page size " + pageSize + " too small for key size " + keySize
+                    + " and value size " + valueSize);
+        valueBase = HEADER + leafSlots * keySize;
+        childBase = HEADER + innerSlots * keySize;
+        pool = new BufferPool(file, pageSize, poolPages);
+        if (pool.pageCount() == 0) {
+            pool.unpin(pool.allocate(), true);
+            reset();
+            writeMeta();
+        } else {
+            Page meta = pool.pin(NULL);
+            ByteBuffer buffer = meta.buffer();
+            try {
+                if (buffer.getLong(0) != MAGIC || buffer.getInt(8) != pageSize || buffer.getInt(12) != keySize
+                        || buffer.getInt(16) != valueSize)
+                    throw new IllegalArgumentException("File " + file + " is not a B+ tree with page size " + pageSize
+                            + ", key size " + keySize + " and value size " + valueSize);
+                height = buffer.getInt(20);
+                root = buffer.getLong(24);
+                size = buffer.getLong(32);
+            } finally {
+                pool.unpin(meta, false);
+            }
+        }
+    }
+
+    /**
+     * 只有一个空的根叶子
+     * */
+    private void reset() {
+        Page leaf = newNode(LEAF);
+        root = leaf.id();
+        height = 1;
+        size = 0;
+        pool.unpin(leaf, true);
+    }
+
+    private void writeMeta() {
+        Page meta = pool.pin(NULL);
+        ByteBuffer buffer = meta.buffer();
+        buffer.putLong(0, MAGIC);
+        buffer.putInt(8, pool.pageSize());
+        buffer.putInt(12, keySize);
+        buffer.putInt(16, valueSize);
+        buffer.putInt(20, height);
+        buffer.putLong(24, root);
+        buffer.putLong(32, size);
+        pool.unpin(meta, true);
+    }
+
+    private Page newNode(int type) {
+        Page page = pool.allocate();
+        page.buffer().putInt(TYPE_OFFSET, type);
+        return page;
+    }
+
+    private static int count(Page page) {
+        return page.buffer().getInt(COUNT_OFFSET);
+    }
+
+    private static void setCount(Page page, int count) {
+        page.buffer().putInt(COUNT_OFFSET, count);
+    }
+
+    private static long next(Page page) {
+        return page.buffer().getLong(NEXT_OFFSET);
+    }
+
+    private static void setNext(Page page, long next) {
+        page.buffer().putLong(NEXT_OFFSET, next);
+    }
+
+    private static long prev(Page page) {
+        return page.buffer().getLong(PREV_OFFSET);
+    }
+
+    private static void setPrev(Page page, long prev) {
+        page.buffer().putLong(PREV_OFFSET, prev);
+    }
+
+    private K key(Page page, int i) {
+        return keyCodec.read(page.buffer(), HEADER + i * keySize);
+    }
+
+    private void setKey(Page page, int i, K key) {
+        keyCodec.write(page.buffer(), HEADER + i * keySize, key);
+    }
+
+    private V value(Page page, int i) {
+        return valueCodec.read(page.buffer(), valueBase + i * valueSize);
+    }
+
+    private void setValue(Page page, int i, V value) {
+        valueCodec.write(page.buffer(), valueBase + i * valueSize, value);
+    }
+
+    private long child(Page page, int i) {
+        return page.buffer().getLong(childBase + i * 8);
+    }
+
+    private void setChild(Page page, int i, long child) {
+        page.buffer().putLong(childBase + i * 8, child);
+    }
+
+    /**
+     * 页面内移动n个元素，from和to都是元素下标
+     * */
+    private static void move(Page page, int base, int unit, int from, int to, int n) {
+        System.arraycopy(page.data(), base + from * unit, page.data(), base + to * unit, n * unit);
+    }
+
+    /**
+     * 页面之间复制n个元素
+     * */
+    private static void copy(Page src, int from, Page dst, int to, int base, int unit, int n) {
+        System.arraycopy(src.data(), base + from * unit, dst.data(), base + to * unit, n * unit);
+    }
+
+    /**
+     * 页面内二分查找，和Collections.binarySearch一样，没找到返回-(插入位置) - 1
+     * */
+    private int search(Page page, K key) {
+        int lo = 0, hi = count(page) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = key(page, mid).compareTo(key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    /**
+     * key所在的孩子下标，等于分隔key的在右侧孩子
+     * */
+    private int childIndex(Page inner, K key) {
+        int loc = search(inner, key);
+        return loc >= 0 ? loc + 1 : -loc - 1;
+    }
+
+    /**
+     * 从根向下找到key所在的叶子，每层只pin一个页面
+     * @param key null的时候last为false找最左侧叶子，为true找最右侧叶子
+     * @param path 不为null的时候记录经过的非叶子页号
+     * @param index 不为null的时候记录经过的孩子下标
+     * @return 叶子页号
+     * */
+    private long descend(K key, boolean last, long[] path, int[] index) {
+        long id = root;
+        for (int level = 0; level < height - 1; level++) {
+            Page page = pool.pin(id);
+            int ci = key != null ? childIndex(page, key) : last ? count(page) : 0;
+            if (path != null) {
+                path[level] = id;
+                index[level] = ci;
+            }
+            id = child(page, ci);
+            pool.unpin(page, false);
+        }
+        return id;
+    }
+
+    private static void checkKey(Object key) {
+        if (key == null)
+            throw new IllegalArgumentException("key can not be null");
+    }
+
+    @Override
+    public V search(K key) {
+        checkKey(key);
+        Page leaf = pool.pin(descend(key, false, null, null));
+        try {
+            int loc = search(leaf, key);
+            return loc >= 0 ? value(leaf, loc) : null;
+        } finally {
+            pool.unpin(leaf, false);
+        }
+    }
+
+    @Override
+    public void insert(K key, V value) {
+        checkKey(key);
+        if (value == null)
+            throw new IllegalArgumentException("value can not be null");
+        long[] path = new long[height];
+        int[] index = new int[height];
+        Page leaf = pool.pin(descend(key, false, path, index));
+        int n = count(leaf);
+        int loc = search(leaf, key);
+        if (loc >= 0) {
+            setValue(leaf, loc, value);
+            pool.unpin(leaf, true);
+            return;
+        }
+        int pos = -loc - 1;
+        move(leaf, HEADER, keySize, pos, pos + 1, n - pos);
+        move(leaf, valueBase, valueSize, pos, pos + 1, n - pos);
+        setKey(leaf, pos, key);
+        setValue(leaf, pos, value);
+        setCount(leaf, ++n);
+        size++;
+        if (n < leafSlots) {
+            pool.unpin(leaf, true);
+            return;
+        }
+        // 叶子分裂，右半部分移到新页面，插入到双向链表
+        Page right = newNode(LEAF);
+        int mid = n / 2;
+        copy(leaf, mid, right, 0, HEADER, keySize, n - mid);
+        copy(leaf, mid, right, 0, valueBase, valueSize, n - mid);
+        setCount(right, n - mid);
+        setCount(leaf, mid);
+        long nextId = next(leaf);
+        setNext(right, nextId);
+        setPrev(right, leaf.id());
+        setNext(leaf, right.id());
+        if (nextId != NULL) {
+            Page next = pool.pin(nextId);
+            setPrev(next, right.id());
+            pool.unpin(next, true);
+        }
+        K splitKey = key(right, 0);
+        long rightId = right.id();
+        pool.unpin(leaf, true);
+        pool.unpin(right, true);
+        // 分隔key和新页面逐层插入父节点，父节点满了继续分裂
+        for (int level = height - 2; level >= 0; level--) {
+            Page parent = pool.pin(path[level]);
+            int ci = index[level];
+            int pn = count(parent);
+            move(parent, HEADER, keySize, ci, ci + 1, pn - ci);
+            move(parent, childBase, 8, ci + 1, ci + 2, pn - ci);
+            setKey(parent, ci, splitKey);
+            setChild(parent, ci + 1, rightId);
+            setCount(parent, ++pn);
+            if (pn < innerSlots) {
+                pool.unpin(parent, true);
+                return;
+            }
+            // 非叶子分裂，中间的key上提，不保留在右侧节点
+            Page sibling = newNode(INNER);
+            int m = pn / 2;
+            splitKey = key(parent, m);
+            copy(parent, m + 1, sibling, 0, HEADER, keySize, pn - m - 1);
+            copy(parent, m + 1, sibling, 0, childBase, 8, pn - m);
+            setCount(sibling, pn - m - 1);
+            setCount(parent, m);
+            rightId = sibling.id();
+            pool.unpin(parent, true);
+            pool.unpin(sibling, true);
+        }
+        Page newRoot = newNode(INNER);
+        setKey(newRoot, 0, splitKey);
+        setChild(newRoot, 0, root);
+        setChild(newRoot, 1, rightId);
+        setCount(newRoot, 1);
+        root = newRoot.id();
+        height++;
+        pool.unpin(newRoot, true);
+    }
+
+    @Override
+    public void delete(K key) {
+        checkKey(key);
+        Page leaf = pool.pin(descend(key, false, null, null));
+        int loc = search(leaf, key);
+        if (loc < 0) {
+            pool.unpin(leaf, false);
+            return;
+        }
+        int n = count(leaf);
+        move(leaf, HEADER, keySize, loc + 1, loc, n - loc - 1);
+        move(leaf, valueBase, valueSize, loc + 1, loc, n - loc - 1);
+        setCount(leaf, n - 1);
+        size--;
+        pool.unpin(leaf, true);
+    }
+
+    @Override
+    public List<V> searchRange(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy) {
+        List<V> result = new ArrayList<>();
+        RangeCursor<K, V> cursor = rangeCursor(beginKey, beginPolicy, endKey, endPolicy, false);
+        while (cursor.next()) {
+            result.add(cursor.value());
+        }
+        return result;
+    }
+
+    @Override
+    public RangeCursor<K, V> rangeCursor(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy, boolean descending) {
+        return new PageCursor(beginKey, beginPolicy, endKey, endPolicy, descending);
+    }
+
+    /**
+     * 叶子页面上的游标，只记录页号和下标，每次移动pin一下当前叶子，不会一直占用缓冲池
+     * */
+    private class PageCursor implements RangeCursor<K, V> {
+
+        private final K beginKey;
+        private final RangePolicy beginPolicy;
+        private final K endKey;
+        private final RangePolicy endPolicy;
+        private final boolean descending;
+
+        /**下一个元素所在的叶子，NULL表示结束*/
+        private long leafId;
+        /**下一个元素在叶子中的位置，倒序时Integer.MAX_VALUE表示叶子的最后一个元素*/
+        private int idx;
+        private long remaining = Long.MAX_VALUE;
+
+        private K key;
+        private V value;
+
+        private PageCursor(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy, boolean descending) {
+            this.beginKey = beginKey;
+            this.beginPolicy = beginPolicy;
+            this.endKey = endKey;
+            this.endPolicy = endPolicy;
+            this.descending = descending;
+            K start = descending ? endKey : beginKey;
+            leafId = descend(start, descending, null, null);
+            idx = descending ? Integer.MAX_VALUE : 0;
+            if (start != null) {
+                Page leaf = pool.pin(leafId);
+                int loc = search(leaf, start);
+                pool.unpin(leaf, false);
+                if (!descending) {
+                    idx = loc >= 0 ? (beginPolicy == RangePolicy.INCLUSIVE ? loc : loc + 1) : -loc - 1;
+                } else {
+                    idx = loc >= 0 ? (endPolicy == RangePolicy.INCLUSIVE ? loc : loc - 1) : -loc - 2;
+                }
+            }
+        }
+
+        /**
+         * 当前叶子中还剩的元素个数，走完了返回0
+         * */
+        private int available(Page leaf) {
+            int n = count(leaf);
+            if (descending) {
+                idx = Math.min(idx, n - 1);
+                return idx + 1;
+            }
+            return Math.max(0, n - idx);
+        }
+
+        /**
+         * 移动到下一个(倒序是前一个)叶子
+         * */
+        private void nextLeaf(Page leaf) {
+            leafId = descending ? PagedBPlusTree.prev(leaf) : PagedBPlusTree.next(leaf);
+            idx = descending ? Integer.MAX_VALUE : 0;
+        }
+
+        @Override
+        public boolean next() {
+            while (leafId != NULL && remaining > 0) {
+                Page leaf = pool.pin(leafId);
+                try {
+                    if (available(leaf) == 0) {
+                        nextLeaf(leaf);
+                        continue;
+                    }
+                    K k = PagedBPlusTree.this.key(leaf, idx);
+                    if (descending ? !BPlusTreeImpl.afterBegin(k, beginKey, beginPolicy)
+                            : !BPlusTreeImpl.beforeEnd(k, endKey, endPolicy)) {
+                        break;
+                    }
+                    key = k;
+                    value = PagedBPlusTree.this.value(leaf, idx);
+                    idx += descending ? -1 : 1;
+                    remaining--;
+                    return true;
+                } finally {
+                    pool.unpin(leaf, false);
+                }
+            }
+            leafId = NULL;
+            return false;
+        }
+
+        @Override
+        public K key() {
+            return key;
+        }
+
+        @Override
+        public V value() {
+            return value;
+        }
+
+        @Override
+        public RangeCursor<K, V> skip(long n) {
+            if (n < 0) {
+                throw new IllegalArgumentException("Illegal offset: " + n);
+            }
+            while (n > 0 && leafId != NULL) {
+                Page leaf = pool.pin(leafId);
+                int available = available(leaf);
+                if (available == 0) {
+                    nextLeaf(leaf);
+                } else {
+                    int step = (int) Math.min(n, available);
+                    idx += descending ? -step : step;
+                    n -= step;
+                }
+                pool.unpin(leaf, false);
+            }
+            return this;
+        }
+
+        @Override
+        public RangeCursor<K, V> limit(long n) {
+            if (n < 0) {
+                throw new IllegalArgumentException("Illegal limit: " + n);
+            }
+            remaining = n;
+            return this;
+        }
+    }
+
+    @Override
+    public Spliterator<Map.Entry<K, V>> rangeSpliterator(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy) {
+        return new PageSpliterator(beginKey, beginPolicy, endKey, endPolicy, Long.MAX_VALUE);
+    }
+
+    /**
+     * 和BPlusTreeImpl的范围遍历器一样按内部节点的分隔key拆分，拆分时从根向下读页面
+     * 缓冲池的pin/unpin是线程安全的，拆分出来的部分可以在不同线程里遍历(并行流)，遍历期间不能修改树
+     * */
+    private class PageSpliterator extends AbstractRangeSpliterator<K, V> {
+
+        private PageSpliterator(K beginKey, RangePolicy beginPolicy, K endKey, RangePolicy endPolicy, long est) {
+            super(beginKey, beginPolicy, endKey, endPolicy, est);
+        }
+
+        @Override
+        protected RangeCursor<K, V> cursor() {
+            return rangeCursor(beginKey, beginPolicy, endKey, endPolicy, false);
+        }
+
+        @Override
+        protected K splitKey() {
+            long id = root;
+            for (int level = 0; level < height - 1; level++) {
+                Page page = pool.pin(id);
+                try {
+                    int lo = beginKey == null ? 0 : childIndex(page, beginKey);
+                    int hi = endKey == null ? count(page) : childIndex(page, endKey);
+                    int i = splitIndex(lo, hi, hi > lo && endKey != null && key(page, hi - 1).compareTo(endKey) >= 0);
+                    if (i >= 0) {
+                        return key(page, i);
+                    }
+                    id = child(page, lo);
+                } finally {
+                    pool.unpin(page, false);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        protected AbstractRangeSpliterator<K, V> prefix(K splitKey, long est) {
+            return new PageSpliterator(beginKey, beginPolicy, splitKey, RangePolicy.EXCLUSIVE, est);
+        }
+    }
+
+    /**
+     * 新树的页面分配在文件末尾，从左到右顺序分配叶子页面，再逐层向上分配非叶子页面，
+     * 同一层的页面在文件中是连续的，范围遍历基本是顺序读
+     * 数据有问题的时候截掉新分配的页面，原来的树保持不变；新树完整之后才整体挪到文件开头替换原来的树，
+     * 所以装载过程中文件最多是新旧两棵树的大小
+     * */
+    @Override
+    public void bulkLoad(Iterator<Map.Entry<K, V>> sortedEntries, double fillFactor) {
+        int leafMax = leafSlots - 1, leafMin = Math.max(1, leafMax / 2);
+        int leafSize = AbstractBNode.fillSize(leafMax, leafMin, fillFactor);
+        long base = pool.pageCount();
+        // 当前层的页号和每个页面最左侧叶子的第一个key
+        List<Long> level = new ArrayList<>();
+        List<K> firstKeys = new ArrayList<>();
+        Page leaf = null;
+        K last = null;
+        long count = 0;
+        try {
+            while (sortedEntries.hasNext()) {
+                Map.Entry<K, V> entry = sortedEntries.next();
+                K key = entry.getKey();
+                if (key == null || (last != null && key.compareTo(last) <= 0)) {
+                    throw new IllegalArgumentException("entries must be sorted by key without duplicates: " + last + ", " + key);
+                }
+                if (entry.getValue() == null) {
+                    throw new IllegalArgumentException("value can not be null");
+                }
+                if (leaf == null || count(leaf) == leafSize) {
+                    Page newLeaf = newNode(LEAF);
+                    if (leaf != null) {
+                        setNext(leaf, newLeaf.id());
+                        setPrev(newLeaf, leaf.id());
+                        pool.unpin(leaf, true);
+                    }
+                    leaf = newLeaf;
+                    level.add(leaf.id());
+                    firstKeys.add(key);
+                }
+                int n = count(leaf);
+                setKey(leaf, n, key);
+                setValue(leaf, n, entry.getValue());
+                setCount(leaf, n + 1);
+                last = key;
+                count++;
+            }
+        } catch (RuntimeException e) {
+            // 数据有问题，丢掉新分配的页面，原来的树不动
+            if (leaf != null) {
+                pool.unpin(leaf, false);
+            }
+            pool.truncate(base);
+            throw e;
+        }
+        if (leaf == null) {
+            pool.truncate(1);
+            reset();
+            return;
+        }
+        pool.unpin(leaf, true);
+        balanceLastLeaf(level, firstKeys, leafSize, leafMin, leafMax);
+        int innerMin = Math.max(1, (innerSlots - 1) / 2);
+        int fanout = AbstractBNode.fillSize(innerSlots, innerMin + 1, fillFactor);
+        int levels = 1;
+        while (level.size() > 1) {
+            int[] sizes = AbstractBNode.groupSizes(level.size(), fanout, innerMin + 1, innerSlots);
+            List<Long> parents = new ArrayList<>(sizes.length);
+            List<K> parentKeys = new ArrayList<>(sizes.length);
+            int i = 0;
+            for (int groupSize : sizes) {
+                Page inner = newNode(INNER);
+                parentKeys.add(firstKeys.get(i));
+                for (int j = 0; j < groupSize; j++, i++) {
+                    if (j > 0) {
+                        setKey(inner, j - 1, firstKeys.get(i));
+                    }
+                    setChild(inner, j, level.get(i));
+                }
+                setCount(inner, groupSize - 1);
+                parents.add(inner.id());
+                pool.unpin(inner, true);
+            }
+            level = parents;
+            firstKeys = parentKeys;
+            levels++;
+        }
+        root = relocate(base, level.get(0));
+        height = levels;
+        size = count;
+    }
+
+    /**
+     * 把从页号from开始的新树页面按顺序挪到页号1开始的位置，覆盖原来的树，再截掉后面的页面
+     * 目标页号总是比源页号小，按页号递增的顺序复制不会覆盖还没复制的页面
+     * @return 挪动之后的根页号
+     * */
+    private long relocate(long from, long root) {
+        long shift = from - 1, end = pool.pageCount();
+        for (long id = from; id < end; id++) {
+            Page src = pool.pin(id);
+            Page dst = pool.pin(id - shift);
+            System.arraycopy(src.data(), 0, dst.data(), 0, src.data().length);
+            if (dst.buffer().getInt(TYPE_OFFSET) == LEAF) {
+                if (next(dst) != NULL) {
+                    setNext(dst, next(dst) - shift);
+                }
+                if (prev(dst) != NULL) {
+                    setPrev(dst, prev(dst) - shift);
+                }
+            } else {
+                for (int i = 0, n = count(dst); i <= n; i++) {
+                    setChild(dst, i, child(dst, i) - shift);
+                }
+            }
+            pool.unpin(src, false);
+            pool.unpin(dst, true);
+        }
+        pool.truncate(end - shift);
+        return root - shift;
+    }
+
+    /**
+     * 最后一个叶子不够最少元素个数，和前一个叶子合并或者平分
+     * */
+    private void balanceLastLeaf(List<Long> level, List<K> firstKeys, int leafSize, int leafMin, int leafMax) {
+        int n = level.size();
+        if (n < 2) {
+            return;
+        }
+        Page leaf = pool.pin(level.get(n - 1));
+        if (count(leaf) >= leafMin) {
+            pool.unpin(leaf, false);
+            return;
+        }
+        Page prev = pool.pin(level.get(n - 2));
+        int pc = count(prev), lc = count(leaf);
+        int[] sizes = AbstractBNode.groupSizes(pc + lc, leafSize, leafMin, leafMax);
+        if (sizes.length == 1) {
+            copy(leaf, 0, prev, pc, HEADER, keySize, lc);
+            copy(leaf, 0, prev, pc, valueBase, valueSize, lc);
+            setCount(prev, pc + lc);
+            setNext(prev, NULL);
+            pool.unpin(prev, true);
+            pool.unpin(leaf, false);
+            // 最后一个叶子是文件的最后一个页面，直接截掉
+            pool.truncate(level.remove(n - 1));
+            firstKeys.remove(n - 1);
+        } else {
+            int moved = pc - sizes[0];
+            move(leaf, HEADER, keySize, 0, moved, lc);
+            move(leaf, valueBase, valueSize, 0, moved, lc);
+            copy(prev, sizes[0], leaf, 0, HEADER, keySize, moved);
+            copy(prev, sizes[0], leaf, 0, valueBase, valueSize, moved);
+            setCount(prev, sizes[0]);
+            setCount(leaf, lc + moved);
+            firstKeys.set(n - 1, key(leaf, 0));
+            pool.unpin(prev, true);
+            pool.unpin(leaf, true);
+        }
+    }
+
+    @Override
+    public String treeToString() {
+        StringBuilder sb = new StringBuilder();
+        List<Long> level = new ArrayList<>();
+        level.add(root);
+        for (int h = height; h > 0; h--) {
+            List<Long> children = new ArrayList<>();
+            for (long id : level) {
+                Page page = pool.pin(id);
+                int n = count(page);
+                sb.append('[');
+                for (int i = 0; i < n; i++) {
+                    sb.append(i > 0 ? ", " : "").append(key(page, i));
+                }
+                sb.append(']');
+                if (h > 1) {
+                    for (int i = 0; i <= n; i++) {
+                        children.add(child(page, i));
+                    }
+                }
+                pool.unpin(page, false);
+            }
+            sb.append('\n');
+            level = children;
+        }
+        return sb.toString();
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    /**
+     * 缓冲池，用来查看命中和读写次数
+     * */
+    public BufferPool pool() {
+        return pool;
+    }
+
+    /**
+     * 元数据和所有脏页写回文件
+     * */
+    public void flush() {
+        writeMeta();
+        pool.flush();
+    }
+
+    @Override
+    public void close() {
+        writeMeta();
+        pool.close();
+    }
+
+    /**
+     * 工作集是缓冲池的10倍: 点查和范围遍历的耗时和每次操作的页面读次数
+     * 运行参数: [元素个数] [缓冲池页面个数，默认是树的页面个数的1/10]
+     * */
+    public static void main(String[] args) throws IOException {
+        final int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        File file = File.createTempFile("paged-bplustree", ".db");
+        file.deleteOnExit();
+        int poolPages;
+        // 先用很小的缓冲池建树，得到页面个数之后按1/10重新打开
+        try (PagedBPlusTree<Long, Long> tree = new PagedBPlusTree<>(file, PageCodec.LONG, PageCodec.LONG, DEFAULT_PAGE_SIZE, 64)) {
+            long begin = System.nanoTime();
+            tree.bulkLoad(new Iterator<Map.Entry<Long, Long>>() {
+                private long i;
+
+                @Override
+                public boolean hasNext() {
+                    return i < n;
+                }
+
+                @Override
+                public Map.Entry<Long, Long> next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    long key = 2 * i++;
+                    return new AbstractMap.SimpleImmutableEntry<>(key, key);
+                }
+            }, 0.7);
+            System.out.printf("bulkLoad %d keys: %d ms, height=%d, pages=%d (%d MB)%n", n,
+                    (System.nanoTime() - begin) / 1000000, tree.height(), tree.pool().pageCount(),
+                    tree.pool().pageCount() * DEFAULT_PAGE_SIZE >> 20);
+            poolPages = args.length > 1 ? Integer.parseInt(args[1]) : (int) Math.max(3, tree.pool().pageCount() / 10);
+        }
+        try (PagedBPlusTree<Long, Long> tree = new PagedBPlusTree<>(file, PageCodec.LONG, PageCodec.LONG, DEFAULT_PAGE_SIZE, poolPages)) {
+            System.out.printf("buffer pool %d pages (%d MB), height=%d%n", poolPages,
+                    (long) poolPages * DEFAULT_PAGE_SIZE >> 20, tree.height());
+            int ops = 200000, scans = 2000, scanLength = 1000;
+            // 第一轮作为预热，以第二轮的结果为准
+            for (int round = 1; round <= 2; round++) {
+                Random random = new Random(round);
+                BufferPool pool = tree.pool();
+                pool.resetStats();
+                long begin = System.nanoTime();
+                long found = 0;
+                for (int i = 0; i < ops; i++) {
+                    if (tree.search((long) random.nextInt(2 * n)) != null) {
+                        found++;
+                    }
+                }
+                printRound(round, "search", ops, System.nanoTime() - begin, pool);
+                pool.resetStats();
+                begin = System.nanoTime();
+                long scanned = 0;
+                for (int i = 0; i < scans; i++) {
+                    RangeCursor<Long, Long> cursor = tree.rangeCursor((long) random.nextInt(2 * n), RangePolicy.INCLUSIVE,
+                            null, null, false).limit(scanLength);
+                    while (cursor.next()) {
+                        scanned++;
+                    }
+                }
+                printRound(round, "scan " + scanLength, scans, System.nanoTime() - begin, pool);
+                pool.resetStats();
+                begin = System.nanoTime();
+                for (int i = 0; i < ops; i++) {
+                    long key = 2L * random.nextInt(n) + 1;
+                    tree.insert(key, key);
+                }
+                printRound(round, "insert", ops, System.nanoTime() - begin, pool);
+                System.out.printf("round %d found=%d scanned=%d size=%d%n", round, found, scanned, tree.size());
+            }
+        }
+    }
+
+    private static void printRound(int round, String name, int ops, long cost, BufferPool pool) {
+        System.out.printf("round %d %-9s %6d ns/op, page reads/op=%.2f, hit=%.1f%%, writes/op=%.2f%n", round, name,
+                cost / ops, (double) pool.reads() / ops, 100.0 * pool.hits() / Math.max(1, pool.hits() + pool.reads()),
+                (double) pool.writes() / ops);
+    }
+}
@@ -0,0 +1,1085 @@
+package com.yang.ds.datastruct.tree.btree.impl;
+
+import com.yang.ds.algorithm.utils.YUtils;
+import com.yang.ds.datastruct.tree.btree.BPlusTree;
+import com.yang.ds.datastruct.tree.btree.RangeCursor;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Spliterator;
+
+/**
+ * String类型key的B+树，key有大量公共前缀(URL、文件路径)的时候节省内存
+ *
+ * 1. 叶子节点像LevelDB的block一样前缀压缩: 每个key只存[和前一个key相同的字节数, 不同的字节数, 不同的字节]，
+ * 每restartInterval个key有一个重启点，重启点的key完整保存；叶子内查找先在重启点上二分，再在一个区间内顺序扫描，
+ * 扫描时只维护查找key和当前key的公共前缀长度，不需要还原出完整的key
+ *
+ * 2. 非叶子节点的分隔key做后缀截断: 用左边最后一个key和右边第一个key之间最短的分隔串(右边key的最短前缀)，而不是右边完整的第一个key；
+ * 同时做前缀截断: 一个节点内所有分隔key的公共前缀只存一份，查找时先比较公共前缀，再在后缀上二分
+ *
+ * 3. 节点按字节数而不是key的个数限制大小(nodeBytes，类似页大小)，key越短一个节点放的越多，扇出越大
+ *
+ * 4. key按char逐个编码成1~3个字节(和Modified UTF-8一样，代理对的两个char分开编码)，字节的无符号字典序和String.compareTo一致
+ *
+ * 5. 修改叶子时整个叶子重新编码(和LevelDB的block一样是一次写出的)，删除不合并节点，节点空了才从父节点摘掉
+ * */
+public class StringBPlusTree<V> implements BPlusTree<String, V> {
+
+    /**节点字节数的下限*/
+    public static final int MIN_NODE_BYTES = 64;
+
+    /**非叶子节点每个分隔key除了key本身之外按这么多字节计算(偏移和孩子指针)*/
+    private static final int SEPARATOR_OVERHEAD = 8;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final int nodeBytes;
+
+    private final int restartInterval;
+
+    private final boolean truncate;
+
+    private Node root;
+
+    private long size;
+
+    private abstract static class Node {
+    }
+
+    /**
+     * 前缀压缩的叶子
+     * */
+    private static final class Leaf extends Node {
+
+        /**编码后的key: varint(shared) varint(unshared) 不同的字节*/
+        byte[] block = new byte[0];
+
+        /**重启点在block中的偏移，第i个重启点是第i * restartInterval个key*/
+        int[] restarts = new int[0];
+
+        Object[] values = new Object[0];
+
+        int count;
+
+        Leaf next;
+
+        Leaf prev;
+    }
+
+    /**
+     * 非叶子节点，第i个孩子的key都小于keys[i]，大于等于keys[i - 1]
+     * */
+    private static final class Inner extends Node {
+
+        /**所有分隔key的公共前缀，只存一份*/
+        byte[] prefix = EMPTY;
+
+        /**分隔key去掉公共前缀之后的后缀*/
+        byte[][] keys;
+
+        Node[] children;
+
+        /**key的个数，孩子有count + 1个*/
+        int count;
+
+        /**按字节计算的大小*/
+        int bytes;
+    }
+
+    public StringBPlusTree(int nodeBytes) {
+        this(nodeBytes, 16, true);
+    }
+
+    /**
+     * @param nodeBytes 节点的字节数
+     * @param restartInterval 重启点间隔，1表示不做前缀压缩
+     * @param truncate 非叶子节点的分隔key是否截断成最短分隔串
+     * */
+    public StringBPlusTree(int nodeBytes, int restartInterval, boolean truncate) {
+        if (nodeBytes < MIN_NODE_BYTES) {
+            throw new IllegalArgumentException("nodeBytes is less than " + MIN_NODE_BYTES + "," + nodeBytes);
+        }
+        if (restartInterval < 1) {
+            throw new IllegalArgumentException("Illegal restart interval: " + restartInterval);
+        }
+        this.nodeBytes = nodeBytes;
+        this.restartInterval = restartInterval;
+        this.truncate = truncate;
+        root = new Leaf();
+    }
+
+    public long size() {
+        return size;
+    }
+
+    // ---------------------------------------- 编码 ----------------------------------------
+
+    /**
+     * String按char编码，0x80以下1个字节，0x800以下2个字节，其他3个字节
+     * */
+    static byte[] encode(String s) {
+        int n = s.length(), len = 0;
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            len += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+        }
+        byte[] bytes = new byte[len];
+        int p = 0;
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes[p++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[p++] = (byte) (0xC0 | c >> 6);
+                bytes[p++] = (byte) (0x80 | c & 0x3F);
+            } else {
+                bytes[p++] = (byte) (0xE0 | c >> 12);
+                bytes[p++] = (byte) (0x80 | c >> 6 & 0x3F);
+                bytes[p++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        return bytes;
+    }
+
+    static String decode(byte[] bytes, int off, int len) {
+        char[] chars = new char[len];
+        int n = 0, end = off + len;
+        for (int p = off; p < end; ) {
+            int b = bytes[p] & 0xFF;
+            if (b < 0x80) {
+                chars[n++] = (char) b;
+                p++;
+            } else if (b < 0xE0) {
+                chars[n++] = (char) ((b & 0x1F) << 6 | bytes[p + 1] & 0x3F);
+                p += 2;
+            } else {
+                chars[n++] = (char) ((b & 0x0F) << 12 | (bytes[p + 1] & 0x3F) << 6 | bytes[p + 2] & 0x3F);
+                p += 3;
+            }
+        }
+        return new String(chars, 0, n);
+    }
+
+    /**
+     * 无符号字节字典序比较
+     * */
+    static int compare(byte[] a, int aOff, int aLen, byte[] b, int bOff, int bLen) {
+        int n = Math.min(aLen, bLen);
+        for (int i = 0; i < n; i++) {
+            int x = a[aOff + i] & 0xFF, y = b[bOff + i] & 0xFF;
+            if (x != y) {
+                return x - y;
+            }
+        }
+        return aLen - bLen;
+    }
+
+    static int compare(byte[] a, byte[] b) {
+        return compare(a, 0, a.length, b, 0, b.length);
+    }
+
+    private static int commonPrefix(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length), i = 0;
+        while (i < n && a[i] == b[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * left < s <= right的最短的s: right的前缀，比公共前缀多一个字符(不从多字节字符中间截断)
+     * */
+    static byte[] shortestSeparator(byte[] left, byte[] right) {
+        int len = commonPrefix(left, right) + 1;
+        while (len < right.length && (right[len] & 0xC0) == 0x80) {
+            len++;
+        }
+        if (len >= right.length) {
+            return right;
+        }
+        byte[] separator = new byte[len];
+        System.arraycopy(right, 0, separator, 0, len);
+        return separator;
+    }
+
+    private static int varintSize(int v) {
+        int size = 1;
+        while ((v >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    private static int writeVarint(byte[] b, int p, int v) {
+        while ((v & ~0x7F) != 0) {
+            b[p++] = (byte) (v & 0x7F | 0x80);
+            v >>>= 7;
+        }
+        b[p++] = (byte) v;
+        return p;
+    }
+
+    private static int readVarint(byte[] b, int p) {
+        int v = 0;
+        for (int shift = 0; ; shift += 7) {
+            int x = b[p++];
+            v |= (x & 0x7F) << shift;
+            if (x >= 0) {
+                return v;
+            }
+        }
+    }
+
+    // ---------------------------------------- 叶子 ----------------------------------------
+
+    /**
+     * 把[from, to)的key和value编码成叶子的内容
+     * */
+    private void encodeLeaf(Leaf leaf, byte[][] keys, Object[] values, int from, int to) {
+        int n = to - from, len = 0;
+        for (int i = from; i < to; i++) {
+            int shared = (i - from) % restartInterval == 0 ? 0 : commonPrefix(keys[i - 1], keys[i]);
+            int unshared = keys[i].length - shared;
+            len += varintSize(shared) + varintSize(unshared) + unshared;
+        }
+        byte[] block = new byte[len];
+        int[] restarts = new int[(n + restartInterval - 1) / restartInterval];
+        Object[] vals = new Object[n];
+        int p = 0;
+        for (int i = from; i < to; i++) {
+            int j = i - from;
+            int shared = 0;
+            if (j % restartInterval == 0) {
+                restarts[j / restartInterval] = p;
+            } else {
+                shared = commonPrefix(keys[i - 1], keys[i]);
+            }
+            int unshared = keys[i].length - shared;
+            p = writeVarint(block, p, shared);
+            p = writeVarint(block, p, unshared);
+            System.arraycopy(keys[i], shared, block, p, unshared);
+            p += unshared;
+            vals[j] = values[i];
+        }
+        leaf.block = block;
+        leaf.restarts = restarts;
+        leaf.values = vals;
+        leaf.count = n;
+    }
+
+    /**
+     * 还原叶子所有的key
+     * */
+    private static byte[][] decodeKeys(Leaf leaf) {
+        byte[][] keys = new byte[leaf.count][];
+        byte[] block = leaf.block;
+        byte[] prev = null;
+        int p = 0;
+        for (int i = 0; i < leaf.count; i++) {
+            int shared = readVarint(block, p);
+            p += varintSize(shared);
+            int unshared = readVarint(block, p);
+            p += varintSize(unshared);
+            byte[] key = new byte[shared + unshared];
+            if (shared > 0) {
+                System.arraycopy(prev, 0, key, 0, shared);
+            }
+            System.arraycopy(block, p, key, shared, unshared);
+            p += unshared;
+            keys[i] = key;
+            prev = key;
+        }
+        return keys;
+    }
+
+    /**
+     * 叶子内查找，返回值和YUtils.binarySearch一样，找不到返回-(插入位置 + 1)
+     * 先在重启点上二分找到最后一个小于等于key的重启点，再从这个重启点顺序扫描:
+     * matched是key和前一个元素的公共前缀长度(前一个元素小于key)，当前元素和前一个元素的公共长度是shared，
+     * shared > matched说明当前元素在matched位置和前一个元素一样，还是小于key；shared < matched说明当前元素在shared位置
+     * 比前一个元素大，也就比key大；相等的时候才需要比较不同的字节
+     * */
+    private int search(Leaf leaf, byte[] key) {
+        if (leaf.count == 0) {
+            return -1;
+        }
+        byte[] block = leaf.block;
+        int lo = 0, hi = leaf.restarts.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            int p = leaf.restarts[mid] + 1;
+            int len = readVarint(block, p);
+            p += varintSize(len);
+            if (compare(block, p, len, key, 0, key.length) <= 0) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        int idx = lo * restartInterval, end = Math.min(leaf.count, idx + restartInterval);
+        int p = leaf.restarts[lo], matched = 0;
+        for (; idx < end; idx++) {
+            int shared = readVarint(block, p);
+            p += varintSize(shared);
+            int unshared = readVarint(block, p);
+            p += varintSize(unshared);
+            if (shared < matched) {
+                return -idx - 1;
+            }
+            if (shared == matched) {
+                int i = 0;
+                while (i < unshared && matched + i < key.length && block[p + i] == key[matched + i]) {
+                    i++;
+                }
+                matched += i;
+                if (i == unshared) {
+                    if (matched == key.length) {
+                        return idx;
+                    }
+                    // 当前元素是key的前缀，比key小
+                } else if (matched == key.length || (block[p + i] & 0xFF) > (key[matched] & 0xFF)) {
+                    return -idx - 1;
+                }
+            }
+            p += unshared;
+        }
+        return -end - 1;
+    }
+
+    // ---------------------------------------- 非叶子 ----------------------------------------
+
+    /**
+     * 第i个分隔key的完整内容(公共前缀 + 后缀)
+     * */
+    private static byte[] keyAt(Inner inner, int i) {
+        byte[] prefix = inner.prefix, suffix = inner.keys[i];
+        if (prefix.length == 0) {
+            return suffix;
+        }
+        byte[] key = new byte[prefix.length + suffix.length];
+        System.arraycopy(prefix, 0, key, 0, prefix.length);
+        System.arraycopy(suffix, 0, key, prefix.length, suffix.length);
+        return key;
+    }
+
+    /**
+     * key所在孩子的位置，相等的从右侧值域查找
+     * 先和公共前缀比较，key不是以公共前缀开头的时候比所有分隔key都小或者都大，否则只比较后缀
+     * */
+    private static int childIndex(Inner inner, byte[] key) {
+        byte[] prefix = inner.prefix;
+        int plen = prefix.length;
+        if (plen > 0) {
+            int c = compare(key, 0, Math.min(key.length, plen), prefix, 0, plen);
+            if (c != 0) {
+                return c < 0 ? 0 : inner.count;
+            }
+        }
+        int lo = 0, hi = inner.count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            byte[] suffix = inner.keys[mid];
+            if (compare(suffix, 0, suffix.length, key, plen, key.length - plen) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private Inner newInner(int capacity) {
+        Inner inner = new Inner();
+        inner.keys = new byte[capacity][];
+        inner.children = new Node[capacity + 1];
+        return inner;
+    }
+
+    /**
+     * 用完整的分隔key[from, to)重新设置节点的公共前缀和后缀，孩子不变
+     * */
+    private void setKeys(Inner inner, byte[][] keys, int from, int to) {
+        int n = to - from;
+        int plen = truncate && n > 0 ? commonPrefix(keys[from], keys[to - 1]) : 0;
+        inner.prefix = plen == 0 ? EMPTY : Arrays.copyOf(keys[from], plen);
+        if (inner.keys.length < n) {
+            inner.keys = new byte[n][];
+        }
+        inner.bytes = plen;
+        for (int i = 0; i < n; i++) {
+            byte[] key = keys[from + i];
+            inner.keys[i] = plen == 0 ? key : Arrays.copyOfRange(key, plen, key.length);
+            inner.bytes += inner.keys[i].length + SEPARATOR_OVERHEAD;
+        }
+        Arrays.fill(inner.keys, n, inner.keys.length, null);
+        inner.count = n;
+    }
+
+    /**
+     * 在第i个分隔key的位置插入key和它右侧的孩子，数组不够扩容；key不以公共前缀开头的时候缩短公共前缀
+     * */
+    private void insertAt(Inner inner, int i, byte[] key, Node right) {
+        if (inner.count == inner.keys.length) {
+            int capacity = Math.max(4, inner.keys.length * 2);
+            inner.keys = Arrays.copyOf(inner.keys, capacity);
+            inner.children = Arrays.copyOf(inner.children, capacity + 1);
+        }
+        byte[] prefix = inner.prefix;
+        if (inner.count == 0 && truncate) {
+            inner.prefix = prefix = key;
+            inner.bytes = key.length;
+        } else if (prefix.length > 0 && commonPrefix(prefix, key) < prefix.length) {
+            // 新key不以公共前缀开头，连同新key一起重新计算
+            byte[][] keys = new byte[inner.count + 1][];
+            for (int k = 0; k < inner.count; k++) {
+                keys[k < i ? k : k + 1] = keyAt(inner, k);
+            }
+            keys[i] = key;
+            System.arraycopy(inner.children, i + 1, inner.children, i + 2, inner.count - i);
+            inner.children[i + 1] = right;
+            setKeys(inner, keys, 0, keys.length);
+            return;
+        }
+        System.arraycopy(inner.keys, i, inner.keys, i + 1, inner.count - i);
+        System.arraycopy(inner.children, i + 1, inner.children, i + 2, inner.count - i);
+        inner.keys[i] = prefix.length == 0 ? key : Arrays.copyOfRange(key, prefix.length, key.length);
+        inner.children[i + 1] = right;
+        inner.count++;
+        inner.bytes += inner.keys[i].length + SEPARATOR_OVERHEAD;
+    }
+
+    /**
+     * 删除第i个孩子和它一侧的分隔key，公共前缀不变(还是剩下的key的公共前缀，只是不一定最长)
+     * */
+    private static void removeChild(Inner inner, int i) {
+        int k = i > 0 ? i - 1 : 0;
+        if (inner.count > 0) {
+            inner.bytes -= inner.keys[k].length + SEPARATOR_OVERHEAD;
+            System.arraycopy(inner.keys, k + 1, inner.keys, k, inner.count - k - 1);
+            inner.keys[inner.count - 1] = null;
+        }
+        System.arraycopy(inner.children, i + 1, inner.children, i, inner.count - i);
+        inner.children[inner.count] = null;
+        inner.count--;
+    }
+
+    /**
+     * 两个相邻节点之间的分隔key
+     * */
+    private byte[] separator(byte[] leftLast, byte[] rightFirst) {
+        return truncate ? shortestSeparator(leftLast, rightFirst) : rightFirst;
+    }
+
+    // ---------------------------------------- 查找 ----------------------------------------
+
+    private static void checkKey(String key) {
+        if (key == null)
+            throw new IllegalArgumentException("key can not be null");
+    }
+
+    private Leaf leafOf(byte[] key) {
+        Node node = root;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            node = inner.children[key == null ? 0 : childIndex(inner, key)];
+        }
+        return (Leaf) node;
+    }
+
+    private Leaf lastLeaf() {
+        Node node = root;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            node = inner.children[inner.count];
+        }
+        return (Leaf) node;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V search(String key) {
+        checkKey(key);
+        byte[] k = encode(key);
+        Leaf leaf = leafOf(k);
+        int loc = search(leaf, k);
+        return loc >= 0 ? (V) leaf.values[loc] : null;
+    }
+
+    // ---------------------------------------- 插入 ----------------------------------------
+
+    /**分裂出来的右侧节点和分隔key，插入时从下向上传递*/
+    private Node splitRight;
+
+    private byte[] splitKey;
+
+    @Override
+    public void insert(String key, V value) {
+        checkKey(key);
+        if (insert(root, encode(key), value)) {
+            size++;
+        }
+        if (splitRight != null) {
+            Inner newRoot = newInner(4);
+            newRoot.children[0] = root;
+            insertAt(newRoot, 0, splitKey, splitRight);
+            root = newRoot;
+            splitRight = null;
+            splitKey = null;
+        }
+    }
+
+    /**
+     * @return 是否新增了元素，节点分裂的时候设置splitRight和splitKey
+     * */
+    private boolean insert(Node node, byte[] key, V value) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            int loc = search(leaf, key);
+            if (loc >= 0) {
+                leaf.values[loc] = value;
+                return false;
+            }
+            int pos = -loc - 1, n = leaf.count;
+            byte[][] keys = new byte[n + 1][];
+            Object[] values = new Object[n + 1];
+            byte[][] old = decodeKeys(leaf);
+            System.arraycopy(old, 0, keys, 0, pos);
+            System.arraycopy(old, pos, keys, pos + 1, n - pos);
+            System.arraycopy(leaf.values, 0, values, 0, pos);
+            System.arraycopy(leaf.values, pos, values, pos + 1, n - pos);
+            keys[pos] = key;
+            values[pos] = value;
+            encodeLeaf(leaf, keys, values, 0, n + 1);
+            if (leaf.block.length > nodeBytes && n + 1 >= 2) {
+                splitLeaf(leaf, keys, values);
+            }
+            return true;
+        }
+        Inner inner = (Inner) node;
+        int ci = childIndex(inner, key);
+        boolean added = insert(inner.children[ci], key, value);
+        if (splitRight != null) {
+            insertAt(inner, ci, splitKey, splitRight);
+            splitRight = null;
+            splitKey = null;
+            if (inner.bytes > nodeBytes && inner.count >= 3) {
+                splitInner(inner);
+            }
+        }
+        return added;
+    }
+
+    private void splitLeaf(Leaf leaf, byte[][] keys, Object[] values) {
+        int n = keys.length, m = n / 2;
+        Leaf right = new Leaf();
+        encodeLeaf(right, keys, values, m, n);
+        encodeLeaf(leaf, keys, values, 0, m);
+        right.next = leaf.next;
+        right.prev = leaf;
+        if (leaf.next != null) {
+            leaf.next.prev = right;
+        }
+        leaf.next = right;
+        splitRight = right;
+        splitKey = separator(keys[m - 1], keys[m]);
+    }
+
+    /**
+     * 非叶子分裂，中间的key上提
+     * */
+    private void splitInner(Inner inner) {
+        int n = inner.count, m = n / 2;
+        byte[][] keys = new byte[n][];
+        for (int i = 0; i < n; i++) {
+            keys[i] = keyAt(inner, i);
+        }
+        Inner right = newInner(Math.max(4, n - m - 1));
+        System.arraycopy(inner.children, m + 1, right.children, 0, n - m);
+        Arrays.fill(inner.children, m + 1, n + 1, null);
+        // 两半分别计算公共前缀，一般比原来的更长
+        setKeys(right, keys, m + 1, n);
+        setKeys(inner, keys, 0, m);
+        splitKey = keys[m];
+        splitRight = right;
+    }
+
+    // ---------------------------------------- 删除 ----------------------------------------
+
+    @Override
+    public void delete(String key) {
+        checkKey(key);
+        if (delete(root, encode(key))) {
+            size--;
+        }
+        // 根节点没有分隔key了，唯一的孩子作为新根
+        while (root instanceof Inner && ((Inner) root).count <= 0) {
+            Node child = ((Inner) root).children[0];
+            root = child == null ? new Leaf() : child;
+        }
+    }
+
+    /**
+     * 删除不合并节点，叶子空了从父节点摘掉(非叶子没有孩子了也一样)
+     * */
+    private boolean delete(Node node, byte[] key) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            int loc = search(leaf, key);
+            if (loc < 0) {
+                return false;
+            }
+            byte[][] keys = decodeKeys(leaf);
+            byte[][] newKeys = new byte[leaf.count - 1][];
+            Object[] values = new Object[leaf.count - 1];
+            System.arraycopy(keys, 0, newKeys, 0, loc);
+            System.arraycopy(keys, loc + 1, newKeys, loc, newKeys.length - loc);
+            System.arraycopy(leaf.values, 0, values, 0, loc);
+            System.arraycopy(leaf.values, loc + 1, values, loc, values.length - loc);
+            encodeLeaf(leaf, newKeys, values, 0, newKeys.length);
+            return true;
+        }
+        Inner inner = (Inner) node;
+        int ci = childIndex(inner, key);
+        Node child = inner.children[ci];
+        if (!delete(child, key)) {
+            return false;
+        }
+        if (isEmpty(child)) {
+            if (child instanceof Leaf) {
+                Leaf leaf = (Leaf) child;
+                if (leaf.prev != null) {
+                    leaf.prev.next = leaf.next;
+                }
+                if (leaf.next != null) {
+                    leaf.next.prev = leaf.prev;
+                }
+            }
+            if (inner.count == 0) {
+                // 唯一的孩子空了，自己也空了，由上一层摘掉
+                inner.children[0] = null;
+                inner.count = -1;
+            } else {
+                removeChild(inner, ci);
+            }
+        }
+        return true;
+    }
+
+    private static boolean isEmpty(Node node) {
+        return node instanceof Leaf ? ((Leaf) node).count == 0 : ((Inner) node).count < 0;
+    }
+
+    // ---------------------------------------- 范围查找 ----------------------------------------
+
+    @Override
+    public List<V> searchRange(String beginKey, RangePolicy beginPolicy, String endKey, RangePolicy endPolicy) {
+        List<V> result = new ArrayList<>();
+        RangeCursor<String, V> cursor = rangeCursor(beginKey, beginPolicy, endKey, endPolicy, false);
+        while (cursor.next()) {
+            result.add(cursor.value());
+        }
+        return result;
+    }
+
+    @Override
+    public RangeCursor<String, V> rangeCursor(String beginKey, RangePolicy beginPolicy, String endKey, RangePolicy endPolicy, boolean descending) {
+        return new LeafCursor(beginKey, beginPolicy, endKey, endPolicy, descending);
+    }
+
+    /**
+     * 叶子链表上的游标，进入一个叶子的时候把它的key解码成String
+     * */
+    private class LeafCursor extends AbstractRangeCursor<String, V> {
+
+        private final String beginKey;
+        private final RangePolicy beginPolicy;
+        private final String endKey;
+        private final RangePolicy endPolicy;
+
+        private Leaf leaf;
+        /**当前叶子解码出来的key*/
+        private String[] keys;
+
+        private String key;
+        private V value;
+
+        private LeafCursor(String beginKey, RangePolicy beginPolicy, String endKey, RangePolicy endPolicy, boolean descending) {
+            super(descending);
+            this.beginKey = beginKey;
+            this.beginPolicy = beginPolicy;
+            this.endKey = endKey;
+            this.endPolicy = endPolicy;
+            if (!descending) {
+                byte[] begin = beginKey == null ? null : encode(beginKey);
+                leaf = leafOf(begin);
+                if (begin != null) {
+                    int loc = search(leaf, begin);
+                    idx = loc >= 0 ? (beginPolicy == RangePolicy.INCLUSIVE ? loc : loc + 1) : -loc - 1;
+                }
+            } else {
+                byte[] end = endKey == null ? null : encode(endKey);
+                leaf = end == null ? lastLeaf() : leafOf(end);
+                idx = leaf.count - 1;
+                if (end != null) {
+                    int loc = search(leaf, end);
+                    idx = loc >= 0 ? (endPolicy == RangePolicy.INCLUSIVE ? loc : loc - 1) : -loc - 2;
+                }
+            }
+        }
+
+        @Override
+        protected boolean normalize() {
+            if (!descending) {
+                while (leaf != null && idx >= leaf.count) {
+                    leaf = leaf.next;
+                    keys = null;
+                    idx = 0;
+                }
+            } else {
+                while (leaf != null && idx < 0) {
+                    leaf = leaf.prev;
+                    keys = null;
+                    idx = leaf == null ? -1 : leaf.count - 1;
+                }
+            }
+            return leaf != null;
+        }
+
+        @Override
+        protected int count() {
+            return leaf.count;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected boolean load(int idx) {
+            if (keys == null) {
+                byte[][] encoded = decodeKeys(leaf);
+                keys = new String[encoded.length];
+                for (int i = 0; i < encoded.length; i++) {
+                    keys[i] = decode(encoded[i], 0, encoded[i].length);
+                }
+            }
+            String k = keys[idx];
+            if (descending ? !BPlusTreeImpl.afterBegin(k, beginKey, beginPolicy) : !BPlusTreeImpl.beforeEnd(k, endKey, endPolicy)) {
+                return false;
+            }
+            key = k;
+            value = (V) leaf.values[idx];
+            return true;
+        }
+
+        @Override
+        public String key() {
+            return key;
+        }
+
+        @Override
+        public V value() {
+            return value;
+        }
+    }
+
+    @Override
+    public Spliterator<Map.Entry<String, V>> rangeSpliterator(String beginKey, RangePolicy beginPolicy, String endKey, RangePolicy endPolicy) {
+        return new RangeSpliterator(beginKey, beginPolicy, endKey, endPolicy, Long.MAX_VALUE);
+    }
+
+    /**
+     * 和BPlusTreeImpl一样按非叶子节点的分隔key拆分，分隔key截断之后也是合法的String
+     * */
+    private class RangeSpliterator extends AbstractRangeSpliterator<String, V> {
+
+        private RangeSpliterator(String beginKey, RangePolicy beginPolicy, String endKey, RangePolicy endPolicy, long est) {
+            super(beginKey, beginPolicy, endKey, endPolicy, est);
+        }
+
+        @Override
+        protected RangeCursor<String, V> cursor() {
+            return rangeCursor(beginKey, beginPolicy, endKey, endPolicy, false);
+        }
+
+        @Override
+        protected String splitKey() {
+            byte[] begin = beginKey == null ? null : encode(beginKey);
+            byte[] end = endKey == null ? null : encode(endKey);
+            Node node = root;
+            while (node instanceof Inner) {
+                Inner inner = (Inner) node;
+                int lo = begin == null ? 0 : childIndex(inner, begin);
+                int hi = end == null ? inner.count : childIndex(inner, end);
+                int i = splitIndex(lo, hi, hi > lo && end != null && compare(keyAt(inner, hi - 1), end) >= 0);
+                if (i >= 0) {
+                    byte[] separator = keyAt(inner, i);
+                    return decode(separator, 0, separator.length);
+                }
+                node = inner.children[lo];
+            }
+            return null;
+        }
+
+        @Override
+        protected AbstractRangeSpliterator<String, V> prefix(String splitKey, long est) {
+            return new RangeSpliterator(beginKey, beginPolicy, splitKey, RangePolicy.EXCLUSIVE, est);
+        }
+    }
+
+    // ---------------------------------------- 批量加载 ----------------------------------------
+
+    /**
+     * 叶子按编码后的字节数装到nodeBytes * fillFactor，非叶子同样按分隔key的字节数装
+     * */
+    @Override
+    public void bulkLoad(Iterator<Map.Entry<String, V>> sortedEntries, double fillFactor) {
+        int target = AbstractBNode.fillSize(nodeBytes, 1, fillFactor);
+        List<Node> level = new ArrayList<>();
+        // 每个节点和左侧相邻节点之间的分隔key
+        List<byte[]> separators = new ArrayList<>();
+        List<byte[]> keys = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        Leaf last = null;
+        String lastKey = null;
+        byte[] prev = null;
+        // 上一个叶子的最后一个key
+        byte[] prevLast = null;
+        int bytes = 0;
+        long count = 0;
+        while (sortedEntries.hasNext()) {
+            Map.Entry<String, V> entry = sortedEntries.next();
+            String key = entry.getKey();
+            if (key == null || (lastKey != null && key.compareTo(lastKey) <= 0)) {
+                throw new IllegalArgumentException("entries must be sorted by key without duplicates: " + lastKey + ", " + key);
+            }
+            byte[] k = encode(key);
+            int shared = keys.size() % restartInterval == 0 ? 0 : commonPrefix(prev, k);
+            int entryBytes = varintSize(shared) + varintSize(k.length - shared) + k.length - shared;
+            if (!keys.isEmpty() && bytes + entryBytes > target) {
+                last = flushLeaf(last, prevLast, keys, values, level, separators);
+                prevLast = prev;
+                bytes = 0;
+                // 新叶子的第一个key是重启点
+                entryBytes = varintSize(0) + varintSize(k.length) + k.length;
+            }
+            keys.add(k);
+            values.add(entry.getValue());
+            bytes += entryBytes;
+            prev = k;
+            lastKey = key;
+            count++;
+        }
+        if (!keys.isEmpty()) {
+            flushLeaf(last, prevLast, keys, values, level, separators);
+        }
+        if (level.isEmpty()) {
+            root = new Leaf();
+            size = 0;
+            return;
+        }
+        // 逐层向上，一组孩子之间的分隔key放在父节点里，每组第一个孩子的分隔key是父节点之间的分隔key
+        while (level.size() > 1) {
+            List<Node> parents = new ArrayList<>();
+            List<byte[]> parentSeparators = new ArrayList<>();
+            int from = 0;
+            while (from < level.size()) {
+                int to = from + 1, groupBytes = 0;
+                while (to < level.size() && (to - from < 2 || groupBytes + separators.get(to).length + SEPARATOR_OVERHEAD <= target)) {
+                    groupBytes += separators.get(to).length + SEPARATOR_OVERHEAD;
+                    to++;
+                }
+                // 最后只剩一个孩子的时候并到这一组
+                if (to == level.size() - 1) {
+                    to++;
+                }
+                Inner inner = newInner(Math.max(4, to - from - 1));
+                for (int i = from; i < to; i++) {
+                    inner.children[i - from] = level.get(i);
+                }
+                setKeys(inner, separators.subList(from + 1, to).toArray(new byte[0][]), 0, to - from - 1);
+                parents.add(inner);
+                parentSeparators.add(separators.get(from));
+                from = to;
+            }
+            level = parents;
+            separators = parentSeparators;
+        }
+        root = level.get(0);
+        size = count;
+    }
+
+    private Leaf flushLeaf(Leaf last, byte[] prevLast, List<byte[]> keys, List<Object> values, List<Node> level, List<byte[]> separators) {
+        Leaf leaf = new Leaf();
+        encodeLeaf(leaf, keys.toArray(new byte[0][]), values.toArray(), 0, keys.size());
+        if (last != null) {
+            last.next = leaf;
+            leaf.prev = last;
+            separators.add(separator(prevLast, keys.get(0)));
+        } else {
+            separators.add(null);
+        }
+        level.add(leaf);
+        keys.clear();
+        values.clear();
+        return leaf;
+    }
+
+    @Override
+    public String treeToString() {
+        StringBuilder sb = new StringBuilder();
+        List<Node> level = Collections.singletonList(root);
+        while (!level.isEmpty()) {
+            List<Node> children = new ArrayList<>();
+            for (Node node : level) {
+                List<String> keys = new ArrayList<>();
+                if (node instanceof Leaf) {
+                    for (byte[] key : decodeKeys((Leaf) node)) {
+                        keys.add(decode(key, 0, key.length));
+                    }
+                } else {
+                    Inner inner = (Inner) node;
+                    for (int i = 0; i < inner.count; i++) {
+                        byte[] key = keyAt(inner, i);
+                        keys.add(decode(key, 0, key.length));
+                    }
+                    for (int i = 0; i <= inner.count; i++) {
+                        children.add(inner.children[i]);
+                    }
+                }
+                sb.append(keys);
+            }
+            sb.append('\n');
+            level = children;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * [叶子个数, 非叶子个数, 非叶子的孩子总数, 叶子编码后的字节数, 分隔key保存的字节数(公共前缀 + 后缀)]
+     * */
+    private long[] stats() {
+        long[] stats = new long[5];
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            if (node instanceof Leaf) {
+                stats[0]++;
+                stats[3] += ((Leaf) node).block.length;
+            } else {
+                Inner inner = (Inner) node;
+                stats[1]++;
+                stats[2] += inner.count + 1;
+                stats[4] += inner.prefix.length;
+                for (int i = 0; i < inner.count; i++) {
+                    stats[4] += inner.keys[i].length;
+                }
+                for (int i = 0; i <= inner.count; i++) {
+                    stack.push(inner.children[i]);
+                }
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * 有公共前缀的真实key: 参数是一个文件(每行一个key)或者一个目录(遍历所有文件的路径)，默认/usr下的文件路径
+     * 对比BPlusTreeImpl<String>和前缀压缩前后的每个key的内存、叶子平均key个数、非叶子平均扇出、查找耗时
+     * 运行参数: [文件或目录] [最多key个数] [节点字节数]
+     * */
+    public static void main(String[] args) throws IOException {
+        File source = new File(args.length > 0 ? args[0] : "/usr");
+        int limit = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        int nodeBytes = args.length > 2 ? Integer.parseInt(args[2]) : 4096;
+        List<String> corpus = new ArrayList<>();
+        if (source.isDirectory()) {
+            Deque<File> dirs = new ArrayDeque<>();
+            dirs.push(source);
+            while (!dirs.isEmpty() && corpus.size() < limit) {
+                File[] files = dirs.pop().listFiles();
+                if (files == null) {
+                    continue;
+                }
+                for (File file : files) {
+                    if (corpus.size() < limit) {
+                        corpus.add(file.getPath());
+                    }
+                    if (file.isDirectory() && !Files.isSymbolicLink(file.toPath())) {
+                        dirs.push(file);
+                    }
+                }
+            }
+        } else {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(source), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null && corpus.size() < limit) {
+                    corpus.add(line);
+                }
+            }
+        }
+        // 插入顺序打乱，节点的装填率和随机写入一样
+        Collections.shuffle(corpus, new Random(1));
+        int n = corpus.size();
+        long chars = 0;
+        for (String s : corpus) {
+            chars += s.length();
+        }
+        System.out.printf("%d keys from %s, average %.1f chars%n", n, source, (double) chars / n);
+        final Object value = new Object();
+        // 第一轮作为预热，以第二轮的结果为准
+        for (int round = 1; round <= 2; round++) {
+            long base = YUtils.usedMemory();
+            BPlusTreeImpl<String, Object> plain = new BPlusTreeImpl<>(64);
+            for (String s : corpus) {
+                // 复制一份，树里面的String不和corpus共用
+                plain.insert(new String(s.toCharArray()), value);
+            }
+            long memory = YUtils.usedMemory() - base;
+            long cost = searchAll(plain, corpus);
+            System.out.printf("round %d BPlusTreeImpl<String>(64)   %6.1f B/key, search %4d ns/op%n", round, (double) memory / n, cost / n);
+            plain = null;
+            for (boolean compressed : new boolean[]{false, true}) {
+                base = YUtils.usedMemory();
+                StringBPlusTree<Object> tree = compressed ? new StringBPlusTree<>(nodeBytes) : new StringBPlusTree<>(nodeBytes, 1, false);
+                for (String s : corpus) {
+                    tree.insert(s, value);
+                }
+                memory = YUtils.usedMemory() - base;
+                cost = searchAll(tree, corpus);
+                long[] stats = tree.stats();
+                System.out.printf("round %d StringBPlusTree %-11s %6.1f B/key, search %4d ns/op, leaf keys %.1f, leaf bytes/key %.1f, "
+                                + "inner fan-out %.1f, separator bytes %.1f%n", round, compressed ? "compressed" : "full keys",
+                        (double) memory / n, cost / n, (double) n / stats[0], (double) stats[3] / n,
+                        stats[1] == 0 ? 0 : (double) stats[2] / stats[1], (double) stats[4] / (stats[2] - stats[1]));
+            }
+        }
+    }
+
+    private static long searchAll(BPlusTree<String, Object> tree, List<String> corpus) {
+        long begin = System.nanoTime();
+        int found = 0;
+        for (String s : corpus) {
+            if (tree.search(s) != null) {
+                found++;
+            }
+        }
+        long cost = System.nanoTime() - begin;
+        if (found != corpus.size()) {
+            throw new IllegalStateException("found " + found + " of " + corpus.size());
+        }
+        return cost;
+    }
+}
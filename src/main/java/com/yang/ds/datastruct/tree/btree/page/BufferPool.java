@@ -0,0 +1,265 @@
+package com.yang.ds.datastruct.tree.btree.page;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 页面缓冲池，固定个数的页框缓存文件中的页面，通过FileChannel按页读写
+ *
+ * 1. pin: 页面在缓冲池中直接返回(命中)，否则选一个页框换出，从文件读入(一次页面读)
+ *
+ * 2. 换出使用CLOCK算法: 指针循环扫描页框，跳过固定的页框，访问位为1的清零给第二次机会，为0的换出，
+ * 效果接近LRU，命中的时候只设置访问位，不需要像LRU链表一样移动节点
+ *
+ * 3. 脏页换出或者flush的时候写回文件
+ *
+ * 4. 页框的分配(pin/allocate/unpin/换出/flush/truncate)用缓冲池对象的锁串行，多个线程可以同时pin页面并行读，
+ * 页面内容都是按绝对位置读，固定的页面不会被换出；同时固定的页面个数不能超过页框个数，否则抛出IllegalStateException。
+ * 同一个页面的读写之间由调用方自己同步
+ * */
+public class BufferPool implements Closeable {
+
+    private final RandomAccessFile file;
+
+    private final FileChannel channel;
+
+    private final int pageSize;
+
+    private final Page[] frames;
+
+    /**页号 -> 页框*/
+    private final Map<Long, Page> pageTable;
+
+    /**CLOCK指针*/
+    private int hand;
+
+    /**文件中的页面个数(包括还没写回的新页面)*/
+    private long pageCount;
+
+    private long hits;
+
+    private long reads;
+
+    private long writes;
+
+    /**
+     * @param path 文件，不存在就创建
+     * @param pageSize 页面大小
+     * @param capacity 缓冲池页框个数
+     * */
+    public BufferPool(File path, int pageSize, int capacity) {
+        if (pageSize < 64)
+            throw new IllegalArgumentException("Illegal page size: " + pageSize);
+        if (capacity < 2)
+            throw new IllegalArgumentException("Illegal buffer pool capacity: " + capacity);
+        this.pageSize = pageSize;
+        frames = new Page[capacity];
+        for (int i = 0; i < capacity; i++) {
+            frames[i] = new Page(pageSize);
+        }
+        pageTable = new HashMap<>(capacity * 2);
+        try {
+            file = new RandomAccessFile(path, "rw");
+            channel = file.getChannel();
+            pageCount = (channel.size() + pageSize - 1) / pageSize;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 固定页面，不在缓冲池中从文件读入
+     * @param pageId 页号
+     * */
+    public synchronized Page pin(long pageId) {
+        if (pageId < 0 || pageId >= pageCount)
+            throw new IllegalArgumentException("Illegal page id: " + pageId + ", page count: " + pageCount);
+        Page page = pageTable.get(pageId);
+        if (page != null) {
+            hits++;
+        } else {
+            page = evict();
+            read(pageId, page);
+            page.id = pageId;
+            pageTable.put(pageId, page);
+        }
+        page.pinCount++;
+        page.referenced = true;
+        return page;
+    }
+
+    /**
+     * 在文件末尾分配一个新页面并固定，内容全是0，标记为脏页
+     * */
+    public synchronized Page allocate() {
+        Page page = evict();
+        Arrays.fill(page.data, (byte) 0);
+        page.id = pageCount++;
+        page.dirty = true;
+        page.pinCount = 1;
+        page.referenced = true;
+        pageTable.put(page.id, page);
+        return page;
+    }
+
+    /**
+     * 取消固定
+     * @param dirty 是否修改过
+     * */
+    public synchronized void unpin(Page page, boolean dirty) {
+        if (page.pinCount <= 0)
+            throw new IllegalStateException("Page " + page.id + " is not pinned");
+        page.pinCount--;
+        page.dirty |= dirty;
+    }
+
+    /**
+     * 选一个没有固定的页框，脏页先写回
+     * */
+    private Page evict() {
+        // 扫描两圈，第一圈清访问位，第二圈一定能找到没有固定的页框
+        for (int i = 0; i < frames.length * 2; i++) {
+            Page page = frames[hand];
+            hand = hand + 1 == frames.length ? 0 : hand + 1;
+            if (page.pinCount > 0) {
+                continue;
+            }
+            if (page.referenced) {
+                page.referenced = false;
+                continue;
+            }
+            if (page.id >= 0) {
+                if (page.dirty) {
+                    write(page);
+                }
+                pageTable.remove(page.id);
+                page.id = -1;
+            }
+            return page;
+        }
+        throw new IllegalStateException("All " + frames.length + " pages are pinned");
+    }
+
+    private void read(long pageId, Page page) {
+        reads++;
+        ByteBuffer buffer = ByteBuffer.wrap(page.data);
+        try {
+            while (buffer.hasRemaining()) {
+                // 文件末尾还没写回的部分读不到，补0
+                if (channel.read(buffer, pageId * pageSize + buffer.position()) < 0) {
+                    Arrays.fill(page.data, buffer.position(), pageSize, (byte) 0);
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        page.dirty = false;
+    }
+
+    private void write(Page page) {
+        writes++;
+        ByteBuffer buffer = ByteBuffer.wrap(page.data);
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, page.id * pageSize + buffer.position());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        page.dirty = false;
+    }
+
+    /**
+     * 所有脏页写回文件并刷盘
+     * */
+    public synchronized void flush() {
+        for (Page page : frames) {
+            if (page.id >= 0 && page.dirty) {
+                write(page);
+            }
+        }
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 截断到pages个页面，后面的页面丢弃(包括缓冲池中的脏页)
+     * */
+    public synchronized void truncate(long pages) {
+        for (Page page : frames) {
+            if (page.id >= pages) {
+                if (page.pinCount > 0)
+                    throw new IllegalStateException("Page " + page.id + " is pinned");
+                pageTable.remove(page.id);
+                page.id = -1;
+                page.dirty = false;
+            }
+        }
+        pageCount = Math.min(pageCount, pages);
+        try {
+            channel.truncate(pageCount * pageSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public int pageSize() {
+        return pageSize;
+    }
+
+    public synchronized long pageCount() {
+        return pageCount;
+    }
+
+    public int capacity() {
+        return frames.length;
+    }
+
+    /**
+     * 命中次数
+     * */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * 从文件读页面的次数
+     * */
+    public synchronized long reads() {
+        return reads;
+    }
+
+    /**
+     * 写页面到文件的次数
+     * */
+    public synchronized long writes() {
+        return writes;
+    }
+
+    public synchronized void resetStats() {
+        hits = reads = writes = 0;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            flush();
+            channel.close();
+            file.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.yang.ds.datastruct.tree.btree.page;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 缓冲池中的一个页框，装着文件中的一个页面
+ * 使用前通过BufferPool.pin固定，用完unpin，固定的页面不会被换出
+ * */
+public final class Page {
+
+    /**页号，页面在文件中的位置是id * pageSize，-1表示空闲页框*/
+    long id = -1;
+
+    final byte[] data;
+
+    final ByteBuffer buffer;
+
+    /**固定次数*/
+    int pinCount;
+
+    /**修改过，换出之前需要写回文件*/
+    boolean dirty;
+
+    /**CLOCK算法的访问位*/
+    boolean referenced;
+
+    Page(int pageSize) {
+        data = new byte[pageSize];
+        buffer = ByteBuffer.wrap(data);
+    }
+
+    public long id() {
+        return id;
+    }
+
+    /**
+     * 页面内容，按绝对位置读写
+     * */
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * 页面内容的底层数组，页面内移动数据用
+     * */
+    public byte[] data() {
+        return data;
+    }
+}
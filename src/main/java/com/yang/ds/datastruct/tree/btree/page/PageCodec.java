@@ -0,0 +1,97 @@
+package com.yang.ds.datastruct.tree.btree.page;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 定长的key/value在页面中的编码，页面里面每个元素的位置都是固定的，可以直接按下标二分查找
+ * */
+public interface PageCodec<T> {
+
+    /**
+     * 编码之后的字节数
+     * */
+    int size();
+
+    /**
+     * 写入页面
+     * @param buffer 页面
+     * @param offset 页面内的位置
+     * */
+    void write(ByteBuffer buffer, int offset, T value);
+
+    /**
+     * 从页面读取
+     * */
+    T read(ByteBuffer buffer, int offset);
+
+    PageCodec<Long> LONG = new PageCodec<Long>() {
+        @Override
+        public int size() {
+            return 8;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, int offset, Long value) {
+            buffer.putLong(offset, value);
+        }
+
+        @Override
+        public Long read(ByteBuffer buffer, int offset) {
+            return buffer.getLong(offset);
+        }
+    };
+
+    PageCodec<Integer> INT = new PageCodec<Integer>() {
+        @Override
+        public int size() {
+            return 4;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, int offset, Integer value) {
+            buffer.putInt(offset, value);
+        }
+
+        @Override
+        public Integer read(ByteBuffer buffer, int offset) {
+            return buffer.getInt(offset);
+        }
+    };
+
+    /**
+     * 最长maxBytes字节(UTF-8)的字符串，[长度2字节][内容]，超长抛出IllegalArgumentException
+     * */
+    static PageCodec<String> fixedString(final int maxBytes) {
+        if (maxBytes <= 0 || maxBytes > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Illegal max bytes: " + maxBytes);
+        }
+        return new PageCodec<String>() {
+            @Override
+            public int size() {
+                return 2 + maxBytes;
+            }
+
+            @Override
+            public void write(ByteBuffer buffer, int offset, String value) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                if (bytes.length > maxBytes) {
+                    throw new IllegalArgumentException("String longer than " + maxBytes + " bytes: " + value);
+                }
+                buffer.putShort(offset, (short) bytes.length);
+                for (int i = 0; i < bytes.length; i++) {
+                    buffer.put(offset + 2 + i, bytes[i]);
+                }
+            }
+
+            @Override
+            public String read(ByteBuffer buffer, int offset) {
+                byte[] bytes = new byte[buffer.getShort(offset)];
+                for (int i = 0; i < bytes.length; i++) {
+                    bytes[i] = buffer.get(offset + 2 + i);
+                }
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+    }
+}
@@ -0,0 +1,450 @@
+package com.yang.ds.datastruct.tree.btree.page;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * 只追加的预写日志(WAL)，记录每次insert/delete，进程崩溃之后按顺序重放恢复内存中的数据
+ *
+ * 1. 每条记录定长: [lsn 8][类型 1][key][value][crc32 4]，lsn是从1开始连续递增的日志序号，
+ * key/value通过PageCodec编码，delete记录的value部分是0
+ *
+ * 2. 组提交: append只把记录写进内存缓冲区，sync(lsn)等到lsn之前的记录都刷盘才返回。
+ * 第一个需要刷盘的线程作为leader，把缓冲区里所有线程追加的记录一次write + fsync，
+ * 其它线程等待leader刷完，一次fsync提交一批记录。
+ * syncInterval大于0的时候leader先等到距离上一次fsync满syncInterval，等待期间追加的记录一起提交，
+ * fsync的次数最多是每个syncInterval一次，用提交延迟换吞吐
+ *
+ * 3. 日志分成多个段文件wal-{第一条记录的lsn}.log，checkpoint的时候rollover切换到新段，
+ * checkpoint落盘之后deleteBefore删除旧段
+ *
+ * 4. 崩溃的时候最后一条记录可能只写了一部分，recover遇到不完整、crc不对或者lsn不连续的记录就认为日志到此结束，
+ * 把最后一个段截断到最后一条完整的记录；不是最后一个段出现这种情况说明文件损坏，抛出IllegalStateException
+ *
+ * 线程安全
+ * */
+public class WriteAheadLog<K, V> implements Closeable {
+
+    public static final byte INSERT = 1;
+
+    public static final byte DELETE = 2;
+
+    static final String SEGMENT_PREFIX = "wal-";
+
+    static final String SEGMENT_SUFFIX = ".log";
+
+    private final File dir;
+
+    private final PageCodec<K> keyCodec;
+
+    private final PageCodec<V> valueCodec;
+
+    private final int recordSize;
+
+    private final long syncIntervalNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**leader刷盘完成*/
+    private final Condition flushed = lock.newCondition();
+
+    /**当前段*/
+    private FileChannel channel;
+
+    /**等待刷盘的记录，leader刷盘的时候和spare交换，其它线程继续往新的缓冲区追加*/
+    private ByteBuffer buffer;
+
+    private ByteBuffer spare;
+
+    private final CRC32 crc = new CRC32();
+
+    /**最后追加的lsn*/
+    private long lastLsn;
+
+    /**已经刷盘的lsn*/
+    private long durableLsn;
+
+    /**有leader正在刷盘*/
+    private boolean flushing;
+
+    private long lastSyncNanos;
+
+    private long syncs;
+
+    private boolean closed;
+
+    /**刷盘失败之后缓冲区的记录已经丢失，不能再提交*/
+    private IOException failure;
+
+    /**
+     * 打开目录中的日志，使用之前先调用recover
+     * @param dir 日志目录，不存在就创建
+     * @param syncInterval 两次fsync的最小间隔，0表示需要的时候马上刷盘
+     * */
+    public WriteAheadLog(File dir, PageCodec<K> keyCodec, PageCodec<V> valueCodec, long syncInterval, TimeUnit unit) {
+        if (syncInterval < 0)
+            throw new IllegalArgumentException("Illegal sync interval: " + syncInterval);
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new UncheckedIOException(new IOException("Can not create directory " + dir));
+        this.dir = dir;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        recordSize = 8 + 1 + keyCodec.size() + valueCodec.size() + 4;
+        syncIntervalNanos = unit.toNanos(syncInterval);
+        buffer = ByteBuffer.allocate(recordSize * 64);
+        spare = ByteBuffer.allocate(recordSize * 64);
+    }
+
+    /**
+     * 按lsn顺序重放afterLsn之后的记录，截断最后不完整的记录，打开最后一个段继续追加
+     * @param afterLsn checkpoint包含的最后一个lsn，之前的记录跳过
+     * @param insert 重放insert
+     * @param delete 重放delete
+     * @return 重放的记录个数
+     * */
+    public long recover(long afterLsn, BiConsumer<K, V> insert, Consumer<K> delete) {
+        lock.lock();
+        try {
+            if (channel != null)
+                throw new IllegalStateException("WAL is already recovered");
+            long[] segments = segments();
+            long expect = -1, replayed = 0;
+            ByteBuffer record = ByteBuffer.allocate(recordSize);
+            ByteBuffer block = ByteBuffer.allocate(recordSize * 1024);
+            for (int i = 0; i < segments.length; i++) {
+                boolean last = i == segments.length - 1;
+                // 段里面的记录都在checkpoint中，上次checkpoint之后没来得及删除
+                if (!last && segments[i + 1] - 1 <= afterLsn) {
+                    delete(segments[i]);
+                    continue;
+                }
+                if (expect < 0) {
+                    if (segments[i] > afterLsn + 1)
+                        throw new IllegalStateException("WAL records from lsn " + (afterLsn + 1) + " are missing");
+                    expect = segments[i];
+                } else if (segments[i] != expect) {
+                    throw new IllegalStateException("WAL segment " + segmentFile(segments[i]) + " does not start with lsn " + expect);
+                }
+                try (FileChannel in = FileChannel.open(segmentFile(segments[i]).toPath(), StandardOpenOption.READ,
+                        StandardOpenOption.WRITE)) {
+                    long position = 0, size = in.size();
+                    block.clear().flip();
+                    while (true) {
+                        if (block.remaining() < recordSize) {
+                            block.compact();
+                            while (block.hasRemaining()) {
+                                if (in.read(block, position + block.position()) <= 0) {
+                                    break;
+                                }
+                            }
+                            block.flip();
+                        }
+                        if (block.remaining() < recordSize) {
+                            break;
+                        }
+                        block.get(record.array());
+                        byte type = record.get(8);
+                        if (record.getLong(0) != expect || (type != INSERT && type != DELETE) || !checkCrc(record)) {
+                            break;
+                        }
+                        if (expect > afterLsn) {
+                            K key = keyCodec.read(record, 9);
+                            if (type == INSERT) {
+                                insert.accept(key, valueCodec.read(record, 9 + keyCodec.size()));
+                            } else {
+                                delete.accept(key);
+                            }
+                            replayed++;
+                        }
+                        expect++;
+                        position += recordSize;
+                    }
+                    if (position < size) {
+                        if (!last)
+                            throw new IllegalStateException("WAL segment " + segmentFile(segments[i]) + " is corrupted at " + position);
+                        in.truncate(position);
+                        in.force(true);
+                    }
+                }
+            }
+            if (segments.length == 0 || expect - 1 < afterLsn) {
+                // 没有日志，或者日志都在checkpoint中(比如checkpoint之后的段还没有写入就被删除了)
+                for (long segment : segments) {
+                    delete(segment);
+                }
+                expect = afterLsn + 1;
+                segments = new long[]{expect};
+            }
+            lastLsn = durableLsn = expect - 1;
+            channel = FileChannel.open(segmentFile(segments[segments.length - 1]).toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE);
+            channel.position(channel.size());
+            return replayed;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean checkCrc(ByteBuffer record) {
+        crc.reset();
+        crc.update(record.array(), 0, recordSize - 4);
+        return (int) crc.getValue() == record.getInt(recordSize - 4);
+    }
+
+    /**
+     * 追加一条记录到缓冲区，不等待刷盘
+     * @param type INSERT或者DELETE
+     * @param value delete的时候忽略
+     * @return 记录的lsn
+     * */
+    public long append(byte type, K key, V value) {
+        if (type != INSERT && type != DELETE)
+            throw new IllegalArgumentException("Illegal record type: " + type);
+        lock.lock();
+        try {
+            checkOpen();
+            if (buffer.remaining() < recordSize) {
+                ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+            int offset = buffer.position();
+            byte[] data = buffer.array();
+            // 先编码，codec抛出异常的时候缓冲区不变
+            keyCodec.write(buffer, offset + 9, key);
+            if (type == INSERT) {
+                valueCodec.write(buffer, offset + 9 + keyCodec.size(), value);
+            } else {
+                Arrays.fill(data, offset + 9 + keyCodec.size(), offset + recordSize - 4, (byte) 0);
+            }
+            long lsn = lastLsn + 1;
+            buffer.putLong(offset, lsn);
+            buffer.put(offset + 8, type);
+            crc.reset();
+            crc.update(data, offset, recordSize - 4);
+            buffer.putInt(offset + recordSize - 4, (int) crc.getValue());
+            buffer.position(offset + recordSize);
+            lastLsn = lsn;
+            return lsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 等到lsn之前(包括lsn)的记录都刷盘
+     * */
+    public void sync(long lsn) {
+        lock.lock();
+        try {
+            while (durableLsn < lsn) {
+                checkOpen();
+                if (flushing) {
+                    flushed.awaitUninterruptibly();
+                    continue;
+                }
+                flushing = true;
+                try {
+                    // 等待期间其它线程追加的记录一起提交
+                    long delay = lastSyncNanos + syncIntervalNanos - System.nanoTime();
+                    while (delay > 0) {
+                        try {
+                            delay = flushed.awaitNanos(delay);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            break;
+                        }
+                    }
+                    ByteBuffer data = buffer;
+                    long upTo = lastLsn;
+                    buffer = spare;
+                    buffer.clear();
+                    spare = data;
+                    data.flip();
+                    FileChannel out = channel;
+                    // 释放锁写文件，其它线程可以继续追加
+                    lock.unlock();
+                    try {
+                        while (data.hasRemaining()) {
+                            out.write(data);
+                        }
+                        out.force(false);
+                    } catch (IOException e) {
+                        failure = e;
+                        throw e;
+                    } finally {
+                        lock.lock();
+                    }
+                    durableLsn = upTo;
+                    lastSyncNanos = System.nanoTime();
+                    syncs++;
+                } finally {
+                    flushing = false;
+                    flushed.signalAll();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 缓冲区的记录都刷盘，之后的记录写到新的段
+     * @return 旧段中最后一条记录的lsn
+     * */
+    public long rollover() {
+        lock.lock();
+        try {
+            checkOpen();
+            while (flushing) {
+                flushed.awaitUninterruptibly();
+            }
+            buffer.flip();
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            }
+            buffer.clear();
+            channel.close();
+            durableLsn = lastLsn;
+            flushed.signalAll();
+            channel = FileChannel.open(segmentFile(lastLsn + 1).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            return lastLsn;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 删除记录都不超过lsn的段，当前段不删除
+     * */
+    public void deleteBefore(long lsn) {
+        lock.lock();
+        try {
+            long[] segments = segments();
+            for (int i = 0; i < segments.length - 1 && segments[i + 1] - 1 <= lsn; i++) {
+                delete(segments[i]);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long[] segments() {
+        List<Long> list = new ArrayList<>();
+        String[] names = dir.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    list.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                }
+            }
+        }
+        long[] segments = new long[list.size()];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = list.get(i);
+        }
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    private File segmentFile(long firstLsn) {
+        return new File(dir, String.format("%s%020d%s", SEGMENT_PREFIX, firstLsn, SEGMENT_SUFFIX));
+    }
+
+    private void delete(long segment) {
+        File file = segmentFile(segment);
+        if (!file.delete() && file.exists())
+            throw new UncheckedIOException(new IOException("Can not delete " + file));
+    }
+
+    private void checkOpen() {
+        if (failure != null)
+            throw new IllegalStateException("WAL write failed", failure);
+        if (channel == null)
+            throw new IllegalStateException(closed ? "WAL is closed" : "WAL is not recovered");
+    }
+
+    public long lastLsn() {
+        lock.lock();
+        try {
+            return lastLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long durableLsn() {
+        lock.lock();
+        try {
+            return durableLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * fsync次数
+     * */
+    public long syncs() {
+        lock.lock();
+        try {
+            return syncs;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int recordSize() {
+        return recordSize;
+    }
+
+    /**
+     * 缓冲区的记录刷盘之后关闭
+     * */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (channel == null) {
+                closed = true;
+                return;
+            }
+            sync(lastLsn);
+            channel.close();
+            channel = null;
+            closed = true;
+            flushed.signalAll();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -1,12 +1,26 @@
 package test.ds;
 
+import com.yang.ds.datastruct.tree.bstree.BSNode;
 import com.yang.ds.datastruct.tree.bstree.BSTree;
+import com.yang.ds.datastruct.tree.bstree.TreeNode;
+import com.yang.ds.datastruct.tree.bstree.impl.AbstractBSTree;
 import com.yang.ds.datastruct.tree.bstree.impl.BSTreeImpl;
+import com.yang.ds.datastruct.tree.bstree.impl.PersistentRBTree;
 import com.yang.ds.datastruct.tree.bstree.impl.RBTreeImpl;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
 
 /**
  * 二叉树测试
@@ -116,4 +130,299 @@ public class BSTreeTest {
         System.out.println("感谢所有TV所有case走完.......");
 
     }
+
+    /**
+     * 红黑树随机增删，每一步检查红黑树的性质(节点toString以颜色R/B开头)
+     * */
+    @Test
+    public void rbTreeRandomTest() {
+        Random random = new Random(1);
+        for (int round = 0; round < 100; round++) {
+            RBTreeImpl<Integer, Integer> tree = new RBTreeImpl<>();
+            TreeSet<Integer> expect = new TreeSet<>();
+            for (int i = 0; i < 300; i++) {
+                int key = random.nextInt(100);
+                if (random.nextBoolean()) {
+                    if (expect.add(key)) {
+                        tree.add(key, key);
+                    }
+                } else {
+                    tree.delete(key);
+                    expect.remove(key);
+                }
+                BSNode<Integer, Integer> root = tree.root();
+                Assert.assertTrue(root == null || isBlack(root));
+                blackHeight(root, null);
+                checkSize(root);
+                Assert.assertEquals(new ArrayList<>(expect), tree.midErgodic());
+            }
+        }
+    }
+
+    /**
+     * 二叉树和红黑树随机增删，floor/ceiling/rank/select/count/range和TreeMap对比，子树节点个数一直正确
+     * */
+    @Test
+    public void orderStatisticTest() {
+        Random random = new Random(3);
+        for (int type = 0; type < 2; type++) {
+            BSTree<Integer, String> tree = type == 0 ? new BSTreeImpl<Integer, String>() : new RBTreeImpl<Integer, String>();
+            TreeMap<Integer, String> map = new TreeMap<>();
+            for (int i = 0; i < 5000; i++) {
+                int key = random.nextInt(1000);
+                if (random.nextInt(3) == 0) {
+                    tree.delete(key);
+                    map.remove(key);
+                } else if (!map.containsKey(key)) {
+                    tree.add(key, key + "v");
+                    map.put(key, key + "v");
+                }
+                if (i % 50 != 0) {
+                    continue;
+                }
+                checkSize(((AbstractBSTree<Integer, String>) tree).root());
+                Assert.assertEquals(map.size(), tree.size());
+                List<Integer> keys = new ArrayList<>(map.keySet());
+                for (int k = 0; k < keys.size(); k++) {
+                    Assert.assertEquals(keys.get(k), tree.select(k));
+                }
+                for (int q = -1; q <= 1001; q++) {
+                    Assert.assertEquals(map.floorKey(q), tree.floor(q));
+                    Assert.assertEquals(map.ceilingKey(q), tree.ceiling(q));
+                    Assert.assertEquals(map.headMap(q).size(), tree.rank(q));
+                }
+                for (int q = 0; q < 20; q++) {
+                    int lo = random.nextInt(1100) - 50, hi = lo + random.nextInt(300) - 20;
+                    List<String> expect = lo <= hi ? new ArrayList<>(map.subMap(lo, true, hi, true).values())
+                            : new ArrayList<String>();
+                    Assert.assertEquals(expect, tree.range(lo, hi));
+                    Assert.assertEquals(expect.size(), tree.count(lo, hi));
+                }
+                Assert.assertEquals(new ArrayList<>(map.headMap(500, true).values()), tree.range(null, 500));
+                Assert.assertEquals(map.tailMap(500, true).size(), tree.count(500, null));
+                Assert.assertEquals(new ArrayList<>(map.values()), tree.range(null, null));
+            }
+            try {
+                tree.select(tree.size());
+                Assert.fail("rank out of range");
+            } catch (IllegalArgumentException e) {
+                // 期望
+            }
+        }
+    }
+
+    /**
+     * 中序、前序、后序迭代器和递归遍历的结果一样，范围迭代器和TreeMap一样，
+     * 拆分之后每一部分的个数准确，并行流的结果保持顺序
+     * */
+    @Test
+    public void iteratorTest() {
+        Random random = new Random(9);
+        for (int type = 0; type < 2; type++) {
+            for (int n : new int[]{0, 1, 2, 3, 10, 1000}) {
+                BSTree<Integer, String> tree = type == 0 ? new BSTreeImpl<Integer, String>() : new RBTreeImpl<Integer, String>();
+                TreeMap<Integer, String> map = new TreeMap<>();
+                while (map.size() < n) {
+                    int key = random.nextInt(n * 4);
+                    if (!map.containsKey(key)) {
+                        tree.add(key, key + "v");
+                        map.put(key, key + "v");
+                    }
+                }
+                BSNode<Integer, String> root = ((AbstractBSTree<Integer, String>) tree).root();
+                List<String> pre = new ArrayList<>(), after = new ArrayList<>();
+                recursiveErgodic(root, pre, after);
+                Assert.assertEquals(new ArrayList<>(map.values()), toList(tree.midIterator()));
+                Assert.assertEquals(pre, toList(tree.preIterator()));
+                Assert.assertEquals(after, toList(tree.afterIterator()));
+                Assert.assertEquals(pre, tree.preErgodic());
+                Assert.assertEquals(after, tree.afterErgodic());
+                for (int q = 0; q < 50; q++) {
+                    int lo = random.nextInt(n * 4 + 2) - 1, hi = lo + random.nextInt(n + 1);
+                    Assert.assertEquals(new ArrayList<>(map.subMap(lo, true, hi, true).values()), toList(tree.rangeIterator(lo, hi)));
+                }
+                Assert.assertEquals(new ArrayList<>(map.headMap(n, true).values()), toList(tree.rangeIterator(null, n)));
+                Assert.assertEquals(new ArrayList<>(map.tailMap(n, true).values()), toList(tree.rangeIterator(n, null)));
+                try {
+                    Iterator<String> it = tree.rangeIterator(n * 4, null);
+                    it.next();
+                    Assert.fail("no more element");
+                } catch (NoSuchElementException e) {
+                    // 期望
+                }
+
+                Spliterator<String> left = tree.spliterator();
+                Assert.assertEquals(n, left.estimateSize());
+                Spliterator<String> prefix = left.trySplit();
+                List<String> values = new ArrayList<>();
+                if (n < 2) {
+                    Assert.assertNull(prefix);
+                } else {
+                    Assert.assertEquals(n / 2, prefix.estimateSize());
+                    Assert.assertEquals(n - n / 2, left.estimateSize());
+                    prefix.forEachRemaining(values::add);
+                }
+                left.forEachRemaining(values::add);
+                Assert.assertEquals(new ArrayList<>(map.values()), values);
+                Assert.assertEquals(new ArrayList<>(map.values()), tree.stream(true).collect(Collectors.toList()));
+                Assert.assertEquals(n, tree.stream(true).count());
+            }
+        }
+    }
+
+    /**
+     * 持久化红黑树随机put/remove，每一步都检查红黑树的性质，保存下来的旧版本最后还和当时的TreeMap一样，
+     * 查询、遍历、拆分的结果和TreeMap一样
+     * */
+    @Test
+    public void persistentRBTreeTest() {
+        Random random = new Random(11);
+        PersistentRBTree<Integer, String> tree = new PersistentRBTree<>();
+        TreeMap<Integer, String> map = new TreeMap<>();
+        List<PersistentRBTree<Integer, String>> versions = new ArrayList<>();
+        List<TreeMap<Integer, String>> expects = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            int key = random.nextInt(500);
+            PersistentRBTree<Integer, String> old = tree;
+            if (random.nextInt(3) == 0) {
+                tree = tree.remove(key);
+                Assert.assertEquals(map.remove(key) == null, tree == old);
+            } else {
+                String value = key + "v" + i;
+                tree = tree.put(key, value);
+                map.put(key, value);
+            }
+            TreeNode<Integer, String> root = tree.root();
+            Assert.assertTrue(isBlack(root));
+            blackHeight(root);
+            checkSize(root);
+            Assert.assertEquals(map.size(), tree.size());
+            if (i % 100 == 0) {
+                versions.add(tree);
+                expects.add(new TreeMap<>(map));
+            }
+        }
+        for (int v = 0; v < versions.size(); v++) {
+            PersistentRBTree<Integer, String> version = versions.get(v);
+            TreeMap<Integer, String> expect = expects.get(v);
+            Assert.assertEquals(new ArrayList<>(expect.values()), version.midErgodic());
+            for (int q = -1; q <= 501; q++) {
+                Assert.assertEquals(expect.get(q), version.get(q));
+                Assert.assertEquals(expect.floorKey(q), version.floor(q));
+                Assert.assertEquals(expect.ceilingKey(q), version.ceiling(q));
+                Assert.assertEquals(expect.headMap(q).size(), version.rank(q));
+            }
+            List<Integer> keys = new ArrayList<>(expect.keySet());
+            for (int k = 0; k < keys.size(); k++) {
+                Assert.assertEquals(keys.get(k), version.select(k));
+            }
+            for (int q = 0; q < 20; q++) {
+                int lo = random.nextInt(550) - 20, hi = lo + random.nextInt(150) - 10;
+                List<String> range = lo <= hi ? new ArrayList<>(expect.subMap(lo, true, hi, true).values())
+                        : new ArrayList<String>();
+                Assert.assertEquals(range, version.range(lo, hi));
+                Assert.assertEquals(range, toList(version.rangeIterator(lo, hi)));
+                Assert.assertEquals(range.size(), version.count(lo, hi));
+            }
+            List<String> pre = new ArrayList<>(), after = new ArrayList<>();
+            recursiveErgodic(version.root(), pre, after);
+            Assert.assertEquals(pre, toList(version.preIterator()));
+            Assert.assertEquals(after, toList(version.afterIterator()));
+            Assert.assertEquals(new ArrayList<>(expect.values()), version.stream(true).collect(Collectors.toList()));
+            if (!expect.isEmpty()) {
+                Assert.assertEquals(expect.firstEntry().getValue(), version.getMin());
+                Assert.assertEquals(expect.lastEntry().getValue(), version.getMax());
+            }
+        }
+
+        // 值是同一个对象、删除不存在的key不产生新版本
+        String value = tree.get(tree.select(0));
+        Assert.assertSame(tree, tree.put(tree.select(0), value));
+        Assert.assertSame(tree, tree.remove(-1));
+        // 顺序插入，路径栈的大小足够
+        PersistentRBTree<Integer, String> sequential = new PersistentRBTree<>();
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            sequential = sequential.put(i, i + "v");
+            values.add(i + "v");
+        }
+        blackHeight(sequential.root());
+        Assert.assertEquals(values, toList(sequential.midIterator()));
+        Assert.assertEquals(10000, toList(sequential.afterIterator()).size());
+        Assert.assertEquals(10000, toList(sequential.preIterator()).size());
+        for (int i = 0; i < 10000; i += 2) {
+            sequential = sequential.remove(i);
+        }
+        blackHeight(sequential.root());
+        checkSize(sequential.root());
+        Assert.assertEquals(5000, sequential.size());
+        Assert.assertEquals(new PersistentRBTree<Integer, String>().midErgodic(), new ArrayList<String>());
+        try {
+            tree.put(null, "v");
+            Assert.fail("null key");
+        } catch (IllegalArgumentException e) {
+            // 期望
+        }
+    }
+
+    private List<String> toList(Iterator<String> iterator) {
+        List<String> values = new ArrayList<>();
+        while (iterator.hasNext()) {
+            values.add(iterator.next());
+        }
+        return values;
+    }
+
+    private void recursiveErgodic(TreeNode<Integer, String> node, List<String> pre, List<String> after) {
+        if (node == null) {
+            return;
+        }
+        pre.add(node.value());
+        recursiveErgodic(node.left(), pre, after);
+        recursiveErgodic(node.right(), pre, after);
+        after.add(node.value());
+    }
+
+    /**
+     * 每个节点的子树节点个数等于左右子树个数 + 1
+     * */
+    private int checkSize(TreeNode node) {
+        if (node == null) {
+            return 0;
+        }
+        int size = checkSize(node.left()) + checkSize(node.right()) + 1;
+        Assert.assertEquals(size, node.size());
+        return size;
+    }
+
+    private boolean isBlack(TreeNode node) {
+        return node == null || node.toString().startsWith("B");
+    }
+
+    /**
+     * 检查父节点引用，红色节点没有红色孩子，每条路径黑色节点个数一样
+     * */
+    private int blackHeight(BSNode node, BSNode parent) {
+        if (node == null) {
+            return 1;
+        }
+        Assert.assertSame(parent, node.parent());
+        Assert.assertTrue(isBlack(node) || (isBlack(node.left()) && isBlack(node.right())));
+        int left = blackHeight(node.left(), node);
+        Assert.assertEquals(left, blackHeight(node.right(), node));
+        return left + (isBlack(node) ? 1 : 0);
+    }
+
+    /**
+     * 红色节点没有红色孩子，每条路径黑色节点个数一样，不检查父节点引用(持久化的节点没有父节点)
+     * */
+    private int blackHeight(TreeNode node) {
+        if (node == null) {
+            return 1;
+        }
+        Assert.assertTrue(isBlack(node) || (isBlack(node.left()) && isBlack(node.right())));
+        int left = blackHeight(node.left());
+        Assert.assertEquals(left, blackHeight(node.right()));
+        return left + (isBlack(node) ? 1 : 0);
+    }
 }
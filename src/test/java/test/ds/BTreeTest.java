@@ -1,14 +1,46 @@
 package test.ds;
 
+import com.yang.ds.algorithm.utils.YUtils;
+import com.yang.ds.datastruct.tree.btree.Aggregator;
 import com.yang.ds.datastruct.tree.btree.BPlusTree;
 import com.yang.ds.datastruct.tree.btree.BTree;
+import com.yang.ds.datastruct.tree.btree.RangeCursor;
 import com.yang.ds.datastruct.tree.btree.impl.BPlusTreeImpl;
 import com.yang.ds.datastruct.tree.btree.impl.BTreeImpl;
+import com.yang.ds.datastruct.tree.btree.impl.ConcurrentBLinkTree;
+import com.yang.ds.datastruct.tree.btree.impl.CowBPlusTree;
+import com.yang.ds.datastruct.tree.btree.impl.DurableBPlusTree;
+import com.yang.ds.datastruct.tree.btree.impl.IntBPlusTree;
+import com.yang.ds.datastruct.tree.btree.impl.IntBTree;
+import com.yang.ds.datastruct.tree.btree.impl.LongBPlusTree;
+import com.yang.ds.datastruct.tree.btree.impl.LongBTree;
+import com.yang.ds.datastruct.tree.btree.impl.PagedBPlusTree;
+import com.yang.ds.datastruct.tree.btree.impl.StringBPlusTree;
+import com.yang.ds.datastruct.tree.btree.page.PageCodec;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 /**
  * B树测试类
@@ -107,4 +139,940 @@ public class BTreeTest {
         List<String> rangeList = bPlusTree.searchRange(1, BPlusTree.RangePolicy.INCLUSIVE, 5, BPlusTree.RangePolicy.INCLUSIVE);
         System.out.println(Arrays.toString(rangeList.toArray(new String[]{})));
     }
+
+    /**
+     * 随机添加删除之后，范围游标(正序、倒序、offset、limit、无边界)和并行流与TreeMap对比
+     * */
+    @Test
+    public void rangeCursorTest() {
+        rangeCursorTest(new BPlusTreeImpl<>(4));
+        rangeCursorTest(new ConcurrentBLinkTree<>(4));
+        rangeCursorTest(new IntBPlusTree<>(4));
+        rangeCursorTest(new CowBPlusTree<>(4));
+    }
+
+    private void rangeCursorTest(BPlusTree<Integer, String> tree) {
+        TreeMap<Integer, String> map = new TreeMap<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(5000);
+            if (random.nextInt(3) == 0) {
+                tree.delete(key);
+                map.remove(key);
+            } else {
+                tree.insert(key, key + "v");
+                map.put(key, key + "v");
+            }
+        }
+        BPlusTree.RangePolicy[] policies = BPlusTree.RangePolicy.values();
+        for (int i = 0; i < 300; i++) {
+            Integer begin = random.nextInt(10) == 0 ? null : random.nextInt(5200) - 100;
+            Integer end = random.nextInt(10) == 0 ? null : random.nextInt(5200) - 100;
+            BPlusTree.RangePolicy beginPolicy = policies[random.nextInt(2)], endPolicy = policies[random.nextInt(2)];
+            NavigableMap<Integer, String> expect = map;
+            if (begin != null && end != null && begin > end) {
+                expect = new TreeMap<>();
+            } else {
+                if (begin != null) {
+                    expect = expect.tailMap(begin, beginPolicy == BPlusTree.RangePolicy.INCLUSIVE);
+                }
+                if (end != null) {
+                    expect = expect.headMap(end, endPolicy == BPlusTree.RangePolicy.INCLUSIVE);
+                }
+            }
+            for (boolean descending : new boolean[]{false, true}) {
+                List<Integer> expectKeys = new ArrayList<>(descending ? expect.descendingKeySet() : expect.keySet());
+                int offset = random.nextInt(expectKeys.size() + 10), limit = random.nextInt(expectKeys.size() + 10);
+                List<Integer> keys = new ArrayList<>();
+                Iterator<Map.Entry<Integer, String>> it = tree.rangeIterator(begin, beginPolicy, end, endPolicy, offset, limit, descending);
+                while (it.hasNext()) {
+                    Map.Entry<Integer, String> entry = it.next();
+                    Assert.assertEquals(entry.getKey() + "v", entry.getValue());
+                    keys.add(entry.getKey());
+                }
+                int from = Math.min(offset, expectKeys.size());
+                Assert.assertEquals(expectKeys.subList(from, Math.min(expectKeys.size(), from + limit)), keys);
+
+                keys.clear();
+                RangeCursor<Integer, String> cursor = tree.rangeCursor(begin, beginPolicy, end, endPolicy, descending);
+                while (cursor.next()) {
+                    keys.add(cursor.key());
+                }
+                Assert.assertEquals(expectKeys, keys);
+            }
+            List<Integer> streamKeys = tree.rangeStream(begin, beginPolicy, end, endPolicy, true)
+                    .map(Map.Entry::getKey).collect(Collectors.toList());
+            Assert.assertEquals(new ArrayList<>(expect.keySet()), streamKeys);
+            if (begin != null && end != null) {
+                Assert.assertEquals(new ArrayList<>(expect.values()), tree.searchRange(begin, beginPolicy, end, endPolicy));
+            }
+        }
+    }
+
+    /**
+     * 范围遍历器拆分: 只添加过的树分隔key都存在，拆分的key在(beginKey, endKey)之间，后一半至少有这个key，两部分合起来是整个范围
+     * */
+    @Test
+    public void rangeSplitTest() {
+        rangeSplitTest(new BPlusTreeImpl<Integer, String>(4), i -> i);
+        rangeSplitTest(new ConcurrentBLinkTree<Integer, String>(4), i -> i);
+        rangeSplitTest(new CowBPlusTree<Integer, String>(4), i -> i);
+        rangeSplitTest(new IntBPlusTree<String>(4), i -> i);
+        rangeSplitTest(new LongBPlusTree<String>(4), i -> (long) i);
+        // 分隔key不截断成最短分隔串，都是存在的key
+        rangeSplitTest(new StringBPlusTree<String>(64, 16, false), i -> String.format("%06d", i));
+    }
+
+    private <K extends Comparable<? super K>> void rangeSplitTest(BPlusTree<K, String> tree, IntFunction<K> keyOf) {
+        TreeMap<K, String> map = new TreeMap<>();
+        for (int i = 0; i < 20000; i += 2) {
+            tree.insert(keyOf.apply(i), i + "v");
+            map.put(keyOf.apply(i), i + "v");
+        }
+        int splits = 0;
+        for (int end = 100; end < 20000; end += 7) {
+            K beginKey = keyOf.apply(end - 100), endKey = keyOf.apply(end);
+            Spliterator<Map.Entry<K, String>> suffix = tree.rangeSpliterator(beginKey, BPlusTree.RangePolicy.INCLUSIVE,
+                    endKey, BPlusTree.RangePolicy.EXCLUSIVE);
+            Spliterator<Map.Entry<K, String>> prefix = suffix.trySplit();
+            if (prefix != null) {
+                splits++;
+                long count = StreamSupport.stream(prefix, false).count();
+                Assert.assertTrue(suffix.tryAdvance(e -> { }));
+                count += 1 + StreamSupport.stream(suffix, false).count();
+                Assert.assertEquals(map.subMap(beginKey, endKey).size(), count);
+            }
+        }
+        // 范围里有50个key，阶是4的时候基本上都跨越了多个孩子
+        Assert.assertTrue(splits > 2500);
+    }
+
+    /**
+     * 批量加载之后查找、范围遍历，再随机添加删除，和TreeMap对比，不同的阶、装填因子和元素个数
+     * */
+    @Test
+    public void bulkLoadTest() {
+        Random random = new Random(3);
+        for (int degree : new int[]{3, 4, 5, 16}) {
+            for (double fillFactor : new double[]{0.1, 0.7, 1.0}) {
+                for (int n : new int[]{0, 1, 2, 5, 17, 1000}) {
+                    TreeMap<Integer, String> map = new TreeMap<>();
+                    List<Map.Entry<Integer, String>> entries = new ArrayList<>();
+                    for (int i = 0; i < n; i++) {
+                        map.put(i * 2, i * 2 + "v");
+                        entries.add(new AbstractMap.SimpleImmutableEntry<>(i * 2, i * 2 + "v"));
+                    }
+                    BPlusTree<Integer, String> plus = new BPlusTreeImpl<>(degree);
+                    BPlusTree<Integer, String> blink = new ConcurrentBLinkTree<>(degree);
+                    BTree<Integer, String> tree = new BTreeImpl<>(degree);
+                    BPlusTree<Integer, String> intPlus = new IntBPlusTree<>(degree);
+                    BPlusTree<Integer, String> cow = new CowBPlusTree<>(degree);
+                    BTree<Integer, String> intTree = new IntBTree<>(degree);
+                    plus.insert(-1, "old");
+                    blink.insert(-1, "old");
+                    tree.insert(-1, "old");
+                    intPlus.insert(-1, "old");
+                    cow.insert(-1, "old");
+                    intTree.insert(-1, "old");
+                    plus.bulkLoad(entries.iterator(), fillFactor);
+                    blink.bulkLoad(entries.iterator(), fillFactor);
+                    tree.bulkLoad(entries.iterator(), fillFactor);
+                    intPlus.bulkLoad(entries.iterator(), fillFactor);
+                    cow.bulkLoad(entries.iterator(), fillFactor);
+                    intTree.bulkLoad(entries.iterator(), fillFactor);
+                    checkBulkLoad(plus, tree, map);
+                    checkBulkLoad(blink, tree, map);
+                    checkBulkLoad(intPlus, intTree, map);
+                    checkBulkLoad(cow, tree, map);
+                    for (int i = 0; i < 2 * n; i++) {
+                        int key = random.nextInt(2 * n + 2);
+                        if (random.nextBoolean()) {
+                            plus.delete(key);
+                            blink.delete(key);
+                            tree.delete(key);
+                            intPlus.delete(key);
+                            cow.delete(key);
+                            intTree.delete(key);
+                            map.remove(key);
+                        } else {
+                            plus.insert(key, key + "v");
+                            blink.insert(key, key + "v");
+                            tree.insert(key, key + "v");
+                            intPlus.insert(key, key + "v");
+                            cow.insert(key, key + "v");
+                            intTree.insert(key, key + "v");
+                            map.put(key, key + "v");
+                        }
+                    }
+                    checkBulkLoad(plus, tree, map);
+                    checkBulkLoad(blink, tree, map);
+                    checkBulkLoad(intPlus, intTree, map);
+                    checkBulkLoad(cow, tree, map);
+                }
+            }
+        }
+        try {
+            bPlusTree.bulkLoad(Arrays.<Map.Entry<Integer, String>>asList(new AbstractMap.SimpleImmutableEntry<>(2, "2v"),
+                    new AbstractMap.SimpleImmutableEntry<>(1, "1v")).iterator(), 1.0);
+            Assert.fail("unsorted entries");
+        } catch (IllegalArgumentException e) {
+            // 期望
+        }
+    }
+
+    /**
+     * long key的B树和B+树随机添加删除，和TreeMap对比查找、范围遍历，包括long的边界值
+     * */
+    @Test
+    public void primitiveKeyTreeTest() {
+        Random random = new Random(11);
+        long[] special = {Long.MIN_VALUE, Long.MIN_VALUE + 1, -1, 0, Long.MAX_VALUE - 1, Long.MAX_VALUE};
+        for (int degree : new int[]{3, 4, 5, 16}) {
+            LongBPlusTree<String> plus = new LongBPlusTree<>(degree);
+            LongBTree<String> tree = new LongBTree<>(degree);
+            TreeMap<Long, String> map = new TreeMap<>();
+            for (int i = 0; i < 30000; i++) {
+                long key = random.nextInt(20) == 0 ? special[random.nextInt(special.length)] : random.nextInt(4000) - 2000;
+                if (random.nextInt(3) == 0) {
+                    plus.delete(key);
+                    tree.delete(key);
+                    map.remove(key);
+                } else {
+                    plus.insert(key, key + "v");
+                    tree.insert(key, key + "v");
+                    map.put(key, key + "v");
+                }
+            }
+            Assert.assertEquals(map.size(), plus.size());
+            Assert.assertEquals(map.size(), tree.size());
+            for (long key = -2001; key <= 2001; key++) {
+                Assert.assertEquals(map.get(key), plus.search(key));
+                Assert.assertEquals(map.get(key), tree.search(key));
+            }
+            for (long key : special) {
+                Assert.assertEquals(map.get(key), plus.search(key));
+                Assert.assertEquals(map.get(key), tree.search(key));
+            }
+            for (boolean descending : new boolean[]{false, true}) {
+                List<Long> keys = new ArrayList<>();
+                RangeCursor<Long, String> cursor = plus.rangeCursor(null, null, null, null, descending);
+                while (cursor.next()) {
+                    keys.add(cursor.key());
+                }
+                Assert.assertEquals(new ArrayList<>(descending ? map.descendingKeySet() : map.keySet()), keys);
+            }
+            Assert.assertEquals(new ArrayList<>(map.subMap(-100L, false, Long.MAX_VALUE, true).values()),
+                    plus.searchRange(-100L, BPlusTree.RangePolicy.EXCLUSIVE, Long.MAX_VALUE, BPlusTree.RangePolicy.INCLUSIVE));
+            // 删光之后树退化成一个空叶子
+            for (Long key : new ArrayList<>(map.keySet())) {
+                plus.delete(key);
+                tree.delete(key);
+            }
+            Assert.assertEquals(0, plus.size());
+            Assert.assertEquals(0, tree.size());
+            Assert.assertEquals("[]\n", plus.treeToString());
+            Assert.assertEquals("[]\n", tree.treeToString());
+        }
+    }
+
+    /**
+     * B-link树: 多个线程添加删除各自的key，同时一个线程不停地正序遍历检查有序，最后和期望的结果对比
+     * */
+    @Test
+    public void concurrentBLinkTreeTest() throws InterruptedException {
+        final ConcurrentBLinkTree<Integer, Integer> tree = new ConcurrentBLinkTree<>(4);
+        final int threads = 4, perThread = 20000;
+        final CountDownLatch end = new CountDownLatch(threads);
+        final boolean[] failed = new boolean[1];
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        int key = i * threads + offset;
+                        tree.insert(key, key);
+                        if (!Integer.valueOf(key).equals(tree.search(key))) {
+                            failed[0] = true;
+                        }
+                        // 删除偶数key
+                        if ((key & 1) == 0) {
+                            tree.delete(key);
+                            if (tree.search(key) != null) {
+                                failed[0] = true;
+                            }
+                        }
+                    }
+                    end.countDown();
+                }
+            }).start();
+        }
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (end.getCount() > 0) {
+                    for (boolean descending : new boolean[]{false, true}) {
+                        RangeCursor<Integer, Integer> cursor = tree.rangeCursor(null, null, null, null, descending);
+                        Integer prev = null;
+                        while (cursor.next()) {
+                            if (prev != null && (descending ? cursor.key() >= prev : cursor.key() <= prev)) {
+                                failed[0] = true;
+                            }
+                            prev = cursor.key();
+                        }
+                    }
+                }
+            }
+        });
+        reader.start();
+        end.await();
+        reader.join();
+        Assert.assertFalse(failed[0]);
+        Assert.assertEquals(threads * perThread / 2, tree.size());
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < threads * perThread; i++) {
+            Assert.assertEquals((i & 1) == 0 ? null : Integer.valueOf(i), tree.search(i));
+            if ((i & 1) == 1) {
+                keys.add(i);
+            }
+        }
+        Assert.assertEquals(keys, tree.rangeStream(null, null, null, null, true)
+                .map(Map.Entry::getKey).collect(Collectors.toList()));
+    }
+
+    /**
+     * 磁盘B+树的并行流: 缓冲池只有4个页框，多个线程同时遍历会不停地换出页面，结果和TreeMap一样，
+     * 并行遍历之后继续修改，关闭重新打开之后数据正确；拆分出来的两半都不是空的
+     * */
+    @Test
+    public void pagedBPlusTreeParallelTest() throws Exception {
+        File file = File.createTempFile("paged-bplustree-parallel", ".db");
+        ForkJoinPool forkJoin = new ForkJoinPool(4);
+        try {
+            TreeMap<Integer, String> map = new TreeMap<>();
+            Random random = new Random(17);
+            for (int round = 0; round < 3; round++) {
+                try (final PagedBPlusTree<Integer, String> tree = new PagedBPlusTree<>(file, PageCodec.INT, PageCodec.fixedString(6), 128, 4)) {
+                    Assert.assertEquals(map.size(), tree.size());
+                    for (int i = 0; i < 20000; i++) {
+                        int key = random.nextInt(40000);
+                        String value = key % 1000 + "r" + round;
+                        tree.insert(key, value);
+                        map.put(key, value);
+                    }
+                    for (int i = 0; i < 30; i++) {
+                        final Integer begin = i == 0 ? null : random.nextInt(40000);
+                        final Integer end = i == 0 ? null : begin + random.nextInt(20000);
+                        List<Map.Entry<Integer, String>> expect = new ArrayList<>((i == 0 ? map : map.subMap(begin, true, end, false)).entrySet());
+                        List<Map.Entry<Integer, String>> actual = forkJoin.submit(() -> tree.rangeStream(begin, BPlusTree.RangePolicy.INCLUSIVE,
+                                end, BPlusTree.RangePolicy.EXCLUSIVE, true).collect(Collectors.toList())).get();
+                        Assert.assertEquals(expect, actual);
+                        Assert.assertEquals(expect.size(), (long) forkJoin.submit(() -> tree.rangeStream(begin, BPlusTree.RangePolicy.INCLUSIVE,
+                                end, BPlusTree.RangePolicy.EXCLUSIVE, true).count()).get());
+                    }
+                    // 很多key做一次上边界(其中有的是分隔key)，拆分之后两部分合起来是整个范围；
+                    // 还没有删除过的时候分隔key都存在，拆分的key在(beginKey, endKey)之间，后一半至少有这个key
+                    for (int end = 100; end < 40000; end += 7) {
+                        Spliterator<Map.Entry<Integer, String>> suffix = tree.rangeSpliterator(end - 100, BPlusTree.RangePolicy.INCLUSIVE,
+                                end, BPlusTree.RangePolicy.EXCLUSIVE);
+                        Spliterator<Map.Entry<Integer, String>> prefix = suffix.trySplit();
+                        if (prefix != null) {
+                            long count = StreamSupport.stream(prefix, false).count();
+                            if (round == 0) {
+                                Assert.assertTrue(suffix.tryAdvance(e -> { }));
+                                count++;
+                            }
+                            count += StreamSupport.stream(suffix, false).count();
+                            Assert.assertEquals(map.subMap(end - 100, end).size(), count);
+                        }
+                    }
+                    for (int i = 0; i < 5000; i++) {
+                        int key = random.nextInt(40000);
+                        tree.delete(key);
+                        map.remove(key);
+                    }
+                }
+            }
+            try (PagedBPlusTree<Integer, String> tree = new PagedBPlusTree<>(file, PageCodec.INT, PageCodec.fixedString(6), 128, 8)) {
+                Assert.assertEquals(map.size(), tree.size());
+                for (int key = 0; key < 40000; key++) {
+                    Assert.assertEquals(map.get(key), tree.search(key));
+                }
+            }
+        } finally {
+            forkJoin.shutdown();
+            file.delete();
+        }
+    }
+
+    /**
+     * 磁盘B+树: 很小的页面和缓冲池，频繁分裂和换出，随机添加删除和TreeMap对比，关闭之后重新打开数据还在
+     * */
+    @Test
+    public void pagedBPlusTreeTest() throws IOException {
+        File file = File.createTempFile("paged-bplustree", ".db");
+        try {
+            TreeMap<Integer, String> map = new TreeMap<>();
+            Random random = new Random(7);
+            // 128字节的页面，叶子最多7个元素，非叶子最多7个key
+            try (PagedBPlusTree<Integer, String> tree = new PagedBPlusTree<>(file, PageCodec.INT, PageCodec.fixedString(6), 128, 4)) {
+                for (int i = 0; i < 20000; i++) {
+                    int key = random.nextInt(3000);
+                    if (random.nextInt(3) == 0) {
+                        tree.delete(key);
+                        map.remove(key);
+                    } else {
+                        tree.insert(key, key + "v");
+                        map.put(key, key + "v");
+                    }
+                }
+                Assert.assertEquals(map.size(), tree.size());
+                Assert.assertTrue(tree.pool().writes() > 0);
+            }
+            try (PagedBPlusTree<Integer, String> tree = new PagedBPlusTree<>(file, PageCodec.INT, PageCodec.fixedString(6), 128, 8)) {
+                Assert.assertEquals(map.size(), tree.size());
+                for (int key = -1; key <= 3000; key++) {
+                    Assert.assertEquals(map.get(key), tree.search(key));
+                }
+                for (int i = 0; i < 200; i++) {
+                    int begin = random.nextInt(3100) - 50, end = begin + random.nextInt(500);
+                    NavigableMap<Integer, String> expect = map.subMap(begin, true, end, false);
+                    Assert.assertEquals(new ArrayList<>(expect.values()),
+                            tree.searchRange(begin, BPlusTree.RangePolicy.INCLUSIVE, end, BPlusTree.RangePolicy.EXCLUSIVE));
+                    List<Integer> keys = new ArrayList<>();
+                    Iterator<Map.Entry<Integer, String>> it = tree.rangeIterator(begin, BPlusTree.RangePolicy.INCLUSIVE,
+                            end, BPlusTree.RangePolicy.EXCLUSIVE, 3, 50, true);
+                    while (it.hasNext()) {
+                        keys.add(it.next().getKey());
+                    }
+                    List<Integer> expectKeys = new ArrayList<>(expect.descendingKeySet());
+                    Assert.assertEquals(expectKeys.subList(Math.min(3, expectKeys.size()), Math.min(53, expectKeys.size())), keys);
+                }
+                Assert.assertEquals(new ArrayList<>(map.keySet()), tree.rangeStream(null, null, null, null, true)
+                        .map(Map.Entry::getKey).collect(Collectors.toList()));
+
+                List<Map.Entry<Integer, String>> entries = new ArrayList<>();
+                map.clear();
+                for (int i = 0; i < 1000; i++) {
+                    map.put(i * 2, i * 2 + "v");
+                    entries.add(new AbstractMap.SimpleImmutableEntry<>(i * 2, i * 2 + "v"));
+                }
+                tree.bulkLoad(entries.iterator(), 0.7);
+                List<Integer> keys = new ArrayList<>();
+                RangeCursor<Integer, String> cursor = tree.rangeCursor(null, null, null, null, true);
+                while (cursor.next()) {
+                    keys.add(cursor.key());
+                }
+                Assert.assertEquals(new ArrayList<>(map.descendingKeySet()), keys);
+                // 重新装载同样的数据，新树挪到文件开头，文件不会变大
+                long pages = tree.pool().pageCount();
+                tree.bulkLoad(entries.iterator(), 0.7);
+                Assert.assertEquals(pages, tree.pool().pageCount());
+                // 数据写了好几个叶子之后才发现无序，原来的树和文件都不变
+                List<Map.Entry<Integer, String>> unsorted = new ArrayList<>(entries);
+                unsorted.add(new AbstractMap.SimpleImmutableEntry<>(1, "1v"));
+                try {
+                    tree.bulkLoad(unsorted.iterator(), 0.7);
+                    Assert.fail();
+                } catch (IllegalArgumentException e) {
+                    Assert.assertEquals(pages, tree.pool().pageCount());
+                    Assert.assertEquals(map.size(), tree.size());
+                    Assert.assertEquals(new ArrayList<>(map.keySet()), tree.rangeStream(null, null, null, null, false)
+                            .map(Map.Entry::getKey).collect(Collectors.toList()));
+                }
+                for (int i = 0; i < 3000; i++) {
+                    int key = random.nextInt(2002);
+                    tree.insert(key, key + "v");
+                    map.put(key, key + "v");
+                }
+                for (int key = -1; key <= 2002; key++) {
+                    Assert.assertEquals(map.get(key), tree.search(key));
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * 写时复制B+树: 随机添加删除的过程中打开快照，快照的内容一直是打开时的内容，关闭之后不能再使用，
+     * 同时一个线程在快照上遍历，检查看到的都是完整的版本
+     * */
+    @Test
+    public void cowSnapshotTest() throws InterruptedException {
+        Random random = new Random(5);
+        for (int degree : new int[]{3, 4, 5, 16}) {
+            CowBPlusTree<Integer, String> tree = new CowBPlusTree<>(degree);
+            TreeMap<Integer, String> map = new TreeMap<>();
+            List<CowBPlusTree<Integer, String>.Snapshot> snapshots = new ArrayList<>();
+            List<TreeMap<Integer, String>> expects = new ArrayList<>();
+            for (int i = 0; i < 20000; i++) {
+                int key = random.nextInt(2000);
+                if (random.nextInt(3) == 0) {
+                    tree.delete(key);
+                    map.remove(key);
+                } else {
+                    tree.insert(key, key + "v" + i);
+                    map.put(key, key + "v" + i);
+                }
+                if (i % 2000 == 0) {
+                    snapshots.add(tree.openSnapshot());
+                    expects.add(new TreeMap<>(map));
+                }
+            }
+            Assert.assertEquals(map.size(), tree.size());
+            Assert.assertEquals(snapshots.size(), tree.openSnapshots());
+            Assert.assertEquals(snapshots.get(0).versionNumber(), tree.oldestVersion());
+            for (int s = 0; s < snapshots.size(); s++) {
+                CowBPlusTree<Integer, String>.Snapshot snapshot = snapshots.get(s);
+                TreeMap<Integer, String> expect = expects.get(s);
+                Assert.assertEquals(expect.size(), snapshot.size());
+                for (int key = -1; key <= 2000; key++) {
+                    Assert.assertEquals(expect.get(key), snapshot.search(key));
+                }
+                Assert.assertEquals(new ArrayList<>(expect.subMap(100, true, 900, false).values()),
+                        snapshot.searchRange(100, BPlusTree.RangePolicy.INCLUSIVE, 900, BPlusTree.RangePolicy.EXCLUSIVE));
+                List<Integer> keys = new ArrayList<>();
+                Iterator<Map.Entry<Integer, String>> it = snapshot.rangeIterator(null, null, null, null, 5, 100, true);
+                while (it.hasNext()) {
+                    keys.add(it.next().getKey());
+                }
+                List<Integer> expectKeys = new ArrayList<>(expect.descendingKeySet());
+                Assert.assertEquals(expectKeys.subList(Math.min(5, expectKeys.size()), Math.min(105, expectKeys.size())), keys);
+                Assert.assertEquals(new ArrayList<>(expect.keySet()), snapshot.rangeStream(null, null, null, null, true)
+                        .map(Map.Entry::getKey).collect(Collectors.toList()));
+                try {
+                    snapshot.insert(1, "1");
+                    Assert.fail("snapshot is read only");
+                } catch (UnsupportedOperationException e) {
+                    // 期望
+                }
+            }
+            for (CowBPlusTree<Integer, String>.Snapshot snapshot : snapshots) {
+                snapshot.close();
+                snapshot.close();
+            }
+            Assert.assertEquals(0, tree.openSnapshots());
+            Assert.assertEquals(tree.version(), tree.oldestVersion());
+            try {
+                snapshots.get(0).search(1);
+                Assert.fail("snapshot is closed");
+            } catch (IllegalStateException e) {
+                // 期望
+            }
+        }
+
+        // 一个线程不停地插入删除，保持key的个数是偶数个的成对变化，另一个线程在快照上遍历，每次看到的个数都和快照的size一致
+        final CowBPlusTree<Integer, Integer> tree = new CowBPlusTree<>(4);
+        final int n = 20000;
+        final boolean[] failed = new boolean[1];
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 200; i++) {
+                    try (CowBPlusTree<Integer, Integer>.Snapshot snapshot = tree.openSnapshot()) {
+                        long count = 0;
+                        Integer last = null;
+                        RangeCursor<Integer, Integer> cursor = snapshot.rangeCursor(null, null, null, null, false);
+                        while (cursor.next()) {
+                            if (last != null && cursor.key() <= last) {
+                                failed[0] = true;
+                            }
+                            last = cursor.key();
+                            count++;
+                        }
+                        if (count != snapshot.size()) {
+                            failed[0] = true;
+                        }
+                    }
+                }
+            }
+        });
+        reader.start();
+        for (int i = 0; i < n; i++) {
+            tree.insert(i, i);
+            if (i % 3 == 0) {
+                tree.delete(i / 2);
+            }
+        }
+        reader.join();
+        Assert.assertFalse(failed[0]);
+        Assert.assertEquals(0, tree.openSnapshots());
+    }
+
+    /**
+     * 子树计数和聚合: 随机添加删除(覆盖分裂、合并、左旋、右旋)和批量加载之后，范围计数、求和、最大值和TreeMap对比
+     * */
+    @Test
+    public void aggregateTest() {
+        Random random = new Random(13);
+        BPlusTree.RangePolicy[] policies = BPlusTree.RangePolicy.values();
+        for (int degree : new int[]{3, 4, 5, 16}) {
+            BPlusTreeImpl<Integer, Integer> sum = new BPlusTreeImpl<>(degree, Aggregator.<Integer>sum(Integer::longValue));
+            BPlusTreeImpl<Integer, Integer> max = new BPlusTreeImpl<>(degree, Aggregator.<Integer>max(Integer::compare));
+            TreeMap<Integer, Integer> map = new TreeMap<>();
+            for (int round = 0; round < 3; round++) {
+                for (int i = 0; i < 6000; i++) {
+                    int key = random.nextInt(3000);
+                    if (random.nextInt(3) == 0) {
+                        sum.delete(key);
+                        max.delete(key);
+                        map.remove(key);
+                    } else {
+                        int value = random.nextInt(10000) - 5000;
+                        sum.insert(key, value);
+                        max.insert(key, value);
+                        map.put(key, value);
+                    }
+                }
+                if (round == 1) {
+                    // 批量加载之后继续随机添加删除
+                    List<Map.Entry<Integer, Integer>> entries = new ArrayList<>(map.entrySet());
+                    sum.bulkLoad(entries.iterator(), 0.7);
+                    max.bulkLoad(entries.iterator(), 0.7);
+                }
+                Assert.assertEquals(map.size(), sum.count(null, null, null, null));
+                for (int i = 0; i < 500; i++) {
+                    Integer begin = random.nextInt(10) == 0 ? null : random.nextInt(3100) - 50;
+                    Integer end = random.nextInt(10) == 0 ? null : random.nextInt(3100) - 50;
+                    BPlusTree.RangePolicy bp = policies[random.nextInt(2)], ep = policies[random.nextInt(2)];
+                    NavigableMap<Integer, Integer> expect = map;
+                    if (begin != null) {
+                        expect = expect.tailMap(begin, bp == BPlusTree.RangePolicy.INCLUSIVE);
+                    }
+                    if (end != null) {
+                        expect = begin != null && end < begin ? new TreeMap<Integer, Integer>() : expect.headMap(end, ep == BPlusTree.RangePolicy.INCLUSIVE);
+                    }
+                    long expectSum = 0;
+                    Integer expectMax = null;
+                    for (int value : expect.values()) {
+                        expectSum += value;
+                        expectMax = expectMax == null ? value : Math.max(expectMax, value);
+                    }
+                    Assert.assertEquals(expect.size(), sum.count(begin, bp, end, ep));
+                    Assert.assertEquals(expect.size(), max.count(begin, bp, end, ep));
+                    Assert.assertEquals(Long.valueOf(expectSum), sum.<Long>aggregate(begin, bp, end, ep));
+                    Assert.assertEquals(expectMax, max.<Integer>aggregate(begin, bp, end, ep));
+                }
+            }
+        }
+        BPlusTreeImpl<Integer, Integer> counted = new BPlusTreeImpl<>(4, true);
+        for (int i = 0; i < 100; i++) {
+            counted.insert(i, i);
+        }
+        Assert.assertEquals(50, counted.count(10, BPlusTree.RangePolicy.INCLUSIVE, 60, BPlusTree.RangePolicy.EXCLUSIVE));
+        try {
+            counted.aggregate(null, null, null, null);
+            Assert.fail("no aggregator");
+        } catch (IllegalStateException e) {
+            // 期望
+        }
+        try {
+            new BPlusTreeImpl<Integer, Integer>(4).count(null, null, null, null);
+            Assert.fail("not counted");
+        } catch (IllegalStateException e) {
+            // 期望
+        }
+    }
+
+    /**
+     * 前缀压缩的String B+树: 有公共前缀的key(包括多字节字符和代理对)随机添加删除、批量加载，和TreeMap对比查找和范围遍历
+     * */
+    @Test
+    public void stringBPlusTreeTest() {
+        Random random = new Random(17);
+        String[] prefixes = {"https://example.com/a/", "https://example.com/b/", "https://example.org/", "/usr/lib/jvm/",
+                "/usr/share/\u00e9t\u00e9/", "\u4e2d\u6587/", "\ud83d\ude00/", "\ue000/", ""};
+        for (int nodeBytes : new int[]{64, 200, 4096}) {
+            for (boolean compressed : new boolean[]{true, false}) {
+                StringBPlusTree<String> tree = compressed ? new StringBPlusTree<>(nodeBytes) : new StringBPlusTree<>(nodeBytes, 1, false);
+                TreeMap<String, String> map = new TreeMap<>();
+                List<String> keys = new ArrayList<>();
+                for (int i = 0; i < 3000; i++) {
+                    keys.add(prefixes[random.nextInt(prefixes.length)] + Integer.toString(random.nextInt(100000), 36));
+                }
+                for (int round = 0; round < 2; round++) {
+                    for (int i = 0; i < 8000; i++) {
+                        String key = keys.get(random.nextInt(keys.size()));
+                        if (random.nextInt(3) == 0) {
+                            tree.delete(key);
+                            map.remove(key);
+                        } else {
+                            tree.insert(key, key + i);
+                            map.put(key, key + i);
+                        }
+                    }
+                    Assert.assertEquals(map.size(), tree.size());
+                    for (String key : keys) {
+                        Assert.assertEquals(map.get(key), tree.search(key));
+                        Assert.assertNull(tree.search(key + "!"));
+                    }
+                    for (int i = 0; i < 100; i++) {
+                        String begin = keys.get(random.nextInt(keys.size())), end = keys.get(random.nextInt(keys.size()));
+                        if (begin.compareTo(end) > 0) {
+                            String tmp = begin;
+                            begin = end;
+                            end = tmp;
+                        }
+                        Assert.assertEquals(new ArrayList<>(map.subMap(begin, false, end, true).values()),
+                                tree.searchRange(begin, BPlusTree.RangePolicy.EXCLUSIVE, end, BPlusTree.RangePolicy.INCLUSIVE));
+                        List<String> result = new ArrayList<>();
+                        Iterator<Map.Entry<String, String>> it = tree.rangeIterator(begin, BPlusTree.RangePolicy.INCLUSIVE,
+                                end, BPlusTree.RangePolicy.EXCLUSIVE, 2, 30, true);
+                        while (it.hasNext()) {
+                            result.add(it.next().getKey());
+                        }
+                        List<String> expect = new ArrayList<>(map.subMap(begin, true, end, false).descendingKeySet());
+                        Assert.assertEquals(expect.subList(Math.min(2, expect.size()), Math.min(32, expect.size())), result);
+                    }
+                    Assert.assertEquals(new ArrayList<>(map.keySet()), tree.rangeStream(null, null, null, null, true)
+                            .map(Map.Entry::getKey).collect(Collectors.toList()));
+                    if (round == 0) {
+                        tree.bulkLoad(map.entrySet().iterator(), 0.8);
+                    }
+                }
+                for (String key : new ArrayList<>(map.keySet())) {
+                    tree.delete(key);
+                }
+                Assert.assertEquals(0, tree.size());
+                Assert.assertEquals("[]\n", tree.treeToString());
+            }
+        }
+        try {
+            new StringBPlusTree<String>(4096).bulkLoad(Arrays.<Map.Entry<String, String>>asList(new AbstractMap.SimpleImmutableEntry<>("b", "b"),
+                    new AbstractMap.SimpleImmutableEntry<>("a", "a")).iterator(), 1.0);
+            Assert.fail("unsorted entries");
+        } catch (IllegalArgumentException e) {
+            // 期望
+        }
+    }
+
+    /**
+     * WAL + checkpoint: 随机添加删除之后重新打开，从checkpoint和日志恢复的数据和TreeMap一样；
+     * 日志末尾写了一半的记录被截断；多个线程组提交；bulkLoad之后马上checkpoint，不需要重放
+     * */
+    @Test
+    public void durableBPlusTreeTest() throws IOException, InterruptedException {
+        File dir = Files.createTempDirectory("durable-bplustree").toFile();
+        try {
+            TreeMap<Integer, String> map = new TreeMap<>();
+            Random random = new Random(11);
+            long checkpointLsn;
+            try (DurableBPlusTree<Integer, String> tree = new DurableBPlusTree<>(dir, new CowBPlusTree<Integer, String>(8),
+                    PageCodec.INT, PageCodec.fixedString(8), 0, TimeUnit.MICROSECONDS, 3000)) {
+                for (int i = 0; i < 10000; i++) {
+                    int key = random.nextInt(2000);
+                    if (random.nextInt(3) == 0) {
+                        tree.delete(key);
+                        map.remove(key);
+                    } else {
+                        tree.insert(key, key + "v" + i % 10);
+                        map.put(key, key + "v" + i % 10);
+                    }
+                }
+                tree.close();
+                // 自动checkpoint在后台线程里做，close等它做完；每次至少包含3000条新日志
+                Assert.assertTrue(tree.checkpoints() >= 1 && tree.checkpoints() <= 3);
+                checkpointLsn = tree.checkpointLsn();
+                Assert.assertTrue(checkpointLsn >= 3000 * tree.checkpoints());
+            }
+            long tail = 10000 - checkpointLsn;
+            try (DurableBPlusTree<Integer, String> tree = new DurableBPlusTree<>(dir, new CowBPlusTree<Integer, String>(8),
+                    PageCodec.INT, PageCodec.fixedString(8))) {
+                Assert.assertEquals(tail, tree.replayedRecords());
+                checkDurable(tree, map);
+            }
+            // 模拟崩溃: 最后一条记录只写了一部分
+            File[] segments = dir.listFiles((d, name) -> name.startsWith("wal-"));
+            Assert.assertNotNull(segments);
+            Arrays.sort(segments);
+            Files.write(segments[segments.length - 1].toPath(), new byte[]{1, 2, 3, 4, 5},
+                    StandardOpenOption.APPEND);
+            try (final DurableBPlusTree<Integer, String> tree = new DurableBPlusTree<>(dir, new CowBPlusTree<Integer, String>(8),
+                    PageCodec.INT, PageCodec.fixedString(8), 200, TimeUnit.MICROSECONDS, 0)) {
+                Assert.assertEquals(tail, tree.replayedRecords());
+                checkDurable(tree, map);
+                Thread[] threads = new Thread[4];
+                for (int t = 0; t < threads.length; t++) {
+                    final int base = 10000 + t * 500;
+                    threads[t] = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            for (int i = 0; i < 500; i++) {
+                                tree.insert(base + i, "t" + i);
+                            }
+                        }
+                    });
+                    threads[t].start();
+                }
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+                for (int i = 0; i < 2000; i++) {
+                    map.put(10000 + i, "t" + i % 500);
+                }
+                Assert.assertEquals(tail + 2000, tree.wal().lastLsn() - tree.checkpointLsn());
+                Assert.assertTrue(tree.wal().syncs() <= 2000);
+                try {
+                    tree.insert(1, "too long value");
+                    Assert.fail("value longer than 8 bytes");
+                } catch (IllegalArgumentException e) {
+                    // 期望，日志和树都没有变
+                }
+                Assert.assertEquals(map.get(1), tree.search(1));
+            }
+            try (DurableBPlusTree<Integer, String> tree = new DurableBPlusTree<>(dir, new CowBPlusTree<Integer, String>(8),
+                    PageCodec.INT, PageCodec.fixedString(8))) {
+                Assert.assertEquals(tail + 2000, tree.replayedRecords());
+                checkDurable(tree, map);
+                List<Map.Entry<Integer, String>> entries = new ArrayList<>();
+                map.clear();
+                for (int i = 0; i < 5000; i++) {
+                    map.put(i * 3, "b" + i);
+                    entries.add(new AbstractMap.SimpleImmutableEntry<>(i * 3, "b" + i));
+                }
+                tree.bulkLoad(entries.iterator(), 0.7);
+                tree.delete(3);
+                map.remove(3);
+            }
+            try (DurableBPlusTree<Integer, String> tree = new DurableBPlusTree<>(dir, new CowBPlusTree<Integer, String>(8),
+                    PageCodec.INT, PageCodec.fixedString(8))) {
+                Assert.assertEquals(1, tree.replayedRecords());
+                checkDurable(tree, map);
+                tree.checkpoint();
+            }
+            try (DurableBPlusTree<Integer, String> tree = new DurableBPlusTree<>(dir, new CowBPlusTree<Integer, String>(8),
+                    PageCodec.INT, PageCodec.fixedString(8))) {
+                Assert.assertEquals(0, tree.replayedRecords());
+                checkDurable(tree, map);
+            }
+            // 多个线程写的同时后台线程不停地自动checkpoint，还有线程手动checkpoint，重新打开之后数据一样
+            try (final DurableBPlusTree<Integer, String> tree = new DurableBPlusTree<>(dir, new CowBPlusTree<Integer, String>(8),
+                    PageCodec.INT, PageCodec.fixedString(8), 0, TimeUnit.MICROSECONDS, 500)) {
+                Thread[] threads = new Thread[4];
+                for (int t = 0; t < threads.length; t++) {
+                    final int id = t;
+                    threads[t] = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            for (int i = 0; i < 3000; i++) {
+                                int key = 20000 + i * threads.length + id;
+                                if (i % 3 == 2) {
+                                    tree.delete(key - threads.length);
+                                } else if (id == 0 && i % 1000 == 0) {
+                                    tree.checkpoint();
+                                } else {
+                                    tree.insert(key, "c" + i);
+                                }
+                            }
+                        }
+                    });
+                    threads[t].start();
+                }
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+                for (int t = 0; t < threads.length; t++) {
+                    for (int i = 0; i < 3000; i++) {
+                        int key = 20000 + i * threads.length + t;
+                        if (i % 3 == 2) {
+                            map.remove(key - threads.length);
+                        } else if (!(t == 0 && i % 1000 == 0)) {
+                            map.put(key, "c" + i);
+                        }
+                    }
+                }
+                checkDurable(tree, map);
+                tree.close();
+                Assert.assertTrue(tree.checkpoints() > 3);
+            }
+            try (DurableBPlusTree<Integer, String> tree = new DurableBPlusTree<>(dir, new CowBPlusTree<Integer, String>(8),
+                    PageCodec.INT, PageCodec.fixedString(8))) {
+                checkDurable(tree, map);
+            }
+        } finally {
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            dir.delete();
+        }
+    }
+
+    private void checkDurable(BPlusTree<Integer, String> tree, TreeMap<Integer, String> map) {
+        int max = map.isEmpty() ? 0 : map.lastKey();
+        for (int key = -1; key <= max + 1; key++) {
+            Assert.assertEquals(map.get(key), tree.search(key));
+        }
+        Assert.assertEquals(new ArrayList<>(map.values()), tree.searchRange(null, null, null, null));
+    }
+
+    /**
+     * 查找内核: 线性、无分支、有分支、按长度选择的lowerBound、Eytzinger和Object[]二分，
+     * 随机有重复的有序数组和Arrays.binarySearch的结果对比，包括超过SPECULATIVE_SEARCH_BYTES的大数组
+     * */
+    @Test
+    public void searchKernelTest() {
+        Random random = new Random(13);
+        int big = YUtils.SPECULATIVE_SEARCH_BYTES / 4 + 100;
+        for (int size : new int[]{0, 1, 2, 3, 7, 8, 9, 16, 31, 33, 64, 100, 255, 1000, big}) {
+            long[] a = new long[size];
+            int[] b = new int[size];
+            Integer[] boxed = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                b[i] = random.nextInt(size * 2 + 1);
+            }
+            Arrays.sort(b);
+            for (int i = 0; i < size; i++) {
+                a[i] = b[i];
+                boxed[i] = b[i];
+            }
+            long[] ea = YUtils.eytzinger(a);
+            int[] eb = YUtils.eytzinger(b);
+            int[] order = YUtils.eytzingerOrder(size);
+            for (int q = 0; q < 2000; q++) {
+                int key = random.nextInt(size * 2 + 3) - 1;
+                int expect = 0;
+                while (expect < size && b[expect] < key) {
+                    expect = expect < size - 64 && b[expect + 64] < key ? expect + 64 : expect + 1;
+                }
+                int from = size == 0 ? 0 : random.nextInt(size), to = from + random.nextInt(size - from + 1);
+                int expectRange = Math.max(from, Math.min(to, expect));
+                if (size <= 1000) {
+                    Assert.assertEquals(expectRange, YUtils.linearLowerBound(a, from, to, key));
+                    Assert.assertEquals(expectRange, YUtils.linearLowerBound(b, from, to, key));
+                }
+                Assert.assertEquals(expectRange, YUtils.branchlessLowerBound(a, from, to, key));
+                Assert.assertEquals(expectRange, YUtils.branchlessLowerBound(b, from, to, key));
+                Assert.assertEquals(expectRange, YUtils.branchyLowerBound(a, from, to, key));
+                Assert.assertEquals(expectRange, YUtils.branchyLowerBound(b, from, to, key));
+                Assert.assertEquals(expect, YUtils.lowerBound(a, 0, size, key));
+                Assert.assertEquals(expect, YUtils.lowerBound(b, 0, size, key));
+                Assert.assertEquals(expect, order[YUtils.eytzingerLowerBound(ea, key)]);
+                Assert.assertEquals(expect, order[YUtils.eytzingerLowerBound(eb, key)]);
+                int loc = YUtils.binarySearch(boxed, 0, size, key);
+                if (expect < size && b[expect] == key) {
+                    Assert.assertTrue(loc >= 0 && b[loc] == key);
+                } else {
+                    Assert.assertEquals(-expect - 1, loc);
+                }
+            }
+        }
+    }
+
+    private void checkBulkLoad(BPlusTree<Integer, String> plus, BTree<Integer, String> tree, TreeMap<Integer, String> map) {
+        int max = map.isEmpty() ? 0 : map.lastKey();
+        for (int key = -1; key <= max + 1; key++) {
+            Assert.assertEquals(map.get(key), plus.search(key));
+            Assert.assertEquals(map.get(key), tree.search(key));
+        }
+        List<Integer> keys = new ArrayList<>();
+        RangeCursor<Integer, String> cursor = plus.rangeCursor(null, null, null, null, true);
+        while (cursor.next()) {
+            keys.add(cursor.key());
+        }
+        Assert.assertEquals(new ArrayList<>(map.descendingKeySet()), keys);
+    }
 }
@@ -0,0 +1,414 @@
+package test.ds;
+
+import com.yang.ds.algorithm.hash.AbstractHashTable;
+import com.yang.ds.algorithm.hash.ConcurrentYLinkedHashTable;
+import com.yang.ds.algorithm.hash.IntIntOpenAddrTable;
+import com.yang.ds.algorithm.hash.LongLongOpenAddrTable;
+import com.yang.ds.algorithm.hash.LongObjectOpenAddrTable;
+import com.yang.ds.algorithm.hash.MmapHashTable;
+import com.yang.ds.algorithm.hash.MmapLongLongHashTable;
+import com.yang.ds.algorithm.hash.RobinHoodHashTable;
+import com.yang.ds.algorithm.hash.YLinkedHashTable;
+import com.yang.ds.algorithm.hash.YOpenAddrHashTable;
+import com.yang.ds.algorithm.hash.strategy.HashStrategy;
+import com.yang.ds.datastruct.hash.HashCursor;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * hash表测试
+ * */
+public class HashTableTest {
+
+    /**
+     * 基本类型开放地址hash表，随机增删和HashMap对比
+     * */
+    @Test
+    public void primitiveTableTest() {
+        IntIntOpenAddrTable intTable = new IntIntOpenAddrTable(4, 0.5f, -1);
+        LongLongOpenAddrTable longTable = new LongLongOpenAddrTable(4);
+        LongObjectOpenAddrTable<String> objTable = new LongObjectOpenAddrTable<>();
+        Map<Integer, Integer> expect = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(2000) - 1000;
+            if (random.nextInt(3) == 0) {
+                intTable.remove(key);
+                longTable.remove((long) key);
+                objTable.remove((long) key);
+                expect.remove(key);
+            } else {
+                intTable.put(key, i);
+                longTable.put(key, (long) i);
+                objTable.put(key, String.valueOf(i));
+                expect.put(key, i);
+            }
+        }
+        Assert.assertEquals(expect.size(), intTable.size());
+        Assert.assertEquals(expect.size(), longTable.size());
+        Assert.assertEquals(expect.size(), objTable.size());
+        for (int key = -1000; key < 1000; key++) {
+            Integer value = expect.get(key);
+            Assert.assertEquals(value == null ? -1 : value, intTable.get(key));
+            Assert.assertEquals(value, intTable.get(Integer.valueOf(key)));
+            Assert.assertEquals(value == null ? null : Long.valueOf(value), longTable.get(Long.valueOf(key)));
+            Assert.assertEquals(value == null ? null : String.valueOf(value), objTable.get(key));
+        }
+    }
+
+    /**
+     * 并发hash表，多个线程各自写不同的key，扩容过程中同时读
+     * */
+    @Test
+    public void concurrentTableTest() throws InterruptedException {
+        final ConcurrentYLinkedHashTable<Integer, Integer> table = new ConcurrentYLinkedHashTable<>(2);
+        final int threads = 4, perThread = 20000;
+        final CountDownLatch end = new CountDownLatch(threads);
+        final boolean[] failed = new boolean[1];
+        for (int t = 0; t < threads; t++) {
+            final int base = t * perThread;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = base; i < base + perThread; i++) {
+                        table.put(i, i);
+                        if (!Integer.valueOf(i).equals(table.get(i))) {
+                            failed[0] = true;
+                        }
+                        // 删除偶数key
+                        if ((i & 1) == 0) {
+                            table.remove(i);
+                        }
+                    }
+                    end.countDown();
+                }
+            }).start();
+        }
+        end.await();
+        Assert.assertFalse(failed[0]);
+        Assert.assertEquals(threads * perThread / 2, table.size());
+        for (int i = 0; i < threads * perThread; i++) {
+            Assert.assertEquals((i & 1) == 0 ? null : Integer.valueOf(i), table.get(i));
+        }
+    }
+
+    /**
+     * 渐进式rehash，迁移过程中的增删改查和HashMap对比
+     * */
+    @Test
+    public void incrementalRehashTest() {
+        checkWithHashMap(new YLinkedHashTable<String, Integer>(2), 1);
+        checkWithHashMap(new YOpenAddrHashTable<String, Integer>(2), 1);
+        checkWithHashMap(new RobinHoodHashTable<String, Integer>(2), 1);
+    }
+
+    /**
+     * Robin Hood hash表，一次性rehash
+     * */
+    @Test
+    public void robinHoodTest() {
+        checkWithHashMap(new RobinHoodHashTable<String, Integer>(2), 0);
+        checkWithHashMap(new RobinHoodHashTable<String, Integer>(2, 0.9f), 0);
+        // 装填因子不小于1的时候数组会被填满，探测不会结束
+        try {
+            new RobinHoodHashTable<String, Integer>(2, 1f);
+            Assert.fail("load factor 1");
+        } catch (IllegalArgumentException e) {
+            // 期望
+        }
+        RobinHoodHashTable<String, Integer> table = new RobinHoodHashTable<>();
+        try {
+            table.put(null, 1);
+            Assert.fail("null key");
+        } catch (IllegalArgumentException e) {
+            // 期望
+        }
+        Assert.assertNull(table.get(null));
+    }
+
+    /**
+     * 开放地址hash表反复增删，删除标记复用，超过比例之后整理数组
+     * */
+    @Test
+    public void tombstoneTest() {
+        YOpenAddrHashTable<String, Integer> table = new YOpenAddrHashTable<>(64);
+        table.setTombstoneRatio(0.1f);
+        Map<String, Integer> expect = new HashMap<>();
+        Random random = new Random(5);
+        int maxTombstones = 0;
+        for (int i = 0; i < 100000; i++) {
+            // key的范围很小，不会扩容，只有删除标记的复用和整理
+            String key = "s" + random.nextInt(30);
+            if (random.nextBoolean()) {
+                table.remove(key);
+                expect.remove(key);
+            } else {
+                table.put(key, i);
+                expect.put(key, i);
+            }
+            maxTombstones = Math.max(maxTombstones, table.tombstones());
+            Assert.assertEquals(expect.get(key), table.get(key));
+        }
+        Assert.assertEquals(expect.size(), table.size());
+        Assert.assertTrue(maxTombstones <= table.capacity() * 0.1f);
+        table.compact();
+        Assert.assertEquals(0, table.tombstones());
+        for (int i = 0; i < 30; i++) {
+            Assert.assertEquals(expect.get("s" + i), table.get("s" + i));
+        }
+    }
+
+    /**
+     * 内存映射文件hash表，随机增删和HashMap对比，关闭之后重新打开数据还在
+     * */
+    @Test
+    public void mmapTableTest() throws IOException {
+        File file = File.createTempFile("mmap-hash", ".db");
+        File longFile = File.createTempFile("mmap-hash", ".long");
+        file.delete();
+        longFile.delete();
+        try {
+            MmapHashTable table = new MmapHashTable(file, 4);
+            MmapLongLongHashTable longTable = new MmapLongLongHashTable(longFile, 4);
+            Map<Integer, String> expect = new HashMap<>();
+            Random random = new Random(9);
+            for (int i = 0; i < 50000; i++) {
+                int key = random.nextInt(3000) - 1000;
+                byte[] keyBytes = ("k" + key).getBytes(StandardCharsets.UTF_8);
+                if (random.nextInt(3) == 0) {
+                    table.remove(keyBytes);
+                    longTable.remove(key);
+                    expect.remove(key);
+                } else {
+                    // value长度变化，覆盖的时候一部分原地覆盖，一部分重新分配
+                    String value = "v" + random.nextInt(200);
+                    table.put(keyBytes, value.getBytes(StandardCharsets.UTF_8));
+                    longTable.put(key, value.length());
+                    expect.put(key, value);
+                }
+            }
+            Assert.assertEquals(expect.size(), table.size());
+            Assert.assertEquals(expect.size(), longTable.size());
+            table.close();
+            longTable.close();
+
+            table = new MmapHashTable(file);
+            longTable = new MmapLongLongHashTable(longFile);
+            Assert.assertEquals(expect.size(), table.size());
+            for (int key = -1000; key < 2000; key++) {
+                String value = expect.get(key);
+                byte[] bytes = table.get(("k" + key).getBytes(StandardCharsets.UTF_8));
+                Assert.assertEquals(value, bytes == null ? null : new String(bytes, StandardCharsets.UTF_8));
+                Assert.assertEquals(value == null ? null : Long.valueOf(value.length()), longTable.get(Long.valueOf(key)));
+            }
+            table.close();
+            longTable.close();
+        } finally {
+            file.delete();
+            longFile.delete();
+        }
+    }
+
+    /**
+     * 内存映射文件hash表反复覆盖/删除，释放的entry和老的槽位数组被复用，文件不会一直变大，重新打开之后继续复用
+     * */
+    @Test
+    public void mmapTableReuseTest() throws IOException {
+        File file = File.createTempFile("mmap-hash", ".db");
+        file.delete();
+        try {
+            MmapHashTable table = new MmapHashTable(file, 4);
+            Map<Integer, String> expect = new HashMap<>();
+            Random random = new Random(11);
+            long fileSize = 0;
+            for (int round = 0; round < 20; round++) {
+                if (round == 10) {
+                    table.close();
+                    table = new MmapHashTable(file);
+                }
+                for (int i = 0; i < 20000; i++) {
+                    int key = random.nextInt(2000);
+                    byte[] keyBytes = ("k" + key).getBytes(StandardCharsets.UTF_8);
+                    if (random.nextInt(4) == 0) {
+                        table.remove(keyBytes);
+                        expect.remove(key);
+                    } else {
+                        // value长度在8到2000字节之间变化，覆盖基本上都要重新分配
+                        char[] chars = new char[8 + random.nextInt(2000)];
+                        Arrays.fill(chars, (char) ('a' + key % 26));
+                        String value = new String(chars);
+                        table.put(keyBytes, value.getBytes(StandardCharsets.UTF_8));
+                        expect.put(key, value);
+                    }
+                }
+                if (round == 4) {
+                    fileSize = table.fileSize();
+                } else if (round > 4) {
+                    // 不回收的话每轮要多分配大约15000 * 1000字节
+                    Assert.assertTrue("round " + round + " file " + table.fileSize(), table.fileSize() <= fileSize * 2);
+                }
+            }
+            Assert.assertEquals(expect.size(), table.size());
+            for (int key = 0; key < 2000; key++) {
+                String value = expect.get(key);
+                byte[] bytes = table.get(("k" + key).getBytes(StandardCharsets.UTF_8));
+                Assert.assertEquals(value, bytes == null ? null : new String(bytes, StandardCharsets.UTF_8));
+            }
+            table.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * hash算法和公开的测试数据对比，每种算法的hash表结果都正确
+     * */
+    @Test
+    public void hashStrategyTest() {
+        byte[] empty = new byte[0];
+        Assert.assertEquals(0xef46db3751d8e999L, HashStrategy.XXHASH64.hash64(empty, 0, 0));
+        Assert.assertEquals(0x44bc2cf5ad770999L, HashStrategy.XXHASH64.hash64("abc"));
+        Assert.assertEquals(0L, HashStrategy.MURMUR3.hash64(empty, 0, 0));
+        Assert.assertEquals(0xcbd8a7b341bd9b02L, HashStrategy.MURMUR3.hash64("hello"));
+        HashStrategy[] strategies = {HashStrategy.JDK, HashStrategy.SPREAD, HashStrategy.MURMUR3,
+                HashStrategy.XXHASH64, HashStrategy.WYHASH};
+        for (HashStrategy strategy : strategies) {
+            byte[] bytes = "中文key".getBytes(StandardCharsets.UTF_8);
+            Assert.assertEquals(strategy.hash64(bytes, 0, bytes.length), strategy.hash64("中文key"));
+            YLinkedHashTable<String, Integer> table = new YLinkedHashTable<>(2);
+            table.setHashStrategy(strategy);
+            checkWithHashMap(table, 0);
+        }
+    }
+
+    /**
+     * hashCode全部相同的key，链表转换成红黑树，删除之后再转换回链表，不同类型的key混在同一个桶里面
+     * */
+    @Test
+    public void treeBinTest() {
+        YLinkedHashTable<Object, Integer> table = new YLinkedHashTable<>();
+        Map<Object, Integer> expect = new HashMap<>();
+        Random random = new Random(13);
+        for (int i = 0; i < 20000; i++) {
+            // "Aa"和"BB"的hashCode相同
+            int bits = random.nextInt(64);
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < 6; j++) {
+                sb.append((bits >>> j & 1) == 0 ? "Aa" : "BB");
+            }
+            // Integer和Long的hashCode相同，类型不同不能比较
+            Object key = random.nextInt(10) == 0 ? (Object) (long) sb.toString().hashCode() : sb.toString();
+            if (random.nextInt(3) == 0) {
+                table.remove(key);
+                expect.remove(key);
+            } else {
+                table.put(key, i);
+                expect.put(key, i);
+            }
+            Assert.assertEquals(expect.get(key), table.get(key));
+            Assert.assertEquals(expect.size(), table.size());
+        }
+        YLinkedHashTable<String, Integer> strTable = new YLinkedHashTable<>();
+        for (int i = 0; i < 64; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < 6; j++) {
+                sb.append((i >>> j & 1) == 0 ? "Aa" : "BB");
+            }
+            strTable.put(sb.toString(), i);
+        }
+        Assert.assertTrue(strTable.toString().contains("T["));
+    }
+
+    /**
+     * 批量增删查，游标遍历，并行流
+     * */
+    @Test
+    public void bulkAndIterationTest() {
+        checkBulk(new YLinkedHashTable<String, Integer>());
+        checkBulk(new YOpenAddrHashTable<String, Integer>(16));
+        checkBulk(new RobinHoodHashTable<String, Integer>());
+    }
+
+    private void checkBulk(AbstractHashTable<String, Integer> table) {
+        int n = 10000;
+        String[] keys = new String[n];
+        Integer[] values = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            // 前64个key的hashCode相同，链表会转换成红黑树
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < 6; j++) {
+                sb.append((i >>> j & 1) == 0 ? "Aa" : "BB");
+            }
+            keys[i] = i < 64 ? sb.toString() : "key" + i;
+            values[i] = i;
+        }
+        table.setRehashStep(1);
+        table.putAll(keys, values);
+        // 一次扩容到位，并且rehash已经完成
+        Assert.assertFalse(table.isRehashing());
+        int capacity = table.capacity();
+        for (int i = 0; i < n; i++) {
+            table.put(keys[i], values[i]);
+        }
+        Assert.assertEquals(capacity, table.capacity());
+        Assert.assertEquals(n, table.size());
+
+        Integer[] out = new Integer[n];
+        table.getAll(keys, out);
+        Assert.assertArrayEquals(values, out);
+
+        long sum = 0;
+        int count = 0;
+        HashCursor<String, Integer> cursor = table.cursor();
+        while (cursor.next()) {
+            Assert.assertEquals(cursor.value(), table.get(cursor.key()));
+            sum += cursor.value();
+            count++;
+        }
+        Assert.assertEquals(n, count);
+        Assert.assertEquals((long) n * (n - 1) / 2, sum);
+        Assert.assertEquals(sum, table.parallelStream().mapToLong(e -> e.getValue()).sum());
+        Assert.assertEquals(n, table.stream().map(e -> e.getKey()).distinct().count());
+
+        table.removeAll(Arrays.copyOf(keys, n / 2));
+        Assert.assertEquals(n - n / 2, table.size());
+        Assert.assertEquals(n - n / 2, table.parallelStream().count());
+        table.getAll(keys, out);
+        Assert.assertNull(out[0]);
+        Assert.assertEquals(values[n - 1], out[n - 1]);
+    }
+
+    private void checkWithHashMap(AbstractHashTable<String, Integer> table, int rehashStep) {
+        table.setRehashStep(rehashStep);
+        Map<String, Integer> expect = new HashMap<>();
+        Random random = new Random(3);
+        boolean rehashed = false;
+        for (int i = 0; i < 50000; i++) {
+            String key = "k" + random.nextInt(5000);
+            if (random.nextInt(4) == 0) {
+                table.remove(key);
+                expect.remove(key);
+            } else {
+                table.put(key, i);
+                expect.put(key, i);
+            }
+            rehashed |= table.isRehashing();
+            Assert.assertEquals(expect.get(key), table.get(key));
+        }
+        Assert.assertEquals(rehashStep > 0, rehashed);
+        Assert.assertEquals(expect.size(), table.size());
+        for (int i = 0; i < 5000; i++) {
+            String key = "k" + i;
+            Assert.assertEquals(expect.get(key), table.get(key));
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package test.ds;
+
+import com.yang.ds.algorithm.linkedlist.ConcurrentSkipList;
+import com.yang.ds.algorithm.linkedlist.SkipList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 跳跃表测试类
+ * */
+public class SkipListTest {
+
+    /**
+     * 随机添加删除之后，rank/select/countInRange和TreeSet对比，正序和逆序，固定层数和层数自增长
+     * */
+    @Test
+    public void indexableSkipListTest() {
+        for (boolean order : new boolean[]{true, false}) {
+            indexableSkipListTest(new SkipList<Integer>(8, order), order);
+            indexableSkipListTest(new SkipList<Integer>(order, 0.25), order);
+        }
+    }
+
+    private void indexableSkipListTest(SkipList<Integer> list, boolean order) {
+        TreeSet<Integer> set = new TreeSet<>();
+        Random random = new Random(11);
+        for (int i = 0; i < 5000; i++) {
+            int key = random.nextInt(1000);
+            if (random.nextInt(3) == 0) {
+                list.delete(key);
+                set.remove(key);
+            } else {
+                list.insert(key);
+                set.add(key);
+            }
+        }
+        Assert.assertEquals(set.size(), list.size());
+        List<Integer> sorted = new ArrayList<>(order ? set : set.descendingSet());
+        for (int i = 0; i < sorted.size(); i++) {
+            Assert.assertEquals(sorted.get(i), list.select(i));
+            Assert.assertEquals(i, list.rank(sorted.get(i)));
+        }
+        for (int i = 0; i < 1000; i++) {
+            int lo = random.nextInt(1100) - 50, hi = random.nextInt(1100) - 50;
+            if (!set.contains(i)) {
+                Assert.assertEquals(-1, list.rank(i));
+            }
+            int expect = lo > hi ? 0 : set.subSet(lo, true, hi, true).size();
+            Assert.assertEquals(expect, list.countInRange(lo, hi));
+        }
+    }
+
+    /**
+     * 单线程和TreeMap对比，正序和逆序
+     * */
+    @Test
+    public void concurrentSkipListTest() {
+        for (boolean order : new boolean[]{true, false}) {
+            ConcurrentSkipList<Integer, Integer> list = new ConcurrentSkipList<>(order);
+            TreeMap<Integer, Integer> map = new TreeMap<>();
+            Random random = new Random(7);
+            for (int i = 0; i < 20000; i++) {
+                int key = random.nextInt(2000);
+                int op = random.nextInt(3);
+                if (op == 0) {
+                    Assert.assertEquals(map.remove(key), list.remove(key));
+                } else if (op == 1) {
+                    Assert.assertEquals(map.put(key, i), list.put(key, i));
+                } else {
+                    Assert.assertEquals(map.get(key), list.get(key));
+                }
+            }
+            Assert.assertEquals(map.size(), list.size());
+            final List<Integer> keys = new ArrayList<>();
+            list.forEach((k, v) -> keys.add(k));
+            List<Integer> expect = new ArrayList<>(order ? map.keySet() : map.descendingKeySet());
+            Assert.assertEquals(expect, keys);
+        }
+    }
+
+    /**
+     * 多个线程交错写相邻的key(同一个前驱节点上竞争CAS)，同时读和删除
+     * */
+    @Test
+    public void concurrentSkipListThreadTest() throws InterruptedException {
+        final ConcurrentSkipList<Integer, Integer> list = new ConcurrentSkipList<>();
+        final int threads = 4, perThread = 20000;
+        final CountDownLatch end = new CountDownLatch(threads);
+        final boolean[] failed = new boolean[1];
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        int key = i * threads + offset;
+                        list.put(key, key);
+                        if (!Integer.valueOf(key).equals(list.get(key))) {
+                            failed[0] = true;
+                        }
+                        // 删除偶数key
+                        if ((key & 1) == 0 && !Integer.valueOf(key).equals(list.remove(key))) {
+                            failed[0] = true;
+                        }
+                    }
+                    end.countDown();
+                }
+            }).start();
+        }
+        end.await();
+        Assert.assertFalse(failed[0]);
+        Assert.assertEquals(threads * perThread / 2, list.size());
+        for (int i = 0; i < threads * perThread; i++) {
+            Assert.assertEquals((i & 1) == 0 ? null : Integer.valueOf(i), list.get(i));
+        }
+        final int[] prev = {-1};
+        list.forEach((k, v) -> {
+            Assert.assertTrue(k > prev[0]);
+            prev[0] = k;
+        });
+    }
+
+    /**
+     * 多个线程对同一批key添加和删除，每个key成功删除的次数不能超过成功添加(之前不存在)的次数
+     * */
+    @Test
+    public void concurrentSkipListContentionTest() throws InterruptedException {
+        final ConcurrentSkipList<Integer, Integer> list = new ConcurrentSkipList<>();
+        final int threads = 4, keys = 64, ops = 50000;
+        final AtomicInteger[] balance = new AtomicInteger[keys];
+        for (int i = 0; i < keys; i++) {
+            balance[i] = new AtomicInteger();
+        }
+        final CountDownLatch end = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < ops; i++) {
+                        int key = random.nextInt(keys);
+                        if (random.nextBoolean()) {
+                            if (list.put(key, key) == null) {
+                                balance[key].incrementAndGet();
+                            }
+                        } else if (list.remove(key) != null) {
+                            balance[key].decrementAndGet();
+                        }
+                    }
+                    end.countDown();
+                }
+            }).start();
+        }
+        end.await();
+        int size = 0;
+        for (int i = 0; i < keys; i++) {
+            // 最后存在的key添加比删除多一次，不存在的一样多
+            Assert.assertEquals(list.get(i) == null ? 0 : 1, balance[i].get());
+            size += balance[i].get();
+        }
+        Assert.assertEquals(size, list.size());
+    }
+
+    /**
+     * 多个线程对少量key用不同的value并发put和remove，每个put进去的value最后要么被一次put覆盖返回，
+     * 要么被一次remove返回，要么还在表里，不能被返回两次，也不能丢失
+     * */
+    @Test
+    public void concurrentSkipListValueTest() throws InterruptedException {
+        final ConcurrentSkipList<Integer, Integer> list = new ConcurrentSkipList<>();
+        final int threads = 4, keys = 8, ops = 50000;
+        final AtomicInteger[] seen = new AtomicInteger[threads * ops];
+        for (int i = 0; i < seen.length; i++) {
+            seen[i] = new AtomicInteger();
+        }
+        final CountDownLatch end = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(id);
+                    for (int i = 0; i < ops; i++) {
+                        int key = random.nextInt(keys);
+                        Integer old = random.nextInt(4) == 0 ? list.remove(key) : list.put(key, id * ops + i);
+                        if (old != null) {
+                            seen[old].incrementAndGet();
+                        }
+                    }
+                    end.countDown();
+                }
+            }).start();
+        }
+        end.await();
+        int size = 0;
+        for (int key = 0; key < keys; key++) {
+            Integer value = list.get(key);
+            if (value != null) {
+                seen[value].incrementAndGet();
+                size++;
+            }
+        }
+        Assert.assertEquals(size, list.size());
+        // remove的那些操作没有value，其他的value都正好出现一次
+        Random[] randoms = new Random[threads];
+        for (int t = 0; t < threads; t++) {
+            randoms[t] = new Random(t);
+            for (int i = 0; i < ops; i++) {
+                randoms[t].nextInt(keys);
+                int expect = randoms[t].nextInt(4) == 0 ? 0 : 1;
+                Assert.assertEquals(expect, seen[t * ops + i].get());
+            }
+        }
+    }
+}